@@ -55,7 +55,7 @@ public class MainFragment extends Fragment implements View.OnClickListener, Audi
         if (!checkPermission(AudioRecorder.PERMISSION_REQUIRED)) {
             ActivityCompat.requestPermissions(requireActivity(), AudioRecorder.PERMISSION_REQUIRED, 100);
         }
-        mAudioTracker = new AudioTracker(44100, AudioFormat.CHANNEL_IN_STEREO, AudioFormat.ENCODING_PCM_16BIT);
+        mAudioTracker = new AudioTracker(44100, AudioFormat.CHANNEL_OUT_STEREO, AudioFormat.ENCODING_PCM_16BIT);
         mMainHandler = new Handler();
     }
 
@@ -99,7 +99,7 @@ public class MainFragment extends Fragment implements View.OnClickListener, Audi
         } else if (viewId == R.id.stop_record) {
             mAudioRecorder.stopRecord();
         } else if (viewId == R.id.start_play) {
-            String tempFilePath = mAudioRecorder.getTempFilePath();
+            String tempFilePath = mAudioRecorder.getWavFilePath();
             try {
                 mAudioTracker.startPlay(tempFilePath,this,mMainHandler);
             } catch (FileNotFoundException e) {
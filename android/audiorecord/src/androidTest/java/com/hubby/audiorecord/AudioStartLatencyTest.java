@@ -0,0 +1,112 @@
+package com.hubby.audiorecord;
+
+import android.Manifest;
+import android.content.Context;
+import android.media.AudioFormat;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.rule.GrantPermissionRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 预热(prepare)后从开始录音/播放到第一块数据的延迟
+ */
+@RunWith(AndroidJUnit4.class)
+public class AudioStartLatencyTest {
+    private static final String TAG = "AudioStartLatencyTest";
+    private static final int SAMPLE_RATE = 44100;
+    // 预热后的启动延迟上限
+    private static final long MAX_RECORD_LATENCY_MILLIS = 200;
+    private static final long MAX_PLAY_LATENCY_MILLIS = 100;
+    private static final long WAIT_MILLIS = 2000;
+    // 等待上一次录音/播放的线程结束，避免下一次start被忽略
+    private static final long STOP_WAIT_MILLIS = 300;
+
+    @Rule
+    public GrantPermissionRule permissionRule = GrantPermissionRule.grant(Manifest.permission.RECORD_AUDIO);
+
+    private interface MetricsSource {
+        AudioMetrics get();
+    }
+
+    private static long awaitStartLatency(MetricsSource source) {
+        long deadline = SystemClock.elapsedRealtime() + WAIT_MILLIS;
+        while (SystemClock.elapsedRealtime() < deadline) {
+            AudioMetrics metrics = source.get();
+            if (metrics != null && metrics.getStartLatencyNanos() != AudioMetrics.UNKNOWN) {
+                return metrics.getStartLatencyNanos();
+            }
+            SystemClock.sleep(5);
+        }
+        return AudioMetrics.UNKNOWN;
+    }
+
+    @Test
+    public void preparedRecorderStartsQuickly() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File file = new File(context.getCacheDir(), "start_latency.pcm");
+        AudioRecorder recorder = new AudioRecorder(context, SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT, null, file.getPath());
+        MetricsSource source = recorder::getMetrics;
+
+        recorder.startRecord();
+        long cold = awaitStartLatency(source);
+        recorder.stopRecord();
+        SystemClock.sleep(STOP_WAIT_MILLIS);
+
+        recorder.prepare();
+        try {
+            recorder.startRecord();
+            long warm = awaitStartLatency(source);
+            recorder.stopRecord();
+            Log.d(TAG, "record start latency cold = " + TimeUnit.NANOSECONDS.toMicros(cold)
+                    + "us, warm = " + TimeUnit.NANOSECONDS.toMicros(warm) + "us");
+            assertNotEquals(AudioMetrics.UNKNOWN, warm);
+            assertTrue("warm record latency " + warm, warm < TimeUnit.MILLISECONDS.toNanos(MAX_RECORD_LATENCY_MILLIS));
+        } finally {
+            SystemClock.sleep(STOP_WAIT_MILLIS);
+            recorder.release();
+        }
+    }
+
+    @Test
+    public void preparedTrackerStartsQuickly() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File file = new File(context.getCacheDir(), "start_latency.wav");
+        try (WavFileWriter writer = new WavFileWriter(file, SAMPLE_RATE, 2)) {
+            // 1秒静音
+            ByteBuffer silence = ByteBuffer.allocateDirect(SAMPLE_RATE * 4).order(ByteOrder.nativeOrder());
+            writer.write(new ByteBuffer[]{silence}, 0, 1);
+        }
+        AudioTracker tracker = new AudioTracker(SAMPLE_RATE, AudioFormat.CHANNEL_OUT_STEREO,
+                AudioFormat.ENCODING_PCM_16BIT);
+        MetricsSource source = tracker::getMetrics;
+        tracker.prepare();
+        try {
+            tracker.startPlay(file.getPath(), null, null);
+            long warm = awaitStartLatency(source);
+            tracker.stop();
+            Log.d(TAG, "play start latency warm = " + TimeUnit.NANOSECONDS.toMicros(warm) + "us");
+            assertNotEquals(AudioMetrics.UNKNOWN, warm);
+            assertTrue("warm play latency " + warm, warm < TimeUnit.MILLISECONDS.toNanos(MAX_PLAY_LATENCY_MILLIS));
+        } finally {
+            SystemClock.sleep(STOP_WAIT_MILLIS);
+            tracker.release();
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.hubby.audiorecord;
+
+/**
+ * 录音文件可选的编码格式
+ */
+public enum AudioCodec {
+    /**
+     * 不编码，直接写wav文件
+     */
+    PCM(0),
+    /**
+     * IMA ADPCM，有损，固定4:1压缩
+     */
+    IMA_ADPCM(1) {
+        @Override
+        public AudioEncoder newEncoder(int channels, int maxFrames) {
+            return new ImaAdpcmEncoder(channels);
+        }
+
+        @Override
+        public AudioDecoder newDecoder(int channels, int maxFrames) {
+            return new ImaAdpcmDecoder(channels);
+        }
+    },
+    /**
+     * 类似FLAC的无损编码：固定阶数线性预测 + Rice编码残差
+     */
+    LOSSLESS(2) {
+        @Override
+        public AudioEncoder newEncoder(int channels, int maxFrames) {
+            return new LosslessEncoder(channels, maxFrames);
+        }
+
+        @Override
+        public AudioDecoder newDecoder(int channels, int maxFrames) {
+            return new LosslessDecoder(channels, maxFrames);
+        }
+    };
+
+    private final int id;
+
+    AudioCodec(int id) {
+        this.id = id;
+    }
+
+    /**
+     * 写入容器文件头的编码标识
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @param maxFrames 单个数据包的最大帧数
+     */
+    public AudioEncoder newEncoder(int channels, int maxFrames) {
+        throw new UnsupportedOperationException(name() + " has no encoder");
+    }
+
+    public AudioDecoder newDecoder(int channels, int maxFrames) {
+        throw new UnsupportedOperationException(name() + " has no decoder");
+    }
+
+    public static AudioCodec fromId(int id) {
+        for (AudioCodec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("unknown codec id: " + id);
+    }
+}
@@ -0,0 +1,15 @@
+package com.hubby.audiorecord;
+
+/**
+ * 解码{@link AudioEncoder}输出的数据包，实现需预分配所有工作内存，解码过程不产生新对象
+ */
+public interface AudioDecoder {
+
+    /**
+     * 解码一个数据包
+     *
+     * @param frameCount 数据包中的帧数，由容器记录
+     * @param samples    输出的交错采样，长度至少为frameCount * 声道数
+     */
+    void decode(byte[] in, int length, int frameCount, short[] samples);
+}
@@ -0,0 +1,20 @@
+package com.hubby.audiorecord;
+
+/**
+ * 把交错排列的16bit采样编码为一个独立可解码的数据包，实现需预分配所有工作内存，编码过程不产生新对象
+ */
+public interface AudioEncoder {
+
+    /**
+     * 编码frameCount帧采样(samples中按声道交错排列)
+     *
+     * @param out 输出缓冲区，长度至少为{@link #maxEncodedSize(int)}
+     * @return 写入out的字节数
+     */
+    int encode(short[] samples, int frameCount, byte[] out);
+
+    /**
+     * 编码frameCount帧时输出的最大字节数
+     */
+    int maxEncodedSize(int frameCount);
+}
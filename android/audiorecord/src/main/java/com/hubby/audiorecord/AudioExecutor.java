@@ -0,0 +1,71 @@
+package com.hubby.audiorecord;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 录音、播放、写文件共用的线程池，线程在空闲一段时间后才回收，再次开始时不必重新创建线程；
+ * 每个任务开始前按参数设置线程优先级，采集和播放使用THREAD_PRIORITY_URGENT_AUDIO，避免与UI线程争抢CPU
+ */
+public final class AudioExecutor {
+    private static final String TAG = "AudioExecutor";
+    // 空闲线程的保留时间
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static final AudioExecutor INSTANCE = new AudioExecutor();
+
+    private final ThreadPoolExecutor executor;
+
+    private AudioExecutor() {
+        final AtomicInteger index = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "HubbyAudio-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), factory);
+    }
+
+    public static AudioExecutor get() {
+        return INSTANCE;
+    }
+
+    /**
+     * 以指定优先级执行任务，任务结束后线程恢复默认优先级回到池中
+     *
+     * @param priority android.os.Process中的THREAD_PRIORITY_*
+     */
+    public Future<?> submit(final Runnable task, final int priority) {
+        return executor.submit(() -> {
+            Process.setThreadPriority(priority);
+            try {
+                task.run();
+            } catch (RuntimeException | Error e) {
+                // submit会把异常保存在Future中，这里先记录下来
+                Log.e(TAG, "audio task failed", e);
+                throw e;
+            } finally {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT);
+            }
+        });
+    }
+
+    /**
+     * 预先启动一个空闲线程，之后的第一次{@link #submit}不需要创建线程
+     */
+    public void prestart() {
+        if (executor.getPoolSize() == 0) {
+            // 空任务执行完后线程在池中等待KEEP_ALIVE_SECONDS
+            executor.execute(() -> {
+            });
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.hubby.audiorecord;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一次采集得到的音频数据，来自预分配的帧池，采集过程中不会产生新对象。
+ * 帧只在{@link AudioRecorder.OnAudioFrameListener#onAudioFrame(AudioFrame)}回调期间有效，
+ * 需要在回调之后继续使用时先调用{@link #retain()}，用完后调用{@link #release()}归还帧池，
+ * 不要修改视图中的数据
+ */
+public final class AudioFrame {
+    final ByteBuffer buffer;
+    private final ByteBuffer data;
+    private final ShortBuffer shorts;
+    final AtomicInteger refCount = new AtomicInteger();
+    private int length;
+    private int audioFormat;
+    private int sampleRate;
+    private int channelCount;
+    private long timestampNanos;
+    private long sequence;
+
+    AudioFrame(int capacity) {
+        this.buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        this.data = buffer.duplicate().order(ByteOrder.nativeOrder());
+        this.shorts = data.asShortBuffer();
+    }
+
+    void set(int length, int audioFormat, int sampleRate, int channelCount, long timestampNanos, long sequence) {
+        this.length = length;
+        this.audioFormat = audioFormat;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        this.timestampNanos = timestampNanos;
+        this.sequence = sequence;
+        data.limit(length).position(0);
+        shorts.limit(length / 2).position(0);
+    }
+
+    /**
+     * 有效数据的视图，position为0，limit为有效长度，字节序为本机字节序；
+     * 视图由持有该帧的所有线程共享，按绝对位置读取，需要移动position时先duplicate()
+     */
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    /**
+     * 16bit采样时按short访问数据的视图，limit为有效采样数(所有声道)；与{@link #getData()}一样只按绝对位置读取
+     */
+    public ShortBuffer getShorts() {
+        return shorts;
+    }
+
+    /**
+     * 把16bit采样拷贝到dst中，按绝对位置读取，不改变共享视图的position，多个线程可以同时拷贝同一帧
+     *
+     * @return 拷贝的采样数
+     */
+    public int copyTo(short[] dst, int offset) {
+        int count = Math.min(shorts.limit(), dst.length - offset);
+        for (int i = 0; i < count; i++) {
+            dst[offset + i] = shorts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * 有效数据的字节数，即AudioRecord.read的返回值
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * 采样格式，AudioFormat.ENCODING_*
+     */
+    public int getAudioFormat() {
+        return audioFormat;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * 读取完成时的System.nanoTime()
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * 本次录音中的读取序号，从0开始；序号不连续说明中间有帧因帧池耗尽未能分发
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * 在回调之后继续持有该帧，每次调用都需要对应一次{@link #release()}
+     */
+    public AudioFrame retain() {
+        if (refCount.getAndIncrement() <= 0) {
+            refCount.getAndDecrement();
+            throw new IllegalStateException("frame already released");
+        }
+        return this;
+    }
+
+    /**
+     * 释放持有，引用计数归零后帧回到帧池被重新使用
+     */
+    public void release() {
+        int count = refCount.decrementAndGet();
+        // 引用计数归零即回到帧池，由采集线程在AudioFramePool.acquire中重新获取
+        if (count < 0) {
+            refCount.incrementAndGet();
+            throw new IllegalStateException("frame released too many times");
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.hubby.audiorecord;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 预分配的{@link AudioFrame}池，只由采集线程获取，可在任意线程释放。
+ * 没有空闲帧(消费者持有过多)时获取失败，而不是分配新对象
+ */
+final class AudioFramePool {
+    private final AudioFrame[] frames;
+    private final AtomicLong exhaustedCount = new AtomicLong();
+    private int cursor;
+
+    AudioFramePool(int frameCount, int frameCapacity) {
+        frames = new AudioFrame[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            frames[i] = new AudioFrame(frameCapacity);
+        }
+    }
+
+    /**
+     * 获取一个空闲帧，引用计数为1；没有空闲帧时返回null
+     */
+    AudioFrame acquire() {
+        int n = frames.length;
+        for (int i = 0; i < n; i++) {
+            AudioFrame frame = frames[cursor];
+            cursor = cursor + 1 == n ? 0 : cursor + 1;
+            if (frame.refCount.compareAndSet(0, 1)) {
+                return frame;
+            }
+        }
+        exhaustedCount.lazySet(exhaustedCount.get() + 1);
+        return null;
+    }
+
+    /**
+     * 因没有空闲帧而未能分发的次数
+     */
+    long getExhaustedCount() {
+        return exhaustedCount.get();
+    }
+}
@@ -0,0 +1,33 @@
+package com.hubby.audiorecord;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 采集设备，录音线程只通过它读取数据。Android上为{@link AudioRecordInput}，
+ * 也可以替换为合成的实现，在JVM上运行采集、写文件流程做压力测试
+ */
+public interface AudioInputDevice {
+
+    void start();
+
+    /**
+     * 阻塞读取最多sizeInBytes字节，从buffer的下标0开始写入，不改变buffer的position和limit
+     *
+     * @return 读取的字节数，出错时为负数(AudioRecord.ERROR_*)
+     */
+    int read(ByteBuffer buffer, int sizeInBytes);
+
+    /**
+     * 停止采集，未在采集时调用无效
+     */
+    void stop();
+
+    void release();
+
+    int getChannelCount();
+
+    /**
+     * 设备是否可用，不可用时需要重新创建
+     */
+    boolean isReady();
+}
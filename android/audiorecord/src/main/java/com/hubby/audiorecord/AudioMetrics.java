@@ -0,0 +1,148 @@
+package com.hubby.audiorecord;
+
+/**
+ * 录音或播放的运行数据快照，由{@link AudioRecorder#getMetrics()}、{@link AudioTracker#getMetrics()}获取
+ */
+public final class AudioMetrics {
+    /**
+     * 在录音/播放线程按设置的间隔回调，回调中不要做耗时操作
+     */
+    public interface OnMetricsListener {
+        void onMetrics(AudioMetrics metrics);
+    }
+
+    // 尚未开始或尚未得到第一块数据
+    public static final long UNKNOWN = -1;
+
+    private final long elapsedNanos;
+    private final long startLatencyNanos;
+    private final long bytes;
+    private final LatencyHistogram.Snapshot deviceLatency;
+    private final LatencyHistogram.Snapshot diskWriteLatency;
+    private final long[] errorCounts;
+    private final long overrunCount;
+    private final long underrunCount;
+    private final int queueDepth;
+    private final int queueHighWaterMark;
+    private final int queueCapacity;
+    private final long outputLatencyNanos;
+
+    AudioMetrics(long elapsedNanos, long startLatencyNanos, long bytes, LatencyHistogram.Snapshot deviceLatency,
+                 LatencyHistogram.Snapshot diskWriteLatency, long[] errorCounts, long overrunCount,
+                 long underrunCount, int queueDepth, int queueHighWaterMark, int queueCapacity,
+                 long outputLatencyNanos) {
+        this.elapsedNanos = elapsedNanos;
+        this.startLatencyNanos = startLatencyNanos;
+        this.bytes = bytes;
+        this.deviceLatency = deviceLatency;
+        this.diskWriteLatency = diskWriteLatency;
+        this.errorCounts = errorCounts;
+        this.overrunCount = overrunCount;
+        this.underrunCount = underrunCount;
+        this.queueDepth = queueDepth;
+        this.queueHighWaterMark = queueHighWaterMark;
+        this.queueCapacity = queueCapacity;
+        this.outputLatencyNanos = outputLatencyNanos;
+    }
+
+    /**
+     * 从开始录音/播放到获取快照的时长
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * 从调用startRecord到采集到第一块数据，或从调用startPlay到第一块数据写入AudioTrack的时长，
+     * 还没有数据时为{@link #UNKNOWN}
+     */
+    public long getStartLatencyNanos() {
+        return startLatencyNanos;
+    }
+
+    /**
+     * 从设备读取(录音)或写入设备(播放)的字节数
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public double getBytesPerSecond() {
+        return elapsedNanos <= 0 ? 0 : bytes * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * AudioRecord.read或AudioTrack.write单次调用的耗时
+     */
+    public LatencyHistogram.Snapshot getDeviceLatency() {
+        return deviceLatency;
+    }
+
+    /**
+     * 写文件线程单次合并写入的耗时，播放时为空
+     */
+    public LatencyHistogram.Snapshot getDiskWriteLatency() {
+        return diskWriteLatency;
+    }
+
+    /**
+     * 读写设备返回指定错误码(如AudioRecord.ERROR_DEAD_OBJECT)的次数
+     */
+    public long getErrorCount(int errorCode) {
+        return errorCode < 0 ? errorCounts[AudioMetricsCollector.errorIndex(errorCode)] : 0;
+    }
+
+    public long getTotalErrorCount() {
+        long total = 0;
+        for (long count : errorCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * 写文件缓冲区满导致丢弃的块数，播放时为0
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    /**
+     * AudioTrack欠载次数(API 24以上)，录音时为0
+     */
+    public long getUnderrunCount() {
+        return underrunCount;
+    }
+
+    /**
+     * 获取快照时写文件缓冲区中等待写入的块数
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getQueueHighWaterMark() {
+        return queueHighWaterMark;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * 播放时从数据写入AudioTrack到从设备输出的估算时长，录音时或尚未估算时为{@link #UNKNOWN}
+     */
+    public long getOutputLatencyNanos() {
+        return outputLatencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "AudioMetrics{elapsed=" + elapsedNanos / 1000000 + "ms, startLatency=" + startLatencyNanos / 1000
+                + "us, bytesPerSecond=" + Math.round(getBytesPerSecond())
+                + ", device=" + deviceLatency + ", disk=" + diskWriteLatency + ", errors=" + getTotalErrorCount()
+                + ", overrun=" + overrunCount + ", underrun=" + underrunCount + ", queue=" + queueDepth + "/"
+                + queueHighWaterMark + "/" + queueCapacity + ", outputLatency=" + outputLatencyNanos / 1000
+                + "us}";
+    }
+}
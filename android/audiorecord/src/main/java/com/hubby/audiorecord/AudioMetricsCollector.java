@@ -0,0 +1,102 @@
+package com.hubby.audiorecord;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 录音/播放线程记录运行数据，每个计数只由一个线程写入，用lazySet更新，热路径上不加锁不分配内存
+ */
+final class AudioMetricsCollector {
+    // 错误码都是负数，按-errorCode计数，超出范围的记在最后一个
+    private static final int ERROR_SLOTS = 8;
+
+    // 设备读写线程写入
+    final LatencyHistogram deviceLatency = new LatencyHistogram();
+    // 写文件线程写入
+    final LatencyHistogram diskWriteLatency = new LatencyHistogram();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLongArray errorCounts = new AtomicLongArray(ERROR_SLOTS);
+    private volatile long startNanos;
+    // 调用开始录音/播放的时间和第一块数据的时间，只由设备读写线程写入
+    private long requestNanos;
+    private volatile long startLatencyNanos = AudioMetrics.UNKNOWN;
+    // 播放时估算的输出延迟，只由播放线程写入
+    private volatile long outputLatencyNanos = AudioMetrics.UNKNOWN;
+    // 监听回调的间隔和上次回调的时间，只由设备读写线程访问
+    private long reportIntervalNanos;
+    private long lastReportNanos;
+
+    static int errorIndex(int errorCode) {
+        return Math.min(ERROR_SLOTS - 1, -errorCode);
+    }
+
+    /**
+     * 开始录音/播放前调用，清空上一次的数据
+     *
+     * @param requestNanos 调用startRecord/startPlay的时间
+     */
+    void start(long intervalMillis, long requestNanos) {
+        deviceLatency.reset();
+        diskWriteLatency.reset();
+        bytes.set(0);
+        for (int i = 0; i < ERROR_SLOTS; i++) {
+            errorCounts.set(i, 0);
+        }
+        reportIntervalNanos = intervalMillis * 1000000L;
+        this.requestNanos = requestNanos;
+        startLatencyNanos = AudioMetrics.UNKNOWN;
+        outputLatencyNanos = AudioMetrics.UNKNOWN;
+        startNanos = System.nanoTime();
+        lastReportNanos = startNanos;
+    }
+
+    /**
+     * 第一次从设备读到(或写入设备)数据时记录启动延迟，之后的调用直接返回
+     */
+    void markFirstSample(long nowNanos) {
+        if (startLatencyNanos == AudioMetrics.UNKNOWN) {
+            startLatencyNanos = nowNanos - requestNanos;
+        }
+    }
+
+    void addBytes(int count) {
+        bytes.lazySet(bytes.get() + count);
+    }
+
+    void recordError(int errorCode) {
+        int index = errorIndex(errorCode);
+        errorCounts.lazySet(index, errorCounts.get(index) + 1);
+    }
+
+    void setOutputLatency(long nanos) {
+        outputLatencyNanos = nanos;
+    }
+
+    long getOutputLatency() {
+        return outputLatencyNanos;
+    }
+
+    /**
+     * 设备读写线程在每次循环中调用，到了回调间隔时返回true
+     */
+    boolean shouldReport(long nowNanos) {
+        if (reportIntervalNanos <= 0 || nowNanos - lastReportNanos < reportIntervalNanos) {
+            return false;
+        }
+        lastReportNanos = nowNanos;
+        return true;
+    }
+
+    AudioMetrics snapshot(long overrunCount, long underrunCount, int queueDepth, int queueHighWaterMark,
+                          int queueCapacity) {
+        long[] errors = new long[ERROR_SLOTS];
+        for (int i = 0; i < ERROR_SLOTS; i++) {
+            errors[i] = errorCounts.get(i);
+        }
+        long start = startNanos;
+        return new AudioMetrics(start == 0 ? 0 : System.nanoTime() - start, startLatencyNanos, bytes.get(),
+                deviceLatency.snapshot(),
+                diskWriteLatency.snapshot(), errors, overrunCount, underrunCount, queueDepth, queueHighWaterMark,
+                queueCapacity, outputLatencyNanos);
+    }
+}
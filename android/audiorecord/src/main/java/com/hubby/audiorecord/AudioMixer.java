@@ -0,0 +1,183 @@
+package com.hubby.audiorecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 多音轨混音：每次从所有音轨各读取一块数据，按音量和声像累加后饱和截断为16bit输出。
+ * 音轨列表是整体替换的数组，增删音轨时CAS替换，混音线程每块只读取一次数组引用，不加锁；
+ * 混音所需的缓冲区在构造时分配，{@link #mix}不分配内存
+ */
+public final class AudioMixer {
+    /**
+     * 在混音线程回调，音轨已从混音中移除并关闭数据源
+     */
+    public interface OnTrackFinishedListener {
+        void onTrackFinished(MixerTrack track);
+    }
+
+    private static final MixerTrack[] EMPTY = new MixerTrack[0];
+
+    private final int channels;
+    private final int maxFrames;
+    private final float[] mix;
+    private final AtomicReference<MixerTrack[]> tracks = new AtomicReference<>(EMPTY);
+    private volatile OnTrackFinishedListener finishedListener;
+    private volatile float masterGain = 1f;
+
+    /**
+     * @param channels  输出声道数
+     * @param maxFrames 单次{@link #mix}的最大帧数
+     */
+    public AudioMixer(int channels, int maxFrames) {
+        if (channels <= 0 || maxFrames <= 0) {
+            throw new IllegalArgumentException("channels = " + channels + " maxFrames = " + maxFrames);
+        }
+        this.channels = channels;
+        this.maxFrames = maxFrames;
+        this.mix = new float[maxFrames * channels];
+    }
+
+    /**
+     * 任意线程调用，音轨从下一块数据开始参与混音
+     */
+    public void addTrack(MixerTrack track) {
+        if (track.getChannels() != 1 && track.getChannels() != channels) {
+            throw new IllegalArgumentException("track channels " + track.getChannels() + " != " + channels);
+        }
+        while (true) {
+            MixerTrack[] current = tracks.get();
+            MixerTrack[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = track;
+            if (tracks.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    public MixerTrack[] getTracks() {
+        return tracks.get().clone();
+    }
+
+    public int getTrackCount() {
+        return tracks.get().length;
+    }
+
+    public void setOnTrackFinishedListener(OnTrackFinishedListener listener) {
+        finishedListener = listener;
+    }
+
+    /**
+     * 混音后的整体增益，多个音轨同时满幅时可以降低以避免削波
+     */
+    public void setMasterGain(float gain) {
+        masterGain = Math.max(0f, gain);
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getMaxFrames() {
+        return maxFrames;
+    }
+
+    /**
+     * 混音线程调用，混合frames帧写入out(从0开始，本机字节序)，没有音轨时输出静音
+     *
+     * @return 移除的音轨数(已读完或被{@link MixerTrack#remove()})
+     */
+    public int mix(ByteBuffer out, int frames) throws IOException {
+        if (frames > maxFrames) {
+            throw new IllegalArgumentException("frames " + frames + " > maxFrames " + maxFrames);
+        }
+        int samples = frames * channels;
+        Arrays.fill(mix, 0, samples, 0f);
+        MixerTrack[] current = tracks.get();
+        int finished = 0;
+        for (MixerTrack track : current) {
+            if (track.isRemoved() || track.isFinished()) {
+                finished++;
+                continue;
+            }
+            if (track.mixInto(mix, frames, channels) < frames) {
+                finished++;
+            }
+        }
+        out.clear();
+        out.order(ByteOrder.nativeOrder());
+        float gain = masterGain;
+        for (int i = 0; i < samples; i++) {
+            float v = mix[i] * gain;
+            out.putShort(i << 1, v >= Short.MAX_VALUE ? Short.MAX_VALUE
+                    : v <= Short.MIN_VALUE ? Short.MIN_VALUE : (short) Math.round(v));
+        }
+        out.limit(samples << 1);
+        if (finished > 0) {
+            purge();
+        }
+        return finished;
+    }
+
+    /**
+     * 从列表中去掉已结束的音轨并关闭数据源
+     */
+    private void purge() throws IOException {
+        while (true) {
+            MixerTrack[] current = tracks.get();
+            // 其他线程随时可能remove()，每个音轨只读取一次状态：保留的从前往后放，结束的从后往前放
+            MixerTrack[] sorted = new MixerTrack[current.length];
+            int alive = 0;
+            int dead = current.length;
+            for (MixerTrack track : current) {
+                if (track.isRemoved() || track.isFinished()) {
+                    sorted[--dead] = track;
+                } else {
+                    sorted[alive++] = track;
+                }
+            }
+            MixerTrack[] next = alive == 0 ? EMPTY : Arrays.copyOf(sorted, alive);
+            if (tracks.compareAndSet(current, next)) {
+                OnTrackFinishedListener listener = finishedListener;
+                IOException error = null;
+                // 按加入的顺序关闭和回调
+                for (int i = current.length - 1; i >= dead; i--) {
+                    MixerTrack track = sorted[i];
+                    try {
+                        track.close();
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                    if (listener != null) {
+                        listener.onTrackFinished(track);
+                    }
+                }
+                if (error != null) {
+                    throw error;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 移除并关闭所有音轨，只能在混音线程停止后调用
+     */
+    public void clear() throws IOException {
+        MixerTrack[] current = tracks.getAndSet(EMPTY);
+        IOException error = null;
+        for (MixerTrack track : current) {
+            try {
+                track.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
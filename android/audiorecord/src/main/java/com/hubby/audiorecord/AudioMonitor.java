@@ -0,0 +1,225 @@
+package com.hubby.audiorecord;
+
+import android.util.Log;
+
+import com.hubby.audiorecord.exception.PermissionLessException;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 实时监听(全双工)：把{@link AudioRecorder}采集到的每块数据通过内存中的{@link PcmRingBuffer}直接交给
+ * 低延迟模式的{@link AudioTracker}播放，不经过磁盘。可以在录音时监听({@link AudioRecorder#startRecord()})，
+ * 也可以只监听不录音({@link AudioRecorder#startCapture()})。
+ * 播放端排队的数据超过maxQueueMillis时丢弃最早的数据，采集和播放时钟的漂移不会使延迟越来越大。
+ * {@link #measureLatency}用环回脉冲测量往返延迟，建议使用耳机环回线或把扬声器音量调大
+ */
+public class AudioMonitor implements AudioRecorder.OnAudioFrameListener {
+    private static final String TAG = "AudioMonitor";
+    // 默认最多排队的音频时长
+    public static final int DEFAULT_MAX_QUEUE_MILLIS = 40;
+    // 环形缓冲区的槽位数，槽位不足时采集端丢弃新数据
+    private static final int SLOT_COUNT = 16;
+
+    private final AudioRecorder mRecorder;
+    private final AudioTracker mTracker;
+    private final int mSampleRate;
+    private final SampleFormat mFormat;
+    private final int mFrameSize;
+    private final int mSlotSize;
+    private final LoopbackLatencyMeter mLatencyMeter;
+    private int mMaxQueueMillis = DEFAULT_MAX_QUEUE_MILLIS;
+    private volatile PcmRingBuffer mRingBuffer;
+    private volatile MonitorSource mSource;
+    private volatile boolean mMuted;
+
+    /**
+     * @param recorder 采集端，监听开始后再调用其startRecord或startCapture
+     */
+    public AudioMonitor(AudioRecorder recorder) {
+        this.mRecorder = recorder;
+        this.mSampleRate = recorder.getCaptureSampleRate();
+        int channelConfig = recorder.getChannelConfig();
+        int channels = Integer.bitCount(channelConfig);
+        this.mFormat = SampleFormat.fromEncoding(recorder.getAudioFormat());
+        this.mFrameSize = mFormat.getFrameSize(channels);
+        this.mSlotSize = recorder.getCaptureBufferSize();
+        // AudioTracker会把CHANNEL_IN_*转换为对应的输出声道
+        this.mTracker = new AudioTracker(mSampleRate, channelConfig, recorder.getAudioFormat());
+        mTracker.setLowLatencyMode(true);
+        // 实时数据预读只会增加延迟
+        mTracker.setPrefetchMillis(0);
+        this.mLatencyMeter = new LoopbackLatencyMeter(mSampleRate, channels, mFormat);
+    }
+
+    /**
+     * 播放端最多排队的音频时长，超出时丢弃最早的数据，下次start时生效
+     */
+    public void setMaxQueueMillis(int millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("millis = " + millis);
+        }
+        mMaxQueueMillis = millis;
+    }
+
+    /**
+     * 开始监听，采集开始后才有声音
+     */
+    public synchronized void start() {
+        if (mSource != null) {
+            Log.e(TAG, "monitor already started");
+            return;
+        }
+        mRingBuffer = new PcmRingBuffer(SLOT_COUNT, mSlotSize);
+        long maxQueueBytes = (long) mSampleRate * mFrameSize * mMaxQueueMillis / 1000;
+        mSource = new MonitorSource(mRingBuffer, maxQueueBytes);
+        mTracker.startPlay(mSource, null, null);
+        mRecorder.addFrameListener(this);
+    }
+
+    /**
+     * 开始采集并监听，不写文件
+     */
+    public void startWithCapture() throws PermissionLessException {
+        start();
+        mRecorder.startCapture();
+    }
+
+    /**
+     * 停止监听，不影响采集端的录音
+     */
+    public synchronized void stop() {
+        if (mSource == null) {
+            return;
+        }
+        mRecorder.removeFrameListener(this);
+        mSource.finish();
+        mTracker.stop();
+        mSource = null;
+    }
+
+    /**
+     * 静音时播放端输出静音，采集和录音不受影响
+     */
+    public void setMuted(boolean muted) {
+        mMuted = muted;
+    }
+
+    /**
+     * 测量往返延迟，测量期间(约0.2~1秒)监听输出被替换为静音和一个脉冲，结果在采集线程回调
+     *
+     * @return 未在监听或正在测量时返回false
+     */
+    public boolean measureLatency(LoopbackLatencyMeter.OnLatencyListener listener) {
+        return mSource != null && mLatencyMeter.start(listener);
+    }
+
+    /**
+     * 最近一次测量的往返延迟(应用写入播放到应用读到采集数据)，没有成功的测量时为{@link LoopbackLatencyMeter#LATENCY_UNKNOWN}
+     */
+    public long getRoundTripLatencyNanos() {
+        return mLatencyMeter.getLastLatencyNanos();
+    }
+
+    /**
+     * 监听的端到端延迟(从声音进入麦克风到从扬声器输出)：测量得到的往返延迟加上当前排队等待播放的数据时长，
+     * 没有成功的测量时为{@link LoopbackLatencyMeter#LATENCY_UNKNOWN}
+     */
+    public long getMonitorLatencyNanos() {
+        long roundTrip = mLatencyMeter.getLastLatencyNanos();
+        MonitorSource source = mSource;
+        if (roundTrip == LoopbackLatencyMeter.LATENCY_UNKNOWN || source == null) {
+            return roundTrip;
+        }
+        return roundTrip + source.queuedBytes() * 1000000000L / ((long) mSampleRate * mFrameSize);
+    }
+
+    /**
+     * 因排队超时被丢弃的数据块数
+     */
+    public long getDroppedBlockCount() {
+        MonitorSource source = mSource;
+        return source == null ? 0 : source.droppedBlocks;
+    }
+
+    /**
+     * 播放端来不及取走导致采集端丢弃的数据块数
+     */
+    public long getOverrunCount() {
+        PcmRingBuffer ringBuffer = mRingBuffer;
+        return ringBuffer == null ? 0 : ringBuffer.getOverrunCount();
+    }
+
+    public AudioTracker getTracker() {
+        return mTracker;
+    }
+
+    /**
+     * 在采集线程回调，只做一次内存拷贝，缓冲区满时丢弃该块
+     */
+    @Override
+    public void onAudioFrame(AudioFrame frame) {
+        // 采集线程自己的视图，拷贝时移动position不影响其他持有者读取getData()
+        ByteBuffer data = frame.buffer;
+        int position = data.position();
+        mLatencyMeter.processInput(data, frame.getTimestampNanos());
+        PcmRingBuffer ringBuffer = mRingBuffer;
+        if (ringBuffer != null) {
+            ringBuffer.offer(data);
+            data.position(position);
+        }
+    }
+
+    /**
+     * 播放端的数据源，在播放线程读取前丢弃超出排队时长的数据，并在测量延迟时替换输出
+     */
+    private final class MonitorSource extends RingBufferPcmSource {
+        private final PcmRingBuffer ringBuffer;
+        private final long maxQueueBytes;
+        private volatile long droppedBlocks;
+
+        MonitorSource(PcmRingBuffer ringBuffer, long maxQueueBytes) {
+            super(ringBuffer);
+            this.ringBuffer = ringBuffer;
+            this.maxQueueBytes = Math.max(mSlotSize, maxQueueBytes);
+        }
+
+        long queuedBytes() {
+            return (long) ringBuffer.size() * mSlotSize;
+        }
+
+        @Override
+        public ByteBuffer read(int maxBytes) throws InterruptedIOException {
+            ByteBuffer chunk = super.read(maxBytes);
+            if (chunk == null) {
+                return null;
+            }
+            // 当前块之外还有多块在排队时丢弃最早的，只在块边界丢弃
+            while (ringBuffer.size() > 1 && queuedBytes() > maxQueueBytes && isAtBlockStart(chunk)) {
+                chunk.position(chunk.limit());
+                droppedBlocks++;
+                chunk = super.read(maxBytes);
+                if (chunk == null) {
+                    return null;
+                }
+            }
+            long now = System.nanoTime();
+            if (!mLatencyMeter.processOutput(chunk, now) && mMuted) {
+                silence(chunk);
+            }
+            return chunk;
+        }
+
+        private boolean isAtBlockStart(ByteBuffer chunk) {
+            return chunk.position() == 0;
+        }
+
+        private void silence(ByteBuffer chunk) {
+            // 8bit为无符号数，静音为128
+            byte zero = mFormat == SampleFormat.PCM_8BIT ? (byte) 0x80 : 0;
+            for (int i = chunk.position(); i < chunk.limit(); i++) {
+                chunk.put(i, zero);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.hubby.audiorecord;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 播放设备，播放线程只通过它输出数据。Android上为{@link AudioTrackOutput}，
+ * 也可以替换为合成的实现，在JVM上运行播放流程做压力测试
+ */
+public interface AudioOutputDevice {
+
+    /**
+     * 按是否低延迟创建设备，低延迟设置变化时播放线程会重新创建
+     */
+    interface Factory {
+        AudioOutputDevice create(boolean lowLatency);
+    }
+
+    void play();
+
+    /**
+     * 暂停输出，阻塞中的{@link #write}会提前返回
+     */
+    void pause();
+
+    /**
+     * 丢弃尚未输出的数据，播放头位置从0开始计算
+     */
+    void flush();
+
+    void stop();
+
+    void release();
+
+    /**
+     * 阻塞写入data中position开始的sizeInBytes字节，暂停或停止时可能只写入一部分，写入的部分推进position
+     *
+     * @return 写入的字节数，出错时为负数
+     */
+    int write(ByteBuffer data, int sizeInBytes);
+
+    /**
+     * 自上次flush以来已输出的帧数
+     */
+    long getPlaybackHeadPosition();
+
+    /**
+     * 最近一次输出的时间戳，不支持或还没有时返回false
+     *
+     * @param timestamp [0]为帧位置，[1]为该帧输出时的System.nanoTime
+     */
+    boolean getTimestamp(long[] timestamp);
+
+    /**
+     * 累计欠载次数，不支持时为0
+     */
+    int getUnderrunCount();
+
+    /**
+     * 当前实际使用的缓冲区帧数
+     */
+    int getBufferSizeInFrames();
+
+    /**
+     * 缓冲区容量(帧)，不能在播放中调整缓冲区大小时为0
+     */
+    int getBufferCapacityInFrames();
+
+    /**
+     * 调整实际使用的缓冲区大小
+     *
+     * @return 实际设置的帧数
+     */
+    int setBufferSizeInFrames(int frames);
+}
@@ -0,0 +1,18 @@
+package com.hubby.audiorecord;
+
+/**
+ * {@link AudioProcessorChain}中的一级处理，在采集线程对每块数据原地处理。
+ * 参数可以在任意线程随时修改(volatile字段)，采集线程在下一块数据生效
+ */
+public interface AudioProcessor {
+
+    /**
+     * 加入处理链时在调用线程调用，分配所有工作内存并清空状态
+     */
+    void prepare(int sampleRate, int channels);
+
+    /**
+     * 在采集线程原地处理frames帧按声道交错排列的float采样(满幅为±1)，不能分配内存或阻塞
+     */
+    void process(float[] samples, int frames);
+}
@@ -0,0 +1,161 @@
+package com.hubby.audiorecord;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 采集数据写入文件前的处理链，如增益、高通/去直流、噪声门、自动增益、限幅，按加入的顺序依次在采集线程原地处理每块数据。
+ * 数据分段转换为float处理后写回原缓冲区，转换缓冲区和各级状态都预先分配，处理过程不分配内存不加锁；
+ * 增删处理器时整体替换数组(volatile)，采集线程在下一块数据使用新的处理链。
+ * 每块数据的处理耗时记录在{@link #getProcessLatency()}中，{@link #getLoad()}为处理耗时占音频时长的比例
+ */
+public final class AudioProcessorChain {
+    // 每次转换的帧数
+    private static final int CHUNK_FRAMES = 256;
+    private static final AudioProcessor[] EMPTY = new AudioProcessor[0];
+
+    private final int sampleRate;
+    private final int channels;
+    private final SampleFormat format;
+    private final int frameSize;
+    private final float[] samples;
+    private volatile AudioProcessor[] processors = EMPTY;
+    private final LatencyHistogram processLatency = new LatencyHistogram();
+    // 以下只由处理线程写入
+    private final AtomicLong processedFrames = new AtomicLong();
+    private final AtomicLong processNanos = new AtomicLong();
+
+    public AudioProcessorChain(int sampleRate, int channels, SampleFormat format) {
+        if (sampleRate <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("sampleRate = " + sampleRate + " channels = " + channels);
+        }
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.format = format;
+        this.frameSize = format.getFrameSize(channels);
+        this.samples = new float[CHUNK_FRAMES * channels];
+    }
+
+    static float dbToGain(float db) {
+        return (float) Math.pow(10, db / 20);
+    }
+
+    static float gainToDb(float gain) {
+        return gain <= 0 ? LevelMeter.MIN_DB : (float) (20 * Math.log10(gain));
+    }
+
+    /**
+     * 一阶平滑系数，每帧向目标移动剩余差值的这一比例，约millis后到达63%
+     */
+    static float smoothingCoefficient(float millis, int sampleRate) {
+        double frames = millis * sampleRate / 1000.0;
+        return frames <= 1 ? 1f : (float) (1 - Math.exp(-1 / frames));
+    }
+
+    /**
+     * 替换整个处理链，新加入的处理器在调用线程中{@link AudioProcessor#prepare}，
+     * 已在处理链中的处理器保留状态
+     */
+    public synchronized void setProcessors(AudioProcessor... processors) {
+        AudioProcessor[] current = this.processors;
+        for (AudioProcessor processor : processors) {
+            if (processor == null) {
+                throw new IllegalArgumentException("processors = " + Arrays.toString(processors));
+            }
+            if (indexOf(current, processor) < 0) {
+                processor.prepare(sampleRate, channels);
+            }
+        }
+        this.processors = processors.length == 0 ? EMPTY : processors.clone();
+    }
+
+    /**
+     * 加到处理链的末尾
+     */
+    public synchronized void add(AudioProcessor processor) {
+        AudioProcessor[] current = processors;
+        AudioProcessor[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = processor;
+        setProcessors(next);
+    }
+
+    public synchronized void remove(AudioProcessor processor) {
+        AudioProcessor[] current = processors;
+        int index = indexOf(current, processor);
+        if (index < 0) {
+            return;
+        }
+        AudioProcessor[] next = new AudioProcessor[current.length - 1];
+        System.arraycopy(current, 0, next, 0, index);
+        System.arraycopy(current, index + 1, next, index, next.length - index);
+        setProcessors(next);
+    }
+
+    private static int indexOf(AudioProcessor[] processors, AudioProcessor processor) {
+        for (int i = 0; i < processors.length; i++) {
+            if (processors[i] == processor) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public AudioProcessor[] getProcessors() {
+        return processors.clone();
+    }
+
+    public boolean isEmpty() {
+        return processors.length == 0;
+    }
+
+    /**
+     * 原地处理buffer中[0, length)字节的数据，只能由同一个线程调用；处理链为空时直接返回
+     */
+    public void process(ByteBuffer buffer, int length) {
+        AudioProcessor[] chain = processors;
+        if (chain.length == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        // 不足一帧的尾部不处理
+        int frames = length / frameSize;
+        for (int done = 0; done < frames; done += CHUNK_FRAMES) {
+            int n = Math.min(CHUNK_FRAMES, frames - done);
+            int offset = done * frameSize;
+            format.toFloat(buffer, offset, samples, 0, n * channels);
+            for (AudioProcessor processor : chain) {
+                processor.process(samples, n);
+            }
+            format.fromFloat(samples, 0, buffer, offset, n * channels);
+        }
+        long elapsed = System.nanoTime() - start;
+        processLatency.record(elapsed);
+        processNanos.lazySet(processNanos.get() + elapsed);
+        processedFrames.lazySet(processedFrames.get() + frames);
+    }
+
+    /**
+     * 每块数据的处理耗时，应远小于一块数据的时长(如3584字节的44100Hz双声道为20ms)
+     */
+    public LatencyHistogram.Snapshot getProcessLatency() {
+        return processLatency.snapshot();
+    }
+
+    /**
+     * 处理耗时占已处理音频时长的比例，如0.01表示处理1秒音频耗时10ms
+     */
+    public double getLoad() {
+        long frames = processedFrames.get();
+        return frames == 0 ? 0 : processNanos.get() * (double) sampleRate / (frames * 1e9);
+    }
+
+    /**
+     * 清空耗时统计，只能在没有线程处理时调用
+     */
+    public void resetStats() {
+        processLatency.reset();
+        processNanos.set(0);
+        processedFrames.set(0);
+    }
+}
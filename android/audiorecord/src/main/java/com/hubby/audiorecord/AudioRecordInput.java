@@ -0,0 +1,48 @@
+package com.hubby.audiorecord;
+
+import android.media.AudioRecord;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 基于AudioRecord的采集设备
+ */
+final class AudioRecordInput implements AudioInputDevice {
+    private final AudioRecord record;
+
+    AudioRecordInput(AudioRecord record) {
+        this.record = record;
+    }
+
+    @Override
+    public void start() {
+        record.startRecording();
+    }
+
+    @Override
+    public int read(ByteBuffer buffer, int sizeInBytes) {
+        return record.read(buffer, sizeInBytes);
+    }
+
+    @Override
+    public void stop() {
+        if (record.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
+            record.stop();
+        }
+    }
+
+    @Override
+    public void release() {
+        record.release();
+    }
+
+    @Override
+    public int getChannelCount() {
+        return record.getChannelCount();
+    }
+
+    @Override
+    public boolean isReady() {
+        return record.getState() == AudioRecord.STATE_INITIALIZED;
+    }
+}
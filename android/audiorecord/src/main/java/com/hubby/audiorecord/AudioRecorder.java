@@ -4,7 +4,6 @@ import static android.media.AudioRecord.ERROR;
 import static android.media.AudioRecord.ERROR_BAD_VALUE;
 import static android.media.AudioRecord.ERROR_DEAD_OBJECT;
 import static android.media.AudioRecord.ERROR_INVALID_OPERATION;
-import static android.media.AudioRecord.RECORDSTATE_RECORDING;
 
 import android.Manifest;
 import android.content.Context;
@@ -12,6 +11,7 @@ import android.content.pm.PackageManager;
 import android.media.AudioFormat;
 import android.media.AudioRecord;
 import android.media.MediaRecorder;
+import android.os.Process;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -20,14 +20,25 @@ import androidx.core.content.ContextCompat;
 import com.hubby.audiorecord.exception.PermissionLessException;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class AudioRecorder {
     private static final String TAG = "AudioRecorder";
+    private static final String ENCODED_FILE_EXTENSION = ".hac";
+    private static final String PEAK_FILE_EXTENSION = ".peaks";
+    // 所有设备都支持的采集采样率，设备不支持请求的采样率时以此采集再重采样
+    private static final int FALLBACK_RATE_IN_HZ = 44100;
+    // 默认每秒把wav文件头中的长度更新一次
+    public static final int DEFAULT_CHECKPOINT_MILLIS = 1000;
 
     public static final String[] PERMISSION_REQUIRED
             = new String[]{Manifest.permission.RECORD_AUDIO};
@@ -35,23 +46,63 @@ public class AudioRecorder {
     private final Context context;
     private final int mMinBufferSize;
     private final int mRateInHz;
+    private final int mCaptureRateInHz;
     private final int mChannelConfig;
     private final int mAudioFormat;
     private volatile AudioRecordRunnable mRecordRunnable;
     private final OnAudioFrameCaptureListener mCaptureListener;
     private String mTempFile;
     private final String TEMP_FILE;
+    private boolean mSavePcmFile;
+    private boolean mPeakIndexEnabled;
+    private AudioCodec mCodec = AudioCodec.PCM;
+    private SegmentPolicy mSegmentPolicy;
+    private SegmentedFileWriter.OnSegmentListener mSegmentListener;
+    private OnAudioFrameListener[] mFrameListeners = new OnAudioFrameListener[0];
+    private OnAudioLevelListener mLevelListener;
+    private SilencePolicy mSilencePolicy;
+    private int mOutputChannelCount;
+    private Resampler.Quality mResampleQuality = Resampler.Quality.MEDIUM;
+    private AudioMetrics.OnMetricsListener mMetricsListener;
+    private long mMetricsIntervalMillis;
+    private int mCheckpointMillis = DEFAULT_CHECKPOINT_MILLIS;
+    private AudioProcessorChain mProcessorChain;
 
+    /**
+     * @deprecated frameData是复用的数组且不包含有效长度，请使用{@link OnAudioFrameListener}
+     */
+    @Deprecated
     public interface OnAudioFrameCaptureListener {
         void onFrameCaptured(byte[] frameData);
     }
 
+    /**
+     * 在采集线程回调，frame来自预分配的帧池，回调返回后会被复用；
+     * 需要异步处理时调用{@link AudioFrame#retain()}持有，处理完后调用{@link AudioFrame#release()}
+     */
+    public interface OnAudioFrameListener {
+        void onAudioFrame(AudioFrame frame);
+    }
+
+    /**
+     * 在采集线程按每次read的数据块回调电平，回调中不要做耗时操作
+     *
+     * @param rmsDb  均方根电平，单位dBFS
+     * @param peakDb 峰值电平，单位dBFS
+     * @param voiced 语音活动检测结果(包含hangover)
+     */
+    public interface OnAudioLevelListener {
+        void onAudioLevel(float rmsDb, float peakDb, boolean voiced);
+    }
+
     public AudioRecorder(Context context, int sampleRateInHz, int channelConfig, int audioFormat, OnAudioFrameCaptureListener listener, String tempFile) {
         this.context = context;
         mRateInHz = sampleRateInHz;
         mChannelConfig = channelConfig;
         mAudioFormat = audioFormat;
-        mMinBufferSize = AudioRecord.getMinBufferSize(sampleRateInHz, channelConfig, audioFormat);
+        mCaptureRateInHz = AudioRecord.getMinBufferSize(sampleRateInHz, channelConfig, audioFormat) > 0
+                ? sampleRateInHz : FALLBACK_RATE_IN_HZ;
+        mMinBufferSize = AudioRecord.getMinBufferSize(mCaptureRateInHz, channelConfig, audioFormat);
         this.mCaptureListener = listener;
         this.mTempFile = tempFile;
         if (TextUtils.isEmpty(tempFile)) {
@@ -70,31 +121,195 @@ public class AudioRecorder {
         return true;
     }
 
-    public void startRecord() throws PermissionLessException {
+    private void checkParams() throws PermissionLessException {
         if (!checkPermission(PERMISSION_REQUIRED)) {
             String errorInfo = "Permission Required!!! need:" + Arrays.toString(PERMISSION_REQUIRED);
             throw new PermissionLessException(errorInfo);
         }
-        if (mRateInHz < 44100 || mChannelConfig <= AudioFormat.CHANNEL_IN_LEFT
+        if (mRateInHz <= 0 || mChannelConfig <= AudioFormat.CHANNEL_IN_LEFT
                 || mAudioFormat == AudioFormat.ENCODING_INVALID) {
             String errorInfo = "param error! mRateInHz = " + mRateInHz + " mChannelConfig = "
                     + mChannelConfig + " mAudioFormat = " + mAudioFormat;
             throw new IllegalArgumentException(errorInfo);
         }
+        boolean convert = mCaptureRateInHz != mRateInHz
+                || (mOutputChannelCount > 0 && mOutputChannelCount != Integer.bitCount(mChannelConfig));
+        if (convert && mAudioFormat != AudioFormat.ENCODING_PCM_16BIT) {
+            throw new IllegalArgumentException("resample only supports 16bit, mRateInHz = " + mRateInHz
+                    + " mOutputChannelCount = " + mOutputChannelCount);
+        }
+        if (mCodec != AudioCodec.PCM && mAudioFormat != AudioFormat.ENCODING_PCM_16BIT) {
+            throw new IllegalArgumentException(mCodec + " only supports 16bit, mAudioFormat = " + mAudioFormat);
+        }
+    }
+
+    private synchronized void ensureRunnable() {
         if (null == mRecordRunnable) {
             if (TextUtils.isEmpty(mTempFile)) {
                 mTempFile = TEMP_FILE;
             }
-            mRecordRunnable = new AudioRecordRunnable(mTempFile, mRateInHz, mChannelConfig, mAudioFormat, mCaptureListener);
+            mRecordRunnable = new AudioRecordRunnable(mTempFile, mCaptureRateInHz, mChannelConfig, mAudioFormat,
+                    mMinBufferSize, mCaptureListener);
+            mRecordRunnable.frameListeners = mFrameListeners;
+            mRecordRunnable.levelListener = mLevelListener;
+            mRecordRunnable.processorChain = mProcessorChain;
+        }
+    }
+
+    private AudioInputDevice createInput() {
+        return new AudioRecordInput(new AudioRecord(MediaRecorder.AudioSource.MIC, mCaptureRateInHz, mChannelConfig,
+                mAudioFormat, mMinBufferSize));
+    }
+
+    /**
+     * 预先创建AudioRecord、缓冲区并启动采集线程池，之后的startRecord只需开始采集；
+     * 调用后每次录音结束只停止不释放AudioRecord，直到{@link #release()}
+     */
+    public void prepare() throws PermissionLessException {
+        checkParams();
+        ensureRunnable();
+        synchronized (this) {
+            mRecordRunnable.keepWarm = true;
+            if (!mRecordRunnable.isRunning.get() && mRecordRunnable.input == null) {
+                mRecordRunnable.input = createInput();
+            }
         }
-        if (mRecordRunnable.isRecording.get()) {
-            Log.e(TAG, "isRecording Now!!!");
+        AudioExecutor.get().prestart();
+    }
+
+    /**
+     * 释放{@link #prepare()}保留的AudioRecord，正在录音时在录音结束后释放
+     */
+    public synchronized void release() {
+        AudioRecordRunnable runnable = mRecordRunnable;
+        if (runnable == null) {
             return;
         }
-        // 每次新开启录音，都重新创建AudioRecord,因为退出时会release掉当前runnable中的AudioRecord
-        mRecordRunnable.audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, mRateInHz, mChannelConfig,
-                mAudioFormat, mMinBufferSize);
-        new Thread(mRecordRunnable).start();
+        runnable.keepWarm = false;
+        if (!runnable.isRunning.get() && runnable.input != null) {
+            runnable.input.release();
+            runnable.input = null;
+        }
+    }
+
+    public void startRecord() throws PermissionLessException {
+        start(0, true);
+    }
+
+    /**
+     * 只采集不写文件，数据通过{@link OnAudioFrameListener}、{@link OnAudioLevelListener}获得，
+     * 如{@link AudioMonitor}的实时监听；{@link #stopRecord()}结束
+     */
+    public void startCapture() throws PermissionLessException {
+        start(0, false);
+    }
+
+    /**
+     * 开始待触发录音：持续采集到固定大小的堆外环形缓冲区中，只保留最近preRollMillis的数据，不写文件；
+     * 调用{@link #trigger()}后先写入缓冲区中的数据，再无缝接上之后采集的数据，直到{@link #stopRecord()}。
+     * 未触发就停止时不生成文件。电平、帧监听在待触发期间照常回调
+     *
+     * @param preRollMillis 触发时保留的触发前音频时长
+     */
+    public void startPreRoll(int preRollMillis) throws PermissionLessException {
+        if (preRollMillis <= 0) {
+            throw new IllegalArgumentException("preRollMillis = " + preRollMillis);
+        }
+        start(preRollMillis, true);
+    }
+
+    /**
+     * 待触发录音开始写文件，触发点之前的数据在写文件线程中写入，采集线程只在两块数据之间切换，
+     * 触发前后的数据既不重复也不缺失
+     *
+     * @return 不在待触发状态(没有调用{@link #startPreRoll(int)}、采集还未开始、已经触发或已停止)时返回false
+     */
+    public boolean trigger() {
+        AudioRecordRunnable runnable = mRecordRunnable;
+        return runnable != null && runnable.trigger();
+    }
+
+    /**
+     * 是否处于待触发状态
+     */
+    public boolean isPreRolling() {
+        AudioRecordRunnable runnable = mRecordRunnable;
+        return runnable != null && runnable.isPreRolling();
+    }
+
+    private void start(int preRollMillis, boolean writeFile) throws PermissionLessException {
+        long requestNanos = System.nanoTime();
+        checkParams();
+        ensureRunnable();
+        synchronized (this) {
+            // 上一次录音的写文件线程可能还在写入剩余数据，此时不能复用缓冲区
+            if (!mRecordRunnable.isRunning.compareAndSet(false, true)) {
+                Log.e(TAG, "isRecording Now!!!");
+                return;
+            }
+            // 没有prepare或上次录音结束时已释放，重新创建AudioRecord
+            AudioInputDevice input = mRecordRunnable.input;
+            if (input == null || !input.isReady()) {
+                if (input != null) {
+                    input.release();
+                }
+                mRecordRunnable.input = createInput();
+            }
+        }
+
+        mRecordRunnable.savePcmFile = mSavePcmFile;
+        mRecordRunnable.peakIndexEnabled = mPeakIndexEnabled;
+        mRecordRunnable.codec = mCodec;
+        mRecordRunnable.segmentPolicy = mSegmentPolicy;
+        mRecordRunnable.segmentListener = mSegmentListener;
+        mRecordRunnable.silencePolicy = mSilencePolicy;
+        mRecordRunnable.outputRateInHz = mRateInHz;
+        mRecordRunnable.outputChannelCount = mOutputChannelCount;
+        mRecordRunnable.resampleQuality = mResampleQuality;
+        mRecordRunnable.metricsListener = mMetricsListener;
+        mRecordRunnable.checkpointMillis = mCheckpointMillis;
+        mRecordRunnable.setPreRoll(preRollMillis);
+        mRecordRunnable.writeFile = writeFile;
+        // 在提交任务前清空上一次的数据，此时上一次的采集和写文件线程都已结束
+        mRecordRunnable.metricsCollector.start(mMetricsListener != null ? mMetricsIntervalMillis : 0, requestNanos);
+        AudioProcessorChain chain = mProcessorChain;
+        if (chain != null) {
+            chain.resetStats();
+        }
+        AudioExecutor.get().submit(mRecordRunnable, Process.THREAD_PRIORITY_URGENT_AUDIO);
+    }
+
+    public synchronized void addFrameListener(OnAudioFrameListener listener) {
+        OnAudioFrameListener[] listeners = Arrays.copyOf(mFrameListeners, mFrameListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        setFrameListeners(listeners);
+    }
+
+    public synchronized void removeFrameListener(OnAudioFrameListener listener) {
+        for (int i = 0; i < mFrameListeners.length; i++) {
+            if (mFrameListeners[i] == listener) {
+                OnAudioFrameListener[] listeners = new OnAudioFrameListener[mFrameListeners.length - 1];
+                System.arraycopy(mFrameListeners, 0, listeners, 0, i);
+                System.arraycopy(mFrameListeners, i + 1, listeners, i, listeners.length - i);
+                setFrameListeners(listeners);
+                return;
+            }
+        }
+    }
+
+    // 采集线程只读取数组引用，增删监听时整体替换，回调过程无锁
+    private void setFrameListeners(OnAudioFrameListener[] listeners) {
+        mFrameListeners = listeners;
+        if (mRecordRunnable != null) {
+            mRecordRunnable.frameListeners = listeners;
+        }
+    }
+
+    public synchronized void setOnAudioLevelListener(OnAudioLevelListener listener) {
+        mLevelListener = listener;
+        if (mRecordRunnable != null) {
+            mRecordRunnable.levelListener = listener;
+        }
     }
 
     public void stopRecord() {
@@ -103,110 +318,544 @@ public class AudioRecorder {
         }
     }
 
+    /**
+     * pcm文件路径，只有{@link #setSavePcmFile(boolean)}开启后才会生成
+     */
     public String getTempFilePath() {
         return TEMP_FILE;
     }
 
+    /**
+     * 录音生成的wav文件路径，与pcm文件同名，{@link AudioTracker}可以直接播放
+     */
+    public String getWavFilePath() {
+        return getWavFilePath(TEMP_FILE);
+    }
+
+    /**
+     * 设置了非PCM编码时录音生成的编码文件路径，{@link AudioTracker}可以直接播放
+     */
+    public String getEncodedFilePath() {
+        return getEncodedFilePath(TEMP_FILE);
+    }
+
+    /**
+     * {@link #setPeakIndexEnabled(boolean)}开启后生成的波形峰值索引文件路径，用{@link PeakIndexReader}读取
+     */
+    public String getPeakFilePath() {
+        return getPeakFilePath(TEMP_FILE);
+    }
+
+    private static String getPeakFilePath(String tempFile) {
+        return replaceExtension(tempFile, PEAK_FILE_EXTENSION);
+    }
+
+    private static String getWavFilePath(String tempFile) {
+        return replaceExtension(tempFile, ".wav");
+    }
+
+    private static String getEncodedFilePath(String tempFile) {
+        return replaceExtension(tempFile, ENCODED_FILE_EXTENSION);
+    }
+
+    private static String replaceExtension(String path, String extension) {
+        int dot = path.lastIndexOf(".");
+        return (dot > path.lastIndexOf(File.separatorChar) ? path.substring(0, dot) : path) + extension;
+    }
+
+    /**
+     * 开启分段录音：文件按时长或大小切分为与临时文件同目录的"文件名_000001.wav"(或编码文件)，
+     * 超过保留数量时删除最早的段，适合长时间不间断录音；传null恢复为单个文件，下次startRecord时生效
+     *
+     * @param listener 每段写完后在后台线程回调，可为null
+     */
+    public void setSegmentPolicy(SegmentPolicy policy, SegmentedFileWriter.OnSegmentListener listener) {
+        mSegmentPolicy = policy;
+        mSegmentListener = listener;
+    }
+
+    /**
+     * 录音文件的编码格式，默认{@link AudioCodec#PCM}即wav文件；其他编码在写文件线程中进行，
+     * 生成{@link #getEncodedFilePath()}而不再生成wav文件，下次startRecord时生效
+     */
+    public void setCodec(AudioCodec codec) {
+        mCodec = codec == null ? AudioCodec.PCM : codec;
+    }
+
+    /**
+     * 根据语音活动检测跳过或压缩静音段，减少写入的数据量；传null写入全部数据，下次startRecord时生效。
+     * 只支持16bit pcm
+     */
+    public void setSilencePolicy(SilencePolicy policy) {
+        mSilencePolicy = policy;
+    }
+
+    /**
+     * 被{@link #setSilencePolicy(SilencePolicy)}丢弃、未写入文件的字节数，每次startRecord后重新计数
+     */
+    public long getSkippedByteCount() {
+        AudioRecordRunnable runnable = mRecordRunnable;
+        SilenceGate gate = runnable == null ? null : runnable.silenceGate;
+        return gate == null ? 0 : gate.getSkippedBytes();
+    }
+
+    /**
+     * 录音文件的声道数，与采集声道数不同时在写文件线程中缩混或扩展，传0与采集一致，下次startRecord时生效
+     */
+    public void setOutputChannelCount(int channelCount) {
+        mOutputChannelCount = Math.max(0, channelCount);
+    }
+
+    /**
+     * 设备不支持构造参数中的采样率时以44100Hz采集，在写文件线程中重采样为构造参数的采样率，
+     * 此处设置重采样质量，默认{@link Resampler.Quality#MEDIUM}
+     */
+    public void setResampleQuality(Resampler.Quality quality) {
+        mResampleQuality = quality == null ? Resampler.Quality.MEDIUM : quality;
+    }
+
+    /**
+     * 实际采集的采样率，{@link OnAudioFrameListener}收到的数据为此采样率
+     */
+    public int getCaptureSampleRate() {
+        return mCaptureRateInHz;
+    }
+
+    /**
+     * 采集的声道配置，AudioFormat.CHANNEL_IN_*
+     */
+    public int getChannelConfig() {
+        return mChannelConfig;
+    }
+
+    /**
+     * 采集的采样格式，AudioFormat.ENCODING_PCM_*
+     */
+    public int getAudioFormat() {
+        return mAudioFormat;
+    }
+
+    /**
+     * 每次采集的最大字节数，即{@link AudioFrame}的最大长度
+     */
+    int getCaptureBufferSize() {
+        return mMinBufferSize;
+    }
+
+    /**
+     * 是否额外保存一份不带文件头的pcm文件，默认只写wav文件，下次startRecord时生效
+     */
+    public void setSavePcmFile(boolean savePcmFile) {
+        mSavePcmFile = savePcmFile;
+    }
+
+    /**
+     * 是否在录音的同时生成波形峰值索引{@link #getPeakFilePath()}，绘制长录音的波形时不需要读取整个文件；
+     * 在写文件线程中随数据增量生成，分段录音时不生成，下次startRecord时生效
+     */
+    public void setPeakIndexEnabled(boolean enabled) {
+        mPeakIndexEnabled = enabled;
+    }
+
+    /**
+     * 采集数据的处理链，在采集线程中对每块数据原地处理，之后的电平、帧监听、写文件和实时监听得到的都是处理后的数据；
+     * 录音过程中可以随时增删处理器或修改参数
+     */
+    public synchronized AudioProcessorChain getProcessorChain() {
+        if (mProcessorChain == null) {
+            mProcessorChain = new AudioProcessorChain(mCaptureRateInHz, Integer.bitCount(mChannelConfig),
+                    SampleFormat.fromEncoding(mAudioFormat));
+            if (mRecordRunnable != null) {
+                mRecordRunnable.processorChain = mProcessorChain;
+            }
+        }
+        return mProcessorChain;
+    }
+
+    /**
+     * 录音期间每隔millis把已写入的数据长度更新到wav文件头，进程被杀或崩溃后文件仍可播放，最多丢失millis的数据；
+     * 只改写文件头，不影响数据写入。0为只在录音结束时更新，下次startRecord时生效
+     */
+    public void setCheckpointIntervalMillis(int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("millis = " + millis);
+        }
+        mCheckpointMillis = millis;
+    }
+
+    /**
+     * 修复录音目录中上次异常退出留下的wav文件(文件头长度未更新、分段文件末尾有预分配的空间)，
+     * 须在开始录音前调用，正在录音时返回空列表；完整的文件和不是本库写入的文件保持原样
+     *
+     * @return 被修复的文件
+     */
+    public List<File> recoverRecordings() throws IOException {
+        AudioRecordRunnable runnable = mRecordRunnable;
+        if (runnable != null && runnable.isRunning.get()) {
+            return new ArrayList<>();
+        }
+        File dir = new File(TEMP_FILE).getAbsoluteFile().getParentFile();
+        return WavRecovery.recoverDirectory(dir);
+    }
+
+    /**
+     * 当前(或最近一次)录音的运行数据，未开始过录音时返回null
+     */
+    public AudioMetrics getMetrics() {
+        AudioRecordRunnable runnable = mRecordRunnable;
+        return runnable == null ? null : runnable.metrics();
+    }
+
+    /**
+     * 录音期间每隔intervalMillis在采集线程回调一次运行数据，传null关闭，下次startRecord时生效
+     */
+    public void setOnMetricsListener(AudioMetrics.OnMetricsListener listener, long intervalMillis) {
+        mMetricsListener = listener;
+        mMetricsIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * 写文件线程跟不上导致丢弃的数据块数，每次startRecord后重新计数
+     */
+    public long getOverrunCount() {
+        return mRecordRunnable == null ? 0 : mRecordRunnable.ringBuffer.getOverrunCount();
+    }
+
+    /**
+     * 写文件缓冲区的最高占用槽位数，接近{@link #getBufferCapacity()}说明存储速度不足
+     */
+    public int getHighWaterMark() {
+        return mRecordRunnable == null ? 0 : mRecordRunnable.ringBuffer.getHighWaterMark();
+    }
+
+    /**
+     * 写文件缓冲区的槽位数，每个槽位存放一次AudioRecord.read的数据
+     */
+    public int getBufferCapacity() {
+        return mRecordRunnable == null ? 0 : mRecordRunnable.ringBuffer.capacity();
+    }
+
+    /**
+     * 监听者持有的帧过多导致帧池耗尽、未能分发给{@link OnAudioFrameListener}的次数
+     */
+    public long getUndeliveredFrameCount() {
+        return mRecordRunnable == null ? 0 : mRecordRunnable.framePool.getExhaustedCount();
+    }
+
     static class AudioRecordRunnable implements Runnable {
+        // 写文件缓冲区能容纳的音频时长
+        private static final int RING_BUFFER_MILLIS = 2000;
+        // 帧池大小，即监听者最多可同时持有的帧数
+        private static final int FRAME_POOL_SIZE = 8;
         private final int minBufferSize;
         private final String tempFileName;
         private final AtomicBoolean isRecording = new AtomicBoolean(false);
-        private AudioRecord audioRecord;
+        // 从startRecord到采集、写文件线程全部结束期间为true
+        private final AtomicBoolean isRunning = new AtomicBoolean(false);
+        private AudioInputDevice input;
         private final OnAudioFrameCaptureListener captureListener;
         private final int rateInHz;
+        private final int audioFormat;
+        private final SampleFormat sampleFormat;
+        private final int captureFrameSize;
+        private final PcmRingBuffer ringBuffer;
+        private final AudioFramePool framePool;
+        // 没有监听者或帧池耗尽时的采集缓冲区
+        private final ByteBuffer captureBuffer;
+        private boolean writeFile = true;
+        private boolean savePcmFile;
+        private boolean peakIndexEnabled;
+        private AudioCodec codec = AudioCodec.PCM;
+        private SegmentPolicy segmentPolicy;
+        private SegmentedFileWriter.OnSegmentListener segmentListener;
+        private SilencePolicy silencePolicy;
+        private int outputRateInHz;
+        private int outputChannelCount;
+        private Resampler.Quality resampleQuality = Resampler.Quality.MEDIUM;
+        private final AudioMetricsCollector metricsCollector = new AudioMetricsCollector();
+        private AudioMetrics.OnMetricsListener metricsListener;
+        private int checkpointMillis;
+        // 为true时录音结束后保留AudioRecord供下次使用
+        private volatile boolean keepWarm;
+        private volatile SilenceGate silenceGate;
+        private volatile OnAudioFrameListener[] frameListeners = new OnAudioFrameListener[0];
+        private volatile OnAudioLevelListener levelListener;
+        private volatile AudioProcessorChain processorChain;
+        // 待触发录音的环形缓冲区，只在时长变化时重新分配
+        private PreRollBuffer preRoll;
+        private volatile boolean preRollMode;
+        private final AtomicBoolean triggered = new AtomicBoolean(false);
+        private SinkWrapper sinkWrapper;
 
-        AudioRecordRunnable(String tempFile, int rateInHz, int channelConfig, int audioFormat, OnAudioFrameCaptureListener listener) {
+        /**
+         * 替换或包装打开的输出，在写文件线程中调用
+         */
+        interface SinkWrapper {
+            PcmSink[] wrap(PcmSink[] sinks) throws IOException;
+        }
+
+        /**
+         * @param bufferSize 每次读取的字节数
+         */
+        AudioRecordRunnable(String tempFile, int rateInHz, int channelConfig, int audioFormat, int bufferSize,
+                            OnAudioFrameCaptureListener listener) {
             this.tempFileName = tempFile;
             this.rateInHz = rateInHz;
             this.captureListener = listener;
-            this.minBufferSize = AudioRecord.getMinBufferSize(rateInHz, channelConfig, audioFormat);
+            this.audioFormat = audioFormat;
+            this.sampleFormat = SampleFormat.fromEncoding(audioFormat);
+            this.minBufferSize = bufferSize;
+            this.framePool = new AudioFramePool(FRAME_POOL_SIZE, minBufferSize);
+            this.captureBuffer = ByteBuffer.allocateDirect(minBufferSize).order(ByteOrder.nativeOrder());
+            this.captureFrameSize = sampleFormat.getFrameSize(Integer.bitCount(channelConfig));
+            // 保证缓冲区至少容纳RING_BUFFER_MILLIS的数据
+            long bytes = (long) rateInHz * captureFrameSize * RING_BUFFER_MILLIS / 1000;
+            this.ringBuffer = new PcmRingBuffer((int) Math.max(2, bytes / minBufferSize), minBufferSize);
         }
 
         @Override
         public void run() {
             Log.d(TAG, "start record");
-            audioRecord.startRecording();
+            input.start();
             isRecording.set(true);
-            byte[] data = new byte[minBufferSize];
-            File tempPcm = null;
-            File tempWav = null;
-            FileOutputStream outputStream = null;
-            FileOutputStream wavOs = null;
-            RandomAccessFile wavRaf = null;
-            if (!TextUtils.isEmpty(tempFileName)) {
+            byte[] data = captureListener != null ? new byte[minBufferSize] : null;
+            int channelCount = input.getChannelCount();
+            long sequence = 0;
+            ringBuffer.reset();
+            AudioMetrics.OnMetricsListener reportListener = metricsListener;
+            // 电平和VAD每块数据只遍历一次
+            LevelMeter levelMeter = new LevelMeter();
+            VoiceActivityDetector vad = new VoiceActivityDetector(rateInHz, silencePolicy != null
+                    ? silencePolicy.getHangoverMillis() : SilencePolicy.DEFAULT_HANGOVER_MILLIS);
+            int frameSize = sampleFormat.getFrameSize(channelCount);
+            SilenceGate gate = silencePolicy != null
+                    ? new SilenceGate(silencePolicy, rateInHz, frameSize) : null;
+            silenceGate = gate;
+            AudioWriteRunnable writeRunnable = null;
+            Future<?> writeFuture = null;
+            boolean waitingTrigger = preRollMode;
+            if (waitingTrigger) {
+                preRoll.reset();
+            } else if (writeFile && !TextUtils.isEmpty(tempFileName)) {
                 try {
-                    tempPcm = new File(tempFileName);
-                    tempWav = new File(tempFileName.substring(0, tempFileName.lastIndexOf(".")) + ".wav");
-                    if (!tempWav.exists()) {
-                        if (tempWav.createNewFile()) {
-                            Log.d(TAG, "new tempWav path:" + tempWav.getAbsolutePath());
-                        }
-                    }
-                    wavOs = new FileOutputStream(tempWav);
-                    byte[] wavHeader = WavUtil.generateWavFileHeader(0, rateInHz, audioRecord.getChannelCount());
-                    wavOs.write(wavHeader, 0, wavHeader.length);
-                    if (!tempPcm.exists()) {
-                        boolean newFile = tempPcm.createNewFile();
-                        if (newFile) {
-                            Log.d(TAG, "new tempFile path:" + tempFileName);
-                        }
-                    }
-                    outputStream = new FileOutputStream(tempPcm);
+                    writeRunnable = new AudioWriteRunnable(ringBuffer, gate, metricsCollector, openOutput(channelCount));
+                    writeRunnable.setCheckpointInterval(TimeUnit.MILLISECONDS.toNanos(checkpointMillis));
+                    writeFuture = AudioExecutor.get().submit(writeRunnable, Process.THREAD_PRIORITY_AUDIO);
                 } catch (IOException e) {
                     Log.e(TAG, "create File error!", e);
+                    writeRunnable = null;
                     isRecording.set(false);
                 }
             }
             int read;
             while (isRecording.get()) {
-                read = audioRecord.read(data, 0, minBufferSize);
-                if (ERROR_INVALID_OPERATION != read
-                        && ERROR_BAD_VALUE != read
-                        && ERROR_DEAD_OBJECT != read
-                        && ERROR != read) {
-                    if (captureListener != null) {
-                        captureListener.onFrameCaptured(data);
-                    }
-                    if (null != outputStream) {
-                        try {
-                            outputStream.write(data, 0, read);
-                            wavOs.write(data, 0, read);
-                        } catch (IOException e) {
-                            isRecording.set(false);
-                            break;
+                OnAudioFrameListener[] listeners = frameListeners;
+                AudioFrame frame = listeners.length > 0 ? framePool.acquire() : null;
+                ByteBuffer buffer = frame != null ? frame.buffer : captureBuffer;
+                buffer.clear();
+                long readStart = System.nanoTime();
+                read = input.read(buffer, minBufferSize);
+                long readEnd = System.nanoTime();
+                metricsCollector.deviceLatency.record(readEnd - readStart);
+                try {
+                    if (ERROR_INVALID_OPERATION != read
+                            && ERROR_BAD_VALUE != read
+                            && ERROR_DEAD_OBJECT != read
+                            && ERROR != read) {
+                        buffer.limit(read);
+                        if (read > 0) {
+                            metricsCollector.markFirstSample(readEnd);
+                            AudioProcessorChain chain = processorChain;
+                            if (chain != null) {
+                                chain.process(buffer, read);
+                            }
                         }
+                        metricsCollector.addBytes(read);
+                        int flags = 0;
+                        OnAudioLevelListener level = levelListener;
+                        if (level != null || gate != null) {
+                            levelMeter.measure(buffer, read, sampleFormat);
+                            if (vad.update(levelMeter.getRmsDb(), read / frameSize)) {
+                                flags = SilenceGate.FLAG_VOICED;
+                            }
+                            if (level != null) {
+                                level.onAudioLevel(levelMeter.getRmsDb(), levelMeter.getPeakDb(), vad.isVoiced());
+                            }
+                        }
+                        if (frame != null) {
+                            frame.set(read, audioFormat, rateInHz, channelCount, System.nanoTime(), sequence);
+                            for (OnAudioFrameListener listener : listeners) {
+                                listener.onAudioFrame(frame);
+                            }
+                        }
+                        if (captureListener != null) {
+                            buffer.get(data, 0, read);
+                            buffer.position(0);
+                            captureListener.onFrameCaptured(data);
+                        }
+                        if (waitingTrigger && !triggered.get()) {
+                            preRoll.write(buffer);
+                        } else if (waitingTrigger) {
+                            // 从这一块开始写入写文件缓冲区，之前的数据都在preRoll中，由写文件线程写出
+                            Log.d(TAG, "triggered, pre-roll bytes = " + preRoll.size());
+                            writeRunnable = new AudioWriteRunnable(ringBuffer, gate, metricsCollector, preRoll,
+                                    () -> openOutput(channelCount));
+                            writeRunnable.setCheckpointInterval(TimeUnit.MILLISECONDS.toNanos(checkpointMillis));
+                            writeFuture = AudioExecutor.get().submit(writeRunnable, Process.THREAD_PRIORITY_AUDIO);
+                            waitingTrigger = false;
+                        }
+                        if (null != writeRunnable) {
+                            if (writeRunnable.isFailed()) {
+                                isRecording.set(false);
+                                break;
+                            }
+                            // 缓冲区满时丢弃该块并计数，采集线程不等待磁盘IO
+                            ringBuffer.offer(buffer, flags);
+                        }
+                    } else {
+                        metricsCollector.recordError(read);
                     }
+                } finally {
+                    if (frame != null) {
+                        frame.release();
+                    }
+                }
+                sequence++;
+                if (reportListener != null && metricsCollector.shouldReport(readEnd)) {
+                    reportListener.onMetrics(metrics());
+                }
+            }
+            input.stop();
+            if (!keepWarm) {
+                input.release();
+                input = null;
+            }
+            if (writeFuture != null) {
+                writeRunnable.finish();
+                try {
+                    writeFuture.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "write thread failed", e.getCause());
                 }
             }
+            isRunning.set(false);
+            Log.d(TAG, "record finish");
+        }
+
+        /**
+         * 输出格式与采集格式不同时，在写文件线程中转换后再写入各个文件
+         */
+        private PcmSink[] openOutput(int captureChannels) throws IOException {
+            int channels = outputChannelCount > 0 ? outputChannelCount : captureChannels;
+            PcmSink[] sinks = openSinks(channels);
+            if (sinkWrapper != null) {
+                sinks = sinkWrapper.wrap(sinks);
+            }
+            if (outputRateInHz == rateInHz && channels == captureChannels) {
+                return sinks;
+            }
+            Log.d(TAG, "convert " + rateInHz + "Hz/" + captureChannels + "ch to "
+                    + outputRateInHz + "Hz/" + channels + "ch");
+            PcmConverter converter = new PcmConverter(rateInHz, captureChannels, outputRateInHz, channels,
+                    resampleQuality, minBufferSize / (2 * captureChannels));
+            return new PcmSink[]{new ResamplingSink(converter, minBufferSize, sinks)};
+        }
+
+        private PcmSink[] openSinks(int channelCount) throws IOException {
+            List<PcmSink> sinks = new ArrayList<>(2);
             try {
-                if (tempPcm != null) {
-                    wavRaf = new RandomAccessFile(tempWav, "rw");
-                    byte[] header = WavUtil.generateWavFileHeader(tempPcm.length(), rateInHz, audioRecord.getChannelCount());
-                    wavRaf.seek(0);
-                    wavRaf.write(header);
+                if (segmentPolicy != null) {
+                    sinks.add(openSegmentedSink(channelCount));
+                } else if (codec == AudioCodec.PCM) {
+                    File wavFile = new File(getWavFilePath(tempFileName));
+                    sinks.add(new WavFileWriter(wavFile, outputRateInHz, channelCount, sampleFormat));
+                    Log.d(TAG, "open wav path:" + wavFile.getAbsolutePath());
+                } else {
+                    File encodedFile = new File(getEncodedFilePath(tempFileName));
+                    sinks.add(new EncodedAudioWriter(encodedFile, codec, outputRateInHz, channelCount));
+                    Log.d(TAG, "open " + codec + " path:" + encodedFile.getAbsolutePath());
+                }
+                if (savePcmFile) {
+                    sinks.add(new PcmFileWriter(new File(tempFileName)));
+                    Log.d(TAG, "open pcm path:" + tempFileName);
+                }
+                if (peakIndexEnabled && segmentPolicy == null) {
+                    File peakFile = new File(getPeakFilePath(tempFileName));
+                    sinks.add(new PeakIndexWriter(peakFile, outputRateInHz, channelCount, sampleFormat));
+                    Log.d(TAG, "open peak index path:" + peakFile.getAbsolutePath());
                 }
             } catch (IOException e) {
-                Log.e(TAG, "write header error!", e);
-            } finally {
-                try {
-                    if (wavRaf != null) {
-                        wavRaf.close();
-                    }
-                    if (wavOs != null) {
-                        wavOs.close();
-                    }
-                    if (outputStream != null) {
-                        outputStream.close();
+                for (PcmSink sink : sinks) {
+                    try {
+                        sink.close();
+                    } catch (IOException closeError) {
+                        Log.e(TAG, "close failed", closeError);
                     }
-                } catch (IOException e) {
-                    Log.e(TAG, "close failed", e);
                 }
+                throw e;
             }
-            if (audioRecord.getRecordingState() == RECORDSTATE_RECORDING) {
-                audioRecord.stop();
+            return sinks.toArray(new PcmSink[0]);
+        }
+
+        private PcmSink openSegmentedSink(final int channelCount) throws IOException {
+            File tempFile = new File(tempFileName);
+            String baseName = replaceExtension(tempFile.getName(), "");
+            final AudioCodec segmentCodec = codec;
+            SegmentedFileWriter.SegmentOpener opener = (file, segmentBytes) -> {
+                if (segmentCodec == AudioCodec.PCM) {
+                    WavFileWriter writer = new WavFileWriter(file, outputRateInHz, channelCount, sampleFormat);
+                    writer.preallocate(segmentBytes);
+                    return writer;
+                }
+                return new EncodedAudioWriter(file, segmentCodec, outputRateInHz, channelCount);
+            };
+            String extension = codec == AudioCodec.PCM ? ".wav" : ENCODED_FILE_EXTENSION;
+            Log.d(TAG, "open segments " + baseName + "_*" + extension + " " + segmentPolicy);
+            return new SegmentedFileWriter(tempFile.getAbsoluteFile().getParentFile(), baseName, extension,
+                    segmentPolicy, outputRateInHz, sampleFormat.getFrameSize(channelCount), opener, segmentListener);
+        }
+
+        /**
+         * 在提交采集任务前调用，preRollMillis为0时为普通录音
+         */
+        void setPreRoll(int preRollMillis) {
+            triggered.set(false);
+            preRollMode = preRollMillis > 0;
+            if (!preRollMode) {
+                return;
             }
-            audioRecord.release();
-            Log.d(TAG, "record finish");
+            int capacity = PreRollBuffer.capacityFor(preRollMillis, rateInHz, captureFrameSize);
+            if (preRoll == null || preRoll.capacity() != capacity) {
+                preRoll = new PreRollBuffer(capacity, captureFrameSize);
+            }
+        }
+
+        boolean trigger() {
+            return preRollMode && isRecording.get() && triggered.compareAndSet(false, true);
+        }
+
+        boolean isPreRolling() {
+            return preRollMode && isRecording.get() && !triggered.get();
+        }
+
+        /**
+         * 不经过AudioRecorder直接使用采集流程，如在JVM上用合成的采集设备做压力测试，之后在任意线程调用{@link #run()}
+         *
+         * @param sinkWrapper 包装写文件的输出，可为null
+         */
+        void configure(AudioInputDevice input, int outputRateInHz, SinkWrapper sinkWrapper) {
+            this.input = input;
+            this.outputRateInHz = outputRateInHz;
+            this.sinkWrapper = sinkWrapper;
+            isRunning.set(true);
+            metricsCollector.start(0, System.nanoTime());
+        }
+
+        AudioMetrics metrics() {
+            return metricsCollector.snapshot(ringBuffer.getOverrunCount(), 0, ringBuffer.size(),
+                    ringBuffer.getHighWaterMark(), ringBuffer.capacity());
         }
 
         public void stop() {
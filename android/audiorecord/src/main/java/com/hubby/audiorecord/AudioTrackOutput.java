@@ -0,0 +1,159 @@
+package com.hubby.audiorecord;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTimestamp;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 基于AudioTrack的播放设备
+ */
+final class AudioTrackOutput implements AudioOutputDevice {
+    private static final String TAG = "AudioTrackOutput";
+    // 低延迟模式下AudioTrack的容量相对最小缓冲区的倍数，为欠载后增大缓冲留出空间
+    private static final int LOW_LATENCY_CAPACITY_FACTOR = 4;
+
+    private final AudioTrack track;
+    // API 23以下不能查询实际使用的缓冲区大小，按创建时的大小计算
+    private final int bufferSizeFrames;
+    private final boolean tunable;
+    private final AudioTimestamp timestamp = new AudioTimestamp();
+
+    private AudioTrackOutput(AudioTrack track, int bufferSizeFrames, boolean tunable) {
+        this.track = track;
+        this.bufferSizeFrames = bufferSizeFrames;
+        this.tunable = tunable;
+    }
+
+    /**
+     * 按播放参数创建AudioTrack
+     */
+    static final class Factory implements AudioOutputDevice.Factory {
+        private final AudioAttributes audioAttributes;
+        private final AudioFormat audioFormat;
+        private final int minBufferSize;
+        private final int frameSize;
+
+        Factory(int hz, int channelConfig, int encoding, int minBufferSize) {
+            this.minBufferSize = minBufferSize;
+            this.frameSize = SampleFormat.fromEncoding(encoding).getFrameSize(Integer.bitCount(channelConfig));
+            this.audioAttributes = new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_MEDIA)
+                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                    .build();
+            this.audioFormat = new AudioFormat.Builder()
+                    .setSampleRate(hz)
+                    .setEncoding(encoding)
+                    .setChannelMask(channelConfig)
+                    .build();
+        }
+
+        @Override
+        public AudioOutputDevice create(boolean lowLatency) {
+            if (!lowLatency) {
+                AudioTrack track = new AudioTrack(audioAttributes, audioFormat, minBufferSize,
+                        AudioTrack.MODE_STREAM, AudioManager.AUDIO_SESSION_ID_GENERATE);
+                return new AudioTrackOutput(track, minBufferSize / frameSize, false);
+            }
+            // API 24以上可以在播放中调整实际使用的缓冲区大小，预留更大的容量
+            boolean tunable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+            int capacity = tunable ? minBufferSize * LOW_LATENCY_CAPACITY_FACTOR : minBufferSize;
+            AudioTrack track;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                track = new AudioTrack.Builder()
+                        .setAudioAttributes(audioAttributes)
+                        .setAudioFormat(audioFormat)
+                        .setBufferSizeInBytes(capacity)
+                        .setTransferMode(AudioTrack.MODE_STREAM)
+                        .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+                        .build();
+            } else {
+                AudioAttributes attributes = new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                        .setFlags(AudioAttributes.FLAG_LOW_LATENCY)
+                        .build();
+                track = new AudioTrack(attributes, audioFormat, capacity,
+                        AudioTrack.MODE_STREAM, AudioManager.AUDIO_SESSION_ID_GENERATE);
+            }
+            Log.d(TAG, "low latency track, performanceMode = " + performanceMode(track));
+            return new AudioTrackOutput(track, capacity / frameSize, tunable);
+        }
+
+        private static int performanceMode(AudioTrack track) {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? track.getPerformanceMode()
+                    : AudioTrack.PERFORMANCE_MODE_NONE;
+        }
+    }
+
+    @Override
+    public void play() {
+        track.play();
+    }
+
+    @Override
+    public void pause() {
+        track.pause();
+    }
+
+    @Override
+    public void flush() {
+        track.flush();
+    }
+
+    @Override
+    public void stop() {
+        track.stop();
+    }
+
+    @Override
+    public void release() {
+        track.release();
+    }
+
+    @Override
+    public int write(ByteBuffer data, int sizeInBytes) {
+        return track.write(data, sizeInBytes, AudioTrack.WRITE_BLOCKING);
+    }
+
+    @Override
+    public long getPlaybackHeadPosition() {
+        // 32位无符号数
+        return track.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public boolean getTimestamp(long[] result) {
+        if (!track.getTimestamp(timestamp)) {
+            return false;
+        }
+        result[0] = timestamp.framePosition;
+        result[1] = timestamp.nanoTime;
+        return true;
+    }
+
+    @Override
+    public int getUnderrunCount() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? track.getUnderrunCount() : 0;
+    }
+
+    @Override
+    public int getBufferSizeInFrames() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? track.getBufferSizeInFrames() : bufferSizeFrames;
+    }
+
+    @Override
+    public int getBufferCapacityInFrames() {
+        return tunable ? track.getBufferCapacityInFrames() : 0;
+    }
+
+    @Override
+    public int setBufferSizeInFrames(int frames) {
+        return tunable ? track.setBufferSizeInFrames(frames) : getBufferSizeInFrames();
+    }
+}
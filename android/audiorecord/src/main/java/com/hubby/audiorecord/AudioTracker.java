@@ -1,94 +1,235 @@
 package com.hubby.audiorecord;
 
-import android.media.AudioAttributes;
 import android.media.AudioFormat;
-import android.media.AudioManager;
 import android.media.AudioTrack;
 import android.os.Handler;
+import android.os.Process;
 import android.util.Log;
 
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class AudioTracker {
     private static final String TAG = "AudioTracker";
+    // 默认预读的音频时长
+    public static final int DEFAULT_PREFETCH_MILLIS = 300;
     private final int mRateInHz;
     private final int mChannelConfig;
     private final int mAudioFormat;
 
     private AudioTrackRunnable mPlayRunnable;
+    private AudioMetrics.OnMetricsListener mMetricsListener;
+    private long mMetricsIntervalMillis;
+    private boolean mLowLatency;
+    private int mPrefetchMillis = DEFAULT_PREFETCH_MILLIS;
+    private final PlaybackClock mClock;
+    private final PositionTicker mPositionTicker = new PositionTicker();
 
+    /**
+     * @param channelConfig AudioFormat.CHANNEL_OUT_*，传入CHANNEL_IN_MONO/CHANNEL_IN_STEREO时按对应的输出声道处理
+     */
     public AudioTracker(int hz, int channelConfig, int audioFormat) {
         this.mRateInHz = hz;
-        this.mChannelConfig = channelConfig;
+        this.mChannelConfig = outputChannelMask(channelConfig);
         this.mAudioFormat = audioFormat;
+        this.mClock = new PlaybackClock(hz);
     }
 
-    static class AudioTrackRunnable implements Runnable, AudioTrack.OnPlaybackPositionUpdateListener {
-        private static final int ONE_SECOND = 1000;
-        private final AudioAttributes audioAttributes;
-
-        private final AudioFormat audioFormat;
+    static class AudioTrackRunnable implements Runnable {
+        private static final long NO_SEEK = -1;
+        // 三缓冲：播放线程读取一块时另外两块在预读
+        private static final int PREFETCH_BLOCKS = 3;
+        private static final int MAX_PREFETCH_BLOCK_SIZE = 1024 * 1024;
+        // 估算输出延迟、发布播放时钟的最小间隔，两次发布之间由读取方按采样率外推
+        private static final long TIMING_UPDATE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
 
         private String fileName;
+        // startPlay(PcmSource)传入的数据源，为null时打开fileName
+        private PcmSource pendingSource;
+        private int prefetchMillis;
+        private volatile PrefetchingPcmSource prefetchSource;
 
-        private AudioTrack audioTrack;
+        private final AudioOutputDevice.Factory outputFactory;
+        private volatile AudioOutputDevice output;
 
         private ProcessListener processListener;
 
         private Handler processHandler;
 
         private final int minBufferSize;
+        private final int rateInHz;
+        private final int channelCount;
+        private final int encoding;
+        private final int frameSize;
         private final AtomicBoolean isPlaying = new AtomicBoolean(false);
+        // 从startPlay提交任务到run()结束期间为true，isPlaying只在run()中设置，不能用来防止重复提交
+        private final AtomicBoolean isRunning = new AtomicBoolean(false);
+        private final Object pauseLock = new Object();
+        private volatile boolean isPaused;
+        // 等待播放线程执行的跳转位置(帧)，NO_SEEK表示没有
+        private volatile long pendingSeekFrame = NO_SEEK;
+        // 最近一次跳转的位置，flush后输出设备的播放位置从0开始计算
+        private volatile long startFrame;
+        private final AudioMetricsCollector metricsCollector = new AudioMetricsCollector();
+        private AudioMetrics.OnMetricsListener metricsListener;
+        private final PlaybackClock clock;
+        private PositionTicker positionTicker;
+        // 复用同一个Runnable，每秒的进度回调不分配内存
+        private final Runnable playTimeTask = new Runnable() {
+            @Override
+            public void run() {
+                ProcessListener listener = processListener;
+                if (null != listener) {
+                    listener.onPlayTime((int) ((clock.getPositionMicros() + 500000) / 1000000));
+                }
+            }
+        };
+        // 播放结束时输出设备的欠载次数，设备释放后从这里读取
+        private volatile int finalUnderrunCount;
+        // 为true时播放结束后保留输出设备供下次使用
+        private volatile boolean keepWarm;
+        private volatile boolean lowLatency;
+        // 当前输出设备创建时的模式，与lowLatency不一致时在下次播放前重建
+        private boolean outputLowLatency;
+        // 低延迟模式且设备支持调整缓冲区大小时按欠载调整，随设备一起保留
+        private BufferSizeTuner bufferTuner;
+        private volatile int bufferSizeFrames;
+        // [0]为帧位置，[1]为输出时刻
+        private final long[] timestamp = new long[2];
+        // 上次flush以来写入输出设备的帧数，只由播放线程访问
+        private long framesWritten;
+        private long lastTimingUpdateNanos;
+        // 上次回调onPlayTime的秒数
+        private long lastPlayTimeSecond;
+
+        /**
+         * @param minBufferSize 每次写入的最大字节数
+         * @param outputFactory 创建输出设备，JVM上测试时可以替换为合成的设备
+         */
+        AudioTrackRunnable(int hz, int channelCount, int encoding, int minBufferSize, PlaybackClock clock,
+                           AudioOutputDevice.Factory outputFactory) {
+            this.clock = clock;
+            this.minBufferSize = minBufferSize;
+            this.rateInHz = hz;
+            this.channelCount = channelCount;
+            this.encoding = encoding;
+            this.frameSize = SampleFormat.fromEncoding(encoding).getFrameSize(channelCount);
+            this.outputFactory = outputFactory;
+        }
 
-        AudioTrackRunnable(int hz, int channelConfig, int encoding) {
-            this.minBufferSize = AudioTrack.getMinBufferSize(hz, channelConfig, encoding);
-            this.audioAttributes = new AudioAttributes.Builder()
-                    .setUsage(AudioAttributes.USAGE_MEDIA)
-                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                    .build();
-            this.audioFormat = new AudioFormat.Builder()
-                    .setSampleRate(hz)
-                    .setEncoding(encoding)
-                    .setChannelMask(channelConfig)
-                    .build();
+        /**
+         * 不经过{@link AudioTracker}直接设置要播放的数据源，之后由调用方执行{@link #run()}，用于在JVM上测试播放流程
+         */
+        void configure(PcmSource source, int prefetchMillis, boolean lowLatency) {
+            this.pendingSource = source;
+            this.prefetchMillis = prefetchMillis;
+            this.lowLatency = lowLatency;
+            isRunning.set(true);
+            metricsCollector.start(0, System.nanoTime());
         }
 
         @Override
         public void run() {
-            FileInputStream destInput = null;
+            PcmSource source = null;
             try {
-                destInput = new FileInputStream(fileName);
-                byte[] frameBuffer = new byte[minBufferSize];
-                long fileSize = destInput.getChannel().size();
+                if (pendingSource != null) {
+                    source = pendingSource;
+                    pendingSource = null;
+                } else {
+                    source = openSource(new File(fileName), rateInHz, channelCount, encoding);
+                }
+                if (prefetchMillis > 0) {
+                    source = prefetchSource = prefetch(source);
+                }
+                long fileSize = source.length();
                 if (fileSize > 0) {
                     if (processListener != null) {
-                        processHandler.post(() -> {
-                            //数据量Byte= 采样率×(采样位数/8)×声道数×时间（s)
-                            //时间 = 数据大小/采样率/（采样位数/8）/声道数
-                            int pcmTimeCount = (int) ((fileSize * 1.0f) / (16.0f / 8.0f) / (2.0f) / 44100);
-                            processListener.onInit(pcmTimeCount);
-                        });
+                        //数据量Byte= 采样率×(采样位数/8)×声道数×时间（s)
+                        //时间 = 数据大小/采样率/（采样位数/8）/声道数，数据源已转换为播放格式
+                        int pcmTimeCount = (int) (fileSize / frameSize / rateInHz);
+                        processHandler.post(() -> processListener.onInit(pcmTimeCount));
                     }
                 }
-                audioTrack = new AudioTrack(audioAttributes, audioFormat, minBufferSize,
-                        AudioTrack.MODE_STREAM, AudioManager.AUDIO_SESSION_ID_GENERATE);
-                audioTrack.setPositionNotificationPeriod(ONE_SECOND);
-                audioTrack.setPlaybackPositionUpdateListener(this);
-                audioTrack.play();
+                ensureOutput();
+                startFrame = 0;
+                pendingSeekFrame = NO_SEEK;
+                finalUnderrunCount = 0;
+                framesWritten = 0;
+                lastTimingUpdateNanos = 0;
+                lastPlayTimeSecond = 0;
+                clock.publish(0, System.nanoTime(), 0, true);
+                if (bufferTuner != null) {
+                    bufferTuner.reset(output.getUnderrunCount());
+                }
+                AudioMetrics.OnMetricsListener reportListener = metricsListener;
                 isPlaying.set(true);
-                int length;
-                while (isPlaying.get() && (length = destInput.read(frameBuffer)) > 0) {
-                    audioTrack.write(frameBuffer, 0, length);
+                output.play();
+                ByteBuffer chunk = null;
+                while (isPlaying.get()) {
+                    if (isPaused) {
+                        synchronized (pauseLock) {
+                            while (isPaused && isPlaying.get()) {
+                                pauseLock.wait();
+                            }
+                        }
+                        continue;
+                    }
+                    long seekFrame = pendingSeekFrame;
+                    if (seekFrame != NO_SEEK) {
+                        pendingSeekFrame = NO_SEEK;
+                        // 丢弃输出设备中尚未播放的数据，从新位置继续写入
+                        output.pause();
+                        output.flush();
+                        source.seek(seekFrame * frameSize);
+                        startFrame = source.position() / frameSize;
+                        framesWritten = 0;
+                        clock.publish(startFrame, System.nanoTime(), startFrame, !isPaused);
+                        chunk = null;
+                        if (!isPaused) {
+                            output.play();
+                        }
+                        continue;
+                    }
+                    if (chunk == null || !chunk.hasRemaining()) {
+                        chunk = source.read(minBufferSize);
+                        if (chunk == null) {
+                            break;
+                        }
+                    }
+                    // 暂停时阻塞写入会提前返回，剩余数据在恢复后继续写入
+                    long writeStart = System.nanoTime();
+                    int written = output.write(chunk, chunk.remaining());
+                    long writeEnd = System.nanoTime();
+                    metricsCollector.deviceLatency.record(writeEnd - writeStart);
+                    if (written < 0) {
+                        metricsCollector.recordError(written);
+                        Log.e(TAG, "write error: " + written);
+                        break;
+                    }
+                    if (written > 0) {
+                        metricsCollector.markFirstSample(writeEnd);
+                        framesWritten += written / frameSize;
+                    }
+                    metricsCollector.addBytes(written);
+                    if (bufferTuner != null) {
+                        tuneBufferSize();
+                    }
+                    if (writeEnd - lastTimingUpdateNanos >= TIMING_UPDATE_NANOS) {
+                        lastTimingUpdateNanos = writeEnd;
+                        updateTiming(writeEnd);
+                    }
+                    if (reportListener != null && metricsCollector.shouldReport(writeEnd)) {
+                        reportListener.onMetrics(metrics());
+                    }
                 }
-                isPlaying.set(false);
-                audioTrack.stop();
-                audioTrack.release();
-                Log.d(TAG, "play finish");
+                Log.d(TAG, "play finish" + (prefetchSource != null
+                        ? ", prefetch stalls = " + prefetchSource.getStallCount() : ""));
                 if (null != processListener) {
                     processHandler.post(new Runnable() {
                         @Override
@@ -99,44 +240,313 @@ public class AudioTracker {
                 }
             } catch (IOException e) {
                 Log.e(TAG, "read Failed!", e);
-                isPlaying.set(false);
+            } catch (InterruptedException e) {
+                Log.e(TAG, "play interrupted", e);
             } finally {
+                // 正常结束和出错时都要停止输出并冻结播放时钟，否则时钟会继续外推，输出设备也不会释放
+                isPlaying.set(false);
+                clock.freeze();
+                if (output != null) {
+                    finalUnderrunCount = output.getUnderrunCount();
+                    output.stop();
+                    releaseOutput();
+                }
+                isPaused = false;
+                if (positionTicker != null) {
+                    positionTicker.stop();
+                }
+                prefetchSource = null;
                 try {
-                    if (destInput != null) {
-                        destInput.close();
+                    if (source != null) {
+                        source.close();
                     }
                 } catch (Exception e) {
                     Log.e(TAG, "close erorr", e);
                 }
+                isRunning.set(false);
             }
         }
 
-        @Override
-        public void onMarkerReached(AudioTrack track) {
+        /**
+         * 在播放线程池中预读，预读量分为PREFETCH_BLOCKS块，每块至少为一次写入的大小
+         */
+        private PrefetchingPcmSource prefetch(PcmSource source) {
+            long bytes = (long) rateInHz * frameSize * prefetchMillis / 1000 / PREFETCH_BLOCKS;
+            int blockSize = (int) Math.max(minBufferSize, Math.min(bytes, MAX_PREFETCH_BLOCK_SIZE));
+            blockSize -= blockSize % frameSize;
+            return new PrefetchingPcmSource(source, blockSize, PREFETCH_BLOCKS,
+                    command -> AudioExecutor.get().submit(command, Process.THREAD_PRIORITY_AUDIO));
+        }
 
+        private AudioOutputDevice createOutput() {
+            outputLowLatency = lowLatency;
+            bufferTuner = null;
+            AudioOutputDevice device = outputFactory.create(outputLowLatency);
+            int capacity = device.getBufferCapacityInFrames();
+            if (outputLowLatency && capacity > 0) {
+                // 从半个最小缓冲区开始，欠载时每次增加半个
+                int step = Math.max(1, minBufferSize / frameSize / 2);
+                bufferTuner = new BufferSizeTuner(step, step, Math.max(step, capacity));
+                bufferTuner.setBufferFrames(device.setBufferSizeInFrames(step));
+                bufferSizeFrames = bufferTuner.getBufferFrames();
+                Log.d(TAG, "low latency output, bufferSizeFrames = " + bufferSizeFrames);
+            } else {
+                bufferSizeFrames = device.getBufferSizeInFrames();
+            }
+            return device;
         }
 
-        @Override
-        public void onPeriodicNotification(AudioTrack track) {
-            int playFrame = audioTrack.getPlaybackHeadPosition();
-            int rate = audioTrack.getPlaybackRate();
-            //计算播放到了多少s
-            float currentPlayTime = playFrame * 1.0f / rate;
-            if (null != processListener) {
-                processHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        processListener.onPlayTime(Math.round(currentPlayTime));
-                    }
-                });
+        /**
+         * 预热的输出设备与当前的低延迟设置不一致时重建
+         */
+        private synchronized void ensureOutput() {
+            if (output != null && outputLowLatency != lowLatency) {
+                output.release();
+                output = null;
+            }
+            if (output == null) {
+                output = createOutput();
             }
         }
 
+        private void tuneBufferSize() {
+            int frames = bufferTuner.onUnderrunCount(output.getUnderrunCount());
+            if (frames > 0) {
+                bufferTuner.setBufferFrames(output.setBufferSizeInFrames(frames));
+                bufferSizeFrames = bufferTuner.getBufferFrames();
+                Log.d(TAG, "underrun, bufferSizeFrames = " + bufferSizeFrames);
+            }
+        }
+
+        /**
+         * 取当前的输出位置发布到播放时钟，并用已写入的帧数减去已输出的帧数估算输出延迟。
+         * 能取到时间戳时按时间戳推算，否则用播放头位置；跳转后旧的时间戳可能超过已写入的帧数，此时不采用
+         */
+        private void updateTiming(long nowNanos) {
+            long presentedFrame;
+            long presentedNanos;
+            if (output.getTimestamp(timestamp) && timestamp[0] <= framesWritten) {
+                presentedFrame = timestamp[0];
+                presentedNanos = timestamp[1];
+            } else {
+                presentedFrame = output.getPlaybackHeadPosition();
+                presentedNanos = nowNanos;
+            }
+            // 与pause()互斥，避免暂停后又发布为运行状态
+            synchronized (pauseLock) {
+                if (!isPaused) {
+                    clock.publish(startFrame + presentedFrame, presentedNanos, startFrame + framesWritten, true);
+                }
+            }
+            long pendingFrames = framesWritten - presentedFrame
+                    - (nowNanos - presentedNanos) * rateInHz / 1000000000L;
+            if (pendingFrames >= 0) {
+                metricsCollector.setOutputLatency(pendingFrames * 1000000000L / rateInHz);
+            }
+            // 播放位置每前进一秒回调一次进度
+            long second = (startFrame + presentedFrame) / rateInHz;
+            if (second != lastPlayTimeSecond && null != processListener) {
+                lastPlayTimeSecond = second;
+                processHandler.post(playTimeTask);
+            }
+        }
+
+        /**
+         * 播放结束时调用，预热模式下只清空数据保留输出设备
+         */
+        private synchronized void releaseOutput() {
+            AudioOutputDevice device = output;
+            if (keepWarm) {
+                device.flush();
+            } else {
+                device.release();
+                output = null;
+            }
+        }
+
+        synchronized void prepare() {
+            keepWarm = true;
+            if (!isRunning.get() && output == null) {
+                output = createOutput();
+            }
+        }
+
+        synchronized void release() {
+            keepWarm = false;
+            AudioOutputDevice device = output;
+            if (!isRunning.get() && device != null) {
+                device.release();
+                output = null;
+            }
+        }
+
+        long getOutputLatencyNanos() {
+            return metricsCollector.getOutputLatency();
+        }
+
+        AudioMetrics metrics() {
+            AudioOutputDevice device = output;
+            int underrun = isPlaying.get() && device != null ? device.getUnderrunCount() : finalUnderrunCount;
+            return metricsCollector.snapshot(0, underrun, 0, 0, 0);
+        }
+
         public void stop() {
             Log.d(TAG, "stop play Runnable");
-            if (null != audioTrack) {
+            AudioOutputDevice device = output;
+            if (null != device) {
                 isPlaying.set(false);
-                audioTrack.stop();
+                device.stop();
+                synchronized (pauseLock) {
+                    pauseLock.notifyAll();
+                }
+            }
+        }
+
+        void seekTo(long frame) {
+            pendingSeekFrame = Math.max(0, frame);
+        }
+
+        void pause() {
+            synchronized (pauseLock) {
+                if (isPlaying.get()) {
+                    isPaused = true;
+                    output.pause();
+                    clock.freeze();
+                }
+            }
+        }
+
+        void resume() {
+            synchronized (pauseLock) {
+                if (isPaused && isPlaying.get()) {
+                    output.play();
+                    clock.resume();
+                }
+                isPaused = false;
+                pauseLock.notifyAll();
+            }
+        }
+
+        long getPositionFrame() {
+            return isPlaying.get() ? clock.getPositionFrames() : 0;
+        }
+    }
+
+    /**
+     * 编码文件边读边解码；wav文件跳过文件头直接播放其中的pcm数据，只解析文件头，不扫描整个文件。
+     * 文件的采样格式、采样率或声道数与播放参数不一致时边读边转换，重采样在16bit下进行
+     */
+    static PcmSource openSource(File file, int rateInHz, int channelCount, int encoding) throws IOException {
+        SampleFormat format = SampleFormat.fromEncoding(encoding);
+        WavHeader header;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (EncodedPcmSource.isEncodedFile(raf.getChannel())) {
+                EncodedPcmSource source = new EncodedPcmSource(file);
+                return convertFormat(convertIfNeeded(source, source.getSampleRate(), source.getChannels(),
+                        rateInHz, channelCount), SampleFormat.PCM_16BIT, format, channelCount);
+            }
+            header = WavUtil.readHeader(raf.getChannel());
+        }
+        if (header == null) {
+            return new MappedPcmSource(file, 0, format.getFrameSize(channelCount));
+        }
+        SampleFormat fileFormat = SampleFormat.fromWav(header);
+        if (fileFormat == null) {
+            Log.w(TAG, "unsupported wav format, play as is: " + header);
+            return new MappedPcmSource(file, header.getDataOffset(), header.getDataSize(),
+                    format.getFrameSize(channelCount), MappedPcmSource.DEFAULT_WINDOW_SIZE);
+        }
+        PcmSource source = new MappedPcmSource(file, header.getDataOffset(), header.getDataSize(),
+                fileFormat.getFrameSize(header.getChannels()), MappedPcmSource.DEFAULT_WINDOW_SIZE);
+        if (header.getSampleRate() == rateInHz && header.getChannels() == channelCount) {
+            return convertFormat(source, fileFormat, format, channelCount);
+        }
+        source = convertFormat(source, fileFormat, SampleFormat.PCM_16BIT, header.getChannels());
+        source = convertIfNeeded(source, header.getSampleRate(), header.getChannels(), rateInHz, channelCount);
+        return convertFormat(source, SampleFormat.PCM_16BIT, format, channelCount);
+    }
+
+    private static PcmSource convertFormat(PcmSource source, SampleFormat from, SampleFormat to, int channels) {
+        if (from == to) {
+            return source;
+        }
+        Log.d(TAG, "convert " + from + " to " + to);
+        return new FormatConvertingPcmSource(source, from, to, channels);
+    }
+
+    private static PcmSource convertIfNeeded(PcmSource source, int sourceRate, int sourceChannels,
+                                             int rateInHz, int channelCount) {
+        if (sourceRate == rateInHz && sourceChannels == channelCount) {
+            return source;
+        }
+        Log.d(TAG, "convert " + sourceRate + "Hz/" + sourceChannels + "ch to " + rateInHz + "Hz/" + channelCount + "ch");
+        return new ResamplingPcmSource(source, sourceRate, sourceChannels, rateInHz, channelCount,
+                Resampler.Quality.MEDIUM);
+    }
+
+    /**
+     * CHANNEL_IN_STEREO与CHANNEL_OUT_STEREO的值相同，CHANNEL_IN_MONO作为输出声道是错误的，统一转换为输出声道
+     */
+    static int outputChannelMask(int channelConfig) {
+        switch (channelConfig) {
+            case AudioFormat.CHANNEL_IN_MONO:
+                return AudioFormat.CHANNEL_OUT_MONO;
+            case AudioFormat.CHANNEL_IN_STEREO:
+                return AudioFormat.CHANNEL_OUT_STEREO;
+            default:
+                return channelConfig;
+        }
+    }
+
+    /**
+     * 按设置的间隔在Handler线程回调播放位置，见{@link #setOnPositionListener}
+     */
+    public interface OnPositionListener {
+        void onPosition(long positionFrames, long positionMicros);
+    }
+
+    /**
+     * 定时读取播放时钟并回调，始终复用自身这一个Runnable，Handler的消息来自消息池，每次回调不分配内存
+     */
+    private final class PositionTicker implements Runnable {
+        private volatile OnPositionListener listener;
+        private volatile Handler handler;
+        private volatile long intervalMillis;
+        private volatile boolean active;
+
+        void start() {
+            Handler h = handler;
+            if (listener == null || h == null) {
+                return;
+            }
+            active = true;
+            h.removeCallbacks(this);
+            h.post(this);
+        }
+
+        /**
+         * 播放结束时调用，最后再回调一次停止时的位置
+         */
+        void stop() {
+            Handler h = handler;
+            if (active && h != null) {
+                active = false;
+                h.removeCallbacks(this);
+                h.post(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            OnPositionListener l = listener;
+            if (l == null) {
+                return;
+            }
+            long frames = mClock.getPositionFrames();
+            l.onPosition(frames, mClock.framesToMicros(frames));
+            Handler h = handler;
+            if (active && h != null) {
+                h.postDelayed(this, intervalMillis);
             }
         }
     }
@@ -147,25 +557,81 @@ public class AudioTracker {
         void onPlayTime(int currentPlayTime);
     }
 
+    /**
+     * 播放pcm文件、wav文件(直接播放其中的pcm数据)或{@link AudioRecorder#setCodec}生成的编码文件，
+     * 文件的格式需要与构造参数一致
+     */
     public void startPlay(String file, ProcessListener processListener, Handler handler) throws FileNotFoundException {
         File destFile = new File(file);
         if (!destFile.exists()) {
             throw new FileNotFoundException("file not exists:" + file);
         }
+        start(file, null, processListener, handler);
+    }
+
+    /**
+     * 播放任意数据源(内存、InputStream、实时数据等)，数据须为构造参数指定的格式，播放结束后关闭source；
+     * 正在播放时忽略本次调用，source仍由调用者关闭
+     */
+    public void startPlay(PcmSource source, ProcessListener processListener, Handler handler) {
+        if (source == null) {
+            throw new IllegalArgumentException("source is null");
+        }
+        start(null, source, processListener, handler);
+    }
+
+    private void start(String file, PcmSource source, ProcessListener processListener, Handler handler) {
+        long requestNanos = System.nanoTime();
         if (processListener != null && handler == null) {
             throw new IllegalArgumentException("processListener must has handler!");
         }
-        if (null == mPlayRunnable) {
-            mPlayRunnable = new AudioTrackRunnable(mRateInHz, mChannelConfig, mAudioFormat);
-        }
-        if (mPlayRunnable.isPlaying.get()) {
+        ensureRunnable();
+        // 上一次播放的任务已提交但还未开始或还未结束时，不能修改其参数
+        if (!mPlayRunnable.isRunning.compareAndSet(false, true)) {
             Log.e(TAG, "isPlaying...");
             return;
         }
         mPlayRunnable.fileName = file;
+        mPlayRunnable.pendingSource = source;
+        mPlayRunnable.prefetchMillis = mPrefetchMillis;
         mPlayRunnable.processListener = processListener;
         mPlayRunnable.processHandler = handler;
-        new Thread(mPlayRunnable).start();
+        mPlayRunnable.metricsListener = mMetricsListener;
+        mPlayRunnable.lowLatency = mLowLatency;
+        mPlayRunnable.positionTicker = mPositionTicker;
+        // 在提交任务前清空上一次的数据，启动延迟从这里开始计算
+        mPlayRunnable.metricsCollector.start(mMetricsListener != null ? mMetricsIntervalMillis : 0, requestNanos);
+        AudioExecutor.get().submit(mPlayRunnable, Process.THREAD_PRIORITY_URGENT_AUDIO);
+        mPositionTicker.start();
+    }
+
+    private void ensureRunnable() {
+        if (null == mPlayRunnable) {
+            int minBufferSize = AudioTrack.getMinBufferSize(mRateInHz, mChannelConfig, mAudioFormat);
+            mPlayRunnable = new AudioTrackRunnable(mRateInHz, Integer.bitCount(mChannelConfig), mAudioFormat,
+                    minBufferSize, mClock, new AudioTrackOutput.Factory(mRateInHz, mChannelConfig, mAudioFormat,
+                    minBufferSize));
+        }
+    }
+
+    /**
+     * 预先创建AudioTrack并启动播放线程池，之后的startPlay不需要再创建；
+     * 调用后每次播放结束只停止不释放AudioTrack，直到{@link #release()}
+     */
+    public void prepare() {
+        ensureRunnable();
+        mPlayRunnable.lowLatency = mLowLatency;
+        mPlayRunnable.prepare();
+        AudioExecutor.get().prestart();
+    }
+
+    /**
+     * 释放{@link #prepare()}保留的AudioTrack，正在播放时在播放结束后释放
+     */
+    public void release() {
+        if (null != mPlayRunnable) {
+            mPlayRunnable.release();
+        }
     }
 
     public void stop() {
@@ -175,4 +641,122 @@ public class AudioTracker {
             }
         }
     }
+
+    /**
+     * 跳转到指定时间，按采样精确定位，不会重启播放线程或重新打开文件
+     */
+    public void seekTo(long millis) {
+        if (null != mPlayRunnable) {
+            mPlayRunnable.seekTo(millis * mRateInHz / 1000);
+        }
+    }
+
+    /**
+     * 暂停播放，播放线程和文件映射保持不变
+     */
+    public void pause() {
+        if (null != mPlayRunnable) {
+            mPlayRunnable.pause();
+        }
+    }
+
+    public void resume() {
+        if (null != mPlayRunnable) {
+            mPlayRunnable.resume();
+        }
+    }
+
+    /**
+     * 当前(或最近一次)播放的运行数据，未开始过播放时返回null
+     */
+    public AudioMetrics getMetrics() {
+        return null == mPlayRunnable ? null : mPlayRunnable.metrics();
+    }
+
+    /**
+     * 播放期间每隔intervalMillis在播放线程回调一次运行数据，传null关闭，下次startPlay时生效
+     */
+    public void setOnMetricsListener(AudioMetrics.OnMetricsListener listener, long intervalMillis) {
+        mMetricsListener = listener;
+        mMetricsIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * 低延迟模式：请求系统的快速输出通道(API 26以上为PERFORMANCE_MODE_LOW_LATENCY，以下为FLAG_LOW_LATENCY)，
+     * 从较小的缓冲区开始播放，出现欠载时逐步增大(API 24以上)。采样率与设备原生采样率
+     * ({@link AudioTrack#getNativeOutputSampleRate})一致时系统才会使用快速通道。
+     * 下次创建AudioTrack时生效，已{@link #prepare()}的AudioTrack会在下次startPlay时重建
+     */
+    public void setLowLatencyMode(boolean enabled) {
+        mLowLatency = enabled;
+    }
+
+    public boolean isLowLatencyMode() {
+        return mLowLatency;
+    }
+
+    /**
+     * 播放时在单独的线程中预读millis的数据(三缓冲)，存储或解码偶尔变慢时不会导致欠载；
+     * 传0关闭，播放实时数据时关闭可以减少延迟。下次startPlay时生效
+     */
+    public void setPrefetchMillis(int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("millis = " + millis);
+        }
+        mPrefetchMillis = millis;
+    }
+
+    /**
+     * 当前播放中预读数据未就绪导致播放线程等待的次数，未开启预读或未在播放时为0
+     */
+    public long getPrefetchStallCount() {
+        PrefetchingPcmSource source = null == mPlayRunnable ? null : mPlayRunnable.prefetchSource;
+        return source == null ? 0 : source.getStallCount();
+    }
+
+    /**
+     * AudioTrack当前实际使用的缓冲区帧数，还未创建过AudioTrack时为0
+     */
+    public int getBufferSizeInFrames() {
+        return null == mPlayRunnable ? 0 : mPlayRunnable.bufferSizeFrames;
+    }
+
+    /**
+     * 估算的输出延迟(毫秒)，即写入AudioTrack的数据多久之后从设备输出，尚未估算时为{@link AudioMetrics#UNKNOWN}
+     */
+    public long getOutputLatencyMillis() {
+        long nanos = null == mPlayRunnable ? AudioMetrics.UNKNOWN : mPlayRunnable.getOutputLatencyNanos();
+        return nanos == AudioMetrics.UNKNOWN ? AudioMetrics.UNKNOWN : nanos / 1000000;
+    }
+
+    /**
+     * 播放时钟，可以在任意线程(如每帧绘制时)查询精确到帧的播放位置，不加锁不分配内存
+     */
+    public PlaybackClock getClock() {
+        return mClock;
+    }
+
+    /**
+     * 播放期间每隔intervalMillis在handler所在线程回调播放位置，传null关闭，下次startPlay时生效。
+     * 只需要按屏幕刷新绘制时直接在绘制回调中查询{@link #getClock()}即可
+     */
+    public void setOnPositionListener(OnPositionListener listener, long intervalMillis, Handler handler) {
+        if (listener != null && handler == null) {
+            throw new IllegalArgumentException("listener must has handler!");
+        }
+        mPositionTicker.listener = listener;
+        mPositionTicker.handler = handler;
+        mPositionTicker.intervalMillis = Math.max(1, intervalMillis);
+    }
+
+    public boolean isPaused() {
+        return null != mPlayRunnable && mPlayRunnable.isPaused;
+    }
+
+    /**
+     * 当前播放位置(毫秒)
+     */
+    public long getCurrentPosition() {
+        return null == mPlayRunnable ? 0 : mPlayRunnable.getPositionFrame() * 1000 / mRateInHz;
+    }
 }
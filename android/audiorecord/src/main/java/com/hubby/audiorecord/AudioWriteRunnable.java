@@ -0,0 +1,230 @@
+package com.hubby.audiorecord;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 写文件线程，从{@link PcmRingBuffer}中取出采集到的数据合并写入各个输出(wav、pcm、编码文件)，
+ * 使采集线程不会因为磁盘IO(fsync、闪存GC等)卡顿而导致AudioRecord溢出
+ */
+class AudioWriteRunnable implements Runnable {
+    private static final String TAG = "AudioWriteRunnable";
+    // 缓冲区为空时的最长等待时间，生产者写入后会提前唤醒
+    private static final long AWAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // 单次合并写入的最大块数
+    private static final int MAX_GATHER_BLOCKS = 16;
+
+    private final PcmRingBuffer ringBuffer;
+    private PcmSink[] sinks;
+    private final SinkOpener sinkOpener;
+    private final PreRollBuffer preRoll;
+    private final ByteBuffer[] blocks = new ByteBuffer[MAX_GATHER_BLOCKS];
+    private final SilenceGate silenceGate;
+    private final AudioMetricsCollector metrics;
+    // 经过静音过滤后实际写入的块。取出pre-roll的块展开为pre-roll的两段加自身，并且立即写出，
+    // 所以最多为MAX_GATHER_BLOCKS个输入块加一次pre-roll的两段
+    private final ByteBuffer[] gathered = new ByteBuffer[MAX_GATHER_BLOCKS + 2];
+    private final int[] startPositions = new int[MAX_GATHER_BLOCKS + 2];
+    private long dataByteCount;
+    // 保存输出进度的间隔，0为不保存
+    private long checkpointIntervalNanos;
+    private long lastCheckpointNanos;
+    private volatile boolean finishing;
+    private volatile boolean failed;
+
+    /**
+     * 在写文件线程中打开输出，避免文件创建的耗时落在采集线程上
+     */
+    interface SinkOpener {
+        PcmSink[] open() throws IOException;
+    }
+
+    /**
+     * @param sinks 已打开的输出，写线程结束时负责关闭
+     */
+    AudioWriteRunnable(PcmRingBuffer ringBuffer, PcmSink... sinks) {
+        this(ringBuffer, null, null, sinks);
+    }
+
+    /**
+     * @param silenceGate 按块标记过滤静音数据，为null时写入全部数据
+     * @param metrics     记录写文件耗时，可为null
+     */
+    AudioWriteRunnable(PcmRingBuffer ringBuffer, SilenceGate silenceGate, AudioMetricsCollector metrics,
+                       PcmSink... sinks) {
+        this(ringBuffer, silenceGate, metrics, null, null, sinks);
+    }
+
+    /**
+     * 触发录音使用：在写线程中打开输出，先写入preRoll中保存的触发前数据，再写入缓冲区中的数据。
+     * preRoll中的数据不经过静音过滤
+     *
+     * @param preRoll 采集线程已停止写入的pre-roll缓冲区，可为null
+     */
+    AudioWriteRunnable(PcmRingBuffer ringBuffer, SilenceGate silenceGate, AudioMetricsCollector metrics,
+                       PreRollBuffer preRoll, SinkOpener sinkOpener) {
+        this(ringBuffer, silenceGate, metrics, preRoll, sinkOpener, (PcmSink[]) null);
+    }
+
+    private AudioWriteRunnable(PcmRingBuffer ringBuffer, SilenceGate silenceGate, AudioMetricsCollector metrics,
+                               PreRollBuffer preRoll, SinkOpener sinkOpener, PcmSink[] sinks) {
+        this.ringBuffer = ringBuffer;
+        this.silenceGate = silenceGate;
+        this.metrics = metrics;
+        this.preRoll = preRoll;
+        this.sinkOpener = sinkOpener;
+        this.sinks = sinks;
+    }
+
+    /**
+     * 每隔intervalNanos在写完一批数据后调用实现了{@link Checkpointable}的输出的checkpoint，
+     * 进程异常退出时最多丢失这段时间的数据；须在提交任务前调用
+     */
+    void setCheckpointInterval(long intervalNanos) {
+        this.checkpointIntervalNanos = intervalNanos;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (sinks == null) {
+                sinks = sinkOpener.open();
+            }
+            lastCheckpointNanos = System.nanoTime();
+            if (preRoll != null) {
+                flush(gathered, preRoll.drain(gathered, 0));
+            }
+            while (true) {
+                int count = ringBuffer.peek(blocks);
+                if (count == 0) {
+                    if (finishing && ringBuffer.isEmpty()) {
+                        break;
+                    }
+                    ringBuffer.await(AWAIT_NANOS);
+                    continue;
+                }
+                // 槽位中的数据总是从0开始
+                ByteBuffer[] out = blocks;
+                int outCount = count;
+                if (silenceGate != null) {
+                    out = gathered;
+                    outCount = 0;
+                    for (int i = 0; i < count; i++) {
+                        blocks[i].position(0);
+                        int n = silenceGate.filter(blocks[i], ringBuffer.getFlags(i), gathered, outCount);
+                        outCount += n;
+                        // 多于一块时写出了pre-roll，这两段引用SilenceGate内部的缓冲区，
+                        // 后面的静音块存入pre-roll时会覆盖它，须在处理下一块前写出
+                        if (n > 1 && i + 1 < count) {
+                            flush(gathered, outCount);
+                            outCount = 0;
+                        }
+                    }
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        blocks[i].position(0);
+                    }
+                }
+                flush(out, outCount);
+                for (int i = 0; i < count; i++) {
+                    blocks[i] = null;
+                }
+                ringBuffer.release(count);
+                checkpointIfDue();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "write file error!", e);
+            failed = true;
+        } finally {
+            if (silenceGate != null) {
+                silenceGate.finish();
+            }
+            close();
+        }
+        Log.d(TAG, "write finish, bytes = " + dataByteCount + " overrun = " + ringBuffer.getOverrunCount()
+                + " highWaterMark = " + ringBuffer.getHighWaterMark());
+    }
+
+    /**
+     * 写入out的前outCount块并清除引用
+     */
+    private void flush(ByteBuffer[] out, int outCount) throws IOException {
+        write(out, outCount);
+        for (int i = 0; i < outCount; i++) {
+            out[i] = null;
+        }
+    }
+
+    private void write(ByteBuffer[] out, int outCount) throws IOException {
+        if (outCount == 0) {
+            return;
+        }
+        for (int i = 0; i < outCount; i++) {
+            startPositions[i] = out[i].position();
+        }
+        long writeStart = System.nanoTime();
+        for (PcmSink sink : sinks) {
+            // 写完一个输出后复位再写下一个
+            for (int i = 0; i < outCount; i++) {
+                out[i].position(startPositions[i]);
+            }
+            sink.write(out, 0, outCount);
+        }
+        if (metrics != null) {
+            metrics.diskWriteLatency.record(System.nanoTime() - writeStart);
+        }
+        for (int i = 0; i < outCount; i++) {
+            dataByteCount += out[i].limit() - startPositions[i];
+        }
+    }
+
+    private void checkpointIfDue() throws IOException {
+        if (checkpointIntervalNanos <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - lastCheckpointNanos < checkpointIntervalNanos) {
+            return;
+        }
+        lastCheckpointNanos = now;
+        for (PcmSink sink : sinks) {
+            if (sink instanceof Checkpointable) {
+                ((Checkpointable) sink).checkpoint();
+            }
+        }
+        if (metrics != null) {
+            metrics.diskWriteLatency.record(System.nanoTime() - now);
+        }
+    }
+
+    /**
+     * 采集结束后调用，写线程会把缓冲区剩余的数据写完再退出
+     */
+    void finish() {
+        finishing = true;
+        ringBuffer.wakeUp();
+    }
+
+    /**
+     * 写文件失败后采集线程应停止采集
+     */
+    boolean isFailed() {
+        return failed;
+    }
+
+    private void close() {
+        if (sinks == null) {
+            return;
+        }
+        for (PcmSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                Log.e(TAG, "close failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.hubby.audiorecord;
+
+/**
+ * 自动增益：跟踪均方根电平，把增益逐块调向targetDb - 电平，增益的变化速度受限(降低快、提高慢)，
+ * 这一块的电平低于噪声门限时保持当前增益，不会把底噪和语音间隙放大。单独使用时响亮的瞬态可能超出满幅，通常后接{@link PeakLimiter}
+ */
+public final class AutomaticGainControl implements AudioProcessor {
+    public static final float DEFAULT_TARGET_DB = -20f;
+    public static final float DEFAULT_MAX_GAIN_DB = 24f;
+    public static final float DEFAULT_NOISE_FLOOR_DB = -55f;
+    // 均方根电平的平滑时间
+    private static final float RMS_WINDOW_MILLIS = 200f;
+    // 增益每秒最多降低和提高的dB
+    private static final float ATTACK_DB_PER_SECOND = 60f;
+    private static final float RELEASE_DB_PER_SECOND = 6f;
+    // 电平的下限，避免log10(0)
+    private static final float MIN_POWER = 1e-12f;
+
+    private volatile float targetDb;
+    private volatile float maxGainDb;
+    private volatile float noiseFloorDb;
+    private int channels = 1;
+    private int sampleRate;
+    private float rmsCoefficient;
+    // 以下只由采集线程访问
+    private float power;
+    private float gainDb;
+    private float gain = 1f;
+
+    public AutomaticGainControl() {
+        this(DEFAULT_TARGET_DB, DEFAULT_MAX_GAIN_DB, DEFAULT_NOISE_FLOOR_DB);
+    }
+
+    /**
+     * @param maxGainDb    最大增益，同时也是最大衰减
+     * @param noiseFloorDb 均方根电平低于此值时保持增益不变
+     */
+    public AutomaticGainControl(float targetDb, float maxGainDb, float noiseFloorDb) {
+        setTargetDb(targetDb);
+        setMaxGainDb(maxGainDb);
+        setNoiseFloorDb(noiseFloorDb);
+    }
+
+    public void setTargetDb(float targetDb) {
+        this.targetDb = targetDb;
+    }
+
+    public void setMaxGainDb(float maxGainDb) {
+        if (maxGainDb < 0) {
+            throw new IllegalArgumentException("maxGainDb = " + maxGainDb);
+        }
+        this.maxGainDb = maxGainDb;
+    }
+
+    public void setNoiseFloorDb(float noiseFloorDb) {
+        this.noiseFloorDb = noiseFloorDb;
+    }
+
+    /**
+     * 当前增益，单位dB
+     */
+    public float getGainDb() {
+        return gainDb;
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channels) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.rmsCoefficient = AudioProcessorChain.smoothingCoefficient(RMS_WINDOW_MILLIS, sampleRate);
+        this.power = 0;
+        this.gainDb = 0;
+        this.gain = 1f;
+    }
+
+    @Override
+    public void process(float[] samples, int frames) {
+        if (frames <= 0) {
+            return;
+        }
+        // 先按输入更新电平，得到这一块的目标增益，再从上一块的增益线性过渡过去
+        float p = power;
+        float blockSum = 0;
+        int index = 0;
+        for (int f = 0; f < frames; f++) {
+            float sum = 0;
+            for (int c = 0; c < channels; c++) {
+                float s = samples[index++];
+                sum += s * s;
+            }
+            blockSum += sum;
+            p += (sum / channels - p) * rmsCoefficient;
+        }
+        power = p;
+        // 用这一块的电平判断是否为底噪，平滑后的电平在声音结束后下降较慢，会在衰减过程中把增益抬高
+        float blockDb = 10 * (float) Math.log10(Math.max(MIN_POWER, blockSum / (frames * channels)));
+        if (blockDb >= noiseFloorDb) {
+            float levelDb = 10 * (float) Math.log10(Math.max(MIN_POWER, p));
+            float limit = maxGainDb;
+            float desired = Math.max(-limit, Math.min(limit, targetDb - levelDb));
+            float seconds = (float) frames / sampleRate;
+            if (desired < gainDb) {
+                gainDb = Math.max(desired, gainDb - ATTACK_DB_PER_SECOND * seconds);
+            } else {
+                gainDb = Math.min(desired, gainDb + RELEASE_DB_PER_SECOND * seconds);
+            }
+        }
+        float target = AudioProcessorChain.dbToGain(gainDb);
+        float g = gain;
+        float step = (target - g) / frames;
+        index = 0;
+        for (int f = 0; f < frames; f++) {
+            g += step;
+            for (int c = 0; c < channels; c++) {
+                samples[index++] *= g;
+            }
+        }
+        gain = target;
+    }
+}
@@ -0,0 +1,137 @@
+package com.hubby.audiorecord;
+
+import java.io.File;
+
+/**
+ * 批处理中的一个文件：输入wav或裸pcm文件，按设置的处理步骤输出wav文件(超过4GB时为RF64)。
+ * 处理顺序为去除首尾静音、增益归一化、转换采样格式，没有设置任何步骤时只复制音频数据
+ */
+public final class BatchJob {
+    private final File input;
+    private final File output;
+    private float normalizeDb = Float.NaN;
+    private boolean normalizeRms;
+    private float trimThresholdDb = Float.NaN;
+    private SampleFormat outputFormat;
+    // 输入为裸pcm时的格式
+    private int pcmSampleRate;
+    private int pcmChannels;
+    private SampleFormat pcmFormat;
+
+    public BatchJob(File input, File output) {
+        if (input.equals(output)) {
+            throw new IllegalArgumentException("output must differ from input: " + input);
+        }
+        this.input = input;
+        this.output = output;
+    }
+
+    /**
+     * 峰值归一化，整个文件乘以同一个增益使峰值为peakDb
+     *
+     * @param peakDb 目标峰值(dBFS)，不大于0
+     */
+    public BatchJob normalizePeak(float peakDb) {
+        if (!(peakDb <= 0)) {
+            throw new IllegalArgumentException("peakDb = " + peakDb);
+        }
+        normalizeDb = peakDb;
+        normalizeRms = false;
+        return this;
+    }
+
+    /**
+     * 响度归一化，按整个文件的RMS电平计算增益使其为rmsDb，增益受峰值限制，不会产生削波
+     *
+     * @param rmsDb 目标RMS电平(dBFS)，不大于0
+     */
+    public BatchJob normalizeRms(float rmsDb) {
+        if (!(rmsDb <= 0)) {
+            throw new IllegalArgumentException("rmsDb = " + rmsDb);
+        }
+        normalizeDb = rmsDb;
+        normalizeRms = true;
+        return this;
+    }
+
+    /**
+     * 去除开头和结尾所有声道都低于thresholdDb的部分
+     */
+    public BatchJob trimSilence(float thresholdDb) {
+        if (!(thresholdDb < 0)) {
+            throw new IllegalArgumentException("thresholdDb = " + thresholdDb);
+        }
+        trimThresholdDb = thresholdDb;
+        return this;
+    }
+
+    /**
+     * 输出的采样格式，默认与输入相同
+     */
+    public BatchJob convertTo(SampleFormat format) {
+        outputFormat = format;
+        return this;
+    }
+
+    /**
+     * 输入文件没有wav文件头时按此格式解析，如{@link AudioRecorder}保存的pcm文件
+     */
+    public BatchJob setPcmFormat(int sampleRate, int channels, SampleFormat format) {
+        if (sampleRate <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("sampleRate = " + sampleRate + " channels = " + channels);
+        }
+        pcmSampleRate = sampleRate;
+        pcmChannels = channels;
+        pcmFormat = format;
+        return this;
+    }
+
+    public File getInput() {
+        return input;
+    }
+
+    public File getOutput() {
+        return output;
+    }
+
+    boolean isNormalize() {
+        return !Float.isNaN(normalizeDb);
+    }
+
+    float getNormalizeDb() {
+        return normalizeDb;
+    }
+
+    boolean isNormalizeRms() {
+        return normalizeRms;
+    }
+
+    boolean isTrim() {
+        return !Float.isNaN(trimThresholdDb);
+    }
+
+    float getTrimThresholdDb() {
+        return trimThresholdDb;
+    }
+
+    SampleFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    int getPcmSampleRate() {
+        return pcmSampleRate;
+    }
+
+    int getPcmChannels() {
+        return pcmChannels;
+    }
+
+    SampleFormat getPcmFormat() {
+        return pcmFormat;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchJob{" + input + " -> " + output + "}";
+    }
+}
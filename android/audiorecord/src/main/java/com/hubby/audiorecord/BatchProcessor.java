@@ -0,0 +1,454 @@
+package com.hubby.audiorecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 录音文件的批量后处理(去除首尾静音、峰值/响度归一化、采样格式转换)：
+ * 多个文件同时处理，每个文件再按chunkFrames切分为多段在fork-join线程池中并行分析和转换。
+ * 输入输出都使用内存映射，每段只映射自己的区域；同时处理的文件数有上限，
+ * 占用的内存和地址空间只与并行度和段大小有关，与文件数量、文件大小无关
+ */
+public final class BatchProcessor implements Closeable {
+    // 默认每段的帧数
+    public static final int DEFAULT_CHUNK_FRAMES = 256 * 1024;
+    // 每段的最大帧数，保证每段映射的字节数不超过int范围
+    private static final int MAX_CHUNK_FRAMES = 16 * 1024 * 1024;
+    // 响度归一化时允许的最大峰值，留出余量避免转换为整数格式时削波
+    private static final float RMS_PEAK_CEILING_DB = -1f;
+    // 每段内部每次转换的采样数
+    private static final int BLOCK_SAMPLES = 4096;
+
+    public interface OnFileProcessedListener {
+        /**
+         * 在线程池中回调，成功或失败都会回调
+         */
+        void onFileProcessed(BatchResult result);
+    }
+
+    private final ForkJoinPool pool;
+    private int chunkFrames = DEFAULT_CHUNK_FRAMES;
+    private int maxConcurrentFiles;
+
+    public BatchProcessor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism 线程数
+     */
+    public BatchProcessor(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism = " + parallelism);
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.maxConcurrentFiles = parallelism;
+    }
+
+    /**
+     * 每段的帧数，即并行的最小单位，也决定了每段映射的大小
+     */
+    public void setChunkFrames(int frames) {
+        if (frames <= 0 || frames > MAX_CHUNK_FRAMES) {
+            throw new IllegalArgumentException("frames = " + frames);
+        }
+        chunkFrames = frames;
+    }
+
+    /**
+     * 同时处理的最大文件数，默认等于线程数
+     */
+    public void setMaxConcurrentFiles(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count = " + count);
+        }
+        maxConcurrentFiles = count;
+    }
+
+    /**
+     * 处理全部文件后返回，某个文件失败不影响其他文件
+     *
+     * @param listener 每个文件处理完成时回调，可为null
+     * @return 与jobs顺序一致的结果
+     * @throws InterruptedException 等待时被中断，尚未开始的文件不再处理
+     */
+    public List<BatchResult> process(List<BatchJob> jobs, OnFileProcessedListener listener)
+            throws InterruptedException {
+        Batch batch = new Batch(jobs, listener);
+        batch.start();
+        try {
+            batch.finished.await();
+        } catch (InterruptedException e) {
+            batch.cancelled = true;
+            throw e;
+        }
+        return Arrays.asList(batch.results);
+    }
+
+    /**
+     * 等待正在处理的任务结束后关闭线程池
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * 一次process调用，文件处理完成时从队列中取下一个文件，使同时处理的文件数不超过maxConcurrentFiles
+     */
+    private final class Batch {
+        private final List<BatchJob> jobs;
+        private final OnFileProcessedListener listener;
+        private final BatchResult[] results;
+        private final AtomicInteger next = new AtomicInteger();
+        private final CountDownLatch finished;
+        private final int chunk = chunkFrames;
+        private volatile boolean cancelled;
+
+        Batch(List<BatchJob> jobs, OnFileProcessedListener listener) {
+            this.jobs = jobs;
+            this.listener = listener;
+            this.results = new BatchResult[jobs.size()];
+            this.finished = new CountDownLatch(jobs.size());
+        }
+
+        void start() {
+            for (int i = 0; i < maxConcurrentFiles; i++) {
+                startNext();
+            }
+        }
+
+        private void startNext() {
+            final int index = next.getAndIncrement();
+            if (index >= results.length || cancelled) {
+                return;
+            }
+            pool.execute(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    try {
+                        BatchResult result = processFile(jobs.get(index), chunk);
+                        results[index] = result;
+                        if (listener != null) {
+                            listener.onFileProcessed(result);
+                        }
+                    } finally {
+                        finished.countDown();
+                        startNext();
+                    }
+                }
+            });
+        }
+    }
+
+    private static BatchResult processFile(BatchJob job, int chunkFrames) {
+        long start = System.nanoTime();
+        try (RandomAccessFile in = new RandomAccessFile(job.getInput(), "r")) {
+            FileChannel inChannel = in.getChannel();
+            WavHeader header = WavUtil.readHeader(inChannel);
+            Layout layout;
+            if (header != null) {
+                SampleFormat format = SampleFormat.fromWav(header);
+                if (format == null) {
+                    throw new IOException("unsupported wav format: " + header);
+                }
+                layout = new Layout(header.getSampleRate(), header.getChannels(), format, header.getDataOffset(),
+                        header.getDataSize());
+            } else if (job.getPcmFormat() != null) {
+                layout = new Layout(job.getPcmSampleRate(), job.getPcmChannels(), job.getPcmFormat(), 0,
+                        inChannel.size());
+            } else {
+                throw new IOException("not a wav file and pcm format not set: " + job.getInput());
+            }
+            long frames = layout.frames;
+
+            Stats stats = null;
+            if (job.isNormalize() || job.isTrim()) {
+                float threshold = job.isTrim() ? dbToLinear(job.getTrimThresholdDb()) : Float.MAX_VALUE;
+                stats = new AnalyzeTask(inChannel, layout, threshold, 0, frames, chunkFrames).invoke();
+            }
+            long first = 0;
+            long end = frames;
+            if (job.isTrim()) {
+                first = stats.firstLoud < 0 ? 0 : stats.firstLoud;
+                end = stats.firstLoud < 0 ? 0 : stats.lastLoud + 1;
+            }
+            float gain = 1;
+            if (job.isNormalize() && stats.peak > 0) {
+                gain = normalizeGain(job, stats);
+            }
+            SampleFormat outFormat = job.getOutputFormat() != null ? job.getOutputFormat() : layout.format;
+            long outBytes = (end - first) * outFormat.getFrameSize(layout.channels);
+            try (RandomAccessFile out = new RandomAccessFile(job.getOutput(), "rw")) {
+                out.setLength(0);
+                out.setLength(WavUtil.RF64_HEADER_SIZE + outBytes);
+                FileChannel outChannel = out.getChannel();
+                outChannel.write(ByteBuffer.wrap(WavUtil.generateRf64FileHeader(outBytes, layout.sampleRate,
+                        layout.channels, outFormat)), 0);
+                new ConvertTask(inChannel, layout, outChannel, outFormat, gain, first, first, end, chunkFrames)
+                        .invoke();
+            }
+            float peakDb = stats != null ? linearToDb(stats.peak) : Float.NaN;
+            float rmsDb = stats != null ? rmsDb(stats) : Float.NaN;
+            return new BatchResult(job, frames, end - first, peakDb, rmsDb, linearToDb(gain),
+                    System.nanoTime() - start);
+        } catch (IOException e) {
+            return failed(job, e, start);
+        } catch (RuntimeException e) {
+            IOException cause = findIOException(e);
+            return failed(job, cause != null ? cause : new IOException("process failed", e), start);
+        }
+    }
+
+    private static BatchResult failed(BatchJob job, IOException error, long start) {
+        // 不保留不完整的输出
+        if (job.getOutput().exists() && !job.getOutput().delete()) {
+            error.addSuppressed(new IOException("delete failed: " + job.getOutput()));
+        }
+        return new BatchResult(job, error, System.nanoTime() - start);
+    }
+
+    /**
+     * 分段任务中的IOException被包装为RuntimeException抛出，跨线程时可能再被包装一层
+     */
+    private static IOException findIOException(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof IOException) {
+                return (IOException) t;
+            }
+        }
+        return null;
+    }
+
+    private static float normalizeGain(BatchJob job, Stats stats) {
+        float peakGain = dbToLinear(job.getNormalizeDb()) / stats.peak;
+        if (!job.isNormalizeRms()) {
+            return peakGain;
+        }
+        float rms = (float) Math.sqrt(stats.sumSquares / Math.max(1, stats.samples));
+        float rmsGain = rms > 0 ? dbToLinear(job.getNormalizeDb()) / rms : 1;
+        return Math.min(rmsGain, dbToLinear(RMS_PEAK_CEILING_DB) / stats.peak);
+    }
+
+    private static float rmsDb(Stats stats) {
+        return linearToDb((float) Math.sqrt(stats.sumSquares / Math.max(1, stats.samples)));
+    }
+
+    private static float dbToLinear(float db) {
+        return (float) Math.pow(10, db / 20);
+    }
+
+    private static float linearToDb(float value) {
+        return (float) (20 * Math.log10(value));
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size) {
+        try {
+            MappedByteBuffer buffer = channel.map(mode, position, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 输入数据的格式和位置
+     */
+    private static final class Layout {
+        final int sampleRate;
+        final int channels;
+        final SampleFormat format;
+        final int frameSize;
+        final long dataOffset;
+        final long frames;
+
+        Layout(int sampleRate, int channels, SampleFormat format, long dataOffset, long dataSize) {
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.format = format;
+            this.frameSize = format.getFrameSize(channels);
+            this.dataOffset = dataOffset;
+            this.frames = dataSize / frameSize;
+        }
+    }
+
+    /**
+     * 一段数据的电平统计，firstLoud/lastLoud为超过阈值的第一帧和最后一帧，没有时为-1
+     */
+    private static final class Stats {
+        float peak;
+        double sumSquares;
+        long samples;
+        long firstLoud = -1;
+        long lastLoud = -1;
+
+        Stats merge(Stats later) {
+            peak = Math.max(peak, later.peak);
+            sumSquares += later.sumSquares;
+            samples += later.samples;
+            if (firstLoud < 0) {
+                firstLoud = later.firstLoud;
+            }
+            if (later.lastLoud >= 0) {
+                lastLoud = later.lastLoud;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * 第一遍：并行统计峰值、平方和以及超过阈值的首尾帧
+     */
+    private static final class AnalyzeTask extends RecursiveTask<Stats> {
+        // ForkJoinTask实现了Serializable，任务只在进程内执行，不会被序列化
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final Layout layout;
+        private final float threshold;
+        private final long from;
+        private final long to;
+        private final int chunkFrames;
+
+        AnalyzeTask(FileChannel channel, Layout layout, float threshold, long from, long to, int chunkFrames) {
+            this.channel = channel;
+            this.layout = layout;
+            this.threshold = threshold;
+            this.from = from;
+            this.to = to;
+            this.chunkFrames = chunkFrames;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from > chunkFrames) {
+                long mid = from + (to - from) / 2;
+                AnalyzeTask left = new AnalyzeTask(channel, layout, threshold, from, mid, chunkFrames);
+                AnalyzeTask right = new AnalyzeTask(channel, layout, threshold, mid, to, chunkFrames);
+                right.fork();
+                return left.compute().merge(right.join());
+            }
+            Stats stats = new Stats();
+            if (to <= from) {
+                return stats;
+            }
+            int channels = layout.channels;
+            ByteBuffer data = map(channel, FileChannel.MapMode.READ_ONLY,
+                    layout.dataOffset + from * layout.frameSize, (to - from) * layout.frameSize);
+            int blockFrames = Math.max(1, BLOCK_SAMPLES / channels);
+            float[] samples = new float[blockFrames * channels];
+            float peak = 0;
+            double sumSquares = 0;
+            for (long frame = from; frame < to; ) {
+                int n = (int) Math.min(blockFrames, to - frame);
+                layout.format.toFloat(data, (int) ((frame - from) * layout.frameSize), samples, 0, n * channels);
+                for (int f = 0, i = 0; f < n; f++) {
+                    float framePeak = 0;
+                    for (int c = 0; c < channels; c++, i++) {
+                        float value = samples[i];
+                        sumSquares += value * value;
+                        float abs = Math.abs(value);
+                        if (abs > framePeak) {
+                            framePeak = abs;
+                        }
+                    }
+                    if (framePeak > peak) {
+                        peak = framePeak;
+                    }
+                    if (framePeak >= threshold) {
+                        if (stats.firstLoud < 0) {
+                            stats.firstLoud = frame + f;
+                        }
+                        stats.lastLoud = frame + f;
+                    }
+                }
+                frame += n;
+            }
+            stats.peak = peak;
+            stats.sumSquares = sumSquares;
+            stats.samples = (to - from) * channels;
+            return stats;
+        }
+    }
+
+    /**
+     * 第二遍：并行把输入的[from, to)帧乘以增益、转换格式后写入输出中对应的位置
+     */
+    private static final class ConvertTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel in;
+        private final Layout layout;
+        private final FileChannel out;
+        private final SampleFormat outFormat;
+        private final float gain;
+        // 输出的第一帧对应的输入帧
+        private final long origin;
+        private final long from;
+        private final long to;
+        private final int chunkFrames;
+
+        ConvertTask(FileChannel in, Layout layout, FileChannel out, SampleFormat outFormat, float gain,
+                    long origin, long from, long to, int chunkFrames) {
+            this.in = in;
+            this.layout = layout;
+            this.out = out;
+            this.outFormat = outFormat;
+            this.gain = gain;
+            this.origin = origin;
+            this.from = from;
+            this.to = to;
+            this.chunkFrames = chunkFrames;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > chunkFrames) {
+                long mid = from + (to - from) / 2;
+                invokeAll(new ConvertTask(in, layout, out, outFormat, gain, origin, from, mid, chunkFrames),
+                        new ConvertTask(in, layout, out, outFormat, gain, origin, mid, to, chunkFrames));
+                return;
+            }
+            if (to <= from) {
+                return;
+            }
+            int channels = layout.channels;
+            int outFrameSize = outFormat.getFrameSize(channels);
+            ByteBuffer src = map(in, FileChannel.MapMode.READ_ONLY,
+                    layout.dataOffset + from * layout.frameSize, (to - from) * layout.frameSize);
+            ByteBuffer dst = map(out, FileChannel.MapMode.READ_WRITE,
+                    WavUtil.RF64_HEADER_SIZE + (from - origin) * outFrameSize, (to - from) * outFrameSize);
+            if (gain == 1 && outFormat == layout.format) {
+                dst.put(src);
+                return;
+            }
+            int blockFrames = Math.max(1, BLOCK_SAMPLES / channels);
+            float[] samples = new float[blockFrames * channels];
+            for (long frame = from; frame < to; ) {
+                int n = (int) Math.min(blockFrames, to - frame);
+                int count = n * channels;
+                layout.format.toFloat(src, (int) ((frame - from) * layout.frameSize), samples, 0, count);
+                if (gain != 1) {
+                    for (int i = 0; i < count; i++) {
+                        samples[i] *= gain;
+                    }
+                }
+                outFormat.fromFloat(samples, 0, dst, (int) ((frame - from) * outFrameSize), count);
+                frame += n;
+            }
+        }
+    }
+}
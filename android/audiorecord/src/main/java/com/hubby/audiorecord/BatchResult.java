@@ -0,0 +1,95 @@
+package com.hubby.audiorecord;
+
+import java.io.IOException;
+
+/**
+ * 一个文件的处理结果，分析得到的电平只在设置了归一化或去除静音时有效，否则为NaN
+ */
+public final class BatchResult {
+    private final BatchJob job;
+    private final IOException error;
+    private final long inputFrames;
+    private final long outputFrames;
+    private final float peakDb;
+    private final float rmsDb;
+    private final float gainDb;
+    private final long elapsedNanos;
+
+    BatchResult(BatchJob job, long inputFrames, long outputFrames, float peakDb, float rmsDb, float gainDb,
+                long elapsedNanos) {
+        this.job = job;
+        this.error = null;
+        this.inputFrames = inputFrames;
+        this.outputFrames = outputFrames;
+        this.peakDb = peakDb;
+        this.rmsDb = rmsDb;
+        this.gainDb = gainDb;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    BatchResult(BatchJob job, IOException error, long elapsedNanos) {
+        this.job = job;
+        this.error = error;
+        this.inputFrames = 0;
+        this.outputFrames = 0;
+        this.peakDb = Float.NaN;
+        this.rmsDb = Float.NaN;
+        this.gainDb = Float.NaN;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public BatchJob getJob() {
+        return job;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * 处理失败的原因，成功时为null；失败时不保留输出文件
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    public long getInputFrames() {
+        return inputFrames;
+    }
+
+    public long getOutputFrames() {
+        return outputFrames;
+    }
+
+    /**
+     * 输入的峰值电平(dBFS)
+     */
+    public float getPeakDb() {
+        return peakDb;
+    }
+
+    /**
+     * 输入的RMS电平(dBFS)
+     */
+    public float getRmsDb() {
+        return rmsDb;
+    }
+
+    /**
+     * 归一化使用的增益(dB)，没有归一化时为0
+     */
+    public float getGainDb() {
+        return gainDb;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return error != null ? "BatchResult{" + job + ", error=" + error + "}"
+                : "BatchResult{" + job + ", frames=" + inputFrames + "->" + outputFrames
+                + ", peak=" + peakDb + "dB, rms=" + rmsDb + "dB, gain=" + gainDb + "dB}";
+    }
+}
@@ -0,0 +1,57 @@
+package com.hubby.audiorecord;
+
+/**
+ * 按位读取{@link BitWriter}写入的数据
+ */
+final class BitReader {
+    private byte[] buffer;
+    private int position;
+    private int end;
+    private long accumulator;
+    private int bitCount;
+
+    void reset(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.end = offset + length;
+        this.accumulator = 0;
+        this.bitCount = 0;
+    }
+
+    /**
+     * 读取n位无符号数，n不超过32
+     */
+    int read(int n) {
+        if (n == 0) {
+            return 0;
+        }
+        while (bitCount < n) {
+            accumulator = (accumulator << 8) | (position < end ? buffer[position++] & 0xff : 0);
+            bitCount += 8;
+        }
+        bitCount -= n;
+        return (int) ((accumulator >>> bitCount) & (0xffffffffL >>> (32 - n)));
+    }
+
+    /**
+     * 读取连续的1直到遇到0，返回1的个数
+     */
+    int readUnary() {
+        int q = 0;
+        while (true) {
+            if (bitCount == 0) {
+                accumulator = position < end ? buffer[position++] & 0xff : 0;
+                bitCount = 8;
+            }
+            // 剩余的bitCount位中从高位开始连续1的个数
+            long mask = (1L << bitCount) - 1;
+            int ones = Long.numberOfLeadingZeros(~accumulator & mask) - (64 - bitCount);
+            if (ones < bitCount) {
+                bitCount -= ones + 1;
+                return q + ones;
+            }
+            q += bitCount;
+            bitCount = 0;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.hubby.audiorecord;
+
+/**
+ * 按位写入byte数组，高位在前
+ */
+final class BitWriter {
+    private byte[] buffer;
+    private int position;
+    private long accumulator;
+    private int bitCount;
+
+    void reset(byte[] buffer, int offset) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.accumulator = 0;
+        this.bitCount = 0;
+    }
+
+    /**
+     * 写入value的低n位，n不超过32
+     */
+    void write(int value, int n) {
+        if (n == 0) {
+            return;
+        }
+        accumulator = (accumulator << n) | (value & (0xffffffffL >>> (32 - n)));
+        bitCount += n;
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            buffer[position++] = (byte) (accumulator >>> bitCount);
+        }
+    }
+
+    /**
+     * 写入q个1和一个0
+     */
+    void writeUnary(int q) {
+        while (q >= 31) {
+            write(0x7fffffff, 31);
+            q -= 31;
+        }
+        write(((1 << q) - 1) << 1, q + 1);
+    }
+
+    /**
+     * 补齐最后一个字节
+     *
+     * @return 写入的结束位置
+     */
+    int finish() {
+        if (bitCount > 0) {
+            buffer[position++] = (byte) (accumulator << (8 - bitCount));
+            bitCount = 0;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,68 @@
+package com.hubby.audiorecord;
+
+/**
+ * 低延迟播放时调整AudioTrack实际使用的缓冲区大小：从较小的缓冲开始，每观察到新的欠载就增加一档，
+ * 直到不再欠载或达到AudioTrack的容量。只增不减，避免在临界值附近反复欠载
+ */
+final class BufferSizeTuner {
+    private final int stepFrames;
+    private final int maxFrames;
+    private int bufferFrames;
+    private int lastUnderrunCount;
+
+    /**
+     * @param initialFrames 初始缓冲帧数
+     * @param stepFrames    每次欠载增加的帧数
+     * @param maxFrames     缓冲区容量，即可以设置的最大帧数
+     */
+    BufferSizeTuner(int initialFrames, int stepFrames, int maxFrames) {
+        if (initialFrames <= 0 || stepFrames <= 0 || maxFrames < initialFrames) {
+            throw new IllegalArgumentException("initialFrames = " + initialFrames + " stepFrames = " + stepFrames
+                    + " maxFrames = " + maxFrames);
+        }
+        this.stepFrames = stepFrames;
+        this.maxFrames = maxFrames;
+        this.bufferFrames = initialFrames;
+    }
+
+    /**
+     * 开始播放时调用，以AudioTrack当前的欠载次数为基准
+     */
+    void reset(int underrunCount) {
+        lastUnderrunCount = underrunCount;
+    }
+
+    /**
+     * 每次写入后传入AudioTrack累计的欠载次数
+     *
+     * @return 需要设置的新缓冲帧数，不需要调整时返回0
+     */
+    int onUnderrunCount(int underrunCount) {
+        if (underrunCount <= lastUnderrunCount) {
+            lastUnderrunCount = underrunCount;
+            return 0;
+        }
+        lastUnderrunCount = underrunCount;
+        if (bufferFrames >= maxFrames) {
+            return 0;
+        }
+        return Math.min(maxFrames, bufferFrames + stepFrames);
+    }
+
+    /**
+     * 设置后AudioTrack实际采用的帧数可能与请求的不同，以实际值为准
+     */
+    void setBufferFrames(int frames) {
+        if (frames > 0) {
+            bufferFrames = Math.min(frames, maxFrames);
+        }
+    }
+
+    int getBufferFrames() {
+        return bufferFrames;
+    }
+
+    int getMaxFrames() {
+        return maxFrames;
+    }
+}
@@ -0,0 +1,53 @@
+package com.hubby.audiorecord;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 内存中的pcm数据源，播放position~limit之间的数据，读取返回数据的视图，不拷贝
+ */
+public class ByteBufferPcmSource implements PcmSource {
+    private final ByteBuffer data;
+    private final ByteBuffer view;
+    private final int length;
+    private int position;
+
+    /**
+     * @param data 播放格式的pcm数据，不修改其position和limit，播放期间不能改变其内容
+     */
+    public ByteBufferPcmSource(ByteBuffer data) {
+        this.data = data.slice().order(ByteOrder.nativeOrder());
+        this.view = this.data.duplicate().order(ByteOrder.nativeOrder());
+        this.length = this.data.remaining();
+    }
+
+    @Override
+    public ByteBuffer read(int maxBytes) {
+        if (position >= length) {
+            return null;
+        }
+        int end = (int) Math.min(length, (long) position + maxBytes);
+        view.limit(end).position(position);
+        position = end;
+        return view;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void seek(long bytePosition) {
+        position = (int) Math.max(0, Math.min(bytePosition, length));
+    }
+
+    @Override
+    public void close() {
+    }
+}
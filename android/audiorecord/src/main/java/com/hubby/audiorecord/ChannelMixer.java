@@ -0,0 +1,82 @@
+package com.hubby.audiorecord;
+
+/**
+ * 声道混合：多声道缩混为少声道时对应声道取平均，少声道扩展为多声道时复制，混合矩阵在构造时计算
+ */
+public final class ChannelMixer {
+    private final int inChannels;
+    private final int outChannels;
+    // matrix[out * inChannels + in]
+    private final float[] matrix;
+
+    public ChannelMixer(int inChannels, int outChannels) {
+        if (inChannels <= 0 || outChannels <= 0) {
+            throw new IllegalArgumentException("inChannels = " + inChannels + " outChannels = " + outChannels);
+        }
+        this.inChannels = inChannels;
+        this.outChannels = outChannels;
+        this.matrix = new float[outChannels * inChannels];
+        if (outChannels >= inChannels) {
+            for (int o = 0; o < outChannels; o++) {
+                matrix[o * inChannels + o % inChannels] = 1f;
+            }
+        } else {
+            // 输入声道i混入输出声道i % outChannels
+            int[] counts = new int[outChannels];
+            for (int i = 0; i < inChannels; i++) {
+                counts[i % outChannels]++;
+            }
+            for (int i = 0; i < inChannels; i++) {
+                int o = i % outChannels;
+                matrix[o * inChannels + i] = 1f / counts[o];
+            }
+        }
+    }
+
+    public boolean isPassThrough() {
+        return inChannels == outChannels;
+    }
+
+    /**
+     * 混合frames帧交错数据，in和out可以是同一个数组但区域不能重叠
+     */
+    public void mix(short[] in, int inOffset, int frames, short[] out, int outOffset) {
+        if (isPassThrough()) {
+            System.arraycopy(in, inOffset, out, outOffset, frames * inChannels);
+            return;
+        }
+        if (inChannels == 2 && outChannels == 1) {
+            for (int f = 0; f < frames; f++, inOffset += 2) {
+                out[outOffset + f] = (short) ((in[inOffset] + in[inOffset + 1]) >> 1);
+            }
+            return;
+        }
+        if (inChannels == 1) {
+            for (int f = 0; f < frames; f++) {
+                short s = in[inOffset + f];
+                for (int o = 0; o < outChannels; o++) {
+                    out[outOffset++] = s;
+                }
+            }
+            return;
+        }
+        for (int f = 0; f < frames; f++, inOffset += inChannels) {
+            for (int o = 0; o < outChannels; o++) {
+                float acc = 0;
+                int row = o * inChannels;
+                for (int i = 0; i < inChannels; i++) {
+                    acc += in[inOffset + i] * matrix[row + i];
+                }
+                out[outOffset++] = (short) Math.round(acc);
+            }
+        }
+    }
+
+    public int getInputChannels() {
+        return inChannels;
+    }
+
+    public int getOutputChannels() {
+        return outChannels;
+    }
+}
@@ -0,0 +1,15 @@
+package com.hubby.audiorecord;
+
+import java.io.IOException;
+
+/**
+ * 可以在写入过程中保存进度的输出：把已写入的数据长度记录到文件中，进程异常退出后至少能恢复到最近一次保存的位置，
+ * 见{@link WavRecovery}
+ */
+public interface Checkpointable {
+
+    /**
+     * 在写线程中调用，不改变数据的写入位置
+     */
+    void checkpoint() throws IOException;
+}
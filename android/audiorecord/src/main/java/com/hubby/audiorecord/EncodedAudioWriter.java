@@ -0,0 +1,116 @@
+package com.hubby.audiorecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 把pcm数据按固定帧数分包编码后写入文件，在写文件线程运行，不占用采集线程。
+ * <p>
+ * 文件格式(小端序)：文件头{@link #HEADER_SIZE}字节，依次为魔数"HBAC"、版本、编码标识、采样率、声道数、
+ * 每包帧数、总帧数(long，结束时修正)；之后为若干数据包，每包为帧数(int)、数据长度(int)和编码数据
+ */
+public class EncodedAudioWriter implements PcmSink {
+    public static final int DEFAULT_FRAMES_PER_PACKET = 4096;
+    static final int MAGIC = 0x43414248; // "HBAC"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int PACKET_HEADER_SIZE = 8;
+    private static final int TOTAL_FRAMES_OFFSET = 24;
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final AudioEncoder encoder;
+    private final int channels;
+    private final int framesPerPacket;
+    private final short[] samples;
+    private final byte[] payload;
+    private final ByteBuffer[] packet;
+    private int sampleCount;
+    private long totalFrames;
+
+    public EncodedAudioWriter(File file, AudioCodec codec, int sampleRate, int channels) throws IOException {
+        this(file, codec, sampleRate, channels, DEFAULT_FRAMES_PER_PACKET);
+    }
+
+    public EncodedAudioWriter(File file, AudioCodec codec, int sampleRate, int channels, int framesPerPacket)
+            throws IOException {
+        this.encoder = codec.newEncoder(channels, framesPerPacket);
+        this.channels = channels;
+        this.framesPerPacket = framesPerPacket;
+        this.samples = new short[framesPerPacket * channels];
+        this.payload = new byte[encoder.maxEncodedSize(framesPerPacket)];
+        this.packet = new ByteBuffer[]{
+                ByteBuffer.allocate(PACKET_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN),
+                ByteBuffer.wrap(payload)};
+        this.raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        this.channel = raf.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(codec.getId()).putInt(sampleRate)
+                .putInt(channels).putInt(framesPerPacket).putLong(0);
+        header.flip();
+        writeFully(header);
+    }
+
+    @Override
+    public void write(ByteBuffer[] blocks, int offset, int length) throws IOException {
+        for (int b = offset; b < offset + length; b++) {
+            // 按小端序绝对读取，不修改调用方缓冲区(如环形缓冲区的槽位)的字节序
+            ByteBuffer block = blocks[b];
+            int position = block.position();
+            int end = position + (block.remaining() & ~1);
+            for (; position < end; position += 2) {
+                samples[sampleCount++] = (short) ((block.get(position) & 0xff) | block.get(position + 1) << 8);
+                if (sampleCount == samples.length) {
+                    writePacket();
+                }
+            }
+            block.position(end);
+        }
+    }
+
+    private void writePacket() throws IOException {
+        int frames = sampleCount / channels;
+        if (frames == 0) {
+            return;
+        }
+        int size = encoder.encode(samples, frames, payload);
+        packet[0].clear();
+        packet[0].putInt(frames).putInt(size).flip();
+        packet[1].clear().limit(size);
+        // 包头和编码数据合并写入
+        while (packet[1].hasRemaining()) {
+            channel.write(packet);
+        }
+        totalFrames += frames;
+        sampleCount = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public long getTotalFrames() {
+        return totalFrames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writePacket();
+            ByteBuffer frames = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            frames.putLong(0, totalFrames);
+            while (frames.hasRemaining()) {
+                channel.write(frames, TOTAL_FRAMES_OFFSET + frames.position());
+            }
+        } finally {
+            raf.close();
+        }
+    }
+}
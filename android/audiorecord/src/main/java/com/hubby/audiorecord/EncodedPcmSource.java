@@ -0,0 +1,185 @@
+package com.hubby.audiorecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 边读边解码{@link EncodedAudioWriter}写入的文件，输出本机字节序的16bit pcm，
+ * 可以直接交给{@link AudioTracker}播放
+ */
+public class EncodedPcmSource implements PcmSource {
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final AudioCodec codec;
+    private final AudioDecoder decoder;
+    private final int sampleRate;
+    private final int channels;
+    private final int frameSize;
+    private final long totalFrames;
+    private final ByteBuffer packetHeader = ByteBuffer.allocate(EncodedAudioWriter.PACKET_HEADER_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private byte[] payload;
+    private ByteBuffer payloadBuffer;
+    private final short[] samples;
+    private final ByteBuffer decoded;
+    private final ShortBuffer decodedShorts;
+    // 当前解码数据包中有效数据的结束位置
+    private int decodedEnd;
+    private long position;
+
+    public EncodedPcmSource(File file) throws IOException {
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(EncodedAudioWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header);
+            if (header.getInt(0) != EncodedAudioWriter.MAGIC) {
+                throw new IOException("not an encoded audio file: " + file);
+            }
+            this.codec = AudioCodec.fromId(header.getInt(8));
+            this.sampleRate = header.getInt(12);
+            this.channels = header.getInt(16);
+            int framesPerPacket = header.getInt(20);
+            this.totalFrames = header.getLong(24);
+            this.frameSize = 2 * channels;
+            this.decoder = codec.newDecoder(channels, framesPerPacket);
+            this.samples = new short[framesPerPacket * channels];
+            this.payload = new byte[samples.length * 2 + channels * 4 + 16];
+            this.payloadBuffer = ByteBuffer.wrap(payload);
+            this.decoded = ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder());
+            this.decodedShorts = decoded.asShortBuffer();
+            decoded.limit(0);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 判断文件是否为{@link EncodedAudioWriter}写入的格式
+     */
+    public static boolean isEncodedFile(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        return channel.read(magic, 0) == 4 && magic.getInt(0) == EncodedAudioWriter.MAGIC;
+    }
+
+    public AudioCodec getCodec() {
+        return codec;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    @Override
+    public ByteBuffer read(int maxBytes) throws IOException {
+        if (decoded.position() >= decodedEnd) {
+            if (nextPacket() < 0) {
+                return null;
+            }
+        }
+        int start = decoded.position();
+        int end = Math.min(decodedEnd, start + maxBytes);
+        decoded.limit(end);
+        position += end - start;
+        return decoded;
+    }
+
+    /**
+     * 读取并解码下一个数据包
+     *
+     * @return 数据包的帧数，文件结束时返回-1
+     */
+    private int nextPacket() throws IOException {
+        int frames = readPacket();
+        if (frames < 0) {
+            return -1;
+        }
+        decoder.decode(payload, payloadBuffer.limit(), frames, samples);
+        decodedShorts.clear();
+        decodedShorts.put(samples, 0, frames * channels);
+        decodedEnd = frames * frameSize;
+        decoded.limit(decodedEnd).position(0);
+        return frames;
+    }
+
+    private int readPacket() throws IOException {
+        packetHeader.clear();
+        if (!readFully(packetHeader)) {
+            return -1;
+        }
+        int frames = packetHeader.getInt(0);
+        int size = packetHeader.getInt(4);
+        if (size > payload.length) {
+            payload = new byte[size];
+            payloadBuffer = ByteBuffer.wrap(payload);
+        }
+        payloadBuffer.clear().limit(size);
+        return readFully(payloadBuffer) ? frames : -1;
+    }
+
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long length() {
+        // 异常中断的录音没有修正总帧数
+        return totalFrames > 0 ? totalFrames * frameSize : -1;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    /**
+     * 从文件开头逐个跳过数据包头(不解码)，定位到目标所在的数据包后解码
+     */
+    @Override
+    public void seek(long bytePosition) throws IOException {
+        long targetFrame = Math.max(0, bytePosition) / frameSize;
+        channel.position(EncodedAudioWriter.HEADER_SIZE);
+        long frame = 0;
+        while (true) {
+            packetHeader.clear();
+            if (!readFully(packetHeader)) {
+                break;
+            }
+            int frames = packetHeader.getInt(0);
+            int size = packetHeader.getInt(4);
+            if (targetFrame < frame + frames) {
+                channel.position(channel.position() - EncodedAudioWriter.PACKET_HEADER_SIZE);
+                nextPacket();
+                decoded.position((int) (targetFrame - frame) * frameSize);
+                position = targetFrame * frameSize;
+                return;
+            }
+            frame += frames;
+            channel.position(channel.position() + size);
+        }
+        // 超出结尾
+        decoded.limit(0);
+        decodedEnd = 0;
+        position = frame * frameSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+}
@@ -0,0 +1,76 @@
+package com.hubby.audiorecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 把其他采样格式的pcm数据源转换为播放所需的格式，边读边转换，采样率和声道数不变。
+ * 上游每次返回的数据须按采样对齐
+ */
+public class FormatConvertingPcmSource implements PcmSource {
+    // 每次转换的最大采样数
+    private static final int CHUNK_SAMPLES = 4096;
+
+    private final PcmSource source;
+    private final SampleFormat inFormat;
+    private final SampleFormat outFormat;
+    private final int frameSamples;
+    private final float[] samples = new float[CHUNK_SAMPLES];
+    private final ByteBuffer output;
+    private long position;
+
+    /**
+     * @param channels 声道数，每次读取按帧对齐
+     */
+    public FormatConvertingPcmSource(PcmSource source, SampleFormat inFormat, SampleFormat outFormat,
+                                     int channels) {
+        this.source = source;
+        this.inFormat = inFormat;
+        this.outFormat = outFormat;
+        this.frameSamples = channels;
+        this.output = ByteBuffer.allocateDirect(CHUNK_SAMPLES * outFormat.getBytesPerSample())
+                .order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public ByteBuffer read(int maxBytes) throws IOException {
+        int maxSamples = Math.min(CHUNK_SAMPLES, maxBytes / outFormat.getBytesPerSample());
+        maxSamples = Math.max(frameSamples, maxSamples / frameSamples * frameSamples);
+        ByteBuffer in = source.read(maxSamples * inFormat.getBytesPerSample());
+        if (in == null) {
+            return null;
+        }
+        int count = Math.min(maxSamples, in.remaining() / inFormat.getBytesPerSample());
+        inFormat.toFloat(in, in.position(), samples, 0, count);
+        in.position(in.position() + count * inFormat.getBytesPerSample());
+        int bytes = count * outFormat.getBytesPerSample();
+        outFormat.fromFloat(samples, 0, output, 0, count);
+        output.limit(bytes).position(0);
+        position += bytes;
+        return output;
+    }
+
+    @Override
+    public long length() {
+        long length = source.length();
+        return length < 0 ? -1 : length / inFormat.getBytesPerSample() * outFormat.getBytesPerSample();
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void seek(long bytePosition) throws IOException {
+        long sample = Math.max(0, bytePosition / outFormat.getBytesPerSample());
+        source.seek(sample * inFormat.getBytesPerSample());
+        position = sample * outFormat.getBytesPerSample();
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
@@ -0,0 +1,45 @@
+package com.hubby.audiorecord;
+
+/**
+ * 固定增益，修改增益时在一块数据内线性过渡，避免阶跃产生的咔嗒声
+ */
+public final class GainProcessor implements AudioProcessor {
+    private volatile float gain;
+    private int channels = 1;
+    // 当前生效的增益，只由采集线程访问
+    private float current;
+
+    public GainProcessor(float gainDb) {
+        setGainDb(gainDb);
+        this.current = gain;
+    }
+
+    public void setGainDb(float gainDb) {
+        this.gain = AudioProcessorChain.dbToGain(gainDb);
+    }
+
+    public float getGainDb() {
+        return AudioProcessorChain.gainToDb(gain);
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channels) {
+        this.channels = channels;
+        this.current = gain;
+    }
+
+    @Override
+    public void process(float[] samples, int frames) {
+        float target = gain;
+        float g = current;
+        float step = (target - g) / Math.max(1, frames);
+        int index = 0;
+        for (int f = 0; f < frames; f++) {
+            g += step;
+            for (int c = 0; c < channels; c++) {
+                samples[index++] *= g;
+            }
+        }
+        current = target;
+    }
+}
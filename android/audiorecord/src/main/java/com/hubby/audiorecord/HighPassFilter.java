@@ -0,0 +1,85 @@
+package com.hubby.audiorecord;
+
+/**
+ * 二阶巴特沃斯高通滤波，截止频率设为{@link #DC_CUTOFF_HZ}时用于去除直流偏置，
+ * 设为80~120Hz时用于去除风噪、手持噪声等低频干扰。每个声道独立保存滤波状态
+ */
+public final class HighPassFilter implements AudioProcessor {
+    // 去除直流偏置的截止频率，对语音和音乐没有可闻的影响
+    public static final float DC_CUTOFF_HZ = 20f;
+    private static final double Q = Math.sqrt(0.5);
+
+    private volatile float cutoffHz;
+    private int sampleRate;
+    private int channels;
+    // 以下只由采集线程访问(prepare除外)
+    private float appliedCutoffHz;
+    private double b0;
+    private double b1;
+    private double b2;
+    private double a1;
+    private double a2;
+    // 转置直接II型的两个状态，按声道排列
+    private double[] z1;
+    private double[] z2;
+
+    public HighPassFilter(float cutoffHz) {
+        setCutoffHz(cutoffHz);
+    }
+
+    public void setCutoffHz(float cutoffHz) {
+        if (cutoffHz <= 0) {
+            throw new IllegalArgumentException("cutoffHz = " + cutoffHz);
+        }
+        this.cutoffHz = cutoffHz;
+    }
+
+    public float getCutoffHz() {
+        return cutoffHz;
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channels) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.z1 = new double[channels];
+        this.z2 = new double[channels];
+        updateCoefficients(cutoffHz);
+    }
+
+    // RBJ Audio EQ Cookbook中的高通滤波器
+    private void updateCoefficients(float cutoff) {
+        double w0 = 2 * Math.PI * Math.min(cutoff, sampleRate * 0.45) / sampleRate;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * Q);
+        double a0 = 1 + alpha;
+        b0 = (1 + cos) / 2 / a0;
+        b1 = -(1 + cos) / a0;
+        b2 = b0;
+        a1 = -2 * cos / a0;
+        a2 = (1 - alpha) / a0;
+        appliedCutoffHz = cutoff;
+    }
+
+    @Override
+    public void process(float[] samples, int frames) {
+        float cutoff = cutoffHz;
+        if (cutoff != appliedCutoffHz) {
+            // 只更新系数，保留状态，截止频率变化时输出连续
+            updateCoefficients(cutoff);
+        }
+        for (int c = 0; c < channels; c++) {
+            double s1 = z1[c];
+            double s2 = z2[c];
+            for (int i = c, end = frames * channels; i < end; i += channels) {
+                double x = samples[i];
+                double y = b0 * x + s1;
+                s1 = b1 * x - a1 * y + s2;
+                s2 = b2 * x - a2 * y;
+                samples[i] = (float) y;
+            }
+            z1[c] = s1;
+            z2[c] = s2;
+        }
+    }
+}
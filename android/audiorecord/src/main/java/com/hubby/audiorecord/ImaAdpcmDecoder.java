@@ -0,0 +1,56 @@
+package com.hubby.audiorecord;
+
+import static com.hubby.audiorecord.ImaAdpcmEncoder.INDEX_TABLE;
+import static com.hubby.audiorecord.ImaAdpcmEncoder.STEP_TABLE;
+
+/**
+ * 解码{@link ImaAdpcmEncoder}输出的数据包，每个数据包都从包头记录的状态开始，可以独立解码
+ */
+public class ImaAdpcmDecoder implements AudioDecoder {
+    private final int channels;
+    private final int[] predictors;
+    private final int[] indexes;
+
+    public ImaAdpcmDecoder(int channels) {
+        this.channels = channels;
+        this.predictors = new int[channels];
+        this.indexes = new int[channels];
+    }
+
+    @Override
+    public void decode(byte[] in, int length, int frameCount, short[] samples) {
+        int pos = 0;
+        for (int c = 0; c < channels; c++) {
+            predictors[c] = (short) ((in[pos] & 0xff) | (in[pos + 1] << 8));
+            indexes[c] = Math.min(88, in[pos + 2] & 0xff);
+            pos += 4;
+        }
+        int total = frameCount * channels;
+        int c = 0;
+        for (int i = 0; i < total; i++) {
+            int nibble = (i & 1) == 0 ? in[pos] & 0x0f : (in[pos++] >> 4) & 0x0f;
+            int index = indexes[c];
+            int step = STEP_TABLE[index];
+            int delta = step >> 3;
+            if ((nibble & 4) != 0) {
+                delta += step;
+            }
+            if ((nibble & 2) != 0) {
+                delta += step >> 1;
+            }
+            if ((nibble & 1) != 0) {
+                delta += step >> 2;
+            }
+            int predictor = predictors[c] + ((nibble & 8) != 0 ? -delta : delta);
+            predictor = predictor > Short.MAX_VALUE ? Short.MAX_VALUE
+                    : predictor < Short.MIN_VALUE ? Short.MIN_VALUE : predictor;
+            predictors[c] = predictor;
+            index += INDEX_TABLE[nibble & 7];
+            indexes[c] = index < 0 ? 0 : index > 88 ? 88 : index;
+            samples[i] = (short) predictor;
+            if (++c == channels) {
+                c = 0;
+            }
+        }
+    }
+}
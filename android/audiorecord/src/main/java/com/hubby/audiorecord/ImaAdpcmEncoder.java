@@ -0,0 +1,90 @@
+package com.hubby.audiorecord;
+
+/**
+ * IMA ADPCM编码，每个采样编码为4bit。
+ * 数据包开头为每个声道的预测值(2字节)和步长索引(1字节，另有1字节填充)，之后按交错顺序每字节存放两个采样
+ */
+public class ImaAdpcmEncoder implements AudioEncoder {
+    static final int[] INDEX_TABLE = {-1, -1, -1, -1, 2, 4, 6, 8};
+    static final int[] STEP_TABLE = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+            15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767};
+
+    private final int channels;
+    private final int[] predictors;
+    private final int[] indexes;
+
+    public ImaAdpcmEncoder(int channels) {
+        this.channels = channels;
+        this.predictors = new int[channels];
+        this.indexes = new int[channels];
+    }
+
+    @Override
+    public int maxEncodedSize(int frameCount) {
+        return 4 * channels + (frameCount * channels + 1) / 2;
+    }
+
+    @Override
+    public int encode(short[] samples, int frameCount, byte[] out) {
+        int pos = 0;
+        for (int c = 0; c < channels; c++) {
+            out[pos++] = (byte) predictors[c];
+            out[pos++] = (byte) (predictors[c] >> 8);
+            out[pos++] = (byte) indexes[c];
+            out[pos++] = 0;
+        }
+        int total = frameCount * channels;
+        int c = 0;
+        for (int i = 0; i < total; i++) {
+            int nibble = encodeSample(c, samples[i]);
+            if ((i & 1) == 0) {
+                out[pos] = (byte) nibble;
+            } else {
+                out[pos++] |= (byte) (nibble << 4);
+            }
+            if (++c == channels) {
+                c = 0;
+            }
+        }
+        return (total & 1) == 0 ? pos : pos + 1;
+    }
+
+    private int encodeSample(int channel, int sample) {
+        int predictor = predictors[channel];
+        int index = indexes[channel];
+        int step = STEP_TABLE[index];
+        int diff = sample - predictor;
+        int nibble = 0;
+        if (diff < 0) {
+            nibble = 8;
+            diff = -diff;
+        }
+        int delta = step >> 3;
+        if (diff >= step) {
+            nibble |= 4;
+            diff -= step;
+            delta += step;
+        }
+        step >>= 1;
+        if (diff >= step) {
+            nibble |= 2;
+            diff -= step;
+            delta += step;
+        }
+        step >>= 1;
+        if (diff >= step) {
+            nibble |= 1;
+            delta += step;
+        }
+        predictor += (nibble & 8) != 0 ? -delta : delta;
+        predictors[channel] = predictor > Short.MAX_VALUE ? Short.MAX_VALUE
+                : predictor < Short.MIN_VALUE ? Short.MIN_VALUE : predictor;
+        index += INDEX_TABLE[nibble & 7];
+        indexes[channel] = index < 0 ? 0 : index > 88 ? 88 : index;
+        return nibble;
+    }
+}
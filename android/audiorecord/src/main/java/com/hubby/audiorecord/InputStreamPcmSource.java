@@ -0,0 +1,122 @@
+package com.hubby.audiorecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * 从InputStream(网络、assets、解密流等)读取播放格式的pcm数据，每次返回整数帧，
+ * 不完整的帧留到下一次读取；只能向后跳转(跳过数据)，读取可能阻塞，建议配合{@link PrefetchingPcmSource}使用
+ */
+public class InputStreamPcmSource implements PcmSource {
+    // 默认每次读取的最大字节数
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    private final InputStream in;
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final long length;
+    private final int frameSize;
+    // 上次返回的整数帧之后剩余的不完整帧数据在buffer中的范围
+    private int pendingStart;
+    private int pendingLength;
+    private long position;
+
+    /**
+     * @param frameSize 每帧字节数
+     */
+    public InputStreamPcmSource(InputStream in, int frameSize) {
+        this(in, -1, frameSize, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param length 数据总字节数，未知时为-1
+     */
+    public InputStreamPcmSource(InputStream in, long length, int frameSize, int bufferSize) {
+        if (frameSize <= 0 || bufferSize < frameSize) {
+            throw new IllegalArgumentException("frameSize = " + frameSize + " bufferSize = " + bufferSize);
+        }
+        this.in = in;
+        this.channel = Channels.newChannel(in);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize - bufferSize % frameSize).order(ByteOrder.nativeOrder());
+        this.length = length;
+        this.frameSize = frameSize;
+    }
+
+    @Override
+    public ByteBuffer read(int maxBytes) throws IOException {
+        buffer.limit(pendingStart + pendingLength).position(pendingStart);
+        buffer.compact();
+        int want = Math.max(frameSize, Math.min(buffer.capacity(), maxBytes) / frameSize * frameSize);
+        if (buffer.position() < want) {
+            buffer.limit(want);
+            // 至少凑够一帧再返回
+            while (buffer.position() < frameSize) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+        }
+        int available = buffer.position();
+        int complete = Math.min(want, available - available % frameSize);
+        pendingStart = complete;
+        pendingLength = available - complete;
+        if (complete == 0) {
+            // 丢弃末尾不完整的帧
+            pendingLength = 0;
+            return null;
+        }
+        buffer.limit(complete).position(0);
+        position += complete;
+        return buffer;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    /**
+     * 只支持跳转到当前位置之后
+     *
+     * @throws IOException 向前跳转或数据不足
+     */
+    @Override
+    public void seek(long bytePosition) throws IOException {
+        if (bytePosition < position) {
+            throw new IOException("InputStream can not seek backward, position = " + position
+                    + " seek = " + bytePosition);
+        }
+        long skip = bytePosition - position;
+        int fromPending = (int) Math.min(skip, pendingLength);
+        pendingStart += fromPending;
+        pendingLength -= fromPending;
+        skip -= fromPending;
+        position += fromPending;
+        while (skip > 0) {
+            long skipped = in.skip(skip);
+            if (skipped <= 0) {
+                // skip不保证前进，读取一个字节判断是否已到末尾
+                if (in.read() < 0) {
+                    throw new IOException("seek beyond end of stream, position = " + position);
+                }
+                skipped = 1;
+            }
+            skip -= skipped;
+            position += skipped;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
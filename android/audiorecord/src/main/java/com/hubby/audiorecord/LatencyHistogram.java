@@ -0,0 +1,133 @@
+package com.hubby.audiorecord;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时直方图，按2的幂划分区间(第i个区间为[2^(i-1), 2^i)纳秒)。
+ * 只允许一个线程调用{@link #record(long)}，记录时只有几次数组写入，不加锁也不分配内存；
+ * 其他线程可以随时调用{@link #snapshot()}读取
+ */
+public final class LatencyHistogram {
+    // 区间数，最后一个区间包含2^62纳秒以上的所有值
+    public static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次耗时，只能由同一个线程调用
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int index = bucketOf(nanos);
+        // 单写者，lazySet足以保证其他线程最终可见
+        buckets.lazySet(index, buckets.get(index) + 1);
+        sum.lazySet(sum.get() + nanos);
+        if (nanos > max.get()) {
+            max.lazySet(nanos);
+        }
+        count.lazySet(count.get() + 1);
+    }
+
+    static int bucketOf(long nanos) {
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    /**
+     * 第index个区间的上界(不含)
+     */
+    static long upperBoundOf(int index) {
+        return index >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << index;
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = buckets.get(i);
+        }
+        return new Snapshot(copy, count.get(), sum.get(), max.get());
+    }
+
+    /**
+     * 只能在没有线程记录时调用
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * 某一时刻的直方图数据，各字段分别读取，与正在进行的记录之间可能相差一次
+     */
+    public static final class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] buckets, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMaxNanos() {
+            return max;
+        }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * 百分位数的估计值(所在区间的上界)
+         *
+         * @param percentile 0~100
+         */
+        public long getPercentileNanos(double percentile) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= Math.max(1, target)) {
+                    return Math.min(upperBoundOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * 第index个区间([2^(index-1), 2^index)纳秒)的次数
+         */
+        public long getBucketCount(int index) {
+            return buckets[index];
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count + ", mean=" + getMeanNanos() / 1000 + "us, p50=" + getPercentileNanos(50) / 1000
+                    + "us, p99=" + getPercentileNanos(99) / 1000 + "us, max=" + max / 1000 + "us}";
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.hubby.audiorecord;
+
+import java.nio.ByteBuffer;
+
+/**
+ * pcm的电平计算，一次遍历同时得到峰值和均方根，不产生新对象；
+ * 16bit直接计算，其他格式经{@link SampleFormat#toFloat}分段转换后计算
+ */
+public final class LevelMeter {
+    // 低于该值视为静音，避免log10(0)
+    public static final float MIN_DB = -96f;
+    // 非16bit格式每次转换的采样数
+    private static final int CHUNK_SAMPLES = 1024;
+
+    private float peakDb = MIN_DB;
+    private float rmsDb = MIN_DB;
+    private float[] scratch;
+
+    /**
+     * 计算buffer中[0, length)字节(本机字节序的16bit采样)的电平
+     */
+    public void measure(ByteBuffer buffer, int length) {
+        int count = length / 2;
+        if (count == 0) {
+            peakDb = MIN_DB;
+            rmsDb = MIN_DB;
+            return;
+        }
+        int peak = 0;
+        long sumSquares = 0;
+        for (int i = 0; i < count; i++) {
+            int sample = buffer.getShort(i << 1);
+            int abs = sample < 0 ? -sample : sample;
+            if (abs > peak) {
+                peak = abs;
+            }
+            sumSquares += sample * sample;
+        }
+        peakDb = toDb(peak);
+        rmsDb = toDb(Math.sqrt((double) sumSquares / count));
+    }
+
+    /**
+     * 计算buffer中[0, length)字节(format格式)的电平
+     */
+    public void measure(ByteBuffer buffer, int length, SampleFormat format) {
+        if (format == SampleFormat.PCM_16BIT) {
+            measure(buffer, length);
+            return;
+        }
+        int count = length / format.getBytesPerSample();
+        if (count == 0) {
+            peakDb = MIN_DB;
+            rmsDb = MIN_DB;
+            return;
+        }
+        if (scratch == null) {
+            scratch = new float[CHUNK_SAMPLES];
+        }
+        float peak = 0;
+        double sumSquares = 0;
+        for (int done = 0; done < count; done += CHUNK_SAMPLES) {
+            int n = Math.min(CHUNK_SAMPLES, count - done);
+            format.toFloat(buffer, done * format.getBytesPerSample(), scratch, 0, n);
+            for (int i = 0; i < n; i++) {
+                float sample = scratch[i];
+                float abs = sample < 0 ? -sample : sample;
+                if (abs > peak) {
+                    peak = abs;
+                }
+                sumSquares += sample * sample;
+            }
+        }
+        peakDb = toDb(peak * 32768.0);
+        rmsDb = toDb(Math.sqrt(sumSquares / count) * 32768.0);
+    }
+
+    private static float toDb(double amplitude) {
+        if (amplitude <= 0) {
+            return MIN_DB;
+        }
+        return Math.max(MIN_DB, (float) (20 * Math.log10(amplitude / 32768.0)));
+    }
+
+    /**
+     * 最近一次计算的峰值，单位dBFS
+     */
+    public float getPeakDb() {
+        return peakDb;
+    }
+
+    /**
+     * 最近一次计算的均方根电平，单位dBFS
+     */
+    public float getRmsDb() {
+        return rmsDb;
+    }
+}
@@ -0,0 +1,211 @@
+package com.hubby.audiorecord;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 环回(扬声器到麦克风，或环回线)延迟测量：先静音输出一小段时间测量底噪，然后在输出中插入一个短脉冲，
+ * 在采集数据中找到第一个超过阈值的采样，往返延迟 = 该采样被应用读到的时刻 - 脉冲交给输出的时刻，
+ * 即应用写入播放到应用读到采集数据的端到端延迟。
+ * 测量期间输出被替换为静音(和脉冲)，避免监听回路的反馈干扰检测。
+ * {@link #processOutput}在播放线程调用，{@link #processInput}在采集线程调用，两者都不分配内存
+ */
+public final class LoopbackLatencyMeter {
+    public static final long LATENCY_UNKNOWN = -1;
+    // 插入脉冲前测量底噪的时长
+    private static final int WARMUP_MILLIS = 200;
+    // 插入脉冲后等待检测的最长时间
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // 脉冲时长及幅度，频率为采样率的1/8，用汉宁窗包络避免扬声器的瞬态失真
+    private static final float IMPULSE_MILLIS = 2f;
+    private static final float IMPULSE_AMPLITUDE = 0.9f;
+    // 检测阈值的下限(约-26dBFS)及相对底噪峰值的倍数
+    private static final float MIN_THRESHOLD = 0.05f;
+    private static final float NOISE_FACTOR = 4f;
+    private static final int CHUNK_SAMPLES = 1024;
+
+    private static final int IDLE = 0;
+    private static final int WARMUP = 1;
+    private static final int ARMED = 2;
+    private static final int INJECTED = 3;
+
+    public interface OnLatencyListener {
+        /**
+         * 在采集线程回调
+         *
+         * @param roundTripNanos 往返延迟，检测失败(超时、没有环回)时为{@link #LATENCY_UNKNOWN}
+         */
+        void onLatencyMeasured(long roundTripNanos);
+    }
+
+    private final int sampleRate;
+    private final int channels;
+    private final SampleFormat format;
+    private final float[] impulse;
+    private final float[] samples = new float[CHUNK_SAMPLES];
+    private final int warmupFrames;
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    private volatile OnLatencyListener listener;
+    // 以下只由采集线程访问
+    private int warmupRemaining;
+    private float noisePeak;
+    // 以下由播放线程写入，状态变为INJECTED后采集线程读取
+    private long injectNanos;
+    // 脉冲已写出的帧数，只由播放线程访问
+    private int impulseWritten;
+    private volatile long lastLatencyNanos = LATENCY_UNKNOWN;
+
+    /**
+     * @param format 输入和输出的采样格式
+     */
+    public LoopbackLatencyMeter(int sampleRate, int channels, SampleFormat format) {
+        if (sampleRate <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("sampleRate = " + sampleRate + " channels = " + channels);
+        }
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.format = format;
+        this.warmupFrames = sampleRate * WARMUP_MILLIS / 1000;
+        int impulseFrames = Math.max(8, (int) (sampleRate * IMPULSE_MILLIS / 1000));
+        this.impulse = new float[impulseFrames];
+        for (int i = 0; i < impulseFrames; i++) {
+            double window = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (impulseFrames - 1));
+            impulse[i] = (float) (IMPULSE_AMPLITUDE * window * Math.sin(2 * Math.PI * i / 8));
+        }
+    }
+
+    /**
+     * 开始一次测量，结果通过listener回调
+     *
+     * @return 正在测量时返回false
+     */
+    public boolean start(OnLatencyListener listener) {
+        if (state.get() != IDLE) {
+            return false;
+        }
+        this.listener = listener;
+        warmupRemaining = warmupFrames;
+        noisePeak = 0;
+        impulseWritten = 0;
+        return state.compareAndSet(IDLE, WARMUP);
+    }
+
+    public boolean isMeasuring() {
+        return state.get() != IDLE;
+    }
+
+    /**
+     * 最近一次测量的往返延迟，没有成功的测量时为{@link #LATENCY_UNKNOWN}
+     */
+    public long getLastLatencyNanos() {
+        return lastLatencyNanos;
+    }
+
+    /**
+     * 播放线程在把chunk(position~limit)交给输出之前调用，测量期间把数据替换为静音或脉冲，不改变position
+     *
+     * @param nowNanos 写入输出的时刻(System.nanoTime)
+     * @return 是否正在测量(数据已被替换)
+     */
+    public boolean processOutput(ByteBuffer chunk, long nowNanos) {
+        int current = state.get();
+        if (current == IDLE) {
+            return false;
+        }
+        int offset = chunk.position();
+        int frames = chunk.remaining() / format.getFrameSize(channels);
+        int bytesPerSample = format.getBytesPerSample();
+        for (int done = 0; done < frames; ) {
+            int n = Math.min(frames - done, CHUNK_SAMPLES / channels);
+            int frameOffset = 0;
+            if (current == ARMED && impulseWritten == 0 && done == 0) {
+                injectNanos = nowNanos;
+            }
+            for (int f = 0; f < n; f++) {
+                float value = 0;
+                // 脉冲跨越多块时，状态变为INJECTED后继续写完
+                if (current != WARMUP && impulseWritten < impulse.length) {
+                    value = impulse[impulseWritten++];
+                }
+                for (int c = 0; c < channels; c++) {
+                    samples[frameOffset++] = value;
+                }
+            }
+            format.fromFloat(samples, 0, chunk, offset + done * channels * bytesPerSample, n * channels);
+            done += n;
+        }
+        if (current == ARMED && impulseWritten > 0) {
+            // injectNanos在状态切换前写入，采集线程读到INJECTED后可见
+            state.compareAndSet(ARMED, INJECTED);
+        }
+        return true;
+    }
+
+    /**
+     * 采集线程在收到一块数据(position~limit)后调用，不改变position
+     *
+     * @param blockEndNanos 读到这块数据的时刻，即最后一帧之后的时刻
+     */
+    public void processInput(ByteBuffer block, long blockEndNanos) {
+        int current = state.get();
+        if (current == IDLE || current == ARMED) {
+            return;
+        }
+        int frameSize = format.getFrameSize(channels);
+        int frames = block.remaining() / frameSize;
+        int position = block.position();
+        int chunkFrames = CHUNK_SAMPLES / channels;
+        float threshold = Math.max(MIN_THRESHOLD, noisePeak * NOISE_FACTOR);
+        long start = injectNanos;
+        for (int done = 0; done < frames; ) {
+            int n = Math.min(frames - done, chunkFrames);
+            format.toFloat(block, position + done * frameSize, samples, 0, n * channels);
+            for (int f = 0; f < n; f++) {
+                float peak = 0;
+                for (int c = 0; c < channels; c++) {
+                    float value = Math.abs(samples[f * channels + c]);
+                    if (value > peak) {
+                        peak = value;
+                    }
+                }
+                if (current == WARMUP) {
+                    if (peak > noisePeak) {
+                        noisePeak = peak;
+                    }
+                    if (--warmupRemaining <= 0) {
+                        state.compareAndSet(WARMUP, ARMED);
+                        return;
+                    }
+                } else if (peak > threshold) {
+                    long sampleNanos = blockEndNanos - framesToNanos(frames - done - f);
+                    // 插入之前采集的数据不可能包含脉冲
+                    if (sampleNanos >= start) {
+                        finish(sampleNanos - start);
+                        return;
+                    }
+                }
+            }
+            done += n;
+        }
+        if (current == INJECTED && blockEndNanos - start > TIMEOUT_NANOS) {
+            finish(LATENCY_UNKNOWN);
+        }
+    }
+
+    private long framesToNanos(long frames) {
+        return frames * 1000000000L / sampleRate;
+    }
+
+    private void finish(long latencyNanos) {
+        if (latencyNanos != LATENCY_UNKNOWN) {
+            lastLatencyNanos = latencyNanos;
+        }
+        OnLatencyListener l = listener;
+        listener = null;
+        state.set(IDLE);
+        if (l != null) {
+            l.onLatencyMeasured(latencyNanos);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.hubby.audiorecord;
+
+import static com.hubby.audiorecord.LosslessEncoder.ESCAPE;
+import static com.hubby.audiorecord.LosslessEncoder.VERBATIM;
+
+/**
+ * 解码{@link LosslessEncoder}输出的数据包
+ */
+public class LosslessDecoder implements AudioDecoder {
+    private final int channels;
+    private final BitReader reader = new BitReader();
+    private int[] channelSamples;
+    private int[] residuals;
+
+    public LosslessDecoder(int channels, int maxFrames) {
+        this.channels = channels;
+        this.channelSamples = new int[maxFrames];
+        this.residuals = new int[maxFrames];
+    }
+
+    @Override
+    public void decode(byte[] in, int length, int frameCount, short[] samples) {
+        if (channelSamples.length < frameCount) {
+            channelSamples = new int[frameCount];
+            residuals = new int[frameCount];
+        }
+        int[] x = channelSamples;
+        reader.reset(in, 0, length);
+        for (int c = 0; c < channels; c++) {
+            int order = reader.read(3);
+            if (order == VERBATIM) {
+                for (int i = 0; i < frameCount; i++) {
+                    x[i] = (short) reader.read(16);
+                }
+            } else {
+                for (int i = 0; i < order; i++) {
+                    x[i] = (short) reader.read(16);
+                }
+                int k = reader.read(5);
+                for (int i = order; i < frameCount; i++) {
+                    int q = reader.readUnary();
+                    int u = q < ESCAPE ? (q << k) | reader.read(k) : reader.read(32);
+                    residuals[i] = (u >>> 1) ^ -(u & 1);
+                }
+                LosslessEncoder.predict(x, frameCount, order, residuals, true);
+            }
+            for (int i = 0, j = c; i < frameCount; i++, j += channels) {
+                samples[j] = (short) x[i];
+            }
+        }
+    }
+}
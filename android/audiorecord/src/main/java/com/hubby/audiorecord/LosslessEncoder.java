@@ -0,0 +1,169 @@
+package com.hubby.audiorecord;
+
+/**
+ * 类似FLAC的无损编码：每个声道独立选择0~4阶固定多项式预测中残差最小的一阶，
+ * 残差经zigzag映射后用Rice编码；预测效果差(如白噪声)时直接存储原始采样。
+ * <p>
+ * 每个声道的编码：阶数(3bit，{@link #VERBATIM}表示原始采样)，order个16bit预热采样，
+ * Rice参数k(5bit)，之后为残差；商不小于{@link #ESCAPE}的残差写为ESCAPE个1、一个0和32bit原值
+ */
+public class LosslessEncoder implements AudioEncoder {
+    static final int MAX_ORDER = 4;
+    static final int VERBATIM = 7;
+    static final int ESCAPE = 24;
+
+    private final int channels;
+    private final int[] channelSamples;
+    private final int[] residuals;
+    private final long[] orderCosts = new long[MAX_ORDER + 1];
+    private final BitWriter writer = new BitWriter();
+
+    public LosslessEncoder(int channels, int maxFrames) {
+        this.channels = channels;
+        this.channelSamples = new int[maxFrames];
+        this.residuals = new int[maxFrames];
+    }
+
+    @Override
+    public int maxEncodedSize(int frameCount) {
+        // 最坏情况为原始采样加上每个声道的阶数
+        return channels * (frameCount * 2 + 1) + 1;
+    }
+
+    @Override
+    public int encode(short[] samples, int frameCount, byte[] out) {
+        writer.reset(out, 0);
+        for (int c = 0; c < channels; c++) {
+            int[] x = channelSamples;
+            for (int i = 0, j = c; i < frameCount; i++, j += channels) {
+                x[i] = samples[j];
+            }
+            encodeChannel(x, frameCount);
+        }
+        return writer.finish();
+    }
+
+    private void encodeChannel(int[] x, int n) {
+        int order = selectOrder(x, n);
+        computeResiduals(x, n, order);
+        long sum = 0;
+        for (int i = order; i < n; i++) {
+            int r = residuals[i];
+            sum += (r << 1) ^ (r >> 31);
+        }
+        int count = n - order;
+        int k = 0;
+        while (k < 30 && ((long) count << (k + 1)) < sum) {
+            k++;
+        }
+        // 估算编码后的位数，不如原始采样时直接存储
+        long bits = 3 + 16L * order + 5 + (long) count * (k + 1);
+        for (int i = order; i < n && bits < 16L * n + 3; i++) {
+            int r = residuals[i];
+            int q = ((r << 1) ^ (r >> 31)) >>> k;
+            bits += q < ESCAPE ? q : ESCAPE + 32 - k;
+        }
+        if (bits >= 16L * n + 3) {
+            writer.write(VERBATIM, 3);
+            for (int i = 0; i < n; i++) {
+                writer.write(x[i], 16);
+            }
+            return;
+        }
+        writer.write(order, 3);
+        for (int i = 0; i < order; i++) {
+            writer.write(x[i], 16);
+        }
+        writer.write(k, 5);
+        for (int i = order; i < n; i++) {
+            int r = residuals[i];
+            int u = (r << 1) ^ (r >> 31);
+            int q = u >>> k;
+            if (q < ESCAPE) {
+                writer.writeUnary(q);
+                writer.write(u, k);
+            } else {
+                writer.writeUnary(ESCAPE);
+                writer.write(u, 32);
+            }
+        }
+    }
+
+    /**
+     * 一次遍历同时计算0~4阶预测残差的绝对值之和，选择最小的阶数
+     */
+    private int selectOrder(int[] x, int n) {
+        if (n <= MAX_ORDER) {
+            return 0;
+        }
+        long c0 = 0, c1 = 0, c2 = 0, c3 = 0, c4 = 0;
+        int last0 = x[3];
+        int last1 = x[3] - x[2];
+        int last2 = last1 - (x[2] - x[1]);
+        int last3 = last2 - (x[2] - x[1] - (x[1] - x[0]));
+        for (int i = MAX_ORDER; i < n; i++) {
+            int e0 = x[i];
+            int e1 = e0 - last0;
+            int e2 = e1 - last1;
+            int e3 = e2 - last2;
+            int e4 = e3 - last3;
+            last0 = e0;
+            last1 = e1;
+            last2 = e2;
+            last3 = e3;
+            c0 += Math.abs(e0);
+            c1 += Math.abs(e1);
+            c2 += Math.abs(e2);
+            c3 += Math.abs(e3);
+            c4 += Math.abs(e4);
+        }
+        long[] costs = orderCosts;
+        costs[0] = c0;
+        costs[1] = c1;
+        costs[2] = c2;
+        costs[3] = c3;
+        costs[4] = c4;
+        int order = 0;
+        for (int i = 1; i <= MAX_ORDER; i++) {
+            if (costs[i] < costs[order]) {
+                order = i;
+            }
+        }
+        return order;
+    }
+
+    private void computeResiduals(int[] x, int n, int order) {
+        predict(x, n, order, residuals, false);
+    }
+
+    /**
+     * 固定多项式预测，编码时由采样计算残差，解码时(restore为true)由残差恢复采样，结果都写入residual[order, n)
+     */
+    static void predict(int[] x, int n, int order, int[] residual, boolean restore) {
+        for (int i = order; i < n; i++) {
+            int p;
+            switch (order) {
+                case 0:
+                    p = 0;
+                    break;
+                case 1:
+                    p = x[i - 1];
+                    break;
+                case 2:
+                    p = 2 * x[i - 1] - x[i - 2];
+                    break;
+                case 3:
+                    p = 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3];
+                    break;
+                default:
+                    p = 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4];
+                    break;
+            }
+            if (restore) {
+                x[i] = residual[i] + p;
+            } else {
+                residual[i] = x[i] - p;
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.hubby.audiorecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 基于内存映射的文件数据源，按固定大小的窗口映射文件，超大文件也只占用一个窗口的地址空间；
+ * 读取不经过堆内存拷贝，跳转只需移动位置(跨窗口时重新映射)，与文件大小无关
+ */
+public class MappedPcmSource implements PcmSource {
+    // 默认映射窗口大小
+    public static final int DEFAULT_WINDOW_SIZE = 16 * 1024 * 1024;
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long dataOffset;
+    private final long length;
+    private final int windowSize;
+    private MappedByteBuffer window;
+    // 当前窗口起始位置(相对于dataOffset)，-1表示未映射
+    private long windowStart = -1;
+    private long position;
+
+    /**
+     * @param dataOffset pcm数据在文件中的偏移，如wav文件头的长度
+     * @param frameSize  每帧字节数，窗口大小会按帧对齐
+     */
+    public MappedPcmSource(File file, long dataOffset, int frameSize) throws IOException {
+        this(file, dataOffset, WavHeader.UNKNOWN_SIZE, frameSize, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param dataLength pcm数据长度，{@link WavHeader#UNKNOWN_SIZE}表示到文件末尾
+     */
+    public MappedPcmSource(File file, long dataOffset, long dataLength, int frameSize, int windowSize) throws IOException {
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+        this.dataOffset = dataOffset;
+        long available = Math.max(0, channel.size() - dataOffset);
+        if (dataLength == WavHeader.UNKNOWN_SIZE || dataLength > available) {
+            dataLength = available;
+        }
+        // 丢弃末尾不完整的帧
+        this.length = dataLength - dataLength % frameSize;
+        this.windowSize = Math.max(frameSize, windowSize - windowSize % frameSize);
+    }
+
+    @Override
+    public ByteBuffer read(int maxBytes) throws IOException {
+        if (position >= length) {
+            return null;
+        }
+        if (windowStart < 0 || position < windowStart || position >= windowStart + window.capacity()) {
+            windowStart = position - position % windowSize;
+            long size = Math.min(windowSize, length - windowStart);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + windowStart, size);
+            window.order(ByteOrder.nativeOrder());
+        }
+        int start = (int) (position - windowStart);
+        int end = (int) Math.min(window.capacity(), (long) start + maxBytes);
+        window.limit(end).position(start);
+        position += end - start;
+        return window;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void seek(long bytePosition) {
+        position = Math.max(0, Math.min(bytePosition, length));
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        raf.close();
+    }
+}
@@ -0,0 +1,171 @@
+package com.hubby.audiorecord;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 用一个AudioTrack同时播放多个音轨，混音在{@link AudioExecutor}的单个线程中进行；
+ * 播放过程中可以随时增删音轨、调节音量和声像
+ */
+public class MixerPlayer {
+    private static final String TAG = "MixerPlayer";
+
+    private final int mRateInHz;
+    private final int mChannelConfig;
+    private final int mChannelCount;
+    private final int mBlockFrames;
+    private final AudioMixer mMixer;
+    private MixRunnable mMixRunnable;
+
+    /**
+     * @param channelConfig AudioFormat.CHANNEL_OUT_*，输出为16bit
+     */
+    public MixerPlayer(int hz, int channelConfig) {
+        this.mRateInHz = hz;
+        this.mChannelConfig = channelConfig;
+        this.mChannelCount = Integer.bitCount(channelConfig);
+        int minBufferSize = AudioTrack.getMinBufferSize(hz, channelConfig, AudioFormat.ENCODING_PCM_16BIT);
+        this.mBlockFrames = Math.max(1, minBufferSize / (2 * mChannelCount));
+        this.mMixer = new AudioMixer(mChannelCount, mBlockFrames);
+    }
+
+    public AudioMixer getMixer() {
+        return mMixer;
+    }
+
+    /**
+     * 添加一个文件音轨，格式不同时自动转换为播放的采样率；单声道文件保持单声道以便设置声像
+     */
+    public MixerTrack addTrack(String file) throws IOException {
+        File source = new File(file);
+        int channels = mChannelCount;
+        try (RandomAccessFile raf = new RandomAccessFile(source, "r")) {
+            WavHeader header = WavUtil.readHeader(raf.getChannel());
+            if (header != null && header.getChannels() == 1) {
+                channels = 1;
+            }
+        }
+        MixerTrack track = new MixerTrack(AudioTracker.openSource(source, mRateInHz, channels,
+                AudioFormat.ENCODING_PCM_16BIT), channels);
+        mMixer.addTrack(track);
+        return track;
+    }
+
+    /**
+     * 开始播放；stop之后混音线程可能还在混音或阻塞在AudioTrack.write中，
+     * 等它退出之前不会启动新的混音线程，避免两个线程同时访问混音器和音轨
+     */
+    public void start() {
+        MixRunnable runnable = mMixRunnable;
+        if (runnable != null && runnable.isPlaying.get()) {
+            Log.e(TAG, "isPlaying...");
+            return;
+        }
+        if (runnable != null && !runnable.finished) {
+            Log.e(TAG, "previous mix thread is still running");
+            return;
+        }
+        mMixRunnable = new MixRunnable(mRateInHz, mChannelConfig, mBlockFrames, mMixer);
+        mMixRunnable.isPlaying.set(true);
+        AudioExecutor.get().submit(mMixRunnable, Process.THREAD_PRIORITY_URGENT_AUDIO);
+    }
+
+    public void stop() {
+        if (mMixRunnable != null) {
+            mMixRunnable.isPlaying.set(false);
+        }
+    }
+
+    public boolean isPlaying() {
+        return mMixRunnable != null && mMixRunnable.isPlaying.get();
+    }
+
+    /**
+     * 停止播放并关闭所有音轨
+     */
+    public void release() {
+        stop();
+        MixRunnable runnable = mMixRunnable;
+        if (runnable != null) {
+            runnable.releaseTracks = true;
+        }
+        // 混音线程结束后数据源由这里关闭，否则由混音线程退出时关闭，clear可以重复调用
+        if (runnable == null || runnable.finished) {
+            clearTracks(mMixer);
+        }
+    }
+
+    private static void clearTracks(AudioMixer mixer) {
+        try {
+            mixer.clear();
+        } catch (IOException e) {
+            Log.e(TAG, "close tracks failed", e);
+        }
+    }
+
+    static class MixRunnable implements Runnable {
+        private final AudioTrack audioTrack;
+        private final AudioMixer mixer;
+        private final int blockFrames;
+        private final ByteBuffer buffer;
+        private final AtomicBoolean isPlaying = new AtomicBoolean(false);
+        private volatile boolean releaseTracks;
+        private volatile boolean finished;
+
+        MixRunnable(int hz, int channelConfig, int blockFrames, AudioMixer mixer) {
+            this.mixer = mixer;
+            this.blockFrames = blockFrames;
+            int channels = Integer.bitCount(channelConfig);
+            this.buffer = ByteBuffer.allocateDirect(blockFrames * channels * 2).order(ByteOrder.nativeOrder());
+            AudioAttributes attributes = new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_MEDIA)
+                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                    .build();
+            AudioFormat format = new AudioFormat.Builder()
+                    .setSampleRate(hz)
+                    .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                    .setChannelMask(channelConfig)
+                    .build();
+            // 缓冲区为两块混音数据，增删音轨、调节音量的响应延迟不超过两块
+            this.audioTrack = new AudioTrack(attributes, format, buffer.capacity() * 2,
+                    AudioTrack.MODE_STREAM, AudioManager.AUDIO_SESSION_ID_GENERATE);
+        }
+
+        @Override
+        public void run() {
+            try {
+                audioTrack.play();
+                while (isPlaying.get()) {
+                    mixer.mix(buffer, blockFrames);
+                    int written = audioTrack.write(buffer, buffer.remaining(), AudioTrack.WRITE_BLOCKING);
+                    if (written < 0) {
+                        Log.e(TAG, "write error: " + written);
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "mix failed", e);
+            } finally {
+                isPlaying.set(false);
+                audioTrack.stop();
+                audioTrack.release();
+                finished = true;
+                if (releaseTracks) {
+                    clearTracks(mixer);
+                }
+                Log.d(TAG, "mix finish");
+            }
+        }
+    }
+}
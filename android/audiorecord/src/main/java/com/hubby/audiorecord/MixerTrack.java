@@ -0,0 +1,171 @@
+package com.hubby.audiorecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * {@link AudioMixer}中的一路音轨，数据来自16bit的{@link PcmSource}，声道数为1或与混音输出一致。
+ * 音量和声像可以在任意线程随时修改，混音线程在下一块数据生效
+ */
+public final class MixerTrack {
+    private final PcmSource source;
+    private final int channels;
+    private final int frameSize;
+    private volatile float gain = 1f;
+    private volatile float pan;
+    // 按当前音量和声像计算的左右声道增益，修改时整体替换
+    private volatile float[] channelGains = {1f, 1f};
+    private volatile boolean removed;
+    // 以下只由混音线程访问
+    private boolean finished;
+    private ByteBuffer pending;
+
+    /**
+     * @param channels source的声道数
+     */
+    public MixerTrack(PcmSource source, int channels) {
+        if (channels <= 0) {
+            throw new IllegalArgumentException("channels = " + channels);
+        }
+        this.source = source;
+        this.channels = channels;
+        this.frameSize = 2 * channels;
+    }
+
+    /**
+     * 线性增益，1为原始音量
+     */
+    public void setGain(float gain) {
+        this.gain = Math.max(0f, gain);
+        updateChannelGains();
+    }
+
+    /**
+     * 声像，-1为最左，0为居中，1为最右；单声道音轨按等功率声像分配到左右声道，
+     * 双声道音轨调节左右平衡
+     */
+    public void setPan(float pan) {
+        this.pan = Math.max(-1f, Math.min(1f, pan));
+        updateChannelGains();
+    }
+
+    public float getGain() {
+        return gain;
+    }
+
+    public float getPan() {
+        return pan;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    private void updateChannelGains() {
+        float g = gain;
+        float p = pan;
+        float left;
+        float right;
+        if (channels == 1) {
+            // 居中时左右各-3dB，总功率不随声像变化
+            double angle = (p + 1) * Math.PI / 4;
+            left = (float) (Math.cos(angle) * Math.sqrt(2));
+            right = (float) (Math.sin(angle) * Math.sqrt(2));
+        } else {
+            left = Math.min(1f, 1f - p);
+            right = Math.min(1f, 1f + p);
+        }
+        channelGains = new float[]{g * left, g * right};
+    }
+
+    /**
+     * 从混音中移除，混音线程在下一块数据时停止读取并关闭数据源
+     */
+    public void remove() {
+        removed = true;
+    }
+
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    /**
+     * 数据源已读完
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * 混音线程调用，读取frames帧数据乘以增益后累加到mix中
+     *
+     * @return 实际读取的帧数，小于frames说明数据已读完
+     */
+    int mixInto(float[] mix, int frames, int outChannels) throws IOException {
+        float[] gains = channelGains;
+        float monoGain = gain;
+        int done = 0;
+        while (done < frames) {
+            ByteBuffer buffer = pending;
+            if (buffer == null || buffer.remaining() < frameSize) {
+                buffer = source.read((frames - done) * frameSize);
+                if (buffer == null) {
+                    finished = true;
+                    pending = null;
+                    break;
+                }
+                buffer.order(ByteOrder.nativeOrder());
+                pending = buffer;
+            }
+            int count = Math.min(frames - done, buffer.remaining() / frameSize);
+            int position = buffer.position();
+            int o = done * outChannels;
+            if (channels == 1 && outChannels == 2) {
+                float left = gains[0];
+                float right = gains[1];
+                for (int i = 0; i < count; i++, position += 2) {
+                    float s = buffer.getShort(position);
+                    mix[o++] += s * left;
+                    mix[o++] += s * right;
+                }
+            } else if (channels == 2 && outChannels == 2) {
+                float left = gains[0];
+                float right = gains[1];
+                for (int i = 0; i < count; i++, position += 4) {
+                    mix[o++] += buffer.getShort(position) * left;
+                    mix[o++] += buffer.getShort(position + 2) * right;
+                }
+            } else if (channels == 1) {
+                // 单声道复制到每个输出声道
+                for (int i = 0; i < count; i++, position += 2) {
+                    float s = buffer.getShort(position) * monoGain;
+                    for (int c = 0; c < outChannels; c++) {
+                        mix[o++] += s;
+                    }
+                }
+            } else {
+                int samples = count * channels;
+                for (int i = 0; i < samples; i++, position += 2) {
+                    mix[o++] += buffer.getShort(position) * monoGain;
+                }
+            }
+            buffer.position(position);
+            done += count;
+        }
+        return done;
+    }
+
+    /**
+     * 从头开始，只能在未加入混音或混音停止时调用
+     */
+    public void rewind() throws IOException {
+        source.seek(0);
+        pending = null;
+        finished = false;
+    }
+
+    void close() throws IOException {
+        source.close();
+    }
+}
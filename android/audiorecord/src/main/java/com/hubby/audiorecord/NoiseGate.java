@@ -0,0 +1,103 @@
+package com.hubby.audiorecord;
+
+/**
+ * 噪声门：所有声道的瞬时峰值都低于门限并超过保持时间后，把增益平滑地降到rangeDb；
+ * 超过门限时在attack时间内恢复。与{@link SilenceGate}不同，数据照常写入，只是静音段被衰减
+ */
+public final class NoiseGate implements AudioProcessor {
+    public static final float DEFAULT_RANGE_DB = -40f;
+    public static final float DEFAULT_ATTACK_MILLIS = 1f;
+    public static final float DEFAULT_HOLD_MILLIS = 100f;
+    public static final float DEFAULT_RELEASE_MILLIS = 150f;
+
+    private volatile float threshold;
+    private volatile float floorGain;
+    private final float attackMillis;
+    private final float holdMillis;
+    private final float releaseMillis;
+    private int channels = 1;
+    private float attackCoefficient;
+    private float releaseCoefficient;
+    private int holdFrames;
+    // 以下只由采集线程访问
+    private float gain = 1f;
+    private int holdRemaining;
+
+    public NoiseGate(float thresholdDb) {
+        this(thresholdDb, DEFAULT_RANGE_DB, DEFAULT_ATTACK_MILLIS, DEFAULT_HOLD_MILLIS, DEFAULT_RELEASE_MILLIS);
+    }
+
+    /**
+     * @param rangeDb 关闭时的增益，如-40为衰减40dB
+     */
+    public NoiseGate(float thresholdDb, float rangeDb, float attackMillis, float holdMillis, float releaseMillis) {
+        if (rangeDb > 0 || attackMillis < 0 || holdMillis < 0 || releaseMillis < 0) {
+            throw new IllegalArgumentException("rangeDb = " + rangeDb + " attackMillis = " + attackMillis
+                    + " holdMillis = " + holdMillis + " releaseMillis = " + releaseMillis);
+        }
+        setThresholdDb(thresholdDb);
+        setRangeDb(rangeDb);
+        this.attackMillis = attackMillis;
+        this.holdMillis = holdMillis;
+        this.releaseMillis = releaseMillis;
+    }
+
+    public void setThresholdDb(float thresholdDb) {
+        this.threshold = AudioProcessorChain.dbToGain(thresholdDb);
+    }
+
+    public void setRangeDb(float rangeDb) {
+        this.floorGain = AudioProcessorChain.dbToGain(Math.min(0, rangeDb));
+    }
+
+    /**
+     * 当前增益，1为门打开
+     */
+    public float getGain() {
+        return gain;
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channels) {
+        this.channels = channels;
+        this.attackCoefficient = AudioProcessorChain.smoothingCoefficient(attackMillis, sampleRate);
+        this.releaseCoefficient = AudioProcessorChain.smoothingCoefficient(releaseMillis, sampleRate);
+        this.holdFrames = (int) (holdMillis * sampleRate / 1000);
+        this.gain = 1f;
+        this.holdRemaining = holdFrames;
+    }
+
+    @Override
+    public void process(float[] samples, int frames) {
+        float open = threshold;
+        float closed = floorGain;
+        float g = gain;
+        int hold = holdRemaining;
+        int index = 0;
+        for (int f = 0; f < frames; f++) {
+            float peak = 0;
+            for (int c = 0; c < channels; c++) {
+                float abs = Math.abs(samples[index + c]);
+                if (abs > peak) {
+                    peak = abs;
+                }
+            }
+            float target;
+            if (peak >= open) {
+                hold = holdFrames;
+                target = 1f;
+            } else if (hold > 0) {
+                hold--;
+                target = 1f;
+            } else {
+                target = closed;
+            }
+            g += (target - g) * (target > g ? attackCoefficient : releaseCoefficient);
+            for (int c = 0; c < channels; c++) {
+                samples[index++] *= g;
+            }
+        }
+        gain = g;
+        holdRemaining = hold;
+    }
+}
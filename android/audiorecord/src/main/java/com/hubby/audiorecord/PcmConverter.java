@@ -0,0 +1,134 @@
+package com.hubby.audiorecord;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 16bit pcm的采样率和声道数转换，声道减少时先缩混再重采样，声道增加时先重采样再扩展，
+ * 使重采样处理的声道数最少。所有缓冲区在构造时分配
+ */
+public final class PcmConverter {
+    private static final boolean NATIVE_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private final int inChannels;
+    private final int outChannels;
+    private final Resampler resampler;
+    private final ChannelMixer mixer;
+    private final int maxChunkFrames;
+    private final short[] input;
+    private final short[] mixed;
+    private final short[] output;
+
+    /**
+     * @param maxChunkFrames 内部单次处理的最大帧数，输入更长时分多次处理
+     */
+    public PcmConverter(int inRate, int inChannels, int outRate, int outChannels,
+                        Resampler.Quality quality, int maxChunkFrames) {
+        this.inChannels = inChannels;
+        this.outChannels = outChannels;
+        this.maxChunkFrames = maxChunkFrames;
+        this.mixer = new ChannelMixer(inChannels, outChannels);
+        this.resampler = new Resampler(inRate, outRate, Math.min(inChannels, outChannels), quality, maxChunkFrames);
+        int maxOut = resampler.getMaxOutputFrames(maxChunkFrames);
+        this.input = new short[maxChunkFrames * inChannels];
+        this.mixed = new short[Math.max(maxChunkFrames, maxOut) * Math.max(inChannels, outChannels)];
+        this.output = new short[maxOut * outChannels];
+    }
+
+    public boolean isPassThrough() {
+        return resampler.isPassThrough() && mixer.isPassThrough();
+    }
+
+    /**
+     * inBytes字节的输入最多产生的输出字节数
+     */
+    public int getMaxOutputBytes(int inBytes) {
+        int frames = inBytes / (2 * inChannels);
+        int chunks = (frames + maxChunkFrames - 1) / maxChunkFrames;
+        return (resampler.getMaxOutputFrames(frames) + chunks) * 2 * outChannels;
+    }
+
+    /**
+     * 转换src中剩余的完整帧(本机字节序，与缓冲区的order无关)，结果追加到dst，dst的空间至少为{@link #getMaxOutputBytes(int)}
+     */
+    public void convert(ByteBuffer src, ByteBuffer dst) {
+        int inFrameSize = 2 * inChannels;
+        while (src.remaining() >= inFrameSize) {
+            int frames = Math.min(maxChunkFrames, src.remaining() / inFrameSize);
+            int samples = frames * inChannels;
+            int position = src.position();
+            for (int i = 0; i < samples; i++) {
+                input[i] = getShort(src, position + (i << 1));
+            }
+            src.position(position + samples * 2);
+            put(dst, convert(frames));
+        }
+    }
+
+    /**
+     * 输入结束时调用，输出重采样滤波器中剩余的数据
+     */
+    public void drain(ByteBuffer dst) {
+        int frames;
+        if (outChannels < inChannels) {
+            frames = resampler.flush(output, 0);
+        } else {
+            frames = resampler.flush(mixed, 0);
+            mixer.mix(mixed, 0, frames, output, 0);
+        }
+        put(dst, frames);
+    }
+
+    public void reset() {
+        resampler.reset();
+    }
+
+    private int convert(int frames) {
+        if (outChannels < inChannels) {
+            mixer.mix(input, 0, frames, mixed, 0);
+            return resampler.process(mixed, 0, frames, output, 0);
+        }
+        int count = resampler.process(input, 0, frames, mixed, 0);
+        mixer.mix(mixed, 0, count, output, 0);
+        return count;
+    }
+
+    private void put(ByteBuffer dst, int frames) {
+        int samples = frames * outChannels;
+        int position = dst.position();
+        for (int i = 0; i < samples; i++) {
+            putShort(dst, position + (i << 1), output[i]);
+        }
+        dst.position(position + samples * 2);
+    }
+
+    // 按本机字节序逐字节读写，不修改调用方缓冲区的字节序(如环形缓冲区的槽位)，也不创建duplicate
+    private static short getShort(ByteBuffer buffer, int index) {
+        int b0 = buffer.get(index) & 0xff;
+        int b1 = buffer.get(index + 1) & 0xff;
+        return (short) (NATIVE_LITTLE_ENDIAN ? b0 | b1 << 8 : b0 << 8 | b1);
+    }
+
+    private static void putShort(ByteBuffer buffer, int index, short value) {
+        byte low = (byte) value;
+        byte high = (byte) (value >> 8);
+        buffer.put(index, NATIVE_LITTLE_ENDIAN ? low : high);
+        buffer.put(index + 1, NATIVE_LITTLE_ENDIAN ? high : low);
+    }
+
+    public int getInputChannels() {
+        return inChannels;
+    }
+
+    public int getOutputChannels() {
+        return outChannels;
+    }
+
+    public int getInputRate() {
+        return resampler.getInputRate();
+    }
+
+    public int getOutputRate() {
+        return resampler.getOutputRate();
+    }
+}
@@ -0,0 +1,67 @@
+package com.hubby.audiorecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 通过FileChannel把pcm数据合并写入(gathering write)文件，不经过额外的缓冲和拷贝
+ */
+public class PcmFileWriter implements PcmSink {
+    protected final File file;
+    protected final FileChannel channel;
+    private final RandomAccessFile raf;
+    private long dataByteCount;
+    private boolean preallocated;
+
+    public PcmFileWriter(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        this.channel = raf.getChannel();
+    }
+
+    @Override
+    public void write(ByteBuffer[] blocks, int offset, int length) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            dataByteCount += channel.write(blocks, offset, end - offset);
+            while (offset < end && !blocks[offset].hasRemaining()) {
+                offset++;
+            }
+        }
+    }
+
+    /**
+     * 已写入的音频数据字节数，不包括文件头
+     */
+    public long getDataByteCount() {
+        return dataByteCount;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 预先把文件扩展到还能容纳bytes字节数据的长度(文件系统支持时分配空间)，
+     * 避免写入过程中逐步扩展文件；关闭时截掉未写入的部分
+     */
+    public void preallocate(long bytes) throws IOException {
+        raf.setLength(channel.position() + bytes);
+        preallocated = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (preallocated) {
+                channel.truncate(channel.position());
+            }
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.hubby.audiorecord;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单生产者/单消费者(SPSC)的无锁环形缓冲区，槽位为预分配的direct ByteBuffer。
+ * 生产者(采集线程)永不阻塞：缓冲区满时丢弃当前块并计入溢出次数；
+ * 消费者(写文件线程)通过{@link #peek()}/{@link #release()}原地读取槽位，不产生额外拷贝。
+ */
+public final class PcmRingBuffer {
+    private final ByteBuffer[] slots;
+    // 每个槽位附带的标记，由生产者写入，如VAD的判定结果
+    private final int[] slotFlags;
+    private final int mask;
+    private final int slotSize;
+    // 下一个可读的序号，只由消费者推进
+    private final AtomicLong head = new AtomicLong();
+    // 下一个可写的序号，只由生产者推进
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong overrunCount = new AtomicLong();
+    private volatile int highWaterMark;
+    private volatile Thread waitingConsumer;
+
+    /**
+     * @param slotCount 槽位数量，会向上取整为2的幂
+     * @param slotSize  每个槽位的字节数，即单次写入的最大长度
+     */
+    public PcmRingBuffer(int slotCount, int slotSize) {
+        if (slotCount <= 0 || slotSize <= 0) {
+            throw new IllegalArgumentException("slotCount = " + slotCount + " slotSize = " + slotSize);
+        }
+        int capacity = Integer.highestOneBit(slotCount);
+        if (capacity < slotCount) {
+            capacity <<= 1;
+        }
+        this.slots = new ByteBuffer[capacity];
+        // 槽位与AudioRecord/AudioTrack的PCM数据同为本机字节序，消费者可以直接按样本读写
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = ByteBuffer.allocateDirect(slotSize).order(ByteOrder.nativeOrder());
+        }
+        this.slotFlags = new int[capacity];
+        this.mask = capacity - 1;
+        this.slotSize = slotSize;
+    }
+
+    /**
+     * 生产者调用，拷贝一块数据进入缓冲区，缓冲区已满时立即返回false
+     */
+    public boolean offer(byte[] src, int offset, int length) {
+        ByteBuffer slot = claim(length);
+        if (slot == null) {
+            return false;
+        }
+        slot.put(src, offset, length);
+        slotFlags[(int) tail.get() & mask] = 0;
+        publish(slot);
+        return true;
+    }
+
+    /**
+     * 生产者调用，拷贝src中剩余的数据进入缓冲区，缓冲区已满时立即返回false
+     */
+    public boolean offer(ByteBuffer src) {
+        return offer(src, 0);
+    }
+
+    /**
+     * 同{@link #offer(ByteBuffer)}，同时为这块数据附带标记，消费者通过{@link #getFlags(int)}读取
+     */
+    public boolean offer(ByteBuffer src, int flags) {
+        ByteBuffer slot = claim(src.remaining());
+        if (slot == null) {
+            return false;
+        }
+        slot.put(src);
+        slotFlags[(int) tail.get() & mask] = flags;
+        publish(slot);
+        return true;
+    }
+
+    private ByteBuffer claim(int length) {
+        if (length > slotSize) {
+            throw new IllegalArgumentException("length " + length + " > slotSize " + slotSize);
+        }
+        long t = tail.get();
+        int used = (int) (t - head.get());
+        if (used > mask) {
+            overrunCount.lazySet(overrunCount.get() + 1);
+            return null;
+        }
+        if (used + 1 > highWaterMark) {
+            highWaterMark = used + 1;
+        }
+        ByteBuffer slot = slots[(int) t & mask];
+        slot.clear();
+        return slot;
+    }
+
+    private void publish(ByteBuffer slot) {
+        slot.flip();
+        tail.lazySet(tail.get() + 1);
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * 消费者调用，返回最早的一块数据(position~limit为有效数据)，没有数据时返回null。
+     * 读取完成后必须调用{@link #release()}归还槽位
+     */
+    public ByteBuffer peek() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        return slots[(int) h & mask];
+    }
+
+    /**
+     * 消费者调用，一次取出最多dst.length块连续的数据，用于合并写入(gathering write)。
+     * 读取完成后必须调用{@link #release(int)}归还同样数量的槽位
+     *
+     * @return 取出的块数，没有数据时返回0
+     */
+    public int peek(ByteBuffer[] dst) {
+        long h = head.get();
+        int count = (int) Math.min(tail.get() - h, dst.length);
+        for (int i = 0; i < count; i++) {
+            dst[i] = slots[(int) (h + i) & mask];
+        }
+        return count;
+    }
+
+    /**
+     * 消费者调用，返回已取出但未归还的第index块数据(0为最早的一块)写入时附带的标记
+     */
+    public int getFlags(int index) {
+        return slotFlags[(int) (head.get() + index) & mask];
+    }
+
+    /**
+     * 消费者调用，归还{@link #peek()}得到的槽位
+     */
+    public void release() {
+        head.lazySet(head.get() + 1);
+    }
+
+    /**
+     * 消费者调用，归还{@link #peek(ByteBuffer[])}得到的count个槽位
+     */
+    public void release(int count) {
+        head.lazySet(head.get() + count);
+    }
+
+    /**
+     * 消费者调用，缓冲区为空时最多等待timeoutNanos，生产者写入后会被唤醒
+     */
+    public void await(long timeoutNanos) {
+        waitingConsumer = Thread.currentThread();
+        if (isEmpty()) {
+            LockSupport.parkNanos(this, timeoutNanos);
+        }
+        waitingConsumer = null;
+    }
+
+    /**
+     * 唤醒正在{@link #await(long)}的消费者
+     */
+    public void wakeUp() {
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public int getSlotSize() {
+        return slotSize;
+    }
+
+    /**
+     * 缓冲区已满导致丢弃的块数
+     */
+    public long getOverrunCount() {
+        return overrunCount.get();
+    }
+
+    /**
+     * 自上次{@link #reset()}以来同时占用槽位的最大数量
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * 清空缓冲区及统计数据，只能在生产者和消费者都未运行时调用
+     */
+    public void reset() {
+        head.set(0);
+        tail.set(0);
+        overrunCount.set(0);
+        highWaterMark = 0;
+    }
+}
@@ -0,0 +1,16 @@
+package com.hubby.audiorecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 写文件线程的输出端，每次写入的是若干块连续的pcm数据
+ */
+public interface PcmSink extends Closeable {
+
+    /**
+     * 写入blocks[offset, offset + length)中每块position~limit之间的数据，返回后这些数据已全部写出
+     */
+    void write(ByteBuffer[] blocks, int offset, int length) throws IOException;
+}
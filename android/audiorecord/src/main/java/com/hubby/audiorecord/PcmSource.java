@@ -0,0 +1,34 @@
+package com.hubby.audiorecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 播放线程的数据来源，按字节提供pcm数据
+ */
+public interface PcmSource extends Closeable {
+
+    /**
+     * 读取最多maxBytes字节的数据，返回的缓冲区position~limit为有效数据，只在下一次调用前有效；
+     * 调用者可以只消费其中一部分(推进position)，剩余部分需在下一次read之前处理完
+     *
+     * @return 数据结束时返回null
+     */
+    ByteBuffer read(int maxBytes) throws IOException;
+
+    /**
+     * 数据总字节数，未知时返回-1
+     */
+    long length();
+
+    /**
+     * 下一次{@link #read(int)}的起始字节位置
+     */
+    long position();
+
+    /**
+     * 跳转到指定的字节位置，调用者负责按帧对齐
+     */
+    void seek(long bytePosition) throws IOException;
+}
@@ -0,0 +1,175 @@
+package com.hubby.audiorecord;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 读取{@link PeakIndexWriter}生成的.peaks文件，按绘制的像素数返回任意时间段的波形峰值。
+ * 每次读取选择每个峰值帧数不超过每像素帧数的最粗一级，读取的条目数与像素数成正比，与录音长度无关
+ */
+public final class PeakIndexReader implements Closeable {
+    // 合并所有声道
+    public static final int ALL_CHANNELS = -1;
+
+    private final RandomAccessFile raf;
+    private final ByteBuffer data;
+    private final int sampleRate;
+    private final int channels;
+    private final int[] framesPerPeak;
+    private final long[] peakCounts;
+    // 各级数据在文件中的偏移
+    private final int[] levelOffsets;
+    private final long frameCount;
+    private final int entrySize;
+
+    /**
+     * @throws IOException 不是峰值索引文件，或录音未正常结束导致文件头未修正
+     */
+    public PeakIndexReader(File file) throws IOException {
+        this.raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if (data.limit() < PeakIndexWriter.headerSize(0) || data.getInt(0) != PeakIndexWriter.MAGIC) {
+                throw new IOException("not a peak index file: " + file);
+            }
+            if (data.getInt(4) != PeakIndexWriter.VERSION) {
+                throw new IOException("unsupported version " + data.getInt(4));
+            }
+            sampleRate = data.getInt(8);
+            channels = data.getInt(12);
+            int levelCount = data.getInt(16);
+            int headerSize = PeakIndexWriter.headerSize(levelCount);
+            if (channels <= 0 || levelCount <= 0 || data.limit() < headerSize) {
+                throw new IOException("corrupted peak index, channels = " + channels + " levels = " + levelCount);
+            }
+            entrySize = channels * 4;
+            framesPerPeak = new int[levelCount];
+            peakCounts = new long[levelCount];
+            levelOffsets = new int[levelCount];
+            long offset = headerSize;
+            for (int i = 0; i < levelCount; i++) {
+                framesPerPeak[i] = data.getInt(20 + i * 4);
+                peakCounts[i] = data.getLong(20 + levelCount * 4 + i * 8);
+                levelOffsets[i] = (int) offset;
+                offset += peakCounts[i] * entrySize;
+            }
+            frameCount = data.getLong(20 + levelCount * 12);
+            if (offset > data.limit() || (frameCount > 0 && peakCounts[0] == 0)) {
+                throw new IOException("incomplete peak index: " + file);
+            }
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getDurationMillis() {
+        return sampleRate == 0 ? 0 : frameCount * 1000 / sampleRate;
+    }
+
+    public int getLevelCount() {
+        return framesPerPeak.length;
+    }
+
+    public int getFramesPerPeak(int level) {
+        return framesPerPeak[level];
+    }
+
+    /**
+     * 把[startFrame, endFrame)平均分为pixels段，每段的最小值和最大值(16bit范围)写入mins/maxs的[0, pixels)
+     *
+     * @param channel 声道下标，{@link #ALL_CHANNELS}表示合并所有声道
+     * @return 有数据的像素数，超出录音长度的像素不写入
+     */
+    public int read(long startFrame, long endFrame, int pixels, int channel, short[] mins, short[] maxs) {
+        if (channel != ALL_CHANNELS && (channel < 0 || channel >= channels)) {
+            throw new IllegalArgumentException("channel = " + channel + " channels = " + channels);
+        }
+        if (pixels <= 0 || endFrame <= startFrame || startFrame < 0) {
+            return 0;
+        }
+        // 像素按请求的时间段划分，超出录音长度的像素不写入
+        double framesPerPixel = (double) (endFrame - startFrame) / pixels;
+        endFrame = Math.min(endFrame, frameCount);
+        int level = selectLevel(framesPerPixel);
+        int peakFrames = framesPerPeak[level];
+        long count = peakCounts[level];
+        int base = levelOffsets[level];
+        int firstChannel = channel == ALL_CHANNELS ? 0 : channel;
+        int lastChannel = channel == ALL_CHANNELS ? channels - 1 : channel;
+        int written = 0;
+        for (int p = 0; p < pixels; p++) {
+            long from = startFrame + (long) (p * framesPerPixel);
+            long to = Math.min(endFrame, startFrame + (long) ((p + 1) * framesPerPixel));
+            if (from >= endFrame) {
+                break;
+            }
+            long first = from / peakFrames;
+            // 每个像素至少取一个条目，放大到单个条目以下时相邻像素取到同一个条目
+            long last = Math.max(first + 1, (to + peakFrames - 1) / peakFrames);
+            if (first >= count) {
+                break;
+            }
+            last = Math.min(last, count);
+            int min = Short.MAX_VALUE;
+            int max = Short.MIN_VALUE;
+            for (long e = first; e < last; e++) {
+                int entry = base + (int) (e * entrySize);
+                for (int c = firstChannel; c <= lastChannel; c++) {
+                    short entryMin = data.getShort(entry + c * 4);
+                    short entryMax = data.getShort(entry + c * 4 + 2);
+                    if (entryMin < min) {
+                        min = entryMin;
+                    }
+                    if (entryMax > max) {
+                        max = entryMax;
+                    }
+                }
+            }
+            mins[p] = (short) min;
+            maxs[p] = (short) max;
+            written++;
+        }
+        return written;
+    }
+
+    /**
+     * 按毫秒指定时间段，见{@link #read(long, long, int, int, short[], short[])}
+     */
+    public int readMillis(long startMillis, long endMillis, int pixels, int channel, short[] mins, short[] maxs) {
+        return read(startMillis * sampleRate / 1000, endMillis * sampleRate / 1000, pixels, channel, mins, maxs);
+    }
+
+    private int selectLevel(double framesPerPixel) {
+        int level = 0;
+        for (int i = 1; i < framesPerPeak.length; i++) {
+            if (framesPerPeak[i] <= framesPerPixel && peakCounts[i] > 0) {
+                level = i;
+            }
+        }
+        return level;
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+}
@@ -0,0 +1,275 @@
+package com.hubby.audiorecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 在写文件线程中随录音数据增量生成多级峰值索引(.peaks文件)，用于绘制波形时不读取整个录音文件。
+ * 每级按固定帧数记录每个声道的最小/最大值(16bit范围)，下一级由上一级合并得到；
+ * 第0级边录边写入文件，更高的级别数据量很小，保存在内存中，{@link #close()}时写在第0级之后并修正文件头。
+ * <p>
+ * 文件格式(小端序)：magic、version、sampleRate、channels、levelCount、每级帧数、每级条目数、总帧数，
+ * 之后依次为各级条目，每个条目为channels组(min, max)的short。读取见{@link PeakIndexReader}
+ */
+public class PeakIndexWriter implements PcmSink {
+    static final int MAGIC = 0x4b414550; // "PEAK"
+    static final int VERSION = 1;
+    // 默认每256/4096/65536帧一个峰值
+    static final int[] DEFAULT_FRAMES_PER_PEAK = {256, 4096, 65536};
+    // 每次转换为float的最大帧数
+    private static final int CHUNK_FRAMES = 1024;
+    // 第0级的写缓冲，满了之后写入文件
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final SampleFormat format;
+    private final int sampleRate;
+    private final int channels;
+    private final int frameSize;
+    private final int[] framesPerPeak;
+    private final float[] samples;
+    // 第0级当前条目的累积值
+    private final float[] levelMin;
+    private final float[] levelMax;
+    private int levelFrames;
+    private final ByteBuffer output;
+    // 第1级起的条目数据和正在合并的条目，下标为level-1
+    private final short[][] upperData;
+    private final int[] upperLength;
+    private final short[][] upperPending;
+    private final int[] upperPendingCount;
+    private final long[] peakCounts;
+    private long frameCount;
+
+    public PeakIndexWriter(File file, int sampleRate, int channels, SampleFormat format) throws IOException {
+        this(file, sampleRate, channels, format, DEFAULT_FRAMES_PER_PEAK);
+    }
+
+    /**
+     * @param framesPerPeak 每级一个峰值对应的帧数，从小到大，每级须为上一级的整数倍
+     */
+    public PeakIndexWriter(File file, int sampleRate, int channels, SampleFormat format, int[] framesPerPeak)
+            throws IOException {
+        if (framesPerPeak.length == 0 || framesPerPeak[0] <= 0) {
+            throw new IllegalArgumentException("invalid framesPerPeak");
+        }
+        for (int i = 1; i < framesPerPeak.length; i++) {
+            if (framesPerPeak[i] <= framesPerPeak[i - 1] || framesPerPeak[i] % framesPerPeak[i - 1] != 0) {
+                throw new IllegalArgumentException("framesPerPeak[" + i + "] = " + framesPerPeak[i]
+                        + " is not a multiple of " + framesPerPeak[i - 1]);
+            }
+        }
+        this.format = format;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.frameSize = format.getFrameSize(channels);
+        this.framesPerPeak = framesPerPeak.clone();
+        this.samples = new float[CHUNK_FRAMES * channels];
+        this.levelMin = new float[channels];
+        this.levelMax = new float[channels];
+        int upperLevels = framesPerPeak.length - 1;
+        this.upperData = new short[upperLevels][];
+        this.upperLength = new int[upperLevels];
+        this.upperPending = new short[upperLevels][];
+        this.upperPendingCount = new int[upperLevels];
+        for (int i = 0; i < upperLevels; i++) {
+            upperData[i] = new short[1024 * channels * 2];
+            upperPending[i] = new short[channels * 2];
+        }
+        this.peakCounts = new long[framesPerPeak.length];
+        this.output = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        resetLevel0();
+        this.raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        this.channel = raf.getChannel();
+        channel.position(headerSize(framesPerPeak.length));
+    }
+
+    static int headerSize(int levelCount) {
+        return 20 + levelCount * 12 + 8;
+    }
+
+    @Override
+    public void write(ByteBuffer[] blocks, int offset, int length) throws IOException {
+        for (int b = offset; b < offset + length; b++) {
+            // 按wav文件中的小端序读取，不依赖也不修改调用方缓冲区的字节序
+            ByteBuffer block = blocks[b].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            int position = block.position();
+            int frames = block.remaining() / frameSize;
+            while (frames > 0) {
+                int n = Math.min(CHUNK_FRAMES, frames);
+                format.toFloat(block, position, samples, 0, n * channels);
+                accumulate(n);
+                position += n * frameSize;
+                frames -= n;
+            }
+            blocks[b].position(blocks[b].limit());
+        }
+    }
+
+    private void accumulate(int frames) throws IOException {
+        int peakFrames = framesPerPeak[0];
+        for (int f = 0, s = 0; f < frames; f++) {
+            for (int c = 0; c < channels; c++, s++) {
+                float sample = samples[s];
+                if (sample < levelMin[c]) {
+                    levelMin[c] = sample;
+                }
+                if (sample > levelMax[c]) {
+                    levelMax[c] = sample;
+                }
+            }
+            if (++levelFrames == peakFrames) {
+                emitLevel0();
+            }
+        }
+        frameCount += frames;
+    }
+
+    private void emitLevel0() throws IOException {
+        if (output.remaining() < channels * 4) {
+            flushOutput();
+        }
+        // 只有一级时不需要向上合并
+        boolean hasUpper = upperPending.length > 0;
+        for (int c = 0; c < channels; c++) {
+            short min = toShort(levelMin[c]);
+            short max = toShort(levelMax[c]);
+            output.putShort(min);
+            output.putShort(max);
+            if (hasUpper) {
+                merge(0, c, min, max);
+            }
+        }
+        peakCounts[0]++;
+        if (hasUpper) {
+            completeUpper(0);
+        }
+        resetLevel0();
+    }
+
+    private void merge(int upper, int c, short min, short max) {
+        short[] pending = upperPending[upper];
+        if (upperPendingCount[upper] == 0) {
+            pending[c * 2] = min;
+            pending[c * 2 + 1] = max;
+        } else {
+            if (min < pending[c * 2]) {
+                pending[c * 2] = min;
+            }
+            if (max > pending[c * 2 + 1]) {
+                pending[c * 2 + 1] = max;
+            }
+        }
+    }
+
+    /**
+     * 下一级(upper)合并了一个条目后调用，够数时生成一个条目并继续向上合并
+     */
+    private void completeUpper(int upper) {
+        upperPendingCount[upper]++;
+        int ratio = framesPerPeak[upper + 1] / framesPerPeak[upper];
+        if (upperPendingCount[upper] == ratio) {
+            emitUpper(upper);
+        }
+    }
+
+    private void emitUpper(int upper) {
+        short[] pending = upperPending[upper];
+        int entrySize = channels * 2;
+        short[] data = upperData[upper];
+        if (upperLength[upper] + entrySize > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+            upperData[upper] = data;
+        }
+        System.arraycopy(pending, 0, data, upperLength[upper], entrySize);
+        upperLength[upper] += entrySize;
+        peakCounts[upper + 1]++;
+        upperPendingCount[upper] = 0;
+        if (upper + 1 < upperPending.length) {
+            for (int c = 0; c < channels; c++) {
+                merge(upper + 1, c, pending[c * 2], pending[c * 2 + 1]);
+            }
+            completeUpper(upper + 1);
+        }
+    }
+
+    private void resetLevel0() {
+        levelFrames = 0;
+        for (int c = 0; c < channels; c++) {
+            levelMin[c] = Float.MAX_VALUE;
+            levelMax[c] = -Float.MAX_VALUE;
+        }
+    }
+
+    private static short toShort(float sample) {
+        int value = Math.round(sample * 32767f);
+        return (short) (value < Short.MIN_VALUE ? Short.MIN_VALUE
+                : value > Short.MAX_VALUE ? Short.MAX_VALUE : value);
+    }
+
+    private void flushOutput() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            channel.write(output);
+        }
+        output.clear();
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * 把未满的条目作为最后一个条目写出，追加更高级别的数据并修正文件头
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (levelFrames > 0) {
+                emitLevel0();
+            }
+            for (int upper = 0; upper < upperPending.length; upper++) {
+                if (upperPendingCount[upper] > 0) {
+                    emitUpper(upper);
+                }
+            }
+            for (int upper = 0; upper < upperData.length; upper++) {
+                short[] data = upperData[upper];
+                for (int i = 0; i < upperLength[upper]; i++) {
+                    if (!output.hasRemaining()) {
+                        flushOutput();
+                    }
+                    output.putShort(data[i]);
+                }
+            }
+            flushOutput();
+            ByteBuffer header = ByteBuffer.allocate(headerSize(framesPerPeak.length))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(sampleRate);
+            header.putInt(channels);
+            header.putInt(framesPerPeak.length);
+            for (int frames : framesPerPeak) {
+                header.putInt(frames);
+            }
+            for (long count : peakCounts) {
+                header.putLong(count);
+            }
+            header.putLong(frameCount);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } finally {
+            raf.close();
+        }
+    }
+}
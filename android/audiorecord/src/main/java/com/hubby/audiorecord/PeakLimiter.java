@@ -0,0 +1,81 @@
+package com.hubby.audiorecord;
+
+/**
+ * 峰值限幅：任一声道超过ceilingDb时立即把所有声道按同一增益压低(不改变声像)，之后在release时间内恢复，
+ * 输出保证不超过ceilingDb。没有前视延迟，不增加采集延迟，放在处理链的最后
+ */
+public final class PeakLimiter implements AudioProcessor {
+    public static final float DEFAULT_CEILING_DB = -1f;
+    public static final float DEFAULT_RELEASE_MILLIS = 80f;
+
+    private volatile float ceiling;
+    private final float releaseMillis;
+    private int channels = 1;
+    private float releaseCoefficient;
+    // 以下只由采集线程访问
+    private float gain = 1f;
+    private volatile long limitedFrames;
+
+    public PeakLimiter() {
+        this(DEFAULT_CEILING_DB, DEFAULT_RELEASE_MILLIS);
+    }
+
+    public PeakLimiter(float ceilingDb, float releaseMillis) {
+        if (releaseMillis < 0) {
+            throw new IllegalArgumentException("releaseMillis = " + releaseMillis);
+        }
+        setCeilingDb(ceilingDb);
+        this.releaseMillis = releaseMillis;
+    }
+
+    public void setCeilingDb(float ceilingDb) {
+        this.ceiling = AudioProcessorChain.dbToGain(Math.min(0, ceilingDb));
+    }
+
+    /**
+     * 增益被压低(小于1)的帧数，持续增长说明前级增益过大
+     */
+    public long getLimitedFrames() {
+        return limitedFrames;
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channels) {
+        this.channels = channels;
+        this.releaseCoefficient = AudioProcessorChain.smoothingCoefficient(releaseMillis, sampleRate);
+        this.gain = 1f;
+    }
+
+    @Override
+    public void process(float[] samples, int frames) {
+        float limit = ceiling;
+        float g = gain;
+        long limited = 0;
+        int index = 0;
+        for (int f = 0; f < frames; f++) {
+            float peak = 0;
+            for (int c = 0; c < channels; c++) {
+                float abs = Math.abs(samples[index + c]);
+                if (abs > peak) {
+                    peak = abs;
+                }
+            }
+            float required = peak > limit ? limit / peak : 1f;
+            if (required < g) {
+                g = required;
+            } else {
+                g += (required - g) * releaseCoefficient;
+            }
+            if (g < 1f) {
+                limited++;
+            }
+            for (int c = 0; c < channels; c++) {
+                samples[index++] *= g;
+            }
+        }
+        gain = g;
+        if (limited > 0) {
+            limitedFrames += limited;
+        }
+    }
+}
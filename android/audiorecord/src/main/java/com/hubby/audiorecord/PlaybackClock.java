@@ -0,0 +1,103 @@
+package com.hubby.audiorecord;
+
+/**
+ * 播放时钟：播放线程定期发布(帧位置, 对应的System.nanoTime)，其他线程读取时按采样率外推到当前时刻，
+ * 可以在任意线程以屏幕刷新率查询，不加锁不分配内存。
+ * 发布使用序号锁(seqlock)：写入期间序号为奇数，读取方在序号变化时重试；写入很少，写入方之间用锁互斥
+ */
+public final class PlaybackClock {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private volatile int sequence;
+    private volatile long anchorFrame;
+    private volatile long anchorNanos;
+    // 已写入AudioTrack的最后一帧，外推不会超过这里(数据写完或欠载时时钟停在此处)
+    private volatile long limitFrame;
+    private volatile boolean running;
+    private final int sampleRate;
+
+    PlaybackClock(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * 播放线程调用：frame在nanoTime时刻正在输出
+     *
+     * @param limitFrame 已写入的数据结束位置
+     */
+    synchronized void publish(long frame, long nanoTime, long limitFrame, boolean running) {
+        sequence++;
+        this.anchorFrame = frame;
+        this.anchorNanos = nanoTime;
+        this.limitFrame = limitFrame;
+        this.running = running;
+        sequence++;
+    }
+
+    /**
+     * 暂停或停止时调用，时钟停在当前位置
+     */
+    synchronized void freeze() {
+        long now = System.nanoTime();
+        long frame = getPositionFrames(now);
+        publish(frame, now, Math.max(frame, limitFrame), false);
+    }
+
+    /**
+     * 从暂停恢复时调用，从暂停的位置继续计时
+     */
+    synchronized void resume() {
+        publish(anchorFrame, System.nanoTime(), limitFrame, true);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 当前正在输出的帧位置
+     */
+    public long getPositionFrames() {
+        return getPositionFrames(System.nanoTime());
+    }
+
+    /**
+     * nowNanos(System.nanoTime)时刻正在输出的帧位置，同一帧绘制多个元素时可传入同一个时刻
+     */
+    public long getPositionFrames(long nowNanos) {
+        while (true) {
+            int seq = sequence;
+            if ((seq & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            long frame = anchorFrame;
+            long nanos = anchorNanos;
+            long limit = limitFrame;
+            boolean isRunning = running;
+            if (seq != sequence) {
+                continue;
+            }
+            if (!isRunning || nowNanos <= nanos) {
+                return frame;
+            }
+            long position = frame + (nowNanos - nanos) * sampleRate / NANOS_PER_SECOND;
+            return Math.min(position, Math.max(frame, limit));
+        }
+    }
+
+    /**
+     * 当前播放位置(微秒)
+     */
+    public long getPositionMicros() {
+        return framesToMicros(getPositionFrames());
+    }
+
+    public long framesToMicros(long frames) {
+        return frames * 1000000L / sampleRate;
+    }
+}
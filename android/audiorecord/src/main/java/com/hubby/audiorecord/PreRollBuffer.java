@@ -0,0 +1,121 @@
+package com.hubby.audiorecord;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 待触发录音使用的固定大小堆外环形缓冲区，只保留最近capacity字节的采集数据，不做任何磁盘IO。
+ * 触发前只有采集线程写入；触发后采集线程不再写入，交给写文件线程一次性取出
+ * (两者之间通过向线程池提交写文件任务建立happens-before)，因此不需要加锁
+ */
+final class PreRollBuffer {
+    private final ByteBuffer buffer;
+    private final ByteBuffer head;
+    private final ByteBuffer tail;
+    // 最早数据的位置和有效长度
+    private int start;
+    private int length;
+    // 被新数据覆盖的字节数
+    private long droppedBytes;
+
+    /**
+     * @param capacity  容量(字节)，向下对齐到帧
+     * @param frameSize 每帧字节数，写入的数据块须按帧对齐
+     */
+    PreRollBuffer(int capacity, int frameSize) {
+        if (capacity <= 0 || frameSize <= 0) {
+            throw new IllegalArgumentException("capacity = " + capacity + " frameSize = " + frameSize);
+        }
+        int aligned = Math.max(frameSize, capacity / frameSize * frameSize);
+        this.buffer = ByteBuffer.allocateDirect(aligned).order(ByteOrder.nativeOrder());
+        this.head = buffer.duplicate().order(ByteOrder.nativeOrder());
+        this.tail = buffer.duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * 容纳millis毫秒数据所需的字节数
+     */
+    static int capacityFor(int millis, int sampleRate, int frameSize) {
+        long bytes = (long) millis * sampleRate / 1000 * frameSize;
+        if (bytes > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("pre-roll too long: " + millis + "ms");
+        }
+        return (int) bytes;
+    }
+
+    /**
+     * 采集线程调用，拷贝block中剩余的数据，缓冲区满时覆盖最早的数据；不改变block的position
+     */
+    void write(ByteBuffer block) {
+        int capacity = buffer.capacity();
+        int position = block.position();
+        int limit = block.limit();
+        int size = limit - position;
+        if (size > capacity) {
+            // 只保留最后capacity字节
+            droppedBytes += size - capacity;
+            block.position(limit - capacity);
+            size = capacity;
+        }
+        int overflow = length + size - capacity;
+        if (overflow > 0) {
+            droppedBytes += overflow;
+            start = (start + overflow) % capacity;
+            length -= overflow;
+        }
+        int writeAt = (start + length) % capacity;
+        int first = Math.min(size, capacity - writeAt);
+        block.limit(block.position() + first);
+        buffer.clear().position(writeAt);
+        buffer.put(block);
+        block.limit(limit);
+        if (first < size) {
+            buffer.clear();
+            buffer.put(block);
+        }
+        length += size;
+        block.position(position);
+    }
+
+    /**
+     * 按时间顺序把缓冲区中的数据以0~2个视图追加到out中并清空缓冲区，视图在下次写入前有效
+     *
+     * @return 追加的视图数
+     */
+    int drain(ByteBuffer[] out, int offset) {
+        if (length == 0) {
+            return 0;
+        }
+        int capacity = buffer.capacity();
+        int first = Math.min(length, capacity - start);
+        head.clear().position(start).limit(start + first);
+        out[offset] = head;
+        int count = 1;
+        if (first < length) {
+            tail.clear().limit(length - first);
+            out[offset + 1] = tail;
+            count = 2;
+        }
+        start = 0;
+        length = 0;
+        return count;
+    }
+
+    int size() {
+        return length;
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    void reset() {
+        start = 0;
+        length = 0;
+        droppedBytes = 0;
+    }
+}
@@ -0,0 +1,269 @@
+package com.hubby.audiorecord;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 预读数据源：在单独的线程中提前读取上游数据(文件IO、解码、重采样等)填满blockCount个预分配的块，
+ * 播放线程只从已就绪的块中读取，上游偶尔变慢也不会导致AudioTrack欠载。
+ * 块之间是单生产者/单消费者的无锁队列，播放线程正在读取的块不会被覆盖；
+ * 跳转时丢弃已预读的数据，预读线程在上游跳转后继续读取
+ */
+public class PrefetchingPcmSource implements PcmSource {
+    // 队列为空或已满时的最长等待时间，对方推进后会提前唤醒
+    private static final long AWAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // 关闭时等待预读线程结束的最长时间，超时后直接关闭上游以打断阻塞的读取
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+    // 块长度为此值表示上游数据结束
+    private static final int END_OF_DATA = -1;
+
+    private final PcmSource source;
+    private final long length;
+    private final int blockSize;
+    private final ByteBuffer[] blocks;
+    private final int[] blockLengths;
+    // 块数据在上游中的起始位置和读取时的跳转代数
+    private final long[] blockPositions;
+    private final long[] blockGenerations;
+    // 下一个可读的块序号，只由播放线程推进
+    private final AtomicLong head = new AtomicLong();
+    // 下一个可写的块序号，只由预读线程推进
+    private final AtomicLong tail = new AtomicLong();
+    private volatile Thread waitingConsumer;
+    private volatile Thread waitingProducer;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private final CountDownLatch prefetchFinished = new CountDownLatch(1);
+    // 跳转请求，跳转很少发生，加锁保证位置和代数一致
+    private final Object seekLock = new Object();
+    private long seekPosition;
+    private long seekGeneration;
+    private volatile long requestedGeneration;
+    // 以下只由播放线程访问
+    private long generation;
+    private ByteBuffer current;
+    private int currentLimit;
+    private long currentStart;
+    private long position;
+    // 开始或跳转后已经读到过数据，之后的等待才计入stallCount
+    private boolean delivered;
+    private volatile long stallCount;
+
+    /**
+     * @param blockSize  每块的字节数，须按帧对齐
+     * @param blockCount 块数，2为双缓冲，3为三缓冲
+     * @param executor   执行预读任务，任务一直运行到{@link #close()}
+     */
+    public PrefetchingPcmSource(PcmSource source, int blockSize, int blockCount, Executor executor) {
+        if (blockSize <= 0 || blockCount < 2) {
+            throw new IllegalArgumentException("blockSize = " + blockSize + " blockCount = " + blockCount);
+        }
+        this.source = source;
+        this.length = source.length();
+        this.blockSize = blockSize;
+        this.blocks = new ByteBuffer[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            blocks[i] = ByteBuffer.allocateDirect(blockSize).order(ByteOrder.nativeOrder());
+        }
+        this.blockLengths = new int[blockCount];
+        this.blockPositions = new long[blockCount];
+        this.blockGenerations = new long[blockCount];
+        this.position = source.position();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                prefetch();
+            }
+        });
+    }
+
+    private void prefetch() {
+        long producedGeneration = 0;
+        boolean ended = false;
+        try {
+            while (!closed) {
+                if (requestedGeneration != producedGeneration) {
+                    long target;
+                    synchronized (seekLock) {
+                        producedGeneration = seekGeneration;
+                        target = seekPosition;
+                    }
+                    source.seek(target);
+                    ended = false;
+                }
+                long t = tail.get();
+                if (ended || t - head.get() >= blocks.length) {
+                    waitingProducer = Thread.currentThread();
+                    if (!closed && requestedGeneration == producedGeneration
+                            && (ended || t - head.get() >= blocks.length)) {
+                        LockSupport.parkNanos(this, AWAIT_NANOS);
+                    }
+                    waitingProducer = null;
+                    continue;
+                }
+                int index = (int) (t % blocks.length);
+                long start = source.position();
+                ByteBuffer data = source.read(blockSize);
+                if (data == null) {
+                    blockLengths[index] = END_OF_DATA;
+                    ended = true;
+                } else {
+                    ByteBuffer block = blocks[index];
+                    block.clear();
+                    int n = Math.min(data.remaining(), blockSize);
+                    int limit = data.limit();
+                    data.limit(data.position() + n);
+                    block.put(data);
+                    data.limit(limit);
+                    blockLengths[index] = n;
+                }
+                blockPositions[index] = start;
+                blockGenerations[index] = producedGeneration;
+                tail.lazySet(t + 1);
+                unpark(waitingConsumer);
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new IOException("prefetch failed", e);
+        } finally {
+            prefetchFinished.countDown();
+            unpark(waitingConsumer);
+        }
+    }
+
+    @Override
+    public ByteBuffer read(int maxBytes) throws IOException {
+        boolean stalled = false;
+        while (true) {
+            if (current != null) {
+                int start = current.position();
+                if (start < currentLimit) {
+                    current.limit((int) Math.min(currentLimit, (long) start + maxBytes));
+                    position = currentStart + current.limit();
+                    return current;
+                }
+                releaseCurrent();
+            }
+            long h = head.get();
+            if (h == tail.get()) {
+                IOException error = failure;
+                if (error != null && h == tail.get()) {
+                    throw error;
+                }
+                if (!stalled && delivered) {
+                    stalled = true;
+                    stallCount++;
+                }
+                waitForData(h);
+                continue;
+            }
+            int index = (int) (h % blocks.length);
+            if (blockGenerations[index] != generation) {
+                // 跳转前预读的数据
+                head.lazySet(h + 1);
+                unpark(waitingProducer);
+                continue;
+            }
+            int blockLength = blockLengths[index];
+            if (blockLength == END_OF_DATA) {
+                return null;
+            }
+            current = blocks[index];
+            current.limit(blockLength).position(0);
+            currentLimit = blockLength;
+            currentStart = blockPositions[index];
+            delivered = true;
+        }
+    }
+
+    private void waitForData(long h) throws InterruptedIOException {
+        if (Thread.interrupted()) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("wait for prefetch interrupted");
+        }
+        if (closed) {
+            throw new InterruptedIOException("source closed");
+        }
+        waitingConsumer = Thread.currentThread();
+        if (h == tail.get() && failure == null) {
+            LockSupport.parkNanos(this, AWAIT_NANOS);
+        }
+        waitingConsumer = null;
+    }
+
+    private void releaseCurrent() {
+        current = null;
+        head.lazySet(head.get() + 1);
+        unpark(waitingProducer);
+    }
+
+    private static void unpark(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    /**
+     * 丢弃已预读的数据，预读线程跳转上游后重新开始预读；上游跳转失败时在下一次读取时抛出
+     */
+    @Override
+    public void seek(long bytePosition) {
+        long target = Math.max(0, length >= 0 ? Math.min(bytePosition, length) : bytePosition);
+        if (current != null) {
+            releaseCurrent();
+        }
+        synchronized (seekLock) {
+            seekPosition = target;
+            generation = ++seekGeneration;
+        }
+        requestedGeneration = generation;
+        position = target;
+        delivered = false;
+        unpark(waitingProducer);
+    }
+
+    /**
+     * 读取时预读数据尚未就绪需要等待的次数，持续增长说明上游读取速度跟不上播放
+     */
+    public long getStallCount() {
+        return stallCount;
+    }
+
+    /**
+     * 已预读、等待播放线程读取的块数
+     */
+    public int getBufferedBlocks() {
+        return (int) (tail.get() - head.get());
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        unpark(waitingProducer);
+        try {
+            prefetchFinished.await(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            source.close();
+        }
+    }
+}
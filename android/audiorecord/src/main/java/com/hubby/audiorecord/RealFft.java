@@ -0,0 +1,120 @@
+package com.hubby.audiorecord;
+
+/**
+ * 实数序列的快速傅里叶变换：把N个实数采样打包为N/2个复数做基2变换，再拆分得到N/2+1个频点，
+ * 计算量约为同长度复数FFT的一半。位反转表和旋转因子在构造时预先计算，变换过程不分配内存；
+ * 工作数组属于实例，一个实例只能由一个线程使用
+ */
+public final class RealFft {
+    private final int size;
+    private final int half;
+    private final int[] bitReverse;
+    // 长度为N/2的复数FFT的旋转因子 e^(-2πik/(N/2))
+    private final float[] cos;
+    private final float[] sin;
+    // 拆分实数频谱用的旋转因子 e^(-2πik/N)
+    private final float[] splitCos;
+    private final float[] splitSin;
+    private final float[] re;
+    private final float[] im;
+
+    /**
+     * @param size 变换长度，须为2的幂且不小于4
+     */
+    public RealFft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size = " + size);
+        }
+        this.size = size;
+        this.half = size / 2;
+        this.bitReverse = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        this.cos = new float[half / 2];
+        this.sin = new float[half / 2];
+        for (int i = 0; i < half / 2; i++) {
+            double angle = -2 * Math.PI * i / half;
+            cos[i] = (float) Math.cos(angle);
+            sin[i] = (float) Math.sin(angle);
+        }
+        this.splitCos = new float[half];
+        this.splitSin = new float[half];
+        for (int i = 0; i < half; i++) {
+            double angle = -2 * Math.PI * i / size;
+            splitCos[i] = (float) Math.cos(angle);
+            splitSin[i] = (float) Math.sin(angle);
+        }
+        this.re = new float[half];
+        this.im = new float[half];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * 频点数，N/2+1(0到奈奎斯特频率)
+     */
+    public int getBinCount() {
+        return half + 1;
+    }
+
+    /**
+     * 对input[0, N)做正变换，结果的实部和虚部写入outRe、outIm的[0, N/2]
+     */
+    public void forward(float[] input, float[] outRe, float[] outIm) {
+        // 偶数位采样作为实部、奇数位作为虚部，按位反转顺序放入工作数组
+        for (int i = 0; i < half; i++) {
+            int j = bitReverse[i];
+            re[j] = input[2 * i];
+            im[j] = input[2 * i + 1];
+        }
+        transform();
+        // X[k] = (Z[k] + conj(Z[N/2-k])) / 2 - i * W^k * (Z[k] - conj(Z[N/2-k])) / 2
+        outRe[0] = re[0] + im[0];
+        outIm[0] = 0;
+        outRe[half] = re[0] - im[0];
+        outIm[half] = 0;
+        for (int k = 1; k < half; k++) {
+            float zr = re[k];
+            float zi = im[k];
+            float cr = re[half - k];
+            float ci = -im[half - k];
+            float evenRe = (zr + cr) * 0.5f;
+            float evenIm = (zi + ci) * 0.5f;
+            float oddRe = (zr - cr) * 0.5f;
+            float oddIm = (zi - ci) * 0.5f;
+            // -i * W * odd，W = splitCos + i * splitSin
+            float wr = splitCos[k];
+            float wi = splitSin[k];
+            float tr = wr * oddRe - wi * oddIm;
+            float ti = wr * oddIm + wi * oddRe;
+            outRe[k] = evenRe + ti;
+            outIm[k] = evenIm - tr;
+        }
+    }
+
+    // 原地迭代的基2复数FFT，输入已按位反转排列
+    private void transform() {
+        for (int length = 2; length <= half; length <<= 1) {
+            int halfLength = length >> 1;
+            int step = half / length;
+            for (int start = 0; start < half; start += length) {
+                for (int j = 0, t = 0; j < halfLength; j++, t += step) {
+                    int a = start + j;
+                    int b = a + halfLength;
+                    float wr = cos[t];
+                    float wi = sin[t];
+                    float br = re[b] * wr - im[b] * wi;
+                    float bi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - br;
+                    im[b] = im[a] - bi;
+                    re[a] += br;
+                    im[a] += bi;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.hubby.audiorecord;
+
+import java.util.Arrays;
+
+/**
+ * 多相(polyphase)加窗sinc重采样，支持任意整数采样率之间的转换。
+ * 滤波器系数在构造时按相位预先计算，{@link #process}不分配内存；输入输出为交错的16bit采样
+ */
+public final class Resampler {
+    /**
+     * 质量档位：每个相位的抽头数、通带截止比例和Kaiser窗参数，抽头越多越平坦、阻带衰减越大
+     */
+    public enum Quality {
+        FAST(8, 0.80, 5.0),
+        MEDIUM(16, 0.88, 7.0),
+        HIGH(32, 0.93, 9.0);
+
+        final int taps;
+        final double rolloff;
+        final double beta;
+
+        Quality(int taps, double rolloff, double beta) {
+            this.taps = taps;
+            this.rolloff = rolloff;
+            this.beta = beta;
+        }
+    }
+
+    private final int inRate;
+    private final int outRate;
+    private final int channels;
+    // 约分后的上采样倍数L和下采样倍数M
+    private final int up;
+    private final int down;
+    private final int taps;
+    private final int maxInputFrames;
+    // coefficients[phase * taps + j]对应窗口中第j个输入帧
+    private final float[] coefficients;
+    // 上一块剩余的历史数据和本块输入
+    private final short[] work;
+    private int workFrames;
+    private int phase;
+    // reset以来输入和输出的总帧数，flush时据此截掉补零产生的多余输出
+    private long inputFrames;
+    private long outputFrames;
+
+    /**
+     * @param maxInputFrames 单次{@link #process}最多输入的帧数
+     */
+    public Resampler(int inRate, int outRate, int channels, Quality quality, int maxInputFrames) {
+        if (inRate <= 0 || outRate <= 0 || channels <= 0 || maxInputFrames <= 0) {
+            throw new IllegalArgumentException("inRate = " + inRate + " outRate = " + outRate
+                    + " channels = " + channels + " maxInputFrames = " + maxInputFrames);
+        }
+        this.inRate = inRate;
+        this.outRate = outRate;
+        this.channels = channels;
+        int gcd = gcd(inRate, outRate);
+        this.up = outRate / gcd;
+        this.down = inRate / gcd;
+        // 降采样时截止频率按比例降低，抽头数相应增加以保持相同的过渡带宽度
+        this.taps = quality.taps * Math.max(1, (down + up - 1) / up);
+        this.maxInputFrames = maxInputFrames;
+        this.coefficients = isPassThrough() ? new float[0] : buildCoefficients(quality);
+        this.work = new short[(2 * taps + maxInputFrames) * channels];
+        reset();
+    }
+
+    private float[] buildCoefficients(Quality quality) {
+        int length = taps * up;
+        // 中心取在整数位置，配合reset中的补零使输出与输入在时间上精确对齐
+        double center = taps / 2 * up;
+        // 截止频率，相对于上采样后的采样率
+        double cutoff = quality.rolloff * 0.5 * Math.min(1.0, (double) up / down) / up;
+        double i0Beta = besselI0(quality.beta);
+        double[] prototype = new double[length];
+        for (int k = 0; k < length; k++) {
+            double x = k - center;
+            double sinc = x == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+            double r = x / center;
+            double window = besselI0(quality.beta * Math.sqrt(Math.max(0, 1 - r * r))) / i0Beta;
+            prototype[k] = sinc * window;
+        }
+        float[] table = new float[up * taps];
+        for (int p = 0; p < up; p++) {
+            double sum = 0;
+            for (int j = 0; j < taps; j++) {
+                sum += prototype[(taps - 1 - j) * up + p];
+            }
+            // 每个相位归一化为单位直流增益
+            for (int j = 0; j < taps; j++) {
+                table[p * taps + j] = (float) (prototype[(taps - 1 - j) * up + p] / sum);
+            }
+        }
+        return table;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 32; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    public boolean isPassThrough() {
+        return inRate == outRate;
+    }
+
+    /**
+     * 输入frames帧最多产生的输出帧数
+     */
+    public int getMaxOutputFrames(int frames) {
+        return (int) (((long) frames + taps) * up / down) + 1;
+    }
+
+    public int getMaxInputFrames() {
+        return maxInputFrames;
+    }
+
+    /**
+     * 重采样一块交错数据，内部保留滤波所需的历史数据，块与块之间连续
+     *
+     * @param frames 输入帧数，不能超过maxInputFrames
+     * @return 写入out的帧数，out至少要有{@link #getMaxOutputFrames(int)}帧的空间
+     */
+    public int process(short[] in, int inOffset, int frames, short[] out, int outOffset) {
+        if (frames > maxInputFrames) {
+            throw new IllegalArgumentException("frames " + frames + " > maxInputFrames " + maxInputFrames);
+        }
+        if (isPassThrough()) {
+            System.arraycopy(in, inOffset, out, outOffset, frames * channels);
+            return frames;
+        }
+        System.arraycopy(in, inOffset, work, workFrames * channels, frames * channels);
+        workFrames += frames;
+        inputFrames += frames;
+        int count = filter(out, outOffset);
+        outputFrames += count;
+        return count;
+    }
+
+    /**
+     * 输入结束时调用，补零输出滤波器中剩余的数据
+     */
+    public int flush(short[] out, int outOffset) {
+        if (isPassThrough()) {
+            return 0;
+        }
+        Arrays.fill(work, workFrames * channels, (workFrames + taps) * channels, (short) 0);
+        workFrames += taps;
+        long expected = (inputFrames * up + down - 1) / down;
+        int count = (int) Math.min(filter(out, outOffset), Math.max(0, expected - outputFrames));
+        reset();
+        return count;
+    }
+
+    private int filter(short[] out, int outOffset) {
+        final float[] table = coefficients;
+        final short[] src = work;
+        final int ch = channels;
+        final int n = taps;
+        int pos = 0;
+        int p = phase;
+        int o = outOffset;
+        while (pos + n <= workFrames) {
+            int base = p * n;
+            for (int c = 0; c < ch; c++) {
+                float acc = 0;
+                int s = pos * ch + c;
+                for (int j = 0; j < n; j++, s += ch) {
+                    acc += src[s] * table[base + j];
+                }
+                int v = Math.round(acc);
+                out[o++] = (short) (v > Short.MAX_VALUE ? Short.MAX_VALUE : v < Short.MIN_VALUE ? Short.MIN_VALUE : v);
+            }
+            p += down;
+            pos += p / up;
+            p %= up;
+        }
+        // 保留窗口需要的历史数据，每次前进的帧数不超过抽头数，pos不会越过已有数据
+        int remaining = workFrames - pos;
+        System.arraycopy(src, pos * ch, src, 0, remaining * ch);
+        workFrames = remaining;
+        phase = p;
+        return (o - outOffset) / ch;
+    }
+
+    /**
+     * 清除历史数据，跳转播放位置时调用
+     */
+    public void reset() {
+        // 前面补零，使第一个输出正好对应第一个输入
+        int pad = taps / 2 - 1;
+        Arrays.fill(work, 0, pad * channels, (short) 0);
+        workFrames = pad;
+        phase = 0;
+        inputFrames = 0;
+        outputFrames = 0;
+    }
+
+    public int getInputRate() {
+        return inRate;
+    }
+
+    public int getOutputRate() {
+        return outRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+}
@@ -0,0 +1,97 @@
+package com.hubby.audiorecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 把其他采样率/声道数的16bit pcm数据源转换为播放所需的格式，边读边转换
+ */
+public class ResamplingPcmSource implements PcmSource {
+    // 每次从上游读取的最大帧数
+    private static final int CHUNK_FRAMES = 4096;
+
+    private final PcmSource source;
+    private final PcmConverter converter;
+    private final int inFrameSize;
+    private final int outFrameSize;
+    private final ByteBuffer output;
+    // output中有效数据的结束位置和已返回给调用者的位置
+    private int dataEnd;
+    private int readEnd;
+    private boolean drained;
+    private long position;
+
+    public ResamplingPcmSource(PcmSource source, int inRate, int inChannels, int outRate, int outChannels,
+                               Resampler.Quality quality) {
+        this.source = source;
+        this.converter = new PcmConverter(inRate, inChannels, outRate, outChannels, quality, CHUNK_FRAMES);
+        this.inFrameSize = 2 * inChannels;
+        this.outFrameSize = 2 * outChannels;
+        this.output = ByteBuffer.allocateDirect(converter.getMaxOutputBytes(CHUNK_FRAMES * inFrameSize))
+                .order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public ByteBuffer read(int maxBytes) throws IOException {
+        if (readEnd >= dataEnd && !fill()) {
+            return null;
+        }
+        int bytes = Math.max(outFrameSize, maxBytes / outFrameSize * outFrameSize);
+        int end = Math.min(dataEnd, readEnd + bytes);
+        output.limit(end).position(readEnd);
+        position += end - readEnd;
+        readEnd = end;
+        return output;
+    }
+
+    private boolean fill() throws IOException {
+        output.clear();
+        // 滤波器刚开始或跳转后可能需要多读几块才有输出
+        while (output.position() == 0) {
+            if (drained) {
+                return false;
+            }
+            ByteBuffer in = source.read(CHUNK_FRAMES * inFrameSize);
+            if (in == null) {
+                converter.drain(output);
+                drained = true;
+            } else {
+                converter.convert(in, output);
+            }
+        }
+        dataEnd = output.position();
+        readEnd = 0;
+        return true;
+    }
+
+    @Override
+    public long length() {
+        long length = source.length();
+        if (length < 0) {
+            return -1;
+        }
+        return length / inFrameSize * converter.getOutputRate() / converter.getInputRate() * outFrameSize;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void seek(long bytePosition) throws IOException {
+        long frame = Math.max(0, bytePosition / outFrameSize);
+        source.seek(frame * converter.getInputRate() / converter.getOutputRate() * inFrameSize);
+        converter.reset();
+        drained = false;
+        dataEnd = 0;
+        readEnd = 0;
+        position = frame * outFrameSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
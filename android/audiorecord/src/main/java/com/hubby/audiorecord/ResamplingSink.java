@@ -0,0 +1,103 @@
+package com.hubby.audiorecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 在写文件线程中转换采样率和声道数后再写入各个输出，采集线程保持设备支持的格式
+ */
+final class ResamplingSink implements PcmSink, Checkpointable {
+    // 转换结果攒够这么多字节再合并写入
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final PcmConverter converter;
+    private final PcmSink[] targets;
+    private final ByteBuffer[] outBlocks = new ByteBuffer[1];
+    private final ByteBuffer output;
+    private final int maxBlockBytes;
+    private final int maxBlockOutputBytes;
+
+    /**
+     * @param maxBlockBytes 单个输入块的最大字节数
+     */
+    ResamplingSink(PcmConverter converter, int maxBlockBytes, PcmSink... targets) {
+        this.converter = converter;
+        this.targets = targets;
+        int frameSize = 2 * converter.getInputChannels();
+        this.maxBlockBytes = Math.max(frameSize, maxBlockBytes / frameSize * frameSize);
+        this.maxBlockOutputBytes = converter.getMaxOutputBytes(this.maxBlockBytes);
+        this.output = ByteBuffer.allocateDirect(Math.max(OUTPUT_BUFFER_SIZE, maxBlockOutputBytes))
+                .order(ByteOrder.nativeOrder());
+        this.outBlocks[0] = output;
+    }
+
+    @Override
+    public void write(ByteBuffer[] blocks, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            // 静音过滤的pre-roll等块可能大于单块上限，分段转换
+            ByteBuffer block = blocks[i];
+            int limit = block.limit();
+            while (block.hasRemaining()) {
+                if (output.remaining() < maxBlockOutputBytes) {
+                    flush();
+                }
+                int position = block.position();
+                block.limit(Math.min(limit, position + maxBlockBytes));
+                converter.convert(block, output);
+                block.limit(limit);
+                if (block.position() == position) {
+                    // 不足一帧的数据丢弃
+                    block.position(limit);
+                }
+            }
+        }
+        flush();
+    }
+
+    private void flush() throws IOException {
+        output.flip();
+        if (output.hasRemaining()) {
+            for (PcmSink target : targets) {
+                output.position(0);
+                target.write(outBlocks, 0, 1);
+            }
+        }
+        output.clear();
+    }
+
+    /**
+     * 只保存已经写入各个输出的数据，转换器中缓存的少量数据不计入
+     */
+    @Override
+    public void checkpoint() throws IOException {
+        for (PcmSink target : targets) {
+            if (target instanceof Checkpointable) {
+                ((Checkpointable) target).checkpoint();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        try {
+            converter.drain(output);
+            flush();
+        } catch (IOException e) {
+            error = e;
+        }
+        for (PcmSink target : targets) {
+            try {
+                target.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
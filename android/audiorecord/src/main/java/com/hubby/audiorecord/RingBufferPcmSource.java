@@ -0,0 +1,86 @@
+package com.hubby.audiorecord;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实时数据源，作为{@link PcmRingBuffer}的消费者原地读取槽位中的数据，没有数据时等待生产者写入，
+ * {@link #finish()}后读完剩余数据结束。生产者写入的数据须为播放格式；实时数据不支持跳转
+ */
+public class RingBufferPcmSource implements PcmSource {
+    // 缓冲区为空时的最长等待时间，生产者写入后会提前唤醒
+    private static final long AWAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final PcmRingBuffer ringBuffer;
+    // 正在读取的槽位及其数据结束位置
+    private ByteBuffer current;
+    private int currentLimit;
+    private long position;
+    private volatile boolean finished;
+
+    public RingBufferPcmSource(PcmRingBuffer ringBuffer) {
+        this.ringBuffer = ringBuffer;
+    }
+
+    @Override
+    public ByteBuffer read(int maxBytes) throws InterruptedIOException {
+        if (current != null && current.position() >= currentLimit) {
+            current.limit(currentLimit);
+            current = null;
+            ringBuffer.release();
+        }
+        while (current == null) {
+            current = ringBuffer.peek();
+            if (current != null) {
+                currentLimit = current.limit();
+                break;
+            }
+            if (finished && ringBuffer.isEmpty()) {
+                return null;
+            }
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("wait for live data interrupted");
+            }
+            ringBuffer.await(AWAIT_NANOS);
+        }
+        int start = current.position();
+        current.limit((int) Math.min(currentLimit, (long) start + maxBytes));
+        position += current.remaining();
+        return current;
+    }
+
+    /**
+     * 生产者调用，不再有新数据，读完剩余数据后{@link #read(int)}返回null
+     */
+    public void finish() {
+        finished = true;
+        ringBuffer.wakeUp();
+    }
+
+    @Override
+    public long length() {
+        return -1;
+    }
+
+    /**
+     * 已读取的字节数
+     */
+    @Override
+    public long position() {
+        return position;
+    }
+
+    /**
+     * 实时数据不支持跳转，调用无效
+     */
+    @Override
+    public void seek(long bytePosition) {
+    }
+
+    @Override
+    public void close() {
+        finish();
+    }
+}
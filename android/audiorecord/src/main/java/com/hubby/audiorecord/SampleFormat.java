@@ -0,0 +1,204 @@
+package com.hubby.audiorecord;
+
+import java.nio.ByteBuffer;
+
+/**
+ * pcm采样格式，对应AudioFormat.ENCODING_PCM_*及wav文件头中的格式和位深。
+ * 与float之间的转换按格式分别实现为整块循环，循环内没有虚调用和装箱；
+ * 缓冲区须为小端序(Android本机字节序及wav文件的字节序)，float范围为[-1, 1]。
+ * AudioRecord/AudioTrack使用24bit和32bit整数格式需要API 31以上
+ */
+public enum SampleFormat {
+    PCM_8BIT(3, 8, WavHeader.FORMAT_PCM),
+    PCM_16BIT(2, 16, WavHeader.FORMAT_PCM),
+    PCM_24BIT_PACKED(21, 24, WavHeader.FORMAT_PCM),
+    PCM_32BIT(22, 32, WavHeader.FORMAT_PCM),
+    PCM_FLOAT(4, 32, WavHeader.FORMAT_IEEE_FLOAT);
+
+    // AudioFormat.ENCODING_DEFAULT，按16bit处理
+    private static final int ENCODING_DEFAULT = 1;
+    private static final float SCALE_8 = 1f / 128;
+    private static final float SCALE_16 = 1f / 32768;
+    private static final float SCALE_24 = 1f / 8388608;
+    private static final double SCALE_32 = 1.0 / 2147483648.0;
+
+    private final int encoding;
+    private final int bitsPerSample;
+    private final int bytesPerSample;
+    private final int wavFormatTag;
+
+    SampleFormat(int encoding, int bitsPerSample, int wavFormatTag) {
+        this.encoding = encoding;
+        this.bitsPerSample = bitsPerSample;
+        this.bytesPerSample = bitsPerSample / 8;
+        this.wavFormatTag = wavFormatTag;
+    }
+
+    /**
+     * @param encoding AudioFormat.ENCODING_PCM_*
+     * @throws IllegalArgumentException 不是pcm编码
+     */
+    public static SampleFormat fromEncoding(int encoding) {
+        if (encoding == ENCODING_DEFAULT) {
+            return PCM_16BIT;
+        }
+        for (SampleFormat format : values()) {
+            if (format.encoding == encoding) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("unsupported encoding " + encoding);
+    }
+
+    /**
+     * 按wav文件头中的格式和位深查找，不支持时返回null
+     */
+    public static SampleFormat fromWav(int formatTag, int bitsPerSample) {
+        for (SampleFormat format : values()) {
+            if (format.wavFormatTag == formatTag && format.bitsPerSample == bitsPerSample) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    public static SampleFormat fromWav(WavHeader header) {
+        return fromWav(header.getFormatTag(), header.getBitsPerSample());
+    }
+
+    /**
+     * 对应的AudioFormat.ENCODING_PCM_*
+     */
+    public int getEncoding() {
+        return encoding;
+    }
+
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    public int getBytesPerSample() {
+        return bytesPerSample;
+    }
+
+    /**
+     * wav文件头中的格式，{@link WavHeader#FORMAT_PCM}或{@link WavHeader#FORMAT_IEEE_FLOAT}
+     */
+    public int getWavFormatTag() {
+        return wavFormatTag;
+    }
+
+    public int getFrameSize(int channels) {
+        return bytesPerSample * channels;
+    }
+
+    /**
+     * 把src中从字节偏移srcOffset开始的count个采样转换为float写入dst[dstOffset]起，不改变src的position
+     */
+    public void toFloat(ByteBuffer src, int srcOffset, float[] dst, int dstOffset, int count) {
+        switch (this) {
+            case PCM_8BIT:
+                toFloat8(src, srcOffset, dst, dstOffset, count);
+                break;
+            case PCM_16BIT:
+                toFloat16(src, srcOffset, dst, dstOffset, count);
+                break;
+            case PCM_24BIT_PACKED:
+                toFloat24(src, srcOffset, dst, dstOffset, count);
+                break;
+            case PCM_32BIT:
+                toFloat32(src, srcOffset, dst, dstOffset, count);
+                break;
+            default:
+                for (int i = 0; i < count; i++) {
+                    dst[dstOffset + i] = src.getFloat(srcOffset + (i << 2));
+                }
+                break;
+        }
+    }
+
+    /**
+     * 把src[srcOffset]起的count个float采样转换后写入dst中从字节偏移dstOffset开始的位置，
+     * 整数格式超出[-1, 1]的部分截断，不改变dst的position
+     */
+    public void fromFloat(float[] src, int srcOffset, ByteBuffer dst, int dstOffset, int count) {
+        switch (this) {
+            case PCM_8BIT:
+                fromFloat8(src, srcOffset, dst, dstOffset, count);
+                break;
+            case PCM_16BIT:
+                fromFloat16(src, srcOffset, dst, dstOffset, count);
+                break;
+            case PCM_24BIT_PACKED:
+                fromFloat24(src, srcOffset, dst, dstOffset, count);
+                break;
+            case PCM_32BIT:
+                fromFloat32(src, srcOffset, dst, dstOffset, count);
+                break;
+            default:
+                for (int i = 0; i < count; i++) {
+                    dst.putFloat(dstOffset + (i << 2), src[srcOffset + i]);
+                }
+                break;
+        }
+    }
+
+    // 8bit为无符号数，128为零点
+    private static void toFloat8(ByteBuffer src, int offset, float[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = ((src.get(offset + i) & 0xff) - 128) * SCALE_8;
+        }
+    }
+
+    private static void toFloat16(ByteBuffer src, int offset, float[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = src.getShort(offset + (i << 1)) * SCALE_16;
+        }
+    }
+
+    private static void toFloat24(ByteBuffer src, int offset, float[] dst, int dstOffset, int count) {
+        for (int i = 0, p = offset; i < count; i++, p += 3) {
+            // 高字节按有符号数读取完成符号扩展
+            int sample = (src.get(p) & 0xff) | (src.get(p + 1) & 0xff) << 8 | src.get(p + 2) << 16;
+            dst[dstOffset + i] = sample * SCALE_24;
+        }
+    }
+
+    private static void toFloat32(ByteBuffer src, int offset, float[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = (float) (src.getInt(offset + (i << 2)) * SCALE_32);
+        }
+    }
+
+    private static void fromFloat8(float[] src, int srcOffset, ByteBuffer dst, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            int sample = Math.round(src[srcOffset + i] * 128f) + 128;
+            dst.put(offset + i, (byte) (sample < 0 ? 0 : sample > 255 ? 255 : sample));
+        }
+    }
+
+    private static void fromFloat16(float[] src, int srcOffset, ByteBuffer dst, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            int sample = Math.round(src[srcOffset + i] * 32768f);
+            sample = sample < Short.MIN_VALUE ? Short.MIN_VALUE : sample > Short.MAX_VALUE ? Short.MAX_VALUE : sample;
+            dst.putShort(offset + (i << 1), (short) sample);
+        }
+    }
+
+    private static void fromFloat24(float[] src, int srcOffset, ByteBuffer dst, int offset, int count) {
+        for (int i = 0, p = offset; i < count; i++, p += 3) {
+            int sample = Math.round(src[srcOffset + i] * 8388608f);
+            sample = sample < -8388608 ? -8388608 : sample > 8388607 ? 8388607 : sample;
+            dst.put(p, (byte) sample);
+            dst.put(p + 1, (byte) (sample >> 8));
+            dst.put(p + 2, (byte) (sample >> 16));
+        }
+    }
+
+    private static void fromFloat32(float[] src, int srcOffset, ByteBuffer dst, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            // double乘法保证满幅时不会溢出int，转换时自动截断到int范围
+            dst.putInt(offset + (i << 2), (int) Math.rint(src[srcOffset + i] * 2147483648.0));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.hubby.audiorecord;
+
+/**
+ * 分段录音的切分规则：按时长或按数据大小切分，并只保留最近的若干段
+ */
+public final class SegmentPolicy {
+    // 不限制保留的段数
+    public static final int UNLIMITED = 0;
+
+    private final long durationMillis;
+    private final long sizeBytes;
+    private final int maxSegments;
+
+    private SegmentPolicy(long durationMillis, long sizeBytes, int maxSegments) {
+        if (maxSegments < 0) {
+            throw new IllegalArgumentException("maxSegments = " + maxSegments);
+        }
+        this.durationMillis = durationMillis;
+        this.sizeBytes = sizeBytes;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * 每段固定时长
+     *
+     * @param maxSegments 最多保留的段数，超出时删除最早的段，{@link #UNLIMITED}表示不删除
+     */
+    public static SegmentPolicy byDuration(long durationMillis, int maxSegments) {
+        if (durationMillis <= 0) {
+            throw new IllegalArgumentException("durationMillis = " + durationMillis);
+        }
+        return new SegmentPolicy(durationMillis, 0, maxSegments);
+    }
+
+    /**
+     * 每段固定的pcm数据大小(编码前)
+     *
+     * @param maxSegments 最多保留的段数，超出时删除最早的段，{@link #UNLIMITED}表示不删除
+     */
+    public static SegmentPolicy bySize(long sizeBytes, int maxSegments) {
+        if (sizeBytes <= 0) {
+            throw new IllegalArgumentException("sizeBytes = " + sizeBytes);
+        }
+        return new SegmentPolicy(0, sizeBytes, maxSegments);
+    }
+
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+
+    /**
+     * 每段的pcm数据字节数，按帧对齐
+     */
+    long segmentBytes(int sampleRate, int frameSize) {
+        long bytes = durationMillis > 0 ? durationMillis * sampleRate / 1000 * frameSize : sizeBytes;
+        return Math.max(frameSize, bytes - bytes % frameSize);
+    }
+
+    @Override
+    public String toString() {
+        return durationMillis > 0 ? "SegmentPolicy{duration=" + durationMillis + "ms, max=" + maxSegments + "}"
+                : "SegmentPolicy{size=" + sizeBytes + ", max=" + maxSegments + "}";
+    }
+}
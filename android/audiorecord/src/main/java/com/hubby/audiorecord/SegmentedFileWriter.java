@@ -0,0 +1,232 @@
+package com.hubby.audiorecord;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分段录音：按{@link SegmentPolicy}把数据依次写入baseName_000001.wav这样编号的文件。
+ * 在段的边界按字节精确切分数据块，不丢失也不重复任何采样；下一段文件在后台线程提前创建并预分配空间，
+ * 已写满的段也在后台线程关闭并按保留数量删除最早的段，切换时写文件线程只需替换输出对象
+ */
+public class SegmentedFileWriter implements PcmSink, Checkpointable {
+    private static final String TAG = "SegmentedFileWriter";
+
+    /**
+     * 创建单个段的输出
+     */
+    public interface SegmentOpener {
+        /**
+         * @param segmentBytes 该段将写入的pcm数据字节数，可用于预分配空间
+         */
+        PcmSink open(File file, long segmentBytes) throws IOException;
+    }
+
+    /**
+     * 在后台线程回调
+     */
+    public interface OnSegmentListener {
+        void onSegmentFinished(File segment);
+    }
+
+    private final File directory;
+    private final String baseName;
+    private final String extension;
+    private final long segmentBytes;
+    private final int maxSegments;
+    private final SegmentOpener opener;
+    private final OnSegmentListener listener;
+    private final ExecutorService preparer;
+    // 已完成的段，只在preparer线程中访问
+    private final ArrayDeque<File> finishedSegments = new ArrayDeque<>();
+    private final ByteBuffer[] single = new ByteBuffer[1];
+    private int nextIndex = 1;
+    private PcmSink current;
+    private File currentFile;
+    private long currentBytes;
+    private Future<PcmSink> next;
+    private File nextFile;
+
+    /**
+     * @param baseName  段文件名前缀，目录中已有的同名段会计入保留数量，编号接着已有的最大编号
+     * @param extension 段文件扩展名，如".wav"
+     */
+    public SegmentedFileWriter(File directory, String baseName, String extension, SegmentPolicy policy,
+                               int sampleRate, int frameSize, SegmentOpener opener, OnSegmentListener listener)
+            throws IOException {
+        this.directory = directory;
+        this.baseName = baseName;
+        this.extension = extension;
+        this.segmentBytes = policy.segmentBytes(sampleRate, frameSize);
+        this.maxSegments = policy.getMaxSegments();
+        this.opener = opener;
+        this.listener = listener;
+        scanExistingSegments();
+        this.preparer = Executors.newSingleThreadExecutor(r -> new Thread(r, "SegmentPrepareThread"));
+        currentFile = segmentFile(nextIndex++);
+        try {
+            current = opener.open(currentFile, segmentBytes);
+        } catch (IOException e) {
+            preparer.shutdown();
+            throw e;
+        }
+        prepareNext();
+    }
+
+    private void scanExistingSegments() {
+        String prefix = baseName + "_";
+        String[] names = directory.list();
+        if (names == null) {
+            return;
+        }
+        Arrays.sort(names);
+        for (String name : names) {
+            if (name.startsWith(prefix) && name.endsWith(extension)) {
+                String number = name.substring(prefix.length(), name.length() - extension.length());
+                try {
+                    int index = Integer.parseInt(number);
+                    finishedSegments.add(new File(directory, name));
+                    nextIndex = Math.max(nextIndex, index + 1);
+                } catch (NumberFormatException ignored) {
+                    // 不是分段文件
+                }
+            }
+        }
+    }
+
+    private File segmentFile(int index) {
+        return new File(directory, String.format(Locale.US, "%s_%06d%s", baseName, index, extension));
+    }
+
+    private void prepareNext() {
+        final File file = segmentFile(nextIndex++);
+        nextFile = file;
+        next = preparer.submit(() -> opener.open(file, segmentBytes));
+    }
+
+    @Override
+    public void write(ByteBuffer[] blocks, int offset, int length) throws IOException {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            long room = segmentBytes - currentBytes;
+            if (room == 0) {
+                rotate();
+                continue;
+            }
+            // 能整块写入当前段的连续数据块
+            int j = i;
+            long bytes = 0;
+            while (j < end && bytes + blocks[j].remaining() <= room) {
+                bytes += blocks[j].remaining();
+                j++;
+            }
+            if (j > i) {
+                current.write(blocks, i, j - i);
+                currentBytes += bytes;
+                i = j;
+                continue;
+            }
+            // 数据块跨越段边界，前一部分写入当前段，剩余部分写入下一段
+            ByteBuffer block = blocks[i];
+            int limit = block.limit();
+            block.limit(block.position() + (int) room);
+            single[0] = block;
+            current.write(single, 0, 1);
+            single[0] = null;
+            block.limit(limit);
+            currentBytes += room;
+        }
+    }
+
+    private void rotate() throws IOException {
+        final PcmSink finished = current;
+        final File finishedFile = currentFile;
+        try {
+            current = next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while opening " + nextFile, e);
+        } catch (ExecutionException e) {
+            throw new IOException("open segment failed: " + nextFile, e.getCause());
+        }
+        currentFile = nextFile;
+        currentBytes = 0;
+        // 正在写入的段也计入保留数量
+        preparer.execute(() -> finishSegment(finished, finishedFile, maxSegments - 1));
+        prepareNext();
+        Log.d(TAG, "rotate to " + currentFile.getName());
+    }
+
+    // 在preparer线程执行
+    private void finishSegment(PcmSink sink, File file, int keep) {
+        try {
+            sink.close();
+        } catch (IOException e) {
+            Log.e(TAG, "close segment failed: " + file, e);
+        }
+        finishedSegments.add(file);
+        while (maxSegments != SegmentPolicy.UNLIMITED && finishedSegments.size() > keep) {
+            File oldest = finishedSegments.poll();
+            if (!oldest.delete()) {
+                Log.w(TAG, "delete segment failed: " + oldest);
+            }
+        }
+        if (listener != null) {
+            listener.onSegmentFinished(file);
+        }
+    }
+
+    /**
+     * 保存正在写入的段，已写满的段在关闭时修正
+     */
+    @Override
+    public void checkpoint() throws IOException {
+        if (current instanceof Checkpointable) {
+            ((Checkpointable) current).checkpoint();
+        }
+    }
+
+    /**
+     * 正在写入的段文件
+     */
+    public File getCurrentFile() {
+        return currentFile;
+    }
+
+    @Override
+    public void close() throws IOException {
+        final File file = currentFile;
+        final PcmSink last = current;
+        // 已预先创建但未使用的段需要删除
+        preparer.execute(() -> {
+            finishSegment(last, file, maxSegments);
+            try {
+                next.get().close();
+            } catch (Exception e) {
+                Log.e(TAG, "close prepared segment failed", e);
+            }
+            if (!nextFile.delete()) {
+                Log.w(TAG, "delete prepared segment failed: " + nextFile);
+            }
+        });
+        preparer.shutdown();
+        try {
+            while (!preparer.awaitTermination(1, TimeUnit.SECONDS)) {
+                Log.w(TAG, "waiting for segment close");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
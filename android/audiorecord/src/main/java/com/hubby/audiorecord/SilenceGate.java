@@ -0,0 +1,122 @@
+package com.hubby.audiorecord;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 在写文件线程中按{@link SilencePolicy}过滤数据块：有声块直接写入，静音块在保留额度内写入，
+ * 超出额度的静音块存入固定大小的pre-roll缓冲区，语音再次开始时先写出pre-roll再写有声块
+ */
+final class SilenceGate {
+    // 数据块标记：采集线程的VAD判为有声
+    static final int FLAG_VOICED = 1;
+
+    private final long keepSilenceBytes;
+    private final ByteBuffer preRoll;
+    private final ByteBuffer preRollHead;
+    private final ByteBuffer preRollTail;
+    // pre-roll缓冲区中最早数据的位置和有效长度
+    private int preRollStart;
+    private int preRollLength;
+    private long silentRunBytes;
+    // 写线程更新，其他线程读取统计
+    private volatile long skippedBytes;
+
+    SilenceGate(SilencePolicy policy, int sampleRate, int frameSize) {
+        this.keepSilenceBytes = policy.getKeepSilenceMillis() * sampleRate / 1000 * frameSize;
+        long preRollBytes = policy.getPreRollMillis() * sampleRate / 1000 * frameSize;
+        this.preRoll = ByteBuffer.allocateDirect((int) Math.max(frameSize, preRollBytes))
+                .order(ByteOrder.nativeOrder());
+        this.preRollHead = preRoll.duplicate().order(ByteOrder.nativeOrder());
+        this.preRollTail = preRoll.duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * 处理一个数据块，把需要写入的数据按时间顺序追加到out中。
+     * 返回多于一块时前面的块是pre-roll，引用内部的缓冲区，须在下一次调用前写出
+     *
+     * @return 追加到out中的块数(0~3)
+     */
+    int filter(ByteBuffer block, int flags, ByteBuffer[] out, int outOffset) {
+        int length = block.remaining();
+        if ((flags & FLAG_VOICED) == 0) {
+            if (silentRunBytes < keepSilenceBytes) {
+                silentRunBytes += length;
+                out[outOffset] = block;
+                return 1;
+            }
+            hold(block);
+            return 0;
+        }
+        silentRunBytes = 0;
+        int count = drainPreRoll(out, outOffset);
+        out[outOffset + count] = block;
+        return count + 1;
+    }
+
+    private void hold(ByteBuffer block) {
+        int capacity = preRoll.capacity();
+        int position = block.position();
+        int length = block.remaining();
+        if (length > capacity) {
+            // 只保留最后capacity字节
+            skippedBytes += length - capacity;
+            block.position(position + length - capacity);
+            length = capacity;
+        }
+        int overflow = preRollLength + length - capacity;
+        if (overflow > 0) {
+            // 覆盖最早的数据
+            skippedBytes += overflow;
+            preRollStart = (preRollStart + overflow) % capacity;
+            preRollLength -= overflow;
+        }
+        int writeAt = (preRollStart + preRollLength) % capacity;
+        int first = Math.min(length, capacity - writeAt);
+        int limit = block.limit();
+        block.limit(block.position() + first);
+        preRoll.clear().position(writeAt);
+        preRoll.put(block);
+        block.limit(limit);
+        if (first < length) {
+            preRoll.clear();
+            preRoll.put(block);
+        }
+        preRollLength += length;
+        block.position(position);
+    }
+
+    private int drainPreRoll(ByteBuffer[] out, int outOffset) {
+        if (preRollLength == 0) {
+            return 0;
+        }
+        int capacity = preRoll.capacity();
+        int first = Math.min(preRollLength, capacity - preRollStart);
+        preRollHead.clear().position(preRollStart).limit(preRollStart + first);
+        out[outOffset] = preRollHead;
+        int count = 1;
+        if (first < preRollLength) {
+            preRollTail.clear().limit(preRollLength - first);
+            out[outOffset + 1] = preRollTail;
+            count = 2;
+        }
+        preRollStart = 0;
+        preRollLength = 0;
+        return count;
+    }
+
+    /**
+     * 被丢弃(未写入文件)的字节数
+     */
+    long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    /**
+     * 录音结束时pre-roll中剩余的数据不再写入
+     */
+    void finish() {
+        skippedBytes += preRollLength;
+        preRollLength = 0;
+    }
+}
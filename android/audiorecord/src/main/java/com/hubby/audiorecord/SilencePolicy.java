@@ -0,0 +1,53 @@
+package com.hubby.audiorecord;
+
+/**
+ * 录音时对静音段的处理方式：跳过静音，或只保留每段静音的开头部分。
+ * 语音开始前的一小段静音(pre-roll)总会保留，避免截掉起音
+ */
+public final class SilencePolicy {
+    public static final long DEFAULT_PRE_ROLL_MILLIS = 300;
+    public static final long DEFAULT_HANGOVER_MILLIS = 500;
+
+    private final long keepSilenceMillis;
+    private final long preRollMillis;
+    private final long hangoverMillis;
+
+    private SilencePolicy(long keepSilenceMillis, long preRollMillis, long hangoverMillis) {
+        if (keepSilenceMillis < 0 || preRollMillis < 0 || hangoverMillis < 0) {
+            throw new IllegalArgumentException("keepSilence = " + keepSilenceMillis + " preRoll = "
+                    + preRollMillis + " hangover = " + hangoverMillis);
+        }
+        this.keepSilenceMillis = keepSilenceMillis;
+        this.preRollMillis = preRollMillis;
+        this.hangoverMillis = hangoverMillis;
+    }
+
+    /**
+     * 不写入静音段
+     *
+     * @param preRollMillis  语音开始前保留的时长
+     * @param hangoverMillis 语音结束后继续写入的时长
+     */
+    public static SilencePolicy skip(long preRollMillis, long hangoverMillis) {
+        return new SilencePolicy(0, preRollMillis, hangoverMillis);
+    }
+
+    /**
+     * 每段静音最多写入maxSilenceMillis，其余部分丢弃，保留停顿但压缩长时间的静音
+     */
+    public static SilencePolicy compress(long maxSilenceMillis, long preRollMillis, long hangoverMillis) {
+        return new SilencePolicy(maxSilenceMillis, preRollMillis, hangoverMillis);
+    }
+
+    long getKeepSilenceMillis() {
+        return keepSilenceMillis;
+    }
+
+    long getPreRollMillis() {
+        return preRollMillis;
+    }
+
+    long getHangoverMillis() {
+        return hangoverMillis;
+    }
+}
@@ -0,0 +1,287 @@
+package com.hubby.audiorecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 流式频谱分析：输入的多声道数据混合为单声道后存入长度为fftSize的环形缓冲区，每输入hopSize帧对最近的fftSize帧
+ * 加汉宁窗做一次{@link RealFft}，得到各频点的幅度和频谱特征({@link SpectrumFrame})。
+ * 窗函数、FFT表和所有工作数组在构造时分配，分析过程不产生新对象。
+ * 数据可以来自采集({@link AudioRecorder.OnAudioFrameListener}中调用{@link #write(ByteBuffer, SampleFormat)})、
+ * 播放({@link SpectrumPcmSource})或整个文件({@link #analyze(PcmSource, SampleFormat)})。
+ * 分析在写入数据的线程中进行，结果通过{@link OnSpectrumListener}同步回调，
+ * 界面线程可以随时用{@link #readLatest(float[])}无锁地取最新一帧绘制
+ */
+public final class SpectrumAnalyzer {
+    public static final int DEFAULT_FFT_SIZE = 2048;
+    // 每次转换的采样数
+    private static final int CHUNK_SAMPLES = 1024;
+    // 功率的下限，避免log10(0)
+    private static final float MIN_POWER = 1e-12f;
+
+    public interface OnSpectrumListener {
+        /**
+         * 在写入数据的线程回调，frame由分析器复用
+         */
+        void onSpectrum(SpectrumFrame frame);
+    }
+
+    private final int sampleRate;
+    private final int channels;
+    private final int fftSize;
+    private final int hopSize;
+    private final RealFft fft;
+    private final float[] window;
+    // 功率换算为满幅正弦波为1的系数 (2 / sum(window))^2
+    private final float powerScale;
+    // 最近fftSize帧的单声道采样，writeIndex为下一个写入位置
+    private final float[] history;
+    private final float[] windowed;
+    private final float[] re;
+    private final float[] im;
+    private final float[] previousDb;
+    private final float[] scratch;
+    private final SpectrumFrame frame;
+    private volatile OnSpectrumListener listener;
+    // 以下只由写入线程访问
+    private int writeIndex;
+    private int untilHop;
+    private long inputFrames;
+    private long startFrames;
+    private boolean hasPrevious;
+    private long frameCount;
+    // 三缓冲：写入线程持有back，界面线程持有front，middle为最近发布的一帧
+    private Snapshot back;
+    private Snapshot front;
+    private final AtomicReference<Snapshot> middle;
+
+    private static final class Snapshot {
+        final float[] magnitudesDb;
+        long positionFrames = -1;
+        volatile boolean fresh;
+
+        Snapshot(int bins) {
+            magnitudesDb = new float[bins];
+        }
+    }
+
+    public SpectrumAnalyzer(int sampleRate, int channels) {
+        this(sampleRate, channels, DEFAULT_FFT_SIZE, DEFAULT_FFT_SIZE / 2);
+    }
+
+    /**
+     * @param fftSize 分析窗长度，须为2的幂，频率分辨率为sampleRate/fftSize
+     * @param hopSize 两次分析之间的帧数，小于fftSize时相邻分析窗重叠；
+     *                可视化时取sampleRate/60即可每秒输出60帧
+     */
+    public SpectrumAnalyzer(int sampleRate, int channels, int fftSize, int hopSize) {
+        if (sampleRate <= 0 || channels <= 0 || hopSize <= 0) {
+            throw new IllegalArgumentException("sampleRate = " + sampleRate + " channels = " + channels
+                    + " hopSize = " + hopSize);
+        }
+        this.fft = new RealFft(fftSize);
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.fftSize = fftSize;
+        this.hopSize = hopSize;
+        this.window = new float[fftSize];
+        double sum = 0;
+        for (int i = 0; i < fftSize; i++) {
+            // 周期汉宁窗，50%重叠时各窗之和为常数
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / fftSize));
+            sum += window[i];
+        }
+        this.powerScale = (float) (4 / (sum * sum));
+        this.history = new float[fftSize];
+        this.windowed = new float[fftSize];
+        int bins = fft.getBinCount();
+        this.re = new float[bins];
+        this.im = new float[bins];
+        this.previousDb = new float[bins];
+        this.scratch = new float[CHUNK_SAMPLES - CHUNK_SAMPLES % channels];
+        this.frame = new SpectrumFrame(sampleRate, fftSize);
+        this.back = new Snapshot(bins);
+        this.front = new Snapshot(bins);
+        this.middle = new AtomicReference<>(new Snapshot(bins));
+        reset(0);
+    }
+
+    public void setOnSpectrumListener(OnSpectrumListener listener) {
+        this.listener = listener;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    public int getBinCount() {
+        return fft.getBinCount();
+    }
+
+    /**
+     * 每秒输出的帧数
+     */
+    public float getFrameRate() {
+        return (float) sampleRate / hopSize;
+    }
+
+    /**
+     * 已输出的帧数
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * 清空缓冲的数据，之后的输入从positionFrames开始计算位置，如播放跳转后；须在写入线程调用
+     */
+    public void reset(long positionFrames) {
+        writeIndex = 0;
+        // 缓冲区填满后才开始分析
+        untilHop = fftSize;
+        inputFrames = 0;
+        startFrames = positionFrames;
+        hasPrevious = false;
+        for (int i = 0; i < fftSize; i++) {
+            history[i] = 0;
+        }
+    }
+
+    /**
+     * 输入data中position~limit的数据(format格式、构造时的声道数)，不改变position
+     */
+    public void write(ByteBuffer data, SampleFormat format) {
+        int bytesPerSample = format.getBytesPerSample();
+        int count = data.remaining() / (bytesPerSample * channels) * channels;
+        int offset = data.position();
+        for (int done = 0; done < count; ) {
+            int n = Math.min(scratch.length, count - done);
+            format.toFloat(data, offset + done * bytesPerSample, scratch, 0, n);
+            write(scratch, 0, n / channels);
+            done += n;
+        }
+    }
+
+    /**
+     * 输入frames帧按声道交错排列的float采样
+     */
+    public void write(float[] samples, int offset, int frames) {
+        float channelScale = 1f / channels;
+        int mask = fftSize - 1;
+        int index = offset;
+        for (int f = 0; f < frames; f++) {
+            float sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += samples[index++];
+            }
+            history[writeIndex] = sum * channelScale;
+            writeIndex = (writeIndex + 1) & mask;
+            inputFrames++;
+            if (--untilHop == 0) {
+                untilHop = hopSize;
+                analyzeWindow();
+            }
+        }
+    }
+
+    /**
+     * 从source当前位置读到结尾，逐帧回调，用于离线提取整个文件的特征；不关闭source
+     *
+     * @return 输出的帧数
+     */
+    public long analyze(PcmSource source, SampleFormat format) throws IOException {
+        long start = frameCount;
+        int readBytes = format.getFrameSize(channels) * CHUNK_SAMPLES;
+        ByteBuffer data;
+        while ((data = source.read(readBytes)) != null) {
+            write(data, format);
+            data.position(data.limit());
+        }
+        return frameCount - start;
+    }
+
+    /**
+     * 把最近一帧的幅度(dBFS)拷贝到dst，只能由同一个线程(如界面线程)调用
+     *
+     * @param dst 长度至少为{@link #getBinCount()}
+     * @return 这一帧的位置({@link SpectrumFrame#getPositionFrames()})，还没有输出时返回-1
+     */
+    public long readLatest(float[] dst) {
+        if (middle.get().fresh) {
+            Snapshot previous = front;
+            previous.fresh = false;
+            front = middle.getAndSet(previous);
+        }
+        Snapshot snapshot = front;
+        if (snapshot.positionFrames >= 0) {
+            System.arraycopy(snapshot.magnitudesDb, 0, dst, 0, snapshot.magnitudesDb.length);
+        }
+        return snapshot.positionFrames;
+    }
+
+    private void analyzeWindow() {
+        int mask = fftSize - 1;
+        float sumSquares = 0;
+        for (int i = 0; i < fftSize; i++) {
+            // writeIndex处是最早的采样
+            float x = history[(writeIndex + i) & mask];
+            sumSquares += x * x;
+            windowed[i] = x * window[i];
+        }
+        fft.forward(windowed, re, im);
+        float[] db = frame.magnitudesDb;
+        int bins = db.length;
+        double totalPower = 0;
+        double weightedFrequency = 0;
+        double logSum = 0;
+        float flux = 0;
+        int peakBin = 0;
+        float peakPower = -1;
+        float binHz = (float) sampleRate / fftSize;
+        for (int k = 0; k < bins; k++) {
+            float power = (re[k] * re[k] + im[k] * im[k]) * powerScale;
+            if (power > peakPower) {
+                peakPower = power;
+                peakBin = k;
+            }
+            totalPower += power;
+            weightedFrequency += power * k * binHz;
+            float p = Math.max(MIN_POWER, power);
+            logSum += Math.log(p);
+            float value = Math.max(LevelMeter.MIN_DB, 10 * (float) Math.log10(p));
+            if (hasPrevious && value > previousDb[k]) {
+                flux += value - previousDb[k];
+            }
+            previousDb[k] = value;
+            db[k] = value;
+        }
+        frame.positionFrames = startFrames + inputFrames - fftSize;
+        frame.rmsDb = Math.max(LevelMeter.MIN_DB, 10 * (float) Math.log10(Math.max(MIN_POWER,
+                sumSquares / fftSize)));
+        frame.peakHz = peakBin * binHz;
+        boolean silent = totalPower <= MIN_POWER * bins;
+        frame.centroidHz = silent ? 0 : (float) (weightedFrequency / totalPower);
+        frame.flatness = silent ? 0 : (float) (Math.exp(logSum / bins) / (totalPower / bins));
+        frame.flux = hasPrevious ? flux / bins : 0;
+        hasPrevious = true;
+        frameCount++;
+        publish();
+        OnSpectrumListener l = listener;
+        if (l != null) {
+            l.onSpectrum(frame);
+        }
+    }
+
+    private void publish() {
+        Snapshot snapshot = back;
+        System.arraycopy(frame.magnitudesDb, 0, snapshot.magnitudesDb, 0, snapshot.magnitudesDb.length);
+        snapshot.positionFrames = frame.positionFrames;
+        snapshot.fresh = true;
+        back = middle.getAndSet(snapshot);
+    }
+}
@@ -0,0 +1,82 @@
+package com.hubby.audiorecord;
+
+/**
+ * {@link SpectrumAnalyzer}一帧的频谱和特征，由分析器复用，只在回调期间有效，需要保留时拷贝
+ */
+public final class SpectrumFrame {
+    private final int sampleRate;
+    private final int fftSize;
+    final float[] magnitudesDb;
+    long positionFrames;
+    float rmsDb;
+    float peakHz;
+    float centroidHz;
+    float flatness;
+    float flux;
+
+    SpectrumFrame(int sampleRate, int fftSize) {
+        this.sampleRate = sampleRate;
+        this.fftSize = fftSize;
+        this.magnitudesDb = new float[fftSize / 2 + 1];
+    }
+
+    /**
+     * 各频点的幅度，单位dBFS(满幅正弦波为0dB)，最低为{@link LevelMeter#MIN_DB}；数组由分析器复用，不要修改
+     */
+    public float[] getMagnitudesDb() {
+        return magnitudesDb;
+    }
+
+    public int getBinCount() {
+        return magnitudesDb.length;
+    }
+
+    /**
+     * 第bin个频点的中心频率
+     */
+    public float getBinFrequency(int bin) {
+        return (float) bin * sampleRate / fftSize;
+    }
+
+    /**
+     * 分析窗第一帧在输入中的位置(从开始或{@link SpectrumAnalyzer#reset(long)}起的帧数)
+     */
+    public long getPositionFrames() {
+        return positionFrames;
+    }
+
+    /**
+     * 分析窗内(加窗前)的均方根电平，单位dBFS
+     */
+    public float getRmsDb() {
+        return rmsDb;
+    }
+
+    /**
+     * 幅度最大的频点的频率
+     */
+    public float getPeakHz() {
+        return peakHz;
+    }
+
+    /**
+     * 频谱质心(按能量加权的平均频率)，反映声音的明亮程度，静音时为0
+     */
+    public float getCentroidHz() {
+        return centroidHz;
+    }
+
+    /**
+     * 频谱平坦度(能量的几何平均/算术平均)，接近1为噪声，接近0为音调，静音时为0
+     */
+    public float getFlatness() {
+        return flatness;
+    }
+
+    /**
+     * 与上一帧相比平均每个频点增加的幅度(dB，减小的频点不计)，用于检测起音
+     */
+    public float getFlux() {
+        return flux;
+    }
+}
@@ -0,0 +1,70 @@
+package com.hubby.audiorecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 播放时的频谱分析：包装传给{@link AudioTracker#startPlay(PcmSource, AudioTracker.ProcessListener, android.os.Handler)}
+ * 的数据源，数据被读取时交给{@link SpectrumAnalyzer}，帧位置与数据源中的位置一致，
+ * 可以与{@link PlaybackClock}的播放位置对齐绘制。调用者只消费部分数据时，下次读取不会重复分析；跳转时清空分析器
+ */
+public class SpectrumPcmSource implements PcmSource {
+    private final PcmSource source;
+    private final SpectrumAnalyzer analyzer;
+    private final SampleFormat format;
+    private final int frameSize;
+    // 已交给分析器的数据在数据源中的结束位置
+    private long analyzedEnd;
+
+    /**
+     * @param channels source的声道数，须与analyzer一致
+     */
+    public SpectrumPcmSource(PcmSource source, SpectrumAnalyzer analyzer, SampleFormat format, int channels) {
+        this.source = source;
+        this.analyzer = analyzer;
+        this.format = format;
+        this.frameSize = format.getFrameSize(channels);
+        this.analyzedEnd = source.position();
+        analyzer.reset(analyzedEnd / frameSize);
+    }
+
+    @Override
+    public ByteBuffer read(int maxBytes) throws IOException {
+        ByteBuffer data = source.read(maxBytes);
+        if (data == null) {
+            return null;
+        }
+        long end = source.position();
+        long start = end - data.remaining();
+        if (end > analyzedEnd) {
+            int position = data.position();
+            data.position(position + (int) Math.max(0, analyzedEnd - start));
+            analyzer.write(data, format);
+            data.position(position);
+            analyzedEnd = end;
+        }
+        return data;
+    }
+
+    @Override
+    public long length() {
+        return source.length();
+    }
+
+    @Override
+    public long position() {
+        return source.position();
+    }
+
+    @Override
+    public void seek(long bytePosition) throws IOException {
+        source.seek(bytePosition);
+        analyzedEnd = source.position();
+        analyzer.reset(analyzedEnd / frameSize);
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
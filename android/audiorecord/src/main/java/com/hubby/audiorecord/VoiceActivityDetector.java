@@ -0,0 +1,70 @@
+package com.hubby.audiorecord;
+
+/**
+ * 基于能量的轻量级语音活动检测：跟踪背景噪声电平，
+ * 均方根电平高出噪声一定幅度(且高于最低门限)时判为有声，有声结束后保持hangover时长再判为静音
+ */
+public final class VoiceActivityDetector {
+    public static final float DEFAULT_MARGIN_DB = 10f;
+    public static final float DEFAULT_MIN_THRESHOLD_DB = -50f;
+    // 噪声电平下降时快速跟随，上升时缓慢跟随(每秒最多上升的dB)
+    private static final float NOISE_RISE_DB_PER_SECOND = 3f;
+
+    private final int sampleRate;
+    private final long hangoverFrames;
+    private final float marginDb;
+    private final float minThresholdDb;
+    private float noiseFloorDb = LevelMeter.MIN_DB;
+    private long hangoverLeft;
+    private boolean voiced;
+
+    public VoiceActivityDetector(int sampleRate, long hangoverMillis) {
+        this(sampleRate, hangoverMillis, DEFAULT_MARGIN_DB, DEFAULT_MIN_THRESHOLD_DB);
+    }
+
+    public VoiceActivityDetector(int sampleRate, long hangoverMillis, float marginDb, float minThresholdDb) {
+        this.sampleRate = sampleRate;
+        this.hangoverFrames = hangoverMillis * sampleRate / 1000;
+        this.marginDb = marginDb;
+        this.minThresholdDb = minThresholdDb;
+    }
+
+    /**
+     * 输入一块数据的均方根电平
+     *
+     * @param frames 这块数据的帧数
+     * @return 这块数据是否判为有声(包括hangover)
+     */
+    public boolean update(float rmsDb, int frames) {
+        if (noiseFloorDb == LevelMeter.MIN_DB || rmsDb < noiseFloorDb) {
+            noiseFloorDb = rmsDb;
+        } else {
+            noiseFloorDb = Math.min(rmsDb, noiseFloorDb + NOISE_RISE_DB_PER_SECOND * frames / sampleRate);
+        }
+        boolean active = rmsDb > Math.max(noiseFloorDb + marginDb, minThresholdDb);
+        if (active) {
+            hangoverLeft = hangoverFrames;
+            voiced = true;
+        } else if (hangoverLeft > 0) {
+            hangoverLeft -= frames;
+            voiced = true;
+        } else {
+            voiced = false;
+        }
+        return voiced;
+    }
+
+    public boolean isVoiced() {
+        return voiced;
+    }
+
+    public float getNoiseFloorDb() {
+        return noiseFloorDb;
+    }
+
+    public void reset() {
+        noiseFloorDb = LevelMeter.MIN_DB;
+        hangoverLeft = 0;
+        voiced = false;
+    }
+}
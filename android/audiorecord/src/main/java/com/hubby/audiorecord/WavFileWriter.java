@@ -0,0 +1,66 @@
+package com.hubby.audiorecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 单次写入的wav文件：先写入占位的文件头，数据直接追加到文件末尾，
+ * {@link #close()}时在原位置修正文件头中的长度字段，不需要重新打开或拷贝文件；
+ * 数据超过4GB时文件头会被改写为RF64格式，见{@link WavUtil#generateRf64FileHeader}。
+ * 录音过程中可以定期{@link #checkpoint()}把当前长度写入文件头，进程异常退出后文件仍然可以播放
+ */
+public class WavFileWriter extends PcmFileWriter implements Checkpointable {
+    private final int sampleRate;
+    private final int channels;
+    private final SampleFormat format;
+    // 文件头中记录的数据长度
+    private long headerByteCount;
+
+    public WavFileWriter(File file, int sampleRate, int channels) throws IOException {
+        this(file, sampleRate, channels, SampleFormat.PCM_16BIT);
+    }
+
+    /**
+     * @param format 写入的数据的采样格式
+     */
+    public WavFileWriter(File file, int sampleRate, int channels, SampleFormat format) throws IOException {
+        super(file);
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.format = format;
+        ByteBuffer header = ByteBuffer.wrap(WavUtil.generateRf64FileHeader(0, sampleRate, channels, format));
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    /**
+     * 在原位置改写文件头中的长度字段，不移动数据的写入位置，长度没有变化时不写入
+     */
+    @Override
+    public void checkpoint() throws IOException {
+        if (getDataByteCount() != headerByteCount) {
+            writeHeader();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        long byteCount = getDataByteCount();
+        ByteBuffer header = ByteBuffer.wrap(WavUtil.generateRf64FileHeader(byteCount, sampleRate,
+                channels, format));
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        headerByteCount = byteCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeHeader();
+        } finally {
+            super.close();
+        }
+    }
+}
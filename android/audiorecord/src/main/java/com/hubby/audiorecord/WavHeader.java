@@ -0,0 +1,107 @@
+package com.hubby.audiorecord;
+
+/**
+ * 解析得到的wav/RF64文件格式信息以及音频数据(data chunk)的位置
+ */
+public final class WavHeader {
+    public static final int FORMAT_PCM = 0x0001;
+    public static final int FORMAT_IEEE_FLOAT = 0x0003;
+    public static final int FORMAT_EXTENSIBLE = 0xFFFE;
+    // 数据长度未知(文件头未修正)，数据持续到文件末尾
+    public static final long UNKNOWN_SIZE = -1;
+
+    private final int formatTag;
+    private final int channels;
+    private final int sampleRate;
+    private final int byteRate;
+    private final int blockAlign;
+    private final int bitsPerSample;
+    private final long dataOffset;
+    private final long dataSize;
+    private final boolean rf64;
+
+    WavHeader(int formatTag, int channels, int sampleRate, int byteRate, int blockAlign, int bitsPerSample,
+              long dataOffset, long dataSize, boolean rf64) {
+        this.formatTag = formatTag;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.byteRate = byteRate;
+        this.blockAlign = blockAlign;
+        this.bitsPerSample = bitsPerSample;
+        this.dataOffset = dataOffset;
+        this.dataSize = dataSize;
+        this.rf64 = rf64;
+    }
+
+    /**
+     * 编码格式，WAVE_FORMAT_EXTENSIBLE会被解析为其中的实际格式
+     */
+    public int getFormatTag() {
+        return formatTag;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getByteRate() {
+        return byteRate;
+    }
+
+    /**
+     * 每帧(所有声道各一个采样)的字节数
+     */
+    public int getBlockAlign() {
+        return blockAlign;
+    }
+
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    /**
+     * 音频数据在文件中的偏移量
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    /**
+     * 音频数据的字节数，未知时为{@link #UNKNOWN_SIZE}
+     */
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    public boolean isRf64() {
+        return rf64;
+    }
+
+    /**
+     * 总帧数，数据长度未知时返回{@link #UNKNOWN_SIZE}
+     */
+    public long getFrameCount() {
+        return dataSize == UNKNOWN_SIZE || blockAlign == 0 ? UNKNOWN_SIZE : dataSize / blockAlign;
+    }
+
+    /**
+     * 把数据长度未知的文件头按实际文件大小补全
+     */
+    WavHeader withFileSize(long fileSize) {
+        long available = Math.max(0, fileSize - dataOffset);
+        long size = dataSize == UNKNOWN_SIZE ? available : Math.min(dataSize, available);
+        return new WavHeader(formatTag, channels, sampleRate, byteRate, blockAlign, bitsPerSample,
+                dataOffset, size, rf64);
+    }
+
+    @Override
+    public String toString() {
+        return "WavHeader{format=" + formatTag + ", channels=" + channels + ", sampleRate=" + sampleRate
+                + ", bits=" + bitsPerSample + ", dataOffset=" + dataOffset + ", dataSize=" + dataSize
+                + ", rf64=" + rf64 + "}";
+    }
+}
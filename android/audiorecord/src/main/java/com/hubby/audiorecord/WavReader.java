@@ -0,0 +1,84 @@
+package com.hubby.audiorecord;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * 流式读取wav/RF64文件中的音频数据，只向前读取，不需要扫描整个文件，
+ * 也可用于网络流等不能随机访问的数据
+ */
+public class WavReader implements Closeable {
+    private final ReadableByteChannel channel;
+    private final WavHeader header;
+    private long remaining;
+
+    public WavReader(File file) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            WavHeader parsed = WavUtil.readHeader(input.getChannel());
+            if (parsed == null) {
+                throw new IOException("not a wav file: " + file);
+            }
+            input.getChannel().position(parsed.getDataOffset());
+            this.channel = input.getChannel();
+            this.header = parsed;
+            this.remaining = parsed.getDataSize();
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    public WavReader(InputStream input) throws IOException {
+        this(Channels.newChannel(input));
+    }
+
+    public WavReader(ReadableByteChannel channel) throws IOException {
+        this.channel = channel;
+        this.header = WavUtil.readHeader(channel);
+        if (header == null) {
+            throw new IOException("not a wav stream");
+        }
+        this.remaining = header.getDataSize();
+    }
+
+    public WavHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * 读取音频数据到dst中，不会读到data chunk之后的其他chunk
+     *
+     * @return 读取的字节数，数据结束时返回-1
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        if (remaining == 0) {
+            return -1;
+        }
+        int limit = dst.limit();
+        if (remaining != WavHeader.UNKNOWN_SIZE && remaining < dst.remaining()) {
+            dst.limit(dst.position() + (int) remaining);
+        }
+        int read;
+        try {
+            read = channel.read(dst);
+        } finally {
+            dst.limit(limit);
+        }
+        if (read > 0 && remaining != WavHeader.UNKNOWN_SIZE) {
+            remaining -= read;
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
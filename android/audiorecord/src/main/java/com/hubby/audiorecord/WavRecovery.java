@@ -0,0 +1,226 @@
+package com.hubby.audiorecord;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 修复异常退出(进程被杀、崩溃)留下的wav文件：文件头中的长度停留在最近一次checkpoint(或为0)，
+ * 分段录音的文件末尾还可能有预分配的空间。在原文件上截掉多余的部分并改写文件头，不拷贝数据；
+ * 只读取文件头和最近一次checkpoint之后的数据，耗时与文件大小无关。
+ * 只处理本库写入的80字节文件头({@link WavUtil#generateRf64FileHeader})，data chunk之后是完整的
+ * chunk(如LIST、id3)或对齐字节的文件视为完整，其他来源的wav文件保持原样
+ */
+public final class WavRecovery {
+    // 判断文件末尾是否为预分配空间时检查的字节数
+    private static final int TAIL_BYTES = 4096;
+    // 查找数据结尾时每次读取的字节数
+    private static final int SCAN_BLOCK_BYTES = 64 * 1024;
+    // 默认从checkpoint向后最多查找的字节数，超出时保留到文件末尾
+    public static final long DEFAULT_SCAN_LIMIT = 16L * 1024 * 1024;
+    private static final int RIFF = 0x46464952; // "RIFF" 小端序
+    private static final int RF64 = 0x34364652; // "RF64"
+    private static final int WAVE = 0x45564157; // "WAVE"
+    private static final int JUNK = 0x4b4e554a; // "JUNK"
+    private static final int DS64 = 0x34367364; // "ds64"
+    private static final int FMT = 0x20746d66; // "fmt "
+    private static final int DATA = 0x61746164; // "data"
+
+    private WavRecovery() {
+    }
+
+    /**
+     * 按{@link #DEFAULT_SCAN_LIMIT}修复
+     *
+     * @see #recover(File, long)
+     */
+    public static long recover(File file) throws IOException {
+        return recover(file, DEFAULT_SCAN_LIMIT);
+    }
+
+    /**
+     * 修复单个文件
+     *
+     * @param scanLimit 文件末尾为预分配空间时，从checkpoint位置向后查找数据结尾的最大字节数
+     * @return 修复后的数据字节数，文件完整、不是wav文件或不是本库写入的文件时返回-1
+     * @throws IOException 文件头损坏
+     */
+    public static long recover(File file, long scanLimit) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            channel.position(0);
+            // 不按文件大小补全，保留文件头中记录的长度
+            WavHeader header = WavUtil.readHeader((ReadableByteChannel) channel);
+            SampleFormat format = header == null ? null : SampleFormat.fromWav(header);
+            if (format == null || !isOwnHeader(channel, header)) {
+                return -1;
+            }
+            long fileSize = channel.size();
+            long dataOffset = header.getDataOffset();
+            long available = Math.max(0, fileSize - dataOffset);
+            long checkpoint = header.getDataSize() == WavHeader.UNKNOWN_SIZE ? 0 : header.getDataSize();
+            if (checkpoint == available
+                    || (checkpoint > 0 && endsWithChunks(channel, dataOffset + checkpoint, fileSize))) {
+                return -1;
+            }
+            int blockAlign = Math.max(1, header.getBlockAlign());
+            long size;
+            if (checkpoint >= available) {
+                // 文件被截断，文件头记录的长度超出实际数据
+                size = available;
+            } else if (isZero(channel, Math.max(dataOffset + checkpoint, fileSize - TAIL_BYTES), fileSize)) {
+                size = findDataEnd(channel, dataOffset, checkpoint, Math.min(available, checkpoint + scanLimit));
+                // 最后一个采样的高位字节可能为0，向上对齐
+                size = Math.min(available, (size + blockAlign - 1) / blockAlign * blockAlign);
+            } else {
+                size = available;
+            }
+            size -= size % blockAlign;
+            if (dataOffset + size < fileSize) {
+                channel.truncate(dataOffset + size);
+            }
+            write(channel, ByteBuffer.wrap(WavUtil.generateRf64FileHeader(size, header.getSampleRate(),
+                    header.getChannels(), format)), 0);
+            return size;
+        }
+    }
+
+    /**
+     * 修复目录中的所有wav文件，无法修复的文件跳过
+     *
+     * @return 被修复的文件
+     */
+    public static List<File> recoverDirectory(File dir) {
+        List<File> recovered = new ArrayList<>();
+        File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().toLowerCase(Locale.ROOT).endsWith(".wav");
+            }
+        });
+        if (files == null) {
+            return recovered;
+        }
+        for (File file : files) {
+            try {
+                if (recover(file) >= 0) {
+                    recovered.add(file);
+                }
+            } catch (IOException e) {
+                // 文件头损坏的文件保持原样，由调用者决定是否删除
+            }
+        }
+        return recovered;
+    }
+
+    /**
+     * 从limit向前按块读取到checkpoint，最后一个非0字节之后直到limit的全0部分视为预分配空间。
+     * 数据中间的数字静音(整块为0)后面仍有数据，不会被当作结尾
+     *
+     * @return 数据字节数，[checkpoint, limit)全为0时返回checkpoint
+     */
+    private static long findDataEnd(FileChannel channel, long dataOffset, long checkpoint, long limit)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BLOCK_BYTES);
+        long end = limit;
+        while (end > checkpoint) {
+            int length = (int) Math.min(SCAN_BLOCK_BYTES, end - checkpoint);
+            long position = end - length;
+            int last = lastNonZero(buffer, read(channel, buffer, dataOffset + position, length));
+            if (last >= 0) {
+                return position + last + 1;
+            }
+            end = position;
+        }
+        return checkpoint;
+    }
+
+    private static boolean isZero(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(TAIL_BYTES);
+        long position = from;
+        while (position < to) {
+            int length = read(channel, buffer, position, (int) Math.min(TAIL_BYTES, to - position));
+            if (lastNonZero(buffer, length) >= 0) {
+                return false;
+            }
+            position += length;
+        }
+        return true;
+    }
+
+    private static int read(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private static int lastNonZero(ByteBuffer buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer.get(i) != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 文件头是否为{@link WavUtil#generateRf64FileHeader}生成的布局：RIFF/RF64、28字节的JUNK/ds64、
+     * 16字节的fmt，data chunk的数据从第80字节开始
+     */
+    private static boolean isOwnHeader(FileChannel channel, WavHeader header) throws IOException {
+        if (header.getDataOffset() != WavUtil.RF64_HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(WavUtil.RF64_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (read(channel, buffer, 0, WavUtil.RF64_HEADER_SIZE) != WavUtil.RF64_HEADER_SIZE) {
+            return false;
+        }
+        int riff = buffer.getInt(0);
+        int reserved = buffer.getInt(12);
+        return (riff == RIFF || riff == RF64) && buffer.getInt(8) == WAVE
+                && (reserved == JUNK || reserved == DS64) && buffer.getInt(16) == 28
+                && buffer.getInt(48) == FMT && buffer.getInt(52) == 16 && buffer.getInt(72) == DATA;
+    }
+
+    /**
+     * 从data chunk的结尾(position)向后逐个解析chunk，对齐字节之后全部是id为ASCII字符、长度不超出文件的chunk，
+     * 且正好结束于文件末尾时返回true，说明文件头中的长度是正确的，之后是其他程序追加的元数据
+     */
+    private static boolean endsWithChunks(FileChannel channel, long position, long fileSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        // chunk按2字节对齐
+        position += position & 1;
+        while (position + 8 <= fileSize) {
+            if (read(channel, buffer, position, 8) != 8) {
+                return false;
+            }
+            for (int i = 0; i < 4; i++) {
+                byte b = buffer.get(i);
+                if (b < 0x20 || b > 0x7e) {
+                    return false;
+                }
+            }
+            long size = buffer.getInt(4) & 0xffffffffL;
+            position += 8 + size + (size & 1);
+        }
+        return position == fileSize || position == fileSize + 1;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -1,6 +1,25 @@
 package com.hubby.audiorecord;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
 public class WavUtil {
+    // 带ds64预留空间的文件头长度，见generateRf64FileHeader
+    public static final int RF64_HEADER_SIZE = 80;
+
+    private static final int RIFF = 0x46464952; // "RIFF" 小端序
+    private static final int RF64 = 0x34364652; // "RF64"
+    private static final int BW64 = 0x34365742; // "BW64"
+    private static final int WAVE = 0x45564157; // "WAVE"
+    private static final int FMT = 0x20746d66; // "fmt "
+    private static final int DS64 = 0x34367364; // "ds64"
+    private static final int JUNK = 0x4b4e554a; // "JUNK"
+    private static final int DATA = 0x61746164; // "data"
+    private static final int DS64_SIZE = 28;
+    private static final long MAX_UINT32 = 0xffffffffL;
 
     /**
      * 任何一种文件在头部添加相应的头文件才能够确定的表示这种文件的格式，
@@ -12,8 +31,17 @@ public class WavUtil {
      * @param channels          audioRecord的频道数量
      */
     public static byte[] generateWavFileHeader(long pcmAudioByteCount, long longSampleRate, int channels) {
+        return generateWavFileHeader(pcmAudioByteCount, longSampleRate, channels, SampleFormat.PCM_16BIT);
+    }
+
+    /**
+     * 同{@link #generateWavFileHeader(long, long, int)}，按format写入编码方式和位深
+     */
+    public static byte[] generateWavFileHeader(long pcmAudioByteCount, long longSampleRate, int channels,
+                                               SampleFormat format) {
         long totalDataLen = pcmAudioByteCount + 36; // 不包含前8个字节的WAV文件总长度
-        long byteRate = longSampleRate * 2 * channels;
+        int blockAlign = format.getFrameSize(channels);
+        long byteRate = longSampleRate * blockAlign;
         byte[] header = new byte[44];
         header[0] = 'R'; // RIFF
         header[1] = 'I';
@@ -39,8 +67,8 @@ public class WavUtil {
         header[17] = 0;
         header[18] = 0;
         header[19] = 0;
-        //编码方式 10H为PCM编码格式
-        header[20] = 1; // format = 1
+        //编码方式 1为PCM编码格式，3为IEEE float
+        header[20] = (byte) format.getWavFormatTag();
         header[21] = 0;
         //通道数
         header[22] = (byte) channels;
@@ -56,10 +84,10 @@ public class WavUtil {
         header[30] = (byte) ((byteRate >> 16) & 0xff);
         header[31] = (byte) ((byteRate >> 24) & 0xff);
         // 确定系统一次要处理多少个这样字节的数据，确定缓冲区，通道数*采样位数
-        header[32] = (byte) (2 * channels);
+        header[32] = (byte) blockAlign;
         header[33] = 0;
         //每个样本的数据位数
-        header[34] = 16;
+        header[34] = (byte) format.getBitsPerSample();
         header[35] = 0;
         //Data chunk
         header[36] = 'd';//data
@@ -72,4 +100,177 @@ public class WavUtil {
         header[43] = (byte) ((pcmAudioByteCount >> 24) & 0xff);
         return header;
     }
+
+    /**
+     * 生成可以扩展为RF64的80字节文件头：RIFF chunk之后预留28字节的JUNK chunk，
+     * 数据不超过4GB时是标准的wav文件，超过时把RIFF改为RF64、JUNK改为ds64，
+     * 32位长度字段写为0xFFFFFFFF，实际长度记录在ds64中，修正时不需要移动数据
+     *
+     * @param pcmAudioByteCount 不包括header的音频数据总长度
+     * @param longSampleRate    采样率
+     * @param channels          声道数
+     */
+    public static byte[] generateRf64FileHeader(long pcmAudioByteCount, long longSampleRate, int channels) {
+        return generateRf64FileHeader(pcmAudioByteCount, longSampleRate, channels, SampleFormat.PCM_16BIT);
+    }
+
+    /**
+     * 同{@link #generateRf64FileHeader(long, long, int)}，按format写入编码方式和位深
+     */
+    public static byte[] generateRf64FileHeader(long pcmAudioByteCount, long longSampleRate, int channels,
+                                                SampleFormat format) {
+        long riffSize = RF64_HEADER_SIZE - 8 + pcmAudioByteCount;
+        boolean rf64 = riffSize > MAX_UINT32;
+        int blockAlign = format.getFrameSize(channels);
+        ByteBuffer header = ByteBuffer.allocate(RF64_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(rf64 ? RF64 : RIFF);
+        header.putInt(rf64 ? -1 : (int) riffSize);
+        header.putInt(WAVE);
+        // ds64 chunk(超过4GB时)或同样大小的JUNK chunk
+        header.putInt(rf64 ? DS64 : JUNK);
+        header.putInt(DS64_SIZE);
+        if (rf64) {
+            header.putLong(riffSize);
+            header.putLong(pcmAudioByteCount);
+            header.putLong(pcmAudioByteCount / blockAlign);
+            header.putInt(0); // table length
+        } else {
+            header.position(header.position() + DS64_SIZE);
+        }
+        header.putInt(FMT);
+        header.putInt(16);
+        header.putShort((short) format.getWavFormatTag());
+        header.putShort((short) channels);
+        header.putInt((int) longSampleRate);
+        header.putInt((int) (longSampleRate * blockAlign));
+        header.putShort((short) blockAlign);
+        header.putShort((short) format.getBitsPerSample());
+        header.putInt(DATA);
+        header.putInt(rf64 ? -1 : (int) pcmAudioByteCount);
+        return header.array();
+    }
+
+    /**
+     * 从文件开头解析wav/RF64文件头，支持任意顺序的chunk、WAVE_FORMAT_EXTENSIBLE以及ds64，
+     * 数据长度未修正的文件按实际文件大小计算
+     *
+     * @return 不是wav文件时返回null
+     */
+    public static WavHeader readHeader(FileChannel channel) throws IOException {
+        channel.position(0);
+        WavHeader header = readHeader((ReadableByteChannel) channel);
+        return header == null ? null : header.withFileSize(channel.size());
+    }
+
+    /**
+     * 以流的方式解析wav/RF64文件头，只向前读取，返回后channel正好位于音频数据的起始位置
+     *
+     * @return 不是wav文件时返回null
+     * @throws IOException 是wav文件但结构不完整，如缺少fmt或data chunk
+     */
+    public static WavHeader readHeader(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        if (!readFully(channel, buffer, 12)) {
+            return null;
+        }
+        int riff = buffer.getInt(0);
+        boolean rf64 = riff == RF64 || riff == BW64;
+        if ((riff != RIFF && !rf64) || buffer.getInt(8) != WAVE) {
+            return null;
+        }
+        long offset = 12;
+        long ds64DataSize = WavHeader.UNKNOWN_SIZE;
+        int formatTag = 0;
+        int channels = 0;
+        int sampleRate = 0;
+        int byteRate = 0;
+        int blockAlign = 0;
+        int bitsPerSample = 0;
+        while (readFully(channel, buffer, 8)) {
+            int id = buffer.getInt(0);
+            long size = buffer.getInt(4) & MAX_UINT32;
+            offset += 8;
+            if (id == DATA) {
+                if (formatTag == 0) {
+                    throw new IOException("data chunk before fmt chunk");
+                }
+                long dataSize;
+                if (size == MAX_UINT32) {
+                    dataSize = rf64 ? ds64DataSize : WavHeader.UNKNOWN_SIZE;
+                } else {
+                    // 占位的文件头长度为0，说明录音未正常结束，数据持续到文件末尾
+                    dataSize = size == 0 ? WavHeader.UNKNOWN_SIZE : size;
+                }
+                return new WavHeader(formatTag, channels, sampleRate, byteRate, blockAlign, bitsPerSample,
+                        offset, dataSize, rf64);
+            }
+            long remaining = size + (size & 1); // chunk按2字节对齐
+            if (id == FMT || (id == DS64 && rf64)) {
+                int length = (int) Math.min(remaining, buffer.capacity());
+                if (!readFully(channel, buffer, length)) {
+                    break;
+                }
+                remaining -= length;
+                if (id == FMT) {
+                    if (length < 16) {
+                        throw new IOException("fmt chunk too small: " + size);
+                    }
+                    formatTag = buffer.getShort(0) & 0xffff;
+                    channels = buffer.getShort(2) & 0xffff;
+                    sampleRate = buffer.getInt(4);
+                    byteRate = buffer.getInt(8);
+                    blockAlign = buffer.getShort(12) & 0xffff;
+                    bitsPerSample = buffer.getShort(14) & 0xffff;
+                    if (formatTag == WavHeader.FORMAT_EXTENSIBLE && length >= 40) {
+                        // SubFormat GUID的前两个字节为实际的编码格式
+                        formatTag = buffer.getShort(24) & 0xffff;
+                    }
+                } else if (length >= 16) {
+                    ds64DataSize = buffer.getLong(8);
+                }
+            }
+            skip(channel, buffer, remaining);
+            offset += size + (size & 1);
+        }
+        throw new IOException("no data chunk found");
+    }
+
+    /**
+     * 查找wav文件中音频数据(data chunk)的起始位置，用于直接播放wav中的pcm数据
+     *
+     * @return data chunk数据的偏移量，不是wav文件(裸pcm)时返回0
+     */
+    public static long findDataOffset(FileChannel channel) throws IOException {
+        WavHeader header = readHeader(channel);
+        return header == null ? 0 : header.getDataOffset();
+    }
+
+    private static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void skip(ReadableByteChannel channel, ByteBuffer buffer, long count) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        if (channel instanceof FileChannel) {
+            FileChannel fileChannel = (FileChannel) channel;
+            fileChannel.position(fileChannel.position() + count);
+            return;
+        }
+        while (count > 0) {
+            buffer.clear().limit((int) Math.min(count, buffer.capacity()));
+            int read = channel.read(buffer);
+            if (read < 0) {
+                return;
+            }
+            count -= read;
+        }
+    }
 }
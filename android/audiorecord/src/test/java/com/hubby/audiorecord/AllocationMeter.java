@@ -0,0 +1,49 @@
+package com.hubby.audiorecord;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 统计某个线程在一段时间内分配的堆内存，JVM不支持时结果为-1
+ */
+final class AllocationMeter {
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private long threadId = -1;
+    private long startBytes;
+    private volatile long allocatedBytes = -1;
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        Object bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在被统计的线程中调用，开始统计
+     */
+    void begin() {
+        if (THREADS != null) {
+            threadId = Thread.currentThread().getId();
+            startBytes = THREADS.getThreadAllocatedBytes(threadId);
+        }
+    }
+
+    /**
+     * 在同一线程中调用，结束统计
+     */
+    void end() {
+        if (THREADS != null && threadId == Thread.currentThread().getId()) {
+            allocatedBytes = THREADS.getThreadAllocatedBytes(threadId) - startBytes;
+        }
+    }
+
+    long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+}
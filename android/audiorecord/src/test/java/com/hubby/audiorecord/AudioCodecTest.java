@@ -0,0 +1,151 @@
+package com.hubby.audiorecord;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 编解码往返测试，并输出各编码在JVM上的吞吐量
+ */
+public class AudioCodecTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHANNELS = 2;
+    private static final int FRAMES_PER_PACKET = EncodedAudioWriter.DEFAULT_FRAMES_PER_PACKET;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 双声道的正弦波叠加噪声，带一段静音和一段满幅方波
+     */
+    private static short[] testSignal(int frames) {
+        Random random = new Random(42);
+        short[] samples = new short[frames * CHANNELS];
+        for (int i = 0; i < frames; i++) {
+            double t = (double) i / SAMPLE_RATE;
+            double left = 8000 * Math.sin(2 * Math.PI * 440 * t) + 3000 * Math.sin(2 * Math.PI * 1234 * t);
+            double right = 6000 * Math.sin(2 * Math.PI * 220 * t) + random.nextGaussian() * 500;
+            if (i > frames / 2 && i < frames / 2 + SAMPLE_RATE / 10) {
+                left = 0;
+                right = 0;
+            } else if (i > frames * 3 / 4 && i < frames * 3 / 4 + SAMPLE_RATE / 20) {
+                left = (i / 50 & 1) == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+                right = random.nextInt(65536) - 32768;
+            }
+            samples[i * CHANNELS] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, left));
+            samples[i * CHANNELS + 1] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, right));
+        }
+        return samples;
+    }
+
+    private static short[] roundTrip(AudioCodec codec, short[] input, int frames) {
+        AudioEncoder encoder = codec.newEncoder(CHANNELS, FRAMES_PER_PACKET);
+        AudioDecoder decoder = codec.newDecoder(CHANNELS, FRAMES_PER_PACKET);
+        byte[] packet = new byte[encoder.maxEncodedSize(FRAMES_PER_PACKET)];
+        short[] block = new short[FRAMES_PER_PACKET * CHANNELS];
+        short[] decoded = new short[FRAMES_PER_PACKET * CHANNELS];
+        short[] output = new short[input.length];
+        long encodedBytes = 0;
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        for (int frame = 0; frame < frames; frame += FRAMES_PER_PACKET) {
+            int count = Math.min(FRAMES_PER_PACKET, frames - frame);
+            System.arraycopy(input, frame * CHANNELS, block, 0, count * CHANNELS);
+            long start = System.nanoTime();
+            int size = encoder.encode(block, count, packet);
+            long middle = System.nanoTime();
+            decoder.decode(packet, size, count, decoded);
+            decodeNanos += System.nanoTime() - middle;
+            encodeNanos += middle - start;
+            encodedBytes += size;
+            System.arraycopy(decoded, 0, output, frame * CHANNELS, count * CHANNELS);
+        }
+        double pcmMegabytes = input.length * 2 / 1e6;
+        System.out.printf("%s: ratio %.3f, encode %.1f MB/s, decode %.1f MB/s%n", codec,
+                encodedBytes / (input.length * 2.0),
+                pcmMegabytes / (encodeNanos / 1e9), pcmMegabytes / (decodeNanos / 1e9));
+        return output;
+    }
+
+    @Test
+    public void lossless_roundTripIsExact() {
+        int frames = SAMPLE_RATE * 10;
+        short[] input = testSignal(frames);
+        // 第一轮用于JIT预热
+        roundTrip(AudioCodec.LOSSLESS, input, frames);
+        assertArrayEquals(input, roundTrip(AudioCodec.LOSSLESS, input, frames));
+    }
+
+    @Test
+    public void imaAdpcm_roundTripKeepsSignal() {
+        int frames = SAMPLE_RATE * 10;
+        short[] input = testSignal(frames);
+        roundTrip(AudioCodec.IMA_ADPCM, input, frames);
+        short[] output = roundTrip(AudioCodec.IMA_ADPCM, input, frames);
+        double signal = 0;
+        double noise = 0;
+        // 只统计前半段正弦信号，方波和白噪声段不适合ADPCM
+        for (int i = 0; i < input.length / 2; i++) {
+            signal += (double) input[i] * input[i];
+            noise += (double) (input[i] - output[i]) * (input[i] - output[i]);
+        }
+        double snr = 10 * Math.log10(signal / noise);
+        assertTrue("snr = " + snr, snr > 20);
+    }
+
+    @Test
+    public void encodedFile_playsBackThroughPcmSource() throws Exception {
+        int frames = SAMPLE_RATE * 3 + 123;
+        short[] input = testSignal(frames);
+        File file = folder.newFile("record.hac");
+        EncodedAudioWriter writer = new EncodedAudioWriter(file, AudioCodec.LOSSLESS, SAMPLE_RATE, CHANNELS);
+        // 模拟写文件线程的输入：不与数据包对齐的若干块，缓冲区的order与数据的字节序无关且不应被修改
+        ByteBuffer block = ByteBuffer.allocateDirect(3528).order(ByteOrder.BIG_ENDIAN);
+        ByteBuffer[] blocks = {block};
+        for (int i = 0; i < input.length; ) {
+            block.clear();
+            while (block.hasRemaining() && i < input.length) {
+                short sample = input[i++];
+                block.put((byte) sample).put((byte) (sample >> 8));
+            }
+            block.flip();
+            writer.write(blocks, 0, 1);
+            assertFalse(block.hasRemaining());
+            assertEquals(ByteOrder.BIG_ENDIAN, block.order());
+        }
+        writer.close();
+        assertEquals(frames, writer.getTotalFrames());
+
+        EncodedPcmSource source = new EncodedPcmSource(file);
+        assertEquals(AudioCodec.LOSSLESS, source.getCodec());
+        assertEquals((long) frames * CHANNELS * 2, source.length());
+        short[] output = new short[input.length];
+        int count = 0;
+        ByteBuffer data;
+        while ((data = source.read(1000)) != null) {
+            data.order(ByteOrder.nativeOrder());
+            while (data.hasRemaining()) {
+                output[count++] = data.getShort();
+            }
+        }
+        assertArrayEquals(input, output);
+
+        // 跳转到任意帧后读到的数据与原始数据一致
+        long seekFrame = FRAMES_PER_PACKET * 2 + 77;
+        source.seek(seekFrame * CHANNELS * 2);
+        data = source.read(4).order(ByteOrder.nativeOrder());
+        assertEquals(input[(int) seekFrame * CHANNELS], data.getShort());
+        assertEquals(input[(int) seekFrame * CHANNELS + 1], data.getShort());
+        source.close();
+    }
+}
@@ -0,0 +1,202 @@
+package com.hubby.audiorecord;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 混音的饱和截断、声像和音轨增删，以及并发移除时每个音轨只关闭一次
+ */
+public class AudioMixerTest {
+
+    /**
+     * 内存中的固定数据，每次最多返回chunk字节，模拟文件数据源分多次读取
+     */
+    private static final class ConstantSource implements PcmSource {
+        private final ByteBuffer data;
+        private final int chunk;
+
+        ConstantSource(short value, int frames, int channels, int chunk) {
+            data = ByteBuffer.allocateDirect(frames * channels * 2).order(ByteOrder.nativeOrder());
+            while (data.hasRemaining()) {
+                data.putShort(value);
+            }
+            data.flip();
+            this.chunk = chunk;
+        }
+
+        @Override
+        public ByteBuffer read(int maxBytes) {
+            if (!data.hasRemaining()) {
+                return null;
+            }
+            ByteBuffer slice = data.duplicate().order(ByteOrder.nativeOrder());
+            slice.limit(Math.min(data.limit(), data.position() + Math.min(maxBytes, chunk)));
+            data.position(slice.limit());
+            return slice;
+        }
+
+        @Override
+        public long length() {
+            return data.limit();
+        }
+
+        @Override
+        public long position() {
+            return data.position();
+        }
+
+        @Override
+        public void seek(long bytePosition) {
+            data.position((int) bytePosition);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * 记录关闭次数的数据源
+     */
+    private static final class CountingSource implements PcmSource {
+        private final ConstantSource data = new ConstantSource((short) 100, 1 << 16, 2, 256);
+        final AtomicInteger closed = new AtomicInteger();
+
+        @Override
+        public ByteBuffer read(int maxBytes) {
+            return data.read(maxBytes);
+        }
+
+        @Override
+        public long length() {
+            return data.length();
+        }
+
+        @Override
+        public long position() {
+            return data.position();
+        }
+
+        @Override
+        public void seek(long bytePosition) {
+            data.seek(bytePosition);
+        }
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+
+    private static ByteBuffer output(int frames) {
+        return ByteBuffer.allocateDirect(frames * 4).order(ByteOrder.nativeOrder());
+    }
+
+    @Test
+    public void sumSaturates() throws Exception {
+        AudioMixer mixer = new AudioMixer(2, 256);
+        mixer.addTrack(new MixerTrack(new ConstantSource((short) 20000, 1024, 2, 100), 2));
+        mixer.addTrack(new MixerTrack(new ConstantSource((short) 20000, 1024, 2, 300), 2));
+        ByteBuffer out = output(256);
+        mixer.mix(out, 256);
+        assertEquals(256 * 4, out.remaining());
+        for (int i = 0; i < 512; i++) {
+            assertEquals(Short.MAX_VALUE, out.getShort(i * 2));
+        }
+        mixer.setMasterGain(0.5f);
+        mixer.mix(out, 256);
+        assertEquals(20000, out.getShort(0));
+    }
+
+    @Test
+    public void monoTrackPans() throws Exception {
+        AudioMixer mixer = new AudioMixer(2, 64);
+        MixerTrack track = new MixerTrack(new ConstantSource((short) 10000, 1024, 1, 64), 1);
+        mixer.addTrack(track);
+        ByteBuffer out = output(64);
+        mixer.mix(out, 64);
+        // 居中时左右相等，与单声道原始电平一致
+        assertEquals(out.getShort(0), out.getShort(2));
+        assertEquals(10000, out.getShort(0), 1);
+        track.setPan(-1f);
+        mixer.mix(out, 64);
+        assertTrue(out.getShort(0) > 14000);
+        assertEquals(0, out.getShort(2));
+    }
+
+    @Test
+    public void finishedAndRemovedTracksArePurged() throws Exception {
+        AudioMixer mixer = new AudioMixer(2, 100);
+        final AtomicInteger finished = new AtomicInteger();
+        mixer.setOnTrackFinishedListener(track -> finished.incrementAndGet());
+        MixerTrack shortTrack = new MixerTrack(new ConstantSource((short) 1000, 150, 2, 64), 2);
+        MixerTrack longTrack = new MixerTrack(new ConstantSource((short) 1000, 10000, 2, 64), 2);
+        mixer.addTrack(shortTrack);
+        mixer.addTrack(longTrack);
+        ByteBuffer out = output(100);
+        mixer.mix(out, 100);
+        assertEquals(2000, out.getShort(0));
+        // 第二块只有前50帧有shortTrack的数据
+        mixer.mix(out, 100);
+        assertEquals(2000, out.getShort(49 * 4));
+        assertEquals(1000, out.getShort(50 * 4));
+        assertEquals(1, mixer.getTrackCount());
+        assertEquals(1, finished.get());
+        longTrack.remove();
+        mixer.mix(out, 100);
+        assertEquals(0, mixer.getTrackCount());
+        assertEquals(2, finished.get());
+        mixer.mix(out, 100);
+        assertEquals(0, out.getShort(0));
+    }
+
+    @Test
+    public void concurrentRemoveClosesEachTrackOnce() throws Exception {
+        AudioMixer mixer = new AudioMixer(2, 64);
+        ByteBuffer out = output(64);
+        for (int round = 0; round < 500; round++) {
+            final Map<MixerTrack, AtomicInteger> notified = new ConcurrentHashMap<>();
+            mixer.setOnTrackFinishedListener(track -> notified.computeIfAbsent(track, t -> new AtomicInteger())
+                    .incrementAndGet());
+            final MixerTrack[] tracks = new MixerTrack[8];
+            CountingSource[] sources = new CountingSource[tracks.length];
+            for (int i = 0; i < tracks.length; i++) {
+                sources[i] = new CountingSource();
+                tracks[i] = new MixerTrack(sources[i], 2);
+                mixer.addTrack(tracks[i]);
+            }
+            // 混音线程清理结束的音轨时，另一个线程继续移除其他音轨
+            Thread remover = new Thread(() -> {
+                for (MixerTrack track : tracks) {
+                    track.remove();
+                    Thread.yield();
+                }
+            });
+            remover.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (mixer.getTrackCount() > 0) {
+                assertTrue(System.nanoTime() < deadline);
+                mixer.mix(out, 64);
+                for (MixerTrack track : mixer.getTracks()) {
+                    assertNotNull(track);
+                }
+                Thread.yield();
+            }
+            remover.join();
+            for (int i = 0; i < tracks.length; i++) {
+                assertEquals(1, sources[i].closed.get());
+                assertEquals(1, notified.get(tracks[i]).get());
+            }
+        }
+    }
+}
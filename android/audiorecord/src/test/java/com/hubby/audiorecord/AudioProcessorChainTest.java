@@ -0,0 +1,194 @@
+package com.hubby.audiorecord;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 按采集块逐块处理合成信号，检查各级处理的效果，以及录音中修改处理链时不分配内存、不出错
+ */
+public class AudioProcessorChainTest {
+    private static final int RATE = 48000;
+    private static final int CHANNELS = 2;
+    private static final int BLOCK_FRAMES = 960;
+    private static final SampleFormat FORMAT = SampleFormat.PCM_16BIT;
+    private static final int BLOCK_BYTES = BLOCK_FRAMES * FORMAT.getFrameSize(CHANNELS);
+
+    /**
+     * 正弦波，两个声道相同
+     */
+    private static final class Signal {
+        private final float amplitude;
+        private final float frequency;
+        private final float offset;
+        private long frame;
+
+        Signal(float amplitude, float frequency, float offset) {
+            this.amplitude = amplitude;
+            this.frequency = frequency;
+            this.offset = offset;
+        }
+
+        void fill(ByteBuffer block, float[] scratch) {
+            for (int f = 0; f < BLOCK_FRAMES; f++, frame++) {
+                float s = offset + amplitude * (float) Math.sin(2 * Math.PI * frequency * frame / RATE);
+                for (int c = 0; c < CHANNELS; c++) {
+                    scratch[f * CHANNELS + c] = s;
+                }
+            }
+            FORMAT.fromFloat(scratch, 0, block, 0, BLOCK_FRAMES * CHANNELS);
+        }
+    }
+
+    private static ByteBuffer newBlock() {
+        return ByteBuffer.allocateDirect(BLOCK_BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * 处理seconds秒信号，返回最后一块的峰值、均值和均方根
+     */
+    private static float[] run(AudioProcessorChain chain, Signal signal, float seconds) {
+        ByteBuffer block = newBlock();
+        float[] scratch = new float[BLOCK_FRAMES * CHANNELS];
+        int blocks = (int) (seconds * RATE / BLOCK_FRAMES);
+        for (int i = 0; i < blocks; i++) {
+            signal.fill(block, scratch);
+            chain.process(block, BLOCK_BYTES);
+        }
+        FORMAT.toFloat(block, 0, scratch, 0, scratch.length);
+        float peak = 0;
+        double sum = 0;
+        double sumSquares = 0;
+        for (float s : scratch) {
+            peak = Math.max(peak, Math.abs(s));
+            sum += s;
+            sumSquares += s * s;
+        }
+        return new float[]{peak, (float) (sum / scratch.length), (float) Math.sqrt(sumSquares / scratch.length)};
+    }
+
+    private static float db(float amplitude) {
+        return (float) (20 * Math.log10(amplitude));
+    }
+
+    @Test
+    public void highPassRemovesDcOffset() {
+        AudioProcessorChain chain = new AudioProcessorChain(RATE, CHANNELS, FORMAT);
+        chain.add(new HighPassFilter(HighPassFilter.DC_CUTOFF_HZ));
+        float[] result = run(chain, new Signal(0.5f, 1000, 0.2f), 1);
+        assertEquals(0f, result[1], 1e-3f);
+        assertEquals(0.5f, result[0], 0.01f);
+    }
+
+    @Test
+    public void limiterHoldsCeiling() {
+        AudioProcessorChain chain = new AudioProcessorChain(RATE, CHANNELS, FORMAT);
+        chain.setProcessors(new GainProcessor(12), new PeakLimiter(-3, PeakLimiter.DEFAULT_RELEASE_MILLIS));
+        float[] result = run(chain, new Signal(0.5f, 440, 0), 1);
+        assertTrue("peak = " + db(result[0]), db(result[0]) <= -3f + 0.01f);
+        assertTrue(db(result[0]) > -3.5f);
+    }
+
+    @Test
+    public void noiseGateAttenuatesQuietSignal() {
+        AudioProcessorChain chain = new AudioProcessorChain(RATE, CHANNELS, FORMAT);
+        // 衰减40dB后低于16bit的量化精度，用20dB检查
+        NoiseGate gate = new NoiseGate(-30, -20, NoiseGate.DEFAULT_ATTACK_MILLIS, NoiseGate.DEFAULT_HOLD_MILLIS,
+                NoiseGate.DEFAULT_RELEASE_MILLIS);
+        chain.add(gate);
+        float[] loud = run(chain, new Signal(0.1f, 440, 0), 0.5f);
+        assertEquals(0.1f, loud[0], 0.001f);
+        float[] quiet = run(chain, new Signal(0.02f, 440, 0), 1);
+        assertEquals(-20f, db(quiet[2]) - db(0.02f / (float) Math.sqrt(2)), 0.5f);
+        gate.setThresholdDb(-40);
+        quiet = run(chain, new Signal(0.02f, 440, 0), 0.2f);
+        assertEquals(0.02f, quiet[0], 0.0005f);
+    }
+
+    @Test
+    public void agcConvergesToTarget() {
+        AudioProcessorChain chain = new AudioProcessorChain(RATE, CHANNELS, FORMAT);
+        AutomaticGainControl agc = new AutomaticGainControl();
+        chain.setProcessors(agc, new PeakLimiter());
+        // -40dBFS的均方根，需要提高20dB
+        float[] result = run(chain, new Signal(0.01f * (float) Math.sqrt(2), 440, 0), 5);
+        assertEquals(AutomaticGainControl.DEFAULT_TARGET_DB, db(result[2]), 0.5f);
+        assertEquals(20f, agc.getGainDb(), 0.5f);
+        // 底噪不会被继续放大
+        run(chain, new Signal(0.0005f, 440, 0), 3);
+        assertEquals(20f, agc.getGainDb(), 0.5f);
+    }
+
+    @Test
+    public void reconfigureWhileProcessing() throws Exception {
+        final AudioProcessorChain chain = new AudioProcessorChain(RATE, CHANNELS, FORMAT);
+        final GainProcessor gain = new GainProcessor(0);
+        final HighPassFilter filter = new HighPassFilter(HighPassFilter.DC_CUTOFF_HZ);
+        final NoiseGate gate = new NoiseGate(-50);
+        final AutomaticGainControl agc = new AutomaticGainControl();
+        final PeakLimiter limiter = new PeakLimiter();
+        chain.setProcessors(gain, filter, gate, agc, limiter);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AllocationMeter allocation = new AllocationMeter();
+        final int blocks = 5000;
+        Thread capture = new Thread(() -> {
+            try {
+                ByteBuffer block = newBlock();
+                float[] scratch = new float[BLOCK_FRAMES * CHANNELS];
+                Random random = new Random(1);
+                Signal signal = new Signal(0.3f, 440, 0.05f);
+                // 预热后再统计分配
+                for (int i = 0; i < 200; i++) {
+                    signal.fill(block, scratch);
+                    chain.process(block, BLOCK_BYTES);
+                }
+                chain.resetStats();
+                allocation.begin();
+                for (int i = 0; i < blocks; i++) {
+                    // 模拟采集：只修改缓冲区中的部分采样
+                    block.putShort((random.nextInt(BLOCK_FRAMES * CHANNELS)) * 2, (short) random.nextInt());
+                    chain.process(block, BLOCK_BYTES);
+                }
+                allocation.end();
+            } catch (Throwable t) {
+                failure.set(t);
+            } finally {
+                running.set(false);
+            }
+        });
+        capture.start();
+        int changes = 0;
+        while (running.get()) {
+            gain.setGainDb(changes % 12 - 6);
+            filter.setCutoffHz(20 + changes % 100);
+            agc.setTargetDb(-18 - changes % 6);
+            if (changes % 2 == 0) {
+                chain.remove(gate);
+            } else {
+                chain.setProcessors(gain, filter, gate, agc, limiter);
+            }
+            changes++;
+            Thread.sleep(1);
+        }
+        capture.join();
+        assertNull(String.valueOf(failure.get()), failure.get());
+        LatencyHistogram.Snapshot latency = chain.getProcessLatency();
+        assertEquals(blocks, latency.getCount());
+        double blockNanos = BLOCK_FRAMES * 1e9 / RATE;
+        System.out.printf("chain: %d changes, block %.1fms, mean %.1fus, p99 %.1fus, load %.2f%%, alloc %d bytes%n",
+                changes, blockNanos / 1e6, latency.getMeanNanos() / 1e3, latency.getPercentileNanos(99) / 1e3,
+                chain.getLoad() * 100, allocation.getAllocatedBytes());
+        assertTrue(chain.getLoad() < 0.5);
+        // 计量本身有少量固定开销，每块数据不到1字节说明处理过程不分配
+        assertTrue(allocation.getAllocatedBytes() < blocks);
+    }
+}
@@ -0,0 +1,186 @@
+package com.hubby.audiorecord;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 分段并行处理的结果与不分段一致，并输出批量处理的吞吐量
+ */
+public class BatchProcessorTest {
+    private static final int RATE = 16000;
+    private static final int CHANNELS = 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 双声道正弦波，幅度为amplitude，前后各有silenceFrames帧静音
+     */
+    private static short[] signal(int frames, int silenceFrames, double amplitude) {
+        short[] samples = new short[frames * CHANNELS];
+        for (int i = silenceFrames; i < frames - silenceFrames; i++) {
+            double t = (double) i / RATE;
+            samples[i * CHANNELS] = (short) (amplitude * 32767 * Math.sin(2 * Math.PI * 440 * t));
+            samples[i * CHANNELS + 1] = (short) (amplitude * 32767 * Math.sin(2 * Math.PI * 660 * t));
+        }
+        return samples;
+    }
+
+    private static byte[] toBytes(short[] samples) {
+        ByteBuffer buffer = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asShortBuffer().put(samples);
+        return buffer.array();
+    }
+
+    private File writeWav(String name, short[] samples) throws IOException {
+        File file = folder.newFile(name);
+        byte[] data = toBytes(samples);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(WavUtil.generateWavFileHeader(data.length, RATE, CHANNELS));
+            out.write(data);
+        }
+        return file;
+    }
+
+    private static float[] readWav(File file, SampleFormat format) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            WavHeader header = WavUtil.readHeader(raf.getChannel());
+            assertEquals(format, SampleFormat.fromWav(header));
+            assertEquals(RATE, header.getSampleRate());
+            ByteBuffer data = ByteBuffer.allocate((int) header.getDataSize()).order(ByteOrder.LITTLE_ENDIAN);
+            raf.getChannel().read(data, header.getDataOffset());
+            float[] samples = new float[(int) (header.getDataSize() / format.getBytesPerSample())];
+            format.toFloat(data, 0, samples, 0, samples.length);
+            return samples;
+        }
+    }
+
+    private static float peak(float[] samples) {
+        float peak = 0;
+        for (float sample : samples) {
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        return peak;
+    }
+
+    private static List<BatchResult> run(int chunkFrames, BatchJob... jobs) throws InterruptedException {
+        try (BatchProcessor processor = new BatchProcessor(4)) {
+            processor.setChunkFrames(chunkFrames);
+            return processor.process(Arrays.asList(jobs), null);
+        }
+    }
+
+    @Test
+    public void normalizePeakMatchesAcrossChunkSizes() throws Exception {
+        File input = writeWav("in.wav", signal(100000, 0, 0.25));
+        File whole = new File(folder.getRoot(), "whole.wav");
+        File chunked = new File(folder.getRoot(), "chunked.wav");
+        BatchResult a = run(BatchProcessor.DEFAULT_CHUNK_FRAMES, new BatchJob(input, whole).normalizePeak(-1)).get(0);
+        BatchResult b = run(4096, new BatchJob(input, chunked).normalizePeak(-1)).get(0);
+        assertTrue(a.toString(), a.isSuccess());
+        assertTrue(b.toString(), b.isSuccess());
+        assertEquals(-12.04f, a.getPeakDb(), 0.05f);
+        assertEquals(a.getRmsDb(), b.getRmsDb(), 1e-4f);
+        assertEquals(11.04f, b.getGainDb(), 0.05f);
+        assertArrayEquals(Files.readAllBytes(whole.toPath()), Files.readAllBytes(chunked.toPath()));
+        assertEquals(-1f, 20 * Math.log10(peak(readWav(chunked, SampleFormat.PCM_16BIT))), 0.01f);
+    }
+
+    @Test
+    public void normalizeRmsIsLimitedByPeak() throws Exception {
+        File input = writeWav("in.wav", signal(20000, 0, 0.1));
+        File output = new File(folder.getRoot(), "out.wav");
+        // 正弦波的峰值比RMS高3dB，目标RMS为-2dB时受-1dB的峰值上限约束
+        BatchResult result = run(1000, new BatchJob(input, output).normalizeRms(-2)).get(0);
+        assertTrue(result.toString(), result.isSuccess());
+        assertEquals(-1f, 20 * Math.log10(peak(readWav(output, SampleFormat.PCM_16BIT))), 0.01f);
+    }
+
+    @Test
+    public void trimAndConvertFromRawPcm() throws Exception {
+        short[] samples = signal(30000, 5000, 0.5);
+        File input = folder.newFile("in.pcm");
+        Files.write(input.toPath(), toBytes(samples));
+        File output = new File(folder.getRoot(), "out.wav");
+        BatchJob job = new BatchJob(input, output)
+                .setPcmFormat(RATE, CHANNELS, SampleFormat.PCM_16BIT)
+                .trimSilence(-60)
+                .convertTo(SampleFormat.PCM_FLOAT);
+        BatchResult result = run(1024, job).get(0);
+        assertTrue(result.toString(), result.isSuccess());
+        assertEquals(30000, result.getInputFrames());
+        // 正弦波在静音边界处从0开始，之后几帧才超过-60dB的阈值
+        assertTrue(result.getOutputFrames() > 19990 && result.getOutputFrames() <= 20000);
+        float[] out = readWav(output, SampleFormat.PCM_FLOAT);
+        assertEquals(result.getOutputFrames() * CHANNELS, out.length);
+        int first = 0;
+        while (Math.max(Math.abs(samples[first * CHANNELS]), Math.abs(samples[first * CHANNELS + 1])) < 32.768) {
+            first++;
+        }
+        assertTrue(first >= 5000);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(samples[first * CHANNELS + i] / 32768f, out[i], 1e-6f);
+        }
+    }
+
+    @Test
+    public void failedFileDoesNotStopBatch() throws Exception {
+        File wav = writeWav("in.wav", signal(10000, 0, 0.5));
+        File pcm = folder.newFile("in.pcm");
+        Files.write(pcm.toPath(), toBytes(signal(10000, 0, 0.5)));
+        File badOutput = folder.newFile("bad.wav");
+        List<BatchResult> results = run(1024,
+                new BatchJob(pcm, badOutput).normalizePeak(0),
+                new BatchJob(wav, new File(folder.getRoot(), "good.wav")).normalizePeak(0));
+        assertFalse(results.get(0).isSuccess());
+        assertFalse(badOutput.exists());
+        assertTrue(results.get(1).toString(), results.get(1).isSuccess());
+    }
+
+    @Test
+    public void processesManyFilesConcurrently() throws Exception {
+        int fileCount = 24;
+        int frames = RATE * 10;
+        List<BatchJob> jobs = new ArrayList<>();
+        for (int i = 0; i < fileCount; i++) {
+            File input = writeWav("in" + i + ".wav", signal(frames, RATE / 2, 0.05 + i * 0.01));
+            jobs.add(new BatchJob(input, new File(folder.getRoot(), "out" + i + ".wav"))
+                    .trimSilence(-50).normalizeRms(-20));
+        }
+        final AtomicInteger callbacks = new AtomicInteger();
+        long start = System.nanoTime();
+        List<BatchResult> results;
+        try (BatchProcessor processor = new BatchProcessor()) {
+            processor.setChunkFrames(16 * 1024);
+            processor.setMaxConcurrentFiles(4);
+            results = processor.process(jobs, result -> callbacks.incrementAndGet());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertEquals(fileCount, callbacks.get());
+        for (BatchResult result : results) {
+            assertTrue(result.toString(), result.isSuccess());
+            assertEquals(-20f, result.getRmsDb() + result.getGainDb(), 0.05f);
+        }
+        double megabytes = (double) fileCount * frames * CHANNELS * 2 / (1024 * 1024);
+        System.out.printf("batch: %d files, %.1f MB in %.2fs, %.1f MB/s%n", fileCount, megabytes, seconds,
+                megabytes / seconds);
+    }
+}
@@ -0,0 +1,42 @@
+package com.hubby.audiorecord;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 低延迟模式下缓冲区只在新的欠载出现时增大，且不超过容量
+ */
+public class BufferSizeTunerTest {
+
+    @Test
+    public void growsOnlyOnNewUnderruns() {
+        BufferSizeTuner tuner = new BufferSizeTuner(96, 96, 400);
+        tuner.reset(3);
+        assertEquals(0, tuner.onUnderrunCount(3));
+        assertEquals(192, tuner.onUnderrunCount(4));
+        tuner.setBufferFrames(192);
+        assertEquals(0, tuner.onUnderrunCount(4));
+        assertEquals(288, tuner.onUnderrunCount(6));
+        tuner.setBufferFrames(288);
+        assertEquals(384, tuner.onUnderrunCount(7));
+        tuner.setBufferFrames(384);
+        assertEquals(400, tuner.onUnderrunCount(8));
+        tuner.setBufferFrames(400);
+        assertEquals(0, tuner.onUnderrunCount(9));
+        assertEquals(400, tuner.getBufferFrames());
+    }
+
+    @Test
+    public void followsActualBufferSize() {
+        BufferSizeTuner tuner = new BufferSizeTuner(96, 96, 1000);
+        // 设备把请求的大小向上取整为burst的整数倍
+        tuner.setBufferFrames(128);
+        assertEquals(224, tuner.onUnderrunCount(1));
+        tuner.setBufferFrames(256);
+        assertEquals(256, tuner.getBufferFrames());
+        // 设置失败返回错误码时保持原值
+        tuner.setBufferFrames(-3);
+        assertEquals(256, tuner.getBufferFrames());
+    }
+}
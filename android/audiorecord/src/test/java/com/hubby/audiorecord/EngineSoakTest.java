@@ -0,0 +1,325 @@
+package com.hubby.audiorecord;
+
+import android.media.AudioFormat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用合成的采集/播放设备在JVM上运行采集和播放流程，检查写文件线程、数据源周期性卡顿时是否丢数据，
+ * 并输出吞吐量、丢弃的帧数和各线程的内存分配速度。设备和卡顿都按模拟的音频时间计算，以实时的若干倍速度运行。
+ * 默认采集和播放各模拟16秒音频；-Dhubby.soak.minutes=N时各模拟N分钟音频做长时间压力测试，
+ * 速度由-Dhubby.soak.speed指定(默认4倍，更快时40ms的输出缓冲区只有几毫秒，欠载主要取决于线程调度)，
+ * 如N=60时约15分钟模拟1小时。另外检查数据源读取出错时播放线程停止并释放输出设备、冻结播放时钟
+ */
+public class EngineSoakTest {
+    private static final int RATE = 48000;
+    private static final int ENCODING = AudioFormat.ENCODING_PCM_16BIT;
+    private static final int FRAME_SIZE = SyntheticInputDevice.FRAME_SIZE;
+    // 每次采集/写入20ms
+    private static final int BLOCK_FRAMES = RATE / 50;
+    private static final int BLOCK_SIZE = BLOCK_FRAMES * FRAME_SIZE;
+    private static final int SOAK_MINUTES = Integer.getInteger("hubby.soak.minutes", 0);
+    private static final double SOAK_SPEED = Double.parseDouble(System.getProperty("hubby.soak.speed", "4"));
+    // 采集和播放各模拟的音频秒数
+    private static final long SOAK_SECONDS = SOAK_MINUTES > 0 ? SOAK_MINUTES * 60L : 16;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 模拟音频时间millis在speed倍速度下对应的纳秒数
+     */
+    private static long wallNanos(long millis, double speed) {
+        return (long) (TimeUnit.MILLISECONDS.toNanos(millis) / speed);
+    }
+
+    /**
+     * 阻塞nanos纳秒，Thread.sleep在倍速运行时精度不够
+     */
+    private static void stall(long nanos) throws IOException {
+        long deadline = System.nanoTime() + nanos;
+        long wait;
+        while ((wait = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new IOException("stall interrupted");
+            }
+        }
+    }
+
+    /**
+     * 检查写入数据的帧计数是否连续，每隔stallIntervalFrames帧阻塞stallNanos模拟磁盘卡顿
+     */
+    private static final class VerifyingSink implements PcmSink {
+        private final long stallIntervalFrames;
+        private final long stallNanos;
+        private final AllocationMeter allocation = new AllocationMeter();
+        private long nextStallFrame;
+        private long expectedFrame = -1;
+        private volatile long gapFrames;
+        private volatile long totalFrames;
+        private int writes;
+
+        VerifyingSink(long stallIntervalFrames, long stallNanos) {
+            this.stallIntervalFrames = stallIntervalFrames;
+            this.stallNanos = stallNanos;
+            this.nextStallFrame = stallIntervalFrames;
+        }
+
+        @Override
+        public void write(ByteBuffer[] blocks, int offset, int length) throws IOException {
+            if (++writes == 10) {
+                allocation.begin();
+            }
+            for (int i = offset; i < offset + length; i++) {
+                ByteBuffer block = blocks[i];
+                for (int p = block.position(); p + FRAME_SIZE <= block.limit(); p += FRAME_SIZE) {
+                    long frame = SyntheticInputDevice.getFrame(block, p);
+                    if (expectedFrame >= 0 && frame != expectedFrame) {
+                        gapFrames += frame - expectedFrame;
+                    }
+                    expectedFrame = frame + 1;
+                }
+                totalFrames += block.remaining() / FRAME_SIZE;
+            }
+            if (stallNanos > 0 && totalFrames >= nextStallFrame) {
+                nextStallFrame += stallIntervalFrames;
+                stall(stallNanos);
+            }
+        }
+
+        @Override
+        public void close() {
+            allocation.end();
+        }
+    }
+
+    /**
+     * 按{@link SyntheticInputDevice}的帧计数格式产生数据，每隔stallIntervalFrames帧阻塞stallNanos模拟解码或IO卡顿
+     */
+    private static final class CounterSource implements PcmSource {
+        private final long totalFrames;
+        private final long stallIntervalFrames;
+        private final long stallNanos;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE).order(ByteOrder.nativeOrder());
+        private long frame;
+        private long nextStallFrame;
+
+        CounterSource(long totalFrames, long stallIntervalFrames, long stallNanos) {
+            this.totalFrames = totalFrames;
+            this.stallIntervalFrames = stallIntervalFrames;
+            this.stallNanos = stallNanos;
+            this.nextStallFrame = stallIntervalFrames;
+        }
+
+        @Override
+        public ByteBuffer read(int maxBytes) throws IOException {
+            int n = (int) Math.min(totalFrames - frame, Math.min(maxBytes, buffer.capacity()) / FRAME_SIZE);
+            if (n <= 0) {
+                return null;
+            }
+            if (stallNanos > 0 && frame >= nextStallFrame) {
+                nextStallFrame += stallIntervalFrames;
+                stall(stallNanos);
+            }
+            buffer.clear();
+            for (int i = 0; i < n; i++) {
+                SyntheticInputDevice.putFrame(buffer, i * FRAME_SIZE, frame + i);
+            }
+            buffer.limit(n * FRAME_SIZE);
+            frame += n;
+            return buffer;
+        }
+
+        @Override
+        public long length() {
+            return totalFrames * FRAME_SIZE;
+        }
+
+        @Override
+        public long position() {
+            return frame * FRAME_SIZE;
+        }
+
+        @Override
+        public void seek(long bytePosition) {
+            frame = Math.min(totalFrames, bytePosition / FRAME_SIZE);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class CaptureResult {
+        long inputFrames;
+        long writtenFrames;
+        long gapFrames;
+        long overrunBlocks;
+    }
+
+    /**
+     * 采集wallMillis毫秒，采集设备速度为实时的speed倍，写文件线程同时写入wav文件和VerifyingSink
+     */
+    private CaptureResult capture(double speed, long wallMillis, VerifyingSink sink, String name)
+            throws Exception {
+        String tempFile = folder.newFile(name + ".pcm").getAbsolutePath();
+        AudioRecorder.AudioRecordRunnable runnable = new AudioRecorder.AudioRecordRunnable(tempFile, RATE,
+                AudioFormat.CHANNEL_IN_STEREO, ENCODING, BLOCK_SIZE, null);
+        SyntheticInputDevice input = new SyntheticInputDevice(RATE, speed, 2000000, 50, 42);
+        runnable.configure(input, RATE, sinks -> {
+            PcmSink[] wrapped = new PcmSink[sinks.length + 1];
+            wrapped[0] = sink;
+            System.arraycopy(sinks, 0, wrapped, 1, sinks.length);
+            return wrapped;
+        });
+        Thread thread = new Thread(runnable, name);
+        long start = System.nanoTime();
+        thread.start();
+        Thread.sleep(wallMillis);
+        runnable.stop();
+        thread.join(10000);
+        assertFalse("capture thread did not finish", thread.isAlive());
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        CaptureResult result = new CaptureResult();
+        result.inputFrames = input.getFrameCount();
+        result.writtenFrames = sink.totalFrames;
+        result.gapFrames = sink.gapFrames;
+        result.overrunBlocks = runnable.metrics().getOverrunCount();
+        System.out.printf("%s: %.1fx realtime, %.2f MB/s, gaps %d frames, overruns %d blocks, "
+                        + "capture alloc %s, write alloc %s%n", name,
+                result.inputFrames / (double) RATE / seconds,
+                result.inputFrames * FRAME_SIZE / seconds / (1024 * 1024),
+                result.gapFrames, result.overrunBlocks,
+                allocationRate(input.getAllocatedBytes(), seconds),
+                allocationRate(sink.allocation.getAllocatedBytes(), seconds));
+        return result;
+    }
+
+    private static String allocationRate(long bytes, double seconds) {
+        return bytes < 0 ? "n/a" : String.format("%.1f KB/s", bytes / seconds / 1024);
+    }
+
+    @Test
+    public void captureSurvivesWriterStalls() throws Exception {
+        // 写文件线程每2秒音频卡顿800ms音频时间，缓冲区容纳2秒，不应丢数据
+        VerifyingSink sink = new VerifyingSink(RATE * 2, wallNanos(800, SOAK_SPEED));
+        CaptureResult result = capture(SOAK_SPEED, (long) (SOAK_SECONDS * 1000 / SOAK_SPEED), sink, "captureSoak");
+        assertTrue(result.inputFrames > 0);
+        assertEquals(0, result.overrunBlocks);
+        assertEquals(0, result.gapFrames);
+        assertEquals(result.inputFrames, result.writtenFrames);
+    }
+
+    @Test
+    public void captureCountsDroppedBlocks() throws Exception {
+        // 每秒音频卡顿6.4秒音频时间，采集速度16倍时约6秒音频，超出缓冲区，丢弃的帧数应与溢出的块数一致。
+        // 停止前最后丢弃的块之后没有数据，不表现为间隙
+        VerifyingSink sink = new VerifyingSink(RATE, wallNanos(6400, 16));
+        CaptureResult result = capture(16, 1500, sink, "captureOverrun");
+        long droppedFrames = result.overrunBlocks * BLOCK_FRAMES;
+        assertTrue(result.overrunBlocks > 0);
+        assertEquals(result.inputFrames, result.writtenFrames + droppedFrames);
+        assertTrue(result.gapFrames > 0 && result.gapFrames <= droppedFrames);
+        assertEquals(0, result.gapFrames % BLOCK_FRAMES);
+    }
+
+    /**
+     * 以speed倍速度播放totalFrames帧，数据源每250ms音频卡顿60ms音频时间，输出缓冲区40ms
+     *
+     * @return 欠载次数
+     */
+    private int play(long totalFrames, int prefetchMillis, double speed, String name) throws Exception {
+        final SyntheticOutputDevice output = new SyntheticOutputDevice(RATE, speed, BLOCK_FRAMES * 2, false, 50);
+        AudioTracker.AudioTrackRunnable runnable = new AudioTracker.AudioTrackRunnable(RATE,
+                SyntheticInputDevice.CHANNELS, ENCODING, BLOCK_SIZE, new PlaybackClock(RATE),
+                lowLatency -> output);
+        runnable.configure(new CounterSource(totalFrames, RATE / 4, wallNanos(60, speed)), prefetchMillis, false);
+        Thread thread = new Thread(runnable, name);
+        long start = System.nanoTime();
+        thread.start();
+        thread.join((long) (totalFrames * 1000 / RATE / speed * 2) + 10000);
+        assertFalse("play thread did not finish", thread.isAlive());
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%s: prefetch %dms, %.1fs played in %.1fs, underruns %d, dropped %d frames, "
+                        + "play alloc %s%n", name, prefetchMillis, totalFrames / (double) RATE, seconds,
+                output.getUnderrunCount(), output.getGapFrames(),
+                allocationRate(output.getAllocatedBytes(), seconds));
+        assertEquals(0, output.getGapFrames());
+        assertEquals(totalFrames, output.getTotalFrames());
+        return output.getUnderrunCount();
+    }
+
+    @Test
+    public void readErrorStopsOutputAndFreezesClock() throws Exception {
+        final SyntheticOutputDevice output = new SyntheticOutputDevice(RATE, 1, BLOCK_FRAMES * 2, false, 50);
+        PlaybackClock clock = new PlaybackClock(RATE);
+        AudioTracker.AudioTrackRunnable runnable = new AudioTracker.AudioTrackRunnable(RATE,
+                SyntheticInputDevice.CHANNELS, ENCODING, BLOCK_SIZE, clock, lowLatency -> output);
+        final CounterSource counter = new CounterSource(RATE * 10L, RATE, 0);
+        // 播放约0.2秒后读取失败
+        PcmSource failing = new PcmSource() {
+            @Override
+            public ByteBuffer read(int maxBytes) throws IOException {
+                if (counter.position() >= RATE / 5 * FRAME_SIZE) {
+                    throw new IOException("read failed");
+                }
+                return counter.read(maxBytes);
+            }
+
+            @Override
+            public long length() {
+                return counter.length();
+            }
+
+            @Override
+            public long position() {
+                return counter.position();
+            }
+
+            @Override
+            public void seek(long bytePosition) {
+                counter.seek(bytePosition);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        runnable.configure(failing, 0, false);
+        Thread thread = new Thread(runnable, "playReadError");
+        thread.start();
+        thread.join(10000);
+        assertFalse("play thread did not finish", thread.isAlive());
+        assertTrue(output.isStopped());
+        assertTrue(output.isReleased());
+        // 时钟停在出错时的位置，不再按采样率外推
+        assertFalse(clock.isRunning());
+        long frozen = clock.getPositionFrames();
+        assertEquals(frozen, clock.getPositionFrames(System.nanoTime() + TimeUnit.SECONDS.toNanos(1)));
+        assertEquals(0, runnable.getPositionFrame());
+    }
+
+    @Test
+    public void prefetchAbsorbsSourceStalls() throws Exception {
+        long totalFrames = SOAK_SECONDS * RATE;
+        int withPrefetch = play(totalFrames, AudioTracker.DEFAULT_PREFETCH_MILLIS, SOAK_SPEED, "playSoak");
+        int withoutPrefetch = play(totalFrames, 0, SOAK_SPEED, "playNoPrefetch");
+        assertTrue(withPrefetch < withoutPrefetch);
+    }
+}
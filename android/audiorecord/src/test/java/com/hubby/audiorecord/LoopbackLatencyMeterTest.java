@@ -0,0 +1,127 @@
+package com.hubby.audiorecord;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用固定延迟的环回模拟输出到输入的路径，测得的往返延迟应等于模拟的延迟
+ */
+public class LoopbackLatencyMeterTest {
+    private static final int RATE = 48000;
+    private static final int CHANNELS = 2;
+    private static final int BLOCK_FRAMES = 240;
+    private static final SampleFormat FORMAT = SampleFormat.PCM_16BIT;
+
+    private static long frameNanos(long frames) {
+        return frames * 1000000000L / RATE;
+    }
+
+    /**
+     * 输出的第n帧在输入的第n+delayFrames帧出现，叠加微弱的噪声
+     *
+     * @return 测得的往返延迟
+     */
+    private static long simulate(int delayFrames, float gain) {
+        LoopbackLatencyMeter meter = new LoopbackLatencyMeter(RATE, CHANNELS, FORMAT);
+        final long[] result = {Long.MIN_VALUE};
+        assertTrue(meter.start(latency -> result[0] = latency));
+        int frameSize = FORMAT.getFrameSize(CHANNELS);
+        int totalFrames = RATE * 2;
+        float[] line = new float[totalFrames + delayFrames];
+        float[] samples = new float[BLOCK_FRAMES * CHANNELS];
+        ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_FRAMES * frameSize).order(ByteOrder.LITTLE_ENDIAN);
+        Random random = new Random(1);
+        for (int start = 0; start + BLOCK_FRAMES <= totalFrames && result[0] == Long.MIN_VALUE;
+             start += BLOCK_FRAMES) {
+            // 输出：第start帧在start对应的时刻写入
+            block.clear();
+            meter.processOutput(block, frameNanos(start));
+            FORMAT.toFloat(block, 0, samples, 0, samples.length);
+            for (int f = 0; f < BLOCK_FRAMES; f++) {
+                line[start + f + delayFrames] = samples[f * CHANNELS] * gain;
+            }
+            // 输入：读到这一块的时刻为最后一帧之后
+            for (int f = 0; f < BLOCK_FRAMES; f++) {
+                float noise = (random.nextFloat() - 0.5f) * 0.002f;
+                for (int c = 0; c < CHANNELS; c++) {
+                    samples[f * CHANNELS + c] = line[start + f] + noise;
+                }
+            }
+            FORMAT.fromFloat(samples, 0, block, 0, samples.length);
+            block.clear();
+            meter.processInput(block, frameNanos(start + BLOCK_FRAMES));
+            assertEquals(0, block.position());
+        }
+        assertTrue(!meter.isMeasuring());
+        return result[0];
+    }
+
+    @Test
+    public void measuresLoopbackDelay() {
+        for (int delay : new int[]{480, 2000, 7777}) {
+            long latency = simulate(delay, 0.5f);
+            // 阈值检测落在脉冲包络的上升沿，误差小于脉冲长度
+            long error = latency - frameNanos(delay);
+            assertTrue("delay " + delay + " latency " + latency, error >= 0 && error < frameNanos(96));
+        }
+    }
+
+    @Test
+    public void reportsUnknownWithoutLoopback() {
+        assertEquals(LoopbackLatencyMeter.LATENCY_UNKNOWN, simulate(100, 0f));
+    }
+
+    @Test
+    public void measuresThroughRingBufferSource() throws Exception {
+        // 与监听时相同：采集数据经环回缓冲区由RingBufferPcmSource读出，在交给输出前替换为脉冲
+        int delayFrames = 1234;
+        int frameSize = FORMAT.getFrameSize(CHANNELS);
+        LoopbackLatencyMeter meter = new LoopbackLatencyMeter(RATE, CHANNELS, FORMAT);
+        final long[] result = {Long.MIN_VALUE};
+        assertTrue(meter.start(latency -> result[0] = latency));
+        PcmRingBuffer ring = new PcmRingBuffer(4, BLOCK_FRAMES * frameSize);
+        RingBufferPcmSource source = new RingBufferPcmSource(ring);
+        byte[] captured = new byte[BLOCK_FRAMES * frameSize];
+        // 输出设备按本机字节序解释收到的字节
+        ByteBuffer played = ByteBuffer.allocateDirect(BLOCK_FRAMES * frameSize).order(ByteOrder.nativeOrder());
+        ByteBuffer input = ByteBuffer.allocateDirect(BLOCK_FRAMES * frameSize).order(ByteOrder.nativeOrder());
+        float[] samples = new float[BLOCK_FRAMES * CHANNELS];
+        float[] line = new float[RATE * 2 + delayFrames];
+        float peak = 0;
+        long frame = 0;
+        while (frame + BLOCK_FRAMES <= RATE * 2 && result[0] == Long.MIN_VALUE) {
+            assertTrue(ring.offer(captured, 0, captured.length));
+            // 每次读取半块，脉冲可能跨越两次读取
+            played.clear();
+            for (int half = 0; half < 2; half++) {
+                ByteBuffer chunk = source.read(captured.length / 2);
+                meter.processOutput(chunk, frameNanos(frame + half * BLOCK_FRAMES / 2));
+                played.put(chunk);
+            }
+            FORMAT.toFloat(played, 0, samples, 0, samples.length);
+            for (int f = 0; f < BLOCK_FRAMES; f++) {
+                peak = Math.max(peak, Math.abs(samples[f * CHANNELS]));
+                line[(int) frame + f + delayFrames] = samples[f * CHANNELS] * 0.5f;
+            }
+            for (int f = 0; f < BLOCK_FRAMES; f++) {
+                for (int c = 0; c < CHANNELS; c++) {
+                    samples[f * CHANNELS + c] = line[(int) frame + f];
+                }
+            }
+            FORMAT.fromFloat(samples, 0, input, 0, samples.length);
+            input.clear();
+            meter.processInput(input, frameNanos(frame + BLOCK_FRAMES));
+            frame += BLOCK_FRAMES;
+        }
+        // 脉冲按播放的字节序还原为0.9的幅度，而不是字节交换后的噪声
+        assertEquals(0.9f, peak, 0.05f);
+        long error = result[0] - frameNanos(delayFrames);
+        assertTrue("latency " + result[0], error >= 0 && error < frameNanos(96));
+    }
+}
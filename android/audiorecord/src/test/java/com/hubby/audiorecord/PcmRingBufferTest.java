@@ -0,0 +1,164 @@
+package com.hubby.audiorecord;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 生产者和消费者线程并发时数据块在多次绕回后仍按顺序到达，缓冲区满时丢弃并计数，标记和最高占用与写入一致
+ */
+public class PcmRingBufferTest {
+    private static final int FRAME_SIZE = SyntheticInputDevice.FRAME_SIZE;
+
+    private static ByteBuffer frames(long first, int count) {
+        ByteBuffer block = ByteBuffer.allocate(count * FRAME_SIZE);
+        for (int i = 0; i < count; i++) {
+            SyntheticInputDevice.putFrame(block, i * FRAME_SIZE, first + i);
+        }
+        return block;
+    }
+
+    @Test
+    public void slotsUseNativeOrder() {
+        PcmRingBuffer ring = new PcmRingBuffer(3, 16);
+        assertEquals(4, ring.capacity());
+        ring.offer(new byte[8], 0, 8);
+        assertSame(ByteOrder.nativeOrder(), ring.peek().order());
+    }
+
+    @Test
+    public void consumerSeesBlocksInOrderAcrossWrapAround() throws Exception {
+        final int blocks = 20000;
+        final PcmRingBuffer ring = new PcmRingBuffer(8, 64 * FRAME_SIZE);
+        final AtomicLong rejected = new AtomicLong();
+        Thread producer = new Thread(() -> {
+            Random random = new Random(1);
+            long frame = 0;
+            for (int b = 0; b < blocks; b++) {
+                ByteBuffer block = frames(frame, 1 + random.nextInt(64));
+                // 缓冲区满时重试同一块，每次失败都计入溢出
+                while (!ring.offer(block, b)) {
+                    rejected.incrementAndGet();
+                    Thread.yield();
+                }
+                frame += block.capacity() / FRAME_SIZE;
+            }
+        }, "producer");
+        producer.start();
+
+        ByteBuffer[] peeked = new ByteBuffer[5];
+        long frame = 0;
+        int block = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (block < blocks) {
+            assertTrue("timed out at block " + block, System.nanoTime() < deadline);
+            int count = ring.peek(peeked);
+            if (count == 0) {
+                ring.await(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                assertEquals(block, ring.getFlags(i));
+                ByteBuffer data = peeked[i];
+                assertEquals(0, data.remaining() % FRAME_SIZE);
+                for (int p = data.position(); p < data.limit(); p += FRAME_SIZE) {
+                    assertEquals("block " + block, frame++, SyntheticInputDevice.getFrame(data, p));
+                }
+                block++;
+            }
+            ring.release(count);
+        }
+        producer.join();
+        assertTrue(ring.isEmpty());
+        assertEquals(rejected.get(), ring.getOverrunCount());
+        assertTrue(ring.getHighWaterMark() <= ring.capacity());
+    }
+
+    @Test
+    public void fullBufferDropsAndCounts() {
+        PcmRingBuffer ring = new PcmRingBuffer(4, 2 * FRAME_SIZE);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(frames(i, 1)));
+        }
+        assertEquals(4, ring.size());
+        assertFalse(ring.offer(frames(4, 1)));
+        assertFalse(ring.offer(new byte[FRAME_SIZE], 0, FRAME_SIZE));
+        assertEquals(2, ring.getOverrunCount());
+
+        // 归还一个槽位后生产者可以继续写入，丢弃的块不会出现
+        assertEquals(0, SyntheticInputDevice.getFrame(ring.peek(), 0));
+        ring.release();
+        assertTrue(ring.offer(frames(5, 2)));
+        ByteBuffer[] peeked = new ByteBuffer[8];
+        assertEquals(4, ring.peek(peeked));
+        long[] expected = {1, 2, 3, 5};
+        for (int i = 0; i < 4; i++) {
+            assertEquals(expected[i], SyntheticInputDevice.getFrame(peeked[i], 0));
+        }
+        assertEquals(2 * FRAME_SIZE, peeked[3].remaining());
+        ring.release(4);
+        assertNull(ring.peek());
+        assertEquals(2, ring.getOverrunCount());
+
+        try {
+            ring.offer(frames(0, 3));
+            throw new AssertionError("block larger than a slot was accepted");
+        } catch (IllegalArgumentException expectedError) {
+            // 超过槽位大小的块直接拒绝，不计入溢出
+        }
+        assertEquals(2, ring.getOverrunCount());
+    }
+
+    @Test
+    public void flagsFollowTheirBlock() {
+        PcmRingBuffer ring = new PcmRingBuffer(2, FRAME_SIZE);
+        assertTrue(ring.offer(frames(0, 1), SilenceGate.FLAG_VOICED));
+        assertTrue(ring.offer(frames(1, 1), 0));
+        assertEquals(SilenceGate.FLAG_VOICED, ring.getFlags(0));
+        assertEquals(0, ring.getFlags(1));
+        ring.release();
+        // 绕回后重用第一个槽位，byte[]写入不附带标记
+        assertTrue(ring.offer(new byte[FRAME_SIZE], 0, FRAME_SIZE));
+        assertEquals(0, ring.getFlags(0));
+        assertEquals(0, ring.getFlags(1));
+        ring.release();
+        assertTrue(ring.offer(frames(3, 1), 7));
+        assertEquals(0, ring.getFlags(0));
+        assertEquals(7, ring.getFlags(1));
+    }
+
+    @Test
+    public void highWaterMarkTracksPeakOccupancy() {
+        PcmRingBuffer ring = new PcmRingBuffer(8, FRAME_SIZE);
+        assertEquals(0, ring.getHighWaterMark());
+        for (int i = 0; i < 3; i++) {
+            ring.offer(frames(i, 1));
+        }
+        ring.release(3);
+        for (int i = 0; i < 5; i++) {
+            ring.offer(frames(i, 1));
+            ring.release();
+        }
+        assertEquals(3, ring.getHighWaterMark());
+        for (int i = 0; i < 10; i++) {
+            ring.offer(frames(i, 1));
+        }
+        assertEquals(8, ring.getHighWaterMark());
+        assertEquals(2, ring.getOverrunCount());
+
+        ring.reset();
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.getHighWaterMark());
+        assertEquals(0, ring.getOverrunCount());
+    }
+}
@@ -0,0 +1,168 @@
+package com.hubby.audiorecord;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 各种数据源按顺序返回完整的数据，预读数据源跳转后从新位置继续
+ */
+public class PcmSourceTest {
+    private static final int FRAME_SIZE = 4;
+
+    private static byte[] ramp(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    /**
+     * 按maxBytes读取到结束，校验每个字节并返回读取的字节数
+     */
+    private static int drain(PcmSource source, int maxBytes, int expectedStart) throws IOException {
+        int expected = expectedStart;
+        ByteBuffer chunk;
+        while ((chunk = source.read(maxBytes)) != null) {
+            if (chunk.remaining() > maxBytes || chunk.remaining() % FRAME_SIZE != 0) {
+                throw new AssertionError("bad chunk size " + chunk.remaining());
+            }
+            while (chunk.hasRemaining()) {
+                assertEquals((byte) expected++, chunk.get());
+            }
+            assertEquals(expected, source.position());
+        }
+        return expected - expectedStart;
+    }
+
+    @Test
+    public void byteBufferSource() throws IOException {
+        ByteBufferPcmSource source = new ByteBufferPcmSource(ByteBuffer.wrap(ramp(1000)));
+        assertEquals(1000, drain(source, 64, 0));
+        source.seek(400);
+        assertEquals(600, drain(source, 100, 400));
+    }
+
+    @Test
+    public void inputStreamSourceReturnsWholeFrames() throws IOException {
+        // 每次只返回3个字节，且末尾有不完整的帧
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(ramp(1002))) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        InputStreamPcmSource source = new InputStreamPcmSource(in, -1, FRAME_SIZE, 64);
+        assertEquals(40, drain(new LimitedSource(source, 40), 16, 0));
+        source.seek(100);
+        assertEquals(900, drain(source, 32, 100));
+        source.close();
+    }
+
+    @Test
+    public void prefetchReadsInOrderAndSeeks() throws IOException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            byte[] data = ramp(10000);
+            PrefetchingPcmSource source = new PrefetchingPcmSource(
+                    new ByteBufferPcmSource(ByteBuffer.wrap(data)), 256, 3, executor);
+            assertEquals(10000, source.length());
+            // 一次读取小于块大小时分多次返回同一块
+            assertEquals(5000, drain(new LimitedSource(source, 5000), 100, 0));
+            source.seek(2000);
+            assertEquals(8000, drain(source, 512, 2000));
+            assertNull(source.read(512));
+            source.seek(9000);
+            assertEquals(1000, drain(source, 512, 9000));
+            source.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void prefetchReportsUpstreamFailure() throws IOException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            InputStream failing = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw new IOException("broken");
+                }
+            };
+            PrefetchingPcmSource source = new PrefetchingPcmSource(
+                    new InputStreamPcmSource(failing, FRAME_SIZE), 256, 2, executor);
+            source.read(256);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void ringBufferSourceReadsLiveData() throws Exception {
+        final PcmRingBuffer ringBuffer = new PcmRingBuffer(4, 64);
+        final RingBufferPcmSource source = new RingBufferPcmSource(ringBuffer);
+        final byte[] data = ramp(640);
+        Thread producer = new Thread(() -> {
+            for (int offset = 0; offset < data.length; ) {
+                if (ringBuffer.offer(data, offset, 64)) {
+                    offset += 64;
+                } else {
+                    Thread.yield();
+                }
+            }
+            source.finish();
+        });
+        producer.start();
+        assertEquals(640, drain(source, 48, 0));
+        producer.join();
+    }
+
+    /**
+     * 只读取前limit字节，用于在数据中间停止读取
+     */
+    private static final class LimitedSource implements PcmSource {
+        private final PcmSource source;
+        private final long limit;
+
+        LimitedSource(PcmSource source, long limit) {
+            this.source = source;
+            this.limit = limit;
+        }
+
+        @Override
+        public ByteBuffer read(int maxBytes) throws IOException {
+            long left = limit - source.position();
+            return left <= 0 ? null : source.read((int) Math.min(maxBytes, left));
+        }
+
+        @Override
+        public long length() {
+            return limit;
+        }
+
+        @Override
+        public long position() {
+            return source.position();
+        }
+
+        @Override
+        public void seek(long bytePosition) throws IOException {
+            source.seek(bytePosition);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
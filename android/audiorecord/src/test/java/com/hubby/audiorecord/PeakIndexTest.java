@@ -0,0 +1,155 @@
+package com.hubby.audiorecord;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 峰值索引分块写入后，各级读取结果与直接扫描pcm数据一致
+ */
+public class PeakIndexTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int CHANNELS = 2;
+    private static final int FRAMES = 300_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 左声道为缓慢变化的锯齿，右声道为其反相的一半
+     */
+    private static short[] signal() {
+        short[] samples = new short[FRAMES * CHANNELS];
+        for (int i = 0; i < FRAMES; i++) {
+            short left = (short) ((i * 7) % 60000 - 30000);
+            samples[i * 2] = left;
+            samples[i * 2 + 1] = (short) (-left / 2);
+        }
+        return samples;
+    }
+
+    private static File writeIndex(File file, short[] samples) throws IOException {
+        // 与wav文件中的数据相同为小端序
+        ByteBuffer all = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        all.asShortBuffer().put(samples);
+        try (PeakIndexWriter writer = new PeakIndexWriter(file, SAMPLE_RATE, CHANNELS, SampleFormat.PCM_16BIT)) {
+            // 块大小与峰值间隔不对齐
+            int blockBytes = 3000 * CHANNELS * 2;
+            ByteBuffer[] blocks = new ByteBuffer[1];
+            for (int offset = 0; offset < all.capacity(); offset += blockBytes) {
+                ByteBuffer block = all.duplicate();
+                block.position(offset).limit(Math.min(all.capacity(), offset + blockBytes));
+                blocks[0] = block.slice();
+                writer.write(blocks, 0, 1);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void matchesBruteForce() throws IOException {
+        short[] samples = signal();
+        File file = writeIndex(folder.newFile("test.peaks"), samples);
+        try (PeakIndexReader reader = new PeakIndexReader(file)) {
+            assertEquals(FRAMES, reader.getFrameCount());
+            assertEquals(3, reader.getLevelCount());
+            int pixels = 50;
+            short[] mins = new short[pixels];
+            short[] maxs = new short[pixels];
+            long[][] ranges = {{0, FRAMES}, {1000, 1000 + 256 * 50}, {23_456, 23_456 + 4096 * 50}};
+            for (long[] range : ranges) {
+                for (int channel = PeakIndexReader.ALL_CHANNELS; channel < CHANNELS; channel++) {
+                    assertEquals(pixels, reader.read(range[0], range[1], pixels, channel, mins, maxs));
+                    double framesPerPixel = (double) (range[1] - range[0]) / pixels;
+                    for (int p = 0; p < pixels; p++) {
+                        long from = range[0] + (long) (p * framesPerPixel);
+                        long to = range[0] + (long) ((p + 1) * framesPerPixel);
+                        int min = Short.MAX_VALUE;
+                        int max = Short.MIN_VALUE;
+                        for (long f = from; f < to; f++) {
+                            for (int c = 0; c < CHANNELS; c++) {
+                                if (channel == PeakIndexReader.ALL_CHANNELS || channel == c) {
+                                    min = Math.min(min, samples[(int) f * CHANNELS + c]);
+                                    max = Math.max(max, samples[(int) f * CHANNELS + c]);
+                                }
+                            }
+                        }
+                        // 峰值按条目边界对齐，范围只会比精确值更宽
+                        assertTrue("min " + p, mins[p] <= min + 1);
+                        assertTrue("max " + p, maxs[p] >= max - 1);
+                    }
+                }
+            }
+            // 整个文件的峰值就是信号的满幅
+            assertEquals(1, reader.read(0, FRAMES, 1, 0, mins, maxs));
+            assertEquals(-30000, mins[0], 1);
+            assertEquals(29999, maxs[0], 1);
+            // 超出录音长度的像素不返回
+            assertEquals(0, reader.read(FRAMES, FRAMES * 2L, 10, 0, mins, maxs));
+            assertEquals(2, reader.read(0, FRAMES * 2L, 4, 0, mins, maxs));
+        }
+    }
+
+    @Test
+    public void indexesBlocksFromWriteThread() throws IOException {
+        // 与录音时相同：采集线程写入环形缓冲区，写文件线程取出后写入峰值索引
+        int frames = 20_000;
+        int blockFrames = 441;
+        PcmRingBuffer ring = new PcmRingBuffer(64, blockFrames * CHANNELS * 2);
+        ByteBuffer block = ByteBuffer.allocate(blockFrames * CHANNELS * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int frame = 0; frame < frames; ) {
+            int n = Math.min(blockFrames, frames - frame);
+            block.clear();
+            for (int i = 0; i < n; i++, frame++) {
+                // 每512帧在+1000和-1000之间切换，右声道为左声道的一半
+                short left = (short) ((frame / 512) % 2 == 0 ? 1000 : -1000);
+                block.putShort(left).putShort((short) (left / 2));
+            }
+            block.flip();
+            assertTrue(ring.offer(block));
+        }
+        File file = folder.newFile("ring.peaks");
+        AudioWriteRunnable writer = new AudioWriteRunnable(ring,
+                new PeakIndexWriter(file, SAMPLE_RATE, CHANNELS, SampleFormat.PCM_16BIT));
+        writer.finish();
+        writer.run();
+        assertTrue(ring.isEmpty());
+
+        try (PeakIndexReader reader = new PeakIndexReader(file)) {
+            assertEquals(frames, reader.getFrameCount());
+            short[] mins = new short[2];
+            short[] maxs = new short[2];
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                int peak = channel == 0 ? 1000 : 500;
+                assertEquals(1, reader.read(0, frames, 1, channel, mins, maxs));
+                assertEquals(-peak, mins[0], 1);
+                assertEquals(peak, maxs[0], 1);
+                // 第一个条目(256帧)只有正值
+                assertEquals(1, reader.read(0, 256, 1, channel, mins, maxs));
+                assertEquals(peak, mins[0], 1);
+                assertEquals(peak, maxs[0], 1);
+            }
+        }
+    }
+
+    @Test
+    public void readsOnlyFewEntriesPerPixel() throws IOException {
+        File file = writeIndex(folder.newFile("count.peaks"), signal());
+        try (PeakIndexReader reader = new PeakIndexReader(file)) {
+            // 共300000帧，最粗一级65536帧一个峰值，最后一个不满
+            assertEquals(65536, reader.getFramesPerPeak(2));
+            short[] mins = new short[4];
+            short[] maxs = new short[4];
+            assertEquals(4, reader.read(0, FRAMES, 4, 0, mins, maxs));
+            assertEquals(4, reader.readMillis(0, FRAMES * 1000L / SAMPLE_RATE, 4, 0, mins, maxs));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.hubby.audiorecord;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 播放时钟的外推、截断、暂停以及并发读取时的一致性
+ */
+public class PlaybackClockTest {
+    private static final int RATE = 48000;
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void extrapolatesUpToWrittenFrames() {
+        PlaybackClock clock = new PlaybackClock(RATE);
+        long t0 = 1_000_000_000L;
+        clock.publish(4800, t0, 9600, true);
+        assertEquals(4800, clock.getPositionFrames(t0));
+        assertEquals(4800 + 480, clock.getPositionFrames(t0 + 10 * MS));
+        // 已写入的数据播放完后停在末尾
+        assertEquals(9600, clock.getPositionFrames(t0 + 1000 * MS));
+        assertEquals(100_000, clock.framesToMicros(4800));
+    }
+
+    @Test
+    public void freezeAndResume() {
+        PlaybackClock clock = new PlaybackClock(RATE);
+        clock.publish(0, System.nanoTime(), Long.MAX_VALUE / 2, true);
+        clock.freeze();
+        assertFalse(clock.isRunning());
+        long frozen = clock.getPositionFrames();
+        assertEquals(frozen, clock.getPositionFrames(System.nanoTime() + 1000 * MS));
+        clock.resume();
+        assertTrue(clock.isRunning());
+        assertTrue(clock.getPositionFrames(System.nanoTime() + 10 * MS) >= frozen + 480);
+    }
+
+    @Test
+    public void readersSeeConsistentSnapshots() throws InterruptedException {
+        final PlaybackClock clock = new PlaybackClock(RATE);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicBoolean torn = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                // 每次发布的帧位置与时间都是同一个值，读到混合的快照时外推结果会偏离
+                long frames = clock.getPositionFrames(Long.MAX_VALUE / 4);
+                if (frames != 0 && frames % 1000 != 0) {
+                    torn.set(true);
+                }
+            }
+        });
+        reader.start();
+        for (long i = 1; i < 200_000; i++) {
+            clock.publish(i * 1000, Long.MAX_VALUE / 4, i * 1000, i % 2 == 0);
+        }
+        done.set(true);
+        reader.join();
+        assertFalse(torn.get());
+    }
+}
@@ -0,0 +1,57 @@
+package com.hubby.audiorecord;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * pre-roll缓冲区只保留最近的数据，取出时按时间顺序且不丢字节
+ */
+public class PreRollBufferTest {
+
+    @Test
+    public void keepsNewestBytesInOrder() {
+        PreRollBuffer preRoll = new PreRollBuffer(10, 2);
+        assertEquals(10, preRoll.capacity());
+        byte next = 0;
+        for (int block = 0; block < 7; block++) {
+            ByteBuffer data = ByteBuffer.allocate(4);
+            for (int i = 0; i < 4; i++) {
+                data.put(next++);
+            }
+            data.flip();
+            preRoll.write(data);
+            assertEquals(0, data.position());
+        }
+        assertEquals(10, preRoll.size());
+        assertEquals(18, preRoll.getDroppedBytes());
+
+        ByteBuffer[] out = new ByteBuffer[3];
+        int count = preRoll.drain(out, 1);
+        assertEquals(2, count);
+        byte expected = 18;
+        for (int i = 1; i <= count; i++) {
+            while (out[i].hasRemaining()) {
+                assertEquals(expected++, out[i].get());
+            }
+        }
+        assertEquals(28, expected);
+        assertEquals(0, preRoll.size());
+    }
+
+    @Test
+    public void oversizedBlockKeepsTail() {
+        PreRollBuffer preRoll = new PreRollBuffer(5, 2);
+        assertEquals(4, preRoll.capacity());
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        preRoll.write(data);
+        assertEquals(0, data.position());
+        ByteBuffer[] out = new ByteBuffer[2];
+        assertEquals(1, preRoll.drain(out, 0));
+        assertEquals(4, out[0].remaining());
+        assertEquals(5, out[0].get());
+        assertEquals(4, preRoll.getDroppedBytes());
+    }
+}
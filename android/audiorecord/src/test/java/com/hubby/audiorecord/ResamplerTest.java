@@ -0,0 +1,120 @@
+package com.hubby.audiorecord;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 重采样和声道转换的精度测试
+ */
+public class ResamplerTest {
+
+    private static ByteBuffer sine(int rate, int channels, double frequency, double amplitude, int frames) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(frames * channels * 2).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < frames; i++) {
+            short s = (short) Math.round(amplitude * Math.sin(2 * Math.PI * frequency * i / rate));
+            for (int c = 0; c < channels; c++) {
+                buffer.putShort(s);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 按不规则的块大小转换，模拟AudioRecord每次读取的长度不固定
+     */
+    private static short[] convert(PcmConverter converter, ByteBuffer input, int inChannels) {
+        // 数据为本机字节序，缓冲区本身保持默认的大端order，转换时不应依赖或修改它
+        input = input.duplicate();
+        ByteBuffer output = ByteBuffer.allocateDirect(converter.getMaxOutputBytes(input.remaining()) * 2);
+        int[] blockFrames = {441, 1000, 17, 2048, 333};
+        int limit = input.limit();
+        for (int i = 0; input.hasRemaining(); i++) {
+            input.limit(Math.min(limit, input.position() + blockFrames[i % blockFrames.length] * inChannels * 2));
+            converter.convert(input, output);
+            input.limit(limit);
+        }
+        converter.drain(output);
+        assertEquals(ByteOrder.BIG_ENDIAN, input.order());
+        assertEquals(ByteOrder.BIG_ENDIAN, output.order());
+        output.flip();
+        short[] samples = new short[output.remaining() / 2];
+        output.order(ByteOrder.nativeOrder()).asShortBuffer().get(samples);
+        return samples;
+    }
+
+    private static double snr(short[] samples, int channels, int channel, int rate, double frequency,
+                              double amplitude, int from, int to) {
+        double signal = 0;
+        double noise = 0;
+        for (int i = from; i < to; i++) {
+            double expected = amplitude * Math.sin(2 * Math.PI * frequency * i / rate);
+            double error = samples[i * channels + channel] - expected;
+            signal += expected * expected;
+            noise += error * error;
+        }
+        return 10 * Math.log10(signal / Math.max(noise, 1e-9));
+    }
+
+    private static double rms(short[] samples, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += (double) samples[i] * samples[i];
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+
+    @Test
+    public void downsampleAndDownmix() {
+        int frames = 44100;
+        PcmConverter converter = new PcmConverter(44100, 2, 16000, 1, Resampler.Quality.MEDIUM, 1024);
+        short[] out = convert(converter, sine(44100, 2, 1000, 10000, frames), 2);
+        assertEquals(16000, out.length, 2);
+        double snr = snr(out, 1, 0, 16000, 1000, 10000, 200, out.length - 200);
+        System.out.println("44100/2 -> 16000/1 snr = " + snr + "dB");
+        assertTrue(snr > 40);
+    }
+
+    @Test
+    public void downsampleRejectsAliases() {
+        // 10kHz高于16kHz的奈奎斯特频率，应被低通滤波器滤除
+        PcmConverter converter = new PcmConverter(44100, 1, 16000, 1, Resampler.Quality.HIGH, 4096);
+        short[] out = convert(converter, sine(44100, 1, 10000, 10000, 44100), 1);
+        double level = 20 * Math.log10(rms(out, 200, out.length - 200) / (10000 / Math.sqrt(2)));
+        System.out.println("alias level = " + level + "dB");
+        assertTrue(level < -50);
+    }
+
+    @Test
+    public void upsampleAndUpmix() {
+        PcmConverter converter = new PcmConverter(16000, 1, 44100, 2, Resampler.Quality.MEDIUM, 320);
+        short[] out = convert(converter, sine(16000, 1, 440, 12000, 16000), 1);
+        int outFrames = out.length / 2;
+        assertEquals(44100, outFrames, 2);
+        for (int i = 0; i < outFrames; i++) {
+            assertEquals(out[i * 2], out[i * 2 + 1]);
+        }
+        double snr = snr(out, 2, 1, 44100, 440, 12000, 500, outFrames - 500);
+        System.out.println("16000/1 -> 44100/2 snr = " + snr + "dB");
+        assertTrue(snr > 40);
+    }
+
+    @Test
+    public void passThroughKeepsSamples() {
+        PcmConverter converter = new PcmConverter(48000, 2, 48000, 2, Resampler.Quality.FAST, 512);
+        assertTrue(converter.isPassThrough());
+        ByteBuffer input = sine(48000, 2, 1000, 3000, 4800);
+        short[] expected = new short[input.remaining() / 2];
+        input.duplicate().order(ByteOrder.nativeOrder()).asShortBuffer().get(expected);
+        short[] out = convert(converter, input, 2);
+        assertEquals(expected.length, out.length);
+        for (int i = 0; i < out.length; i++) {
+            assertEquals(expected[i], out[i]);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.hubby.audiorecord;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 各采样格式与float的往返转换、截断以及文件头中的格式信息
+ */
+public class SampleFormatTest {
+    private static final float[] SIGNAL = {0f, 0.5f, -0.5f, 0.25f, -1f, 0.999f, -0.001f, 0.75f};
+
+    @Test
+    public void roundTrip() {
+        for (SampleFormat format : SampleFormat.values()) {
+            ByteBuffer buffer = ByteBuffer.allocate(SIGNAL.length * format.getBytesPerSample() + 3)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            float[] decoded = new float[SIGNAL.length];
+            // 从非对齐的偏移开始，验证按字节偏移寻址
+            format.fromFloat(SIGNAL, 0, buffer, 3, SIGNAL.length);
+            format.toFloat(buffer, 3, decoded, 0, SIGNAL.length);
+            // 32bit整数的精度超过float本身，按float的精度比较
+            float tolerance = format == SampleFormat.PCM_FLOAT ? 0f
+                    : Math.max(1e-6f, 1f / (1L << (format.getBitsPerSample() - 1)));
+            for (int i = 0; i < SIGNAL.length; i++) {
+                assertEquals(format + " #" + i, SIGNAL[i], decoded[i], tolerance);
+            }
+            assertEquals(0, buffer.position());
+        }
+    }
+
+    @Test
+    public void integerFormatsClip() {
+        float[] loud = {1.5f, -1.5f};
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        SampleFormat.PCM_16BIT.fromFloat(loud, 0, buffer, 0, 2);
+        assertEquals(Short.MAX_VALUE, buffer.getShort(0));
+        assertEquals(Short.MIN_VALUE, buffer.getShort(2));
+        SampleFormat.PCM_24BIT_PACKED.fromFloat(loud, 0, buffer, 0, 2);
+        assertEquals((byte) 0x7f, buffer.get(2));
+        assertEquals((byte) 0x80, buffer.get(5));
+        SampleFormat.PCM_32BIT.fromFloat(loud, 0, buffer, 0, 2);
+        assertEquals(Integer.MAX_VALUE, buffer.getInt(0));
+        assertEquals(Integer.MIN_VALUE, buffer.getInt(4));
+        SampleFormat.PCM_8BIT.fromFloat(loud, 0, buffer, 0, 2);
+        assertEquals((byte) 255, buffer.get(0));
+        assertEquals(0, buffer.get(1));
+    }
+
+    @Test
+    public void lookup() {
+        assertSame(SampleFormat.PCM_16BIT, SampleFormat.fromEncoding(1));
+        assertSame(SampleFormat.PCM_FLOAT, SampleFormat.fromEncoding(4));
+        assertSame(SampleFormat.PCM_24BIT_PACKED, SampleFormat.fromWav(WavHeader.FORMAT_PCM, 24));
+        assertSame(SampleFormat.PCM_FLOAT, SampleFormat.fromWav(WavHeader.FORMAT_IEEE_FLOAT, 32));
+        assertNull(SampleFormat.fromWav(WavHeader.FORMAT_IEEE_FLOAT, 64));
+    }
+
+    @Test
+    public void headerCarriesFormat() throws Exception {
+        for (SampleFormat format : SampleFormat.values()) {
+            byte[][] headers = {
+                    WavUtil.generateWavFileHeader(6000, 48000, 2, format),
+                    WavUtil.generateRf64FileHeader(6000, 48000, 2, format)
+            };
+            for (byte[] bytes : headers) {
+                WavHeader header = WavUtil.readHeader(Channels.newChannel(new ByteArrayInputStream(bytes)));
+                assertSame(format, SampleFormat.fromWav(header));
+                assertEquals(format.getFrameSize(2), header.getBlockAlign());
+                assertEquals(48000 * format.getFrameSize(2), header.getByteRate());
+                assertEquals(6000 / format.getFrameSize(2), header.getFrameCount());
+            }
+        }
+    }
+}
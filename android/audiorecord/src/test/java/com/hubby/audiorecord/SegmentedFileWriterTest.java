@@ -0,0 +1,189 @@
+package com.hubby.audiorecord;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 分段写入按字节精确切分、编号接着已有的段、按保留数量删除最早的段，关闭时处理预分配的空间和预先创建的段
+ */
+public class SegmentedFileWriterTest {
+    private static final int RATE = 16000;
+    private static final int FRAME_SIZE = SyntheticInputDevice.FRAME_SIZE;
+    private static final int SEGMENT_BYTES = 4000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 与AudioRecorder相同：wav文件并按段大小预分配空间
+    private static final SegmentedFileWriter.SegmentOpener OPENER = (file, segmentBytes) -> {
+        WavFileWriter writer = new WavFileWriter(file, RATE, SyntheticInputDevice.CHANNELS);
+        writer.preallocate(segmentBytes);
+        return writer;
+    };
+
+    private static SegmentedFileWriter open(File dir, int maxSegments, List<File> finished) throws IOException {
+        return new SegmentedFileWriter(dir, "rec", ".wav", SegmentPolicy.bySize(SEGMENT_BYTES, maxSegments),
+                RATE, FRAME_SIZE, OPENER, segment -> {
+            synchronized (finished) {
+                finished.add(segment);
+            }
+        });
+    }
+
+    /**
+     * 按帧计数写入frames帧，每次合并写入1~3个随机大小的数据块，数据块会跨越段的边界
+     */
+    private static void writeFrames(PcmSink sink, long frames, long seed) throws IOException {
+        Random random = new Random(seed);
+        ByteBuffer[] blocks = new ByteBuffer[3];
+        long frame = 0;
+        while (frame < frames) {
+            int count = 1 + random.nextInt(blocks.length);
+            int used = 0;
+            for (int b = 0; b < count && frame < frames; b++) {
+                int n = (int) Math.min(frames - frame, 1 + random.nextInt(1500));
+                ByteBuffer block = ByteBuffer.allocate(n * FRAME_SIZE);
+                for (int i = 0; i < n; i++) {
+                    SyntheticInputDevice.putFrame(block, i * FRAME_SIZE, frame + i);
+                }
+                frame += n;
+                blocks[used++] = block;
+            }
+            sink.write(blocks, 0, used);
+        }
+    }
+
+    private static File[] segments(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("rec_") && name.endsWith(".wav"));
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static ByteBuffer data(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            WavHeader header = WavUtil.readHeader(raf.getChannel());
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            assertEquals(file.getName(), header.getDataOffset() + header.getDataSize(), bytes.length);
+            return ByteBuffer.wrap(bytes, (int) header.getDataOffset(), (int) header.getDataSize()).slice();
+        }
+    }
+
+    @Test
+    public void splitsAtSegmentBoundaries() throws Exception {
+        File dir = folder.newFolder();
+        List<File> finished = new ArrayList<>();
+        // 9个整段加半段，最后一段和预先创建的第11段需要在关闭时处理
+        long frames = (9 * SEGMENT_BYTES + SEGMENT_BYTES / 2) / FRAME_SIZE;
+        try (SegmentedFileWriter writer = open(dir, SegmentPolicy.UNLIMITED, finished)) {
+            writeFrames(writer, frames, 1);
+        }
+        File[] files = segments(dir);
+        assertEquals(10, files.length);
+        assertEquals(Arrays.asList(files), finished);
+        long expected = 0;
+        for (int i = 0; i < files.length; i++) {
+            assertEquals(String.format("rec_%06d.wav", i + 1), files[i].getName());
+            ByteBuffer data = data(files[i]);
+            assertEquals(i < 9 ? SEGMENT_BYTES : SEGMENT_BYTES / 2, data.remaining());
+            for (int p = 0; p < data.remaining(); p += FRAME_SIZE) {
+                assertEquals(files[i].getName(), expected++, SyntheticInputDevice.getFrame(data, p));
+            }
+        }
+        assertEquals(frames, expected);
+        // 最后一段截掉了预分配的空间
+        assertEquals(WavUtil.RF64_HEADER_SIZE + SEGMENT_BYTES / 2, files[9].length());
+    }
+
+    @Test
+    public void continuesNumberingAfterExistingSegments() throws Exception {
+        File dir = folder.newFolder();
+        byte[] old = {1, 2, 3};
+        Files.write(new File(dir, "rec_000007.wav").toPath(), old);
+        Files.write(new File(dir, "rec_notes.wav").toPath(), old);
+        Files.write(new File(dir, "other_000009.wav").toPath(), old);
+        List<File> finished = new ArrayList<>();
+        try (SegmentedFileWriter writer = open(dir, SegmentPolicy.UNLIMITED, finished)) {
+            assertEquals("rec_000008.wav", writer.getCurrentFile().getName());
+            writeFrames(writer, SEGMENT_BYTES / FRAME_SIZE + 1, 2);
+            assertEquals("rec_000009.wav", writer.getCurrentFile().getName());
+        }
+        assertArrayEquals(old, Files.readAllBytes(new File(dir, "rec_000007.wav").toPath()));
+        List<String> names = new ArrayList<>();
+        for (File file : segments(dir)) {
+            names.add(file.getName());
+        }
+        assertEquals(Arrays.asList("rec_000007.wav", "rec_000008.wav", "rec_000009.wav", "rec_notes.wav"), names);
+        assertEquals(4, data(new File(dir, "rec_000009.wav")).remaining());
+    }
+
+    @Test
+    public void retentionDeletesOldestSegments() throws Exception {
+        File dir = folder.newFolder();
+        // 已有的段计入保留数量
+        Files.write(new File(dir, "rec_000001.wav").toPath(), new byte[]{1});
+        Files.write(new File(dir, "rec_000002.wav").toPath(), new byte[]{1});
+        List<File> finished = new ArrayList<>();
+        long frames = 6L * SEGMENT_BYTES / FRAME_SIZE + 10;
+        try (SegmentedFileWriter writer = open(dir, 3, finished)) {
+            writeFrames(writer, frames, 3);
+        }
+        File[] files = segments(dir);
+        assertEquals(3, files.length);
+        assertEquals("rec_000007.wav", files[0].getName());
+        assertEquals("rec_000009.wav", files[2].getName());
+        assertEquals(7, finished.size());
+        // 保留的段仍然连续
+        long frame = 4L * SEGMENT_BYTES / FRAME_SIZE;
+        for (File file : files) {
+            ByteBuffer data = data(file);
+            for (int p = 0; p < data.remaining(); p += FRAME_SIZE) {
+                assertEquals(file.getName(), frame++, SyntheticInputDevice.getFrame(data, p));
+            }
+        }
+        assertEquals(frames, frame);
+    }
+
+    @Test
+    public void closeRemovesPreparedSegment() throws Exception {
+        File dir = folder.newFolder();
+        List<File> finished = new ArrayList<>();
+        SegmentedFileWriter writer = open(dir, SegmentPolicy.UNLIMITED, finished);
+        // 正好写满一段：切换发生在下一次写入时，此时第2段已预先创建
+        writeFrames(writer, SEGMENT_BYTES / FRAME_SIZE, 4);
+        File prepared = new File(dir, "rec_000002.wav");
+        for (int i = 0; i < 200 && !prepared.exists(); i++) {
+            // 在后台线程创建
+            Thread.sleep(10);
+        }
+        assertTrue(prepared.exists());
+        writer.close();
+        File[] files = segments(dir);
+        assertEquals(1, files.length);
+        assertEquals(Collections.singletonList(files[0]), finished);
+        assertEquals(WavUtil.RF64_HEADER_SIZE + SEGMENT_BYTES, files[0].length());
+        assertEquals(SEGMENT_BYTES, data(files[0]).remaining());
+    }
+
+    @Test
+    public void policySegmentBytesAreFrameAligned() {
+        assertEquals(RATE * 2 * FRAME_SIZE, SegmentPolicy.byDuration(2000, 1).segmentBytes(RATE, FRAME_SIZE));
+        assertEquals(4000, SegmentPolicy.bySize(4003, 1).segmentBytes(RATE, FRAME_SIZE));
+        assertEquals(FRAME_SIZE, SegmentPolicy.bySize(1, 1).segmentBytes(RATE, FRAME_SIZE));
+    }
+}
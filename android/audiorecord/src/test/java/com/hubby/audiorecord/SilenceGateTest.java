@@ -0,0 +1,251 @@
+package com.hubby.audiorecord;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 静音过滤的pre-roll环形缓冲区、保留额度和丢弃统计与按字节模拟的结果一致，以及VAD的hangover和电平计算
+ */
+public class SilenceGateTest {
+    // 1ms为1帧，帧大小2字节，300ms的pre-roll为600字节
+    private static final int RATE = 1000;
+    private static final int FRAME_SIZE = 2;
+
+    private static byte[] block(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * 写出的数据按顺序追加到written中，与文件输出相同会把每块的position推进到limit
+     */
+    private static PcmSink collect(ByteArrayOutputStream written) {
+        return new PcmSink() {
+            @Override
+            public void write(ByteBuffer[] blocks, int offset, int length) {
+                for (int i = offset; i < offset + length; i++) {
+                    byte[] bytes = new byte[blocks[i].remaining()];
+                    blocks[i].get(bytes);
+                    written.write(bytes, 0, bytes.length);
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * 与录音时相同：所有块先积压在环形缓冲区中，再由写文件线程每次取出多块、过滤后合并写入两个输出
+     */
+    private static byte[] run(SilenceGate gate, byte[][] blocks, boolean[] voiced) {
+        int slotSize = 1;
+        for (byte[] block : blocks) {
+            slotSize = Math.max(slotSize, block.length);
+        }
+        PcmRingBuffer ring = new PcmRingBuffer(blocks.length, slotSize);
+        for (int i = 0; i < blocks.length; i++) {
+            assertTrue(ring.offer(ByteBuffer.wrap(blocks[i]), voiced[i] ? SilenceGate.FLAG_VOICED : 0));
+        }
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        AudioWriteRunnable writer = new AudioWriteRunnable(ring, gate, null, collect(first), collect(second));
+        writer.finish();
+        writer.run();
+        assertFalse(writer.isFailed());
+        assertTrue(ring.isEmpty());
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+        return first.toByteArray();
+    }
+
+    /**
+     * 按字节模拟：静音段在额度内整块写入，之后只保留最后preRollBytes字节，语音开始时写出
+     */
+    private static byte[] model(byte[][] blocks, boolean[] voiced, long keepBytes, int preRollBytes) {
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        byte[] pending = new byte[0];
+        long silentRun = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            byte[] block = blocks[i];
+            if (!voiced[i]) {
+                if (silentRun < keepBytes) {
+                    silentRun += block.length;
+                    written.write(block, 0, block.length);
+                } else {
+                    byte[] joined = Arrays.copyOf(pending, pending.length + block.length);
+                    System.arraycopy(block, 0, joined, pending.length, block.length);
+                    pending = Arrays.copyOfRange(joined, Math.max(0, joined.length - preRollBytes), joined.length);
+                }
+            } else {
+                silentRun = 0;
+                written.write(pending, 0, pending.length);
+                pending = new byte[0];
+                written.write(block, 0, block.length);
+            }
+        }
+        return written.toByteArray();
+    }
+
+    private static void check(SilencePolicy policy, long seed) {
+        Random random = new Random(seed);
+        int count = 400;
+        byte[][] blocks = new byte[count][];
+        boolean[] voiced = new boolean[count];
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            // 块大小不整除pre-roll容量，偶尔超过容量
+            blocks[i] = block(random, FRAME_SIZE * (1 + random.nextInt(random.nextInt(8) == 0 ? 500 : 180)));
+            voiced[i] = random.nextInt(3) == 0;
+            total += blocks[i].length;
+        }
+        SilenceGate gate = new SilenceGate(policy, RATE, FRAME_SIZE);
+        byte[] actual = run(gate, blocks, voiced);
+        byte[] expected = model(blocks, voiced, policy.getKeepSilenceMillis() * RATE / 1000 * FRAME_SIZE,
+                (int) (policy.getPreRollMillis() * RATE / 1000 * FRAME_SIZE));
+        assertArrayEquals(expected, actual);
+        assertEquals(total - actual.length, gate.getSkippedBytes());
+    }
+
+    @Test
+    public void matchesByteModel() {
+        for (long seed = 1; seed <= 20; seed++) {
+            check(SilencePolicy.skip(300, 0), seed);
+            check(SilencePolicy.compress(200, 300, 0), seed);
+        }
+    }
+
+    @Test
+    public void preRollWrapsAround() {
+        Random random = new Random(9);
+        // 7个250字节的静音块在600字节的环形缓冲区中绕回两次，之后一个超过容量的静音块只保留最后600字节
+        byte[][] blocks = new byte[10][];
+        boolean[] voiced = new boolean[10];
+        for (int i = 0; i < 7; i++) {
+            blocks[i] = block(random, 250);
+        }
+        blocks[7] = block(random, 100);
+        voiced[7] = true;
+        blocks[8] = block(random, 1000);
+        blocks[9] = block(random, 100);
+        voiced[9] = true;
+        SilenceGate gate = new SilenceGate(SilencePolicy.skip(300, 0), RATE, FRAME_SIZE);
+        byte[] written = run(gate, blocks, voiced);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(blocks[4], 150, 100);
+        expected.write(blocks[5], 0, 250);
+        expected.write(blocks[6], 0, 250);
+        expected.write(blocks[7], 0, 100);
+        expected.write(blocks[8], 400, 600);
+        expected.write(blocks[9], 0, 100);
+        assertArrayEquals(expected.toByteArray(), written);
+        assertEquals(7 * 250 - 600 + 1000 - 600, gate.getSkippedBytes());
+    }
+
+    @Test
+    public void compressKeepsStartOfEachSilence() {
+        Random random = new Random(4);
+        byte[][] blocks = new byte[8][];
+        boolean[] voiced = {true, false, false, false, false, true, false, false};
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = block(random, 100);
+        }
+        // 每段静音写入200字节(100ms)，pre-roll为100字节(50ms)
+        SilenceGate compress = new SilenceGate(SilencePolicy.compress(100, 50, 0), RATE, FRAME_SIZE);
+        byte[] written = run(compress, blocks, voiced);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i : new int[]{0, 1, 2, 4, 5, 6, 7}) {
+            expected.write(blocks[i], 0, 100);
+        }
+        assertArrayEquals(expected.toByteArray(), written);
+        assertEquals(100, compress.getSkippedBytes());
+
+        SilenceGate skip = new SilenceGate(SilencePolicy.skip(50, 0), RATE, FRAME_SIZE);
+        written = run(skip, blocks, voiced);
+        expected.reset();
+        for (int i : new int[]{0, 4, 5}) {
+            expected.write(blocks[i], 0, 100);
+        }
+        assertArrayEquals(expected.toByteArray(), written);
+        // 录音结束时pre-roll中的最后100字节也计入丢弃
+        assertEquals(500, skip.getSkippedBytes());
+    }
+
+    /**
+     * 第i块的每个字节都为i，pattern中V为有声块、S为静音块
+     */
+    private static void checkPattern(String pattern) {
+        byte[][] blocks = new byte[pattern.length()][];
+        boolean[] voiced = new boolean[blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = new byte[100];
+            Arrays.fill(blocks[i], (byte) i);
+            voiced[i] = pattern.charAt(i) == 'V';
+        }
+        // 不保留静音，pre-roll为100字节，正好一块
+        SilenceGate gate = new SilenceGate(SilencePolicy.skip(50, 0), RATE, FRAME_SIZE);
+        byte[] written = run(gate, blocks, voiced);
+        assertArrayEquals(pattern, model(blocks, voiced, 0, 100), written);
+    }
+
+    @Test
+    public void heldSilenceAndSpeechInOneBatch() {
+        // 写线程一次取出的多块中交替出现存入和取出pre-roll，取出的pre-roll须在下一块存入前写出
+        checkPattern("SVSVSVSVSVSVSVSVSV");
+        checkPattern("SSVVVSSVVVSSVVVSSVVV");
+        checkPattern("VSSSVSVVSSSSSSSSSSSSVSV");
+    }
+
+    @Test
+    public void vadHoldsForHangover() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(RATE, 100);
+        for (int i = 0; i < 10; i++) {
+            assertFalse(vad.update(-60f, 20));
+        }
+        assertEquals(-60f, vad.getNoiseFloorDb(), 0.5f);
+        assertTrue(vad.update(-20f, 20));
+        // 100ms的hangover为5个20ms的块
+        for (int i = 0; i < 5; i++) {
+            assertTrue("block " + i, vad.update(-60f, 20));
+        }
+        assertFalse(vad.update(-60f, 20));
+        // 高于噪声但低于最低门限时不判为有声
+        assertFalse(vad.update(-55f, 20));
+        vad.reset();
+        assertFalse(vad.isVoiced());
+        assertEquals(LevelMeter.MIN_DB, vad.getNoiseFloorDb(), 0);
+    }
+
+    @Test
+    public void levelMeterMatchesSine() {
+        int count = 4800;
+        float[] samples = new float[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = 0.5f * (float) Math.sin(2 * Math.PI * 1000 * i / 48000);
+        }
+        LevelMeter meter = new LevelMeter();
+        for (SampleFormat format : new SampleFormat[]{SampleFormat.PCM_16BIT, SampleFormat.PCM_FLOAT}) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(count * format.getBytesPerSample())
+                    .order(ByteOrder.nativeOrder());
+            format.fromFloat(samples, 0, buffer, 0, count);
+            meter.measure(buffer, buffer.capacity(), format);
+            assertEquals(format.name(), -6.02f, meter.getPeakDb(), 0.05f);
+            assertEquals(format.name(), -9.03f, meter.getRmsDb(), 0.05f);
+        }
+        meter.measure(ByteBuffer.allocateDirect(960), 960);
+        assertEquals(LevelMeter.MIN_DB, meter.getPeakDb(), 0);
+        assertEquals(LevelMeter.MIN_DB, meter.getRmsDb(), 0);
+    }
+}
@@ -0,0 +1,195 @@
+package com.hubby.audiorecord;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FFT与直接计算的DFT一致，频谱和特征符合合成信号，分块方式不影响结果，并输出分析速度
+ */
+public class SpectrumAnalyzerTest {
+    private static final int RATE = 48000;
+    private static final int CHANNELS = 2;
+    private static final SampleFormat FORMAT = SampleFormat.PCM_16BIT;
+
+    private static float[] sine(int frames, float amplitude, float frequency) {
+        float[] samples = new float[frames * CHANNELS];
+        for (int i = 0; i < frames; i++) {
+            float s = amplitude * (float) Math.sin(2 * Math.PI * frequency * i / RATE);
+            for (int c = 0; c < CHANNELS; c++) {
+                samples[i * CHANNELS + c] = s;
+            }
+        }
+        return samples;
+    }
+
+    private static float[] noise(int frames, float amplitude) {
+        Random random = new Random(7);
+        float[] samples = new float[frames * CHANNELS];
+        for (int i = 0; i < frames; i++) {
+            float s = amplitude * (float) random.nextGaussian();
+            for (int c = 0; c < CHANNELS; c++) {
+                samples[i * CHANNELS + c] = s;
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * 保存每一帧的位置和幅度
+     */
+    private static final class Collector implements SpectrumAnalyzer.OnSpectrumListener {
+        final List<Long> positions = new ArrayList<>();
+        final List<float[]> magnitudes = new ArrayList<>();
+        SpectrumFrame last;
+
+        @Override
+        public void onSpectrum(SpectrumFrame frame) {
+            positions.add(frame.getPositionFrames());
+            magnitudes.add(frame.getMagnitudesDb().clone());
+            last = frame;
+        }
+    }
+
+    @Test
+    public void fftMatchesDft() {
+        Random random = new Random(3);
+        for (int size : new int[]{4, 64, 1024}) {
+            float[] input = new float[size];
+            for (int i = 0; i < size; i++) {
+                input[i] = (float) random.nextGaussian();
+            }
+            RealFft fft = new RealFft(size);
+            float[] re = new float[fft.getBinCount()];
+            float[] im = new float[fft.getBinCount()];
+            fft.forward(input, re, im);
+            for (int k = 0; k <= size / 2; k++) {
+                double sumRe = 0;
+                double sumIm = 0;
+                for (int n = 0; n < size; n++) {
+                    double angle = -2 * Math.PI * k * n / size;
+                    sumRe += input[n] * Math.cos(angle);
+                    sumIm += input[n] * Math.sin(angle);
+                }
+                assertEquals("size " + size + " bin " + k, sumRe, re[k], 1e-3 * Math.sqrt(size));
+                assertEquals("size " + size + " bin " + k, sumIm, im[k], 1e-3 * Math.sqrt(size));
+            }
+        }
+    }
+
+    @Test
+    public void sineAndNoiseFeatures() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(RATE, CHANNELS);
+        Collector collector = new Collector();
+        analyzer.setOnSpectrumListener(collector);
+        // 1500Hz正好落在第64个频点上
+        analyzer.write(sine(RATE / 4, 0.5f, 1500), 0, RATE / 4);
+        SpectrumFrame frame = collector.last;
+        assertEquals(1500f, frame.getPeakHz(), 0.1f);
+        assertEquals(-6.02f, frame.getMagnitudesDb()[64], 0.1f);
+        assertEquals(1500f, frame.getCentroidHz(), 30f);
+        assertEquals(-9.03f, frame.getRmsDb(), 0.1f);
+        assertTrue(frame.getFlatness() < 0.01f);
+        float[] latest = new float[analyzer.getBinCount()];
+        assertEquals(frame.getPositionFrames(), analyzer.readLatest(latest));
+        assertArrayEquals(frame.getMagnitudesDb(), latest, 0);
+
+        analyzer.write(noise(RATE / 4, 0.1f), 0, RATE / 4);
+        assertTrue("flatness = " + collector.last.getFlatness(), collector.last.getFlatness() > 0.4f);
+        assertEquals(RATE / 4f, collector.last.getCentroidHz(), RATE / 20f);
+    }
+
+    @Test
+    public void blockSizeDoesNotChangeFrames() throws IOException {
+        int frames = RATE;
+        float[] samples = sine(frames, 0.3f, 440);
+        ByteBuffer data = ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder());
+        FORMAT.fromFloat(samples, 0, data, 0, samples.length);
+        int hop = RATE / 60;
+        SpectrumAnalyzer whole = new SpectrumAnalyzer(RATE, CHANNELS, 2048, hop);
+        Collector expected = new Collector();
+        whole.setOnSpectrumListener(expected);
+        whole.write(data, FORMAT);
+        assertEquals(1 + (frames - 2048) / hop, expected.positions.size());
+        for (int i = 0; i < expected.positions.size(); i++) {
+            assertEquals(i * (long) hop, (long) expected.positions.get(i));
+        }
+
+        SpectrumAnalyzer blocks = new SpectrumAnalyzer(RATE, CHANNELS, 2048, hop);
+        Collector actual = new Collector();
+        blocks.setOnSpectrumListener(actual);
+        Random random = new Random(5);
+        int frameSize = FORMAT.getFrameSize(CHANNELS);
+        for (int start = 0; start < frames; ) {
+            int end = Math.min(frames, start + 1 + random.nextInt(700));
+            data.limit(end * frameSize).position(start * frameSize);
+            blocks.write(data, FORMAT);
+            start = end;
+        }
+        assertEquals(expected.positions, actual.positions);
+        for (int i = 0; i < expected.magnitudes.size(); i++) {
+            assertArrayEquals(expected.magnitudes.get(i), actual.magnitudes.get(i), 0);
+        }
+
+        // 离线分析整个数据源
+        SpectrumAnalyzer offline = new SpectrumAnalyzer(RATE, CHANNELS, 2048, hop);
+        Collector file = new Collector();
+        offline.setOnSpectrumListener(file);
+        data.clear();
+        assertEquals(expected.positions.size(), offline.analyze(new ByteBufferPcmSource(data), FORMAT));
+        assertArrayEquals(expected.magnitudes.get(10), file.magnitudes.get(10), 0);
+    }
+
+    @Test
+    public void playbackSourceFollowsSeek() throws IOException {
+        int frames = RATE;
+        float[] samples = sine(frames, 0.3f, 440);
+        ByteBuffer data = ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder());
+        FORMAT.fromFloat(samples, 0, data, 0, samples.length);
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(RATE, CHANNELS, 1024, 512);
+        Collector collector = new Collector();
+        analyzer.setOnSpectrumListener(collector);
+        SpectrumPcmSource source = new SpectrumPcmSource(new ByteBufferPcmSource(data), analyzer, FORMAT, CHANNELS);
+        source.read(4096 * 4);
+        assertEquals(Long.valueOf(0), collector.positions.get(0));
+        source.seek(24000 * 4);
+        collector.positions.clear();
+        while (source.read(3000) != null) {
+            // 模拟播放线程读取
+        }
+        assertEquals(Long.valueOf(24000), collector.positions.get(0));
+        assertEquals(1 + (24000 - 1024) / 512, collector.positions.size());
+    }
+
+    @Test
+    public void analysisIsFastAndAllocationFree() {
+        int seconds = 20;
+        float[] samples = noise(RATE, 0.2f);
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(RATE, CHANNELS, 2048, 512);
+        final float[] centroid = new float[1];
+        analyzer.setOnSpectrumListener(frame -> centroid[0] += frame.getCentroidHz());
+        analyzer.write(samples, 0, RATE);
+        AllocationMeter allocation = new AllocationMeter();
+        long start = System.nanoTime();
+        allocation.begin();
+        for (int i = 0; i < seconds; i++) {
+            analyzer.write(samples, 0, RATE);
+        }
+        allocation.end();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long analyzed = (long) seconds * RATE / 512;
+        System.out.printf("spectrum: fft 2048 hop 512, %.0f frames/s, %.0fx realtime, alloc %d bytes%n",
+                analyzed / elapsed, seconds / elapsed, allocation.getAllocatedBytes());
+        assertTrue(analyzed / elapsed > 600);
+        assertTrue(allocation.getAllocatedBytes() < analyzed);
+    }
+}
@@ -0,0 +1,129 @@
+package com.hubby.audiorecord;
+
+import android.media.AudioRecord;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 合成的16bit双声道采集设备：第n帧左声道为n的低16位，右声道为高16位(小端)，接收端据此检查数据是否连续。
+ * 按采样率乘以speed的速度产生数据，每块的到达时间加上随机的抖动
+ */
+final class SyntheticInputDevice implements AudioInputDevice {
+    static final int CHANNELS = 2;
+    static final int FRAME_SIZE = 4;
+
+    private final int sampleRate;
+    private final double speed;
+    private final long jitterNanos;
+    // 前warmupReads次读取不计入内存分配统计
+    private final int warmupReads;
+    private final AllocationMeter allocation = new AllocationMeter();
+    private long seed;
+    private long startNanos;
+    private long frames;
+    private int reads;
+    private volatile boolean recording;
+    private volatile boolean released;
+
+    /**
+     * @param speed       产生数据的速度相对实时的倍数
+     * @param jitterNanos 每块到达时间的最大随机延后
+     */
+    SyntheticInputDevice(int sampleRate, double speed, long jitterNanos, int warmupReads, long seed) {
+        this.sampleRate = sampleRate;
+        this.speed = speed;
+        this.jitterNanos = jitterNanos;
+        this.warmupReads = warmupReads;
+        this.seed = seed;
+    }
+
+    @Override
+    public void start() {
+        startNanos = System.nanoTime();
+        frames = 0;
+        reads = 0;
+        recording = true;
+    }
+
+    @Override
+    public int read(ByteBuffer buffer, int sizeInBytes) {
+        if (!recording) {
+            return AudioRecord.ERROR_INVALID_OPERATION;
+        }
+        if (++reads == warmupReads) {
+            allocation.begin();
+        }
+        int n = sizeInBytes / FRAME_SIZE;
+        long deadline = startNanos + (long) ((frames + n) * 1000000000.0 / (sampleRate * speed));
+        if (jitterNanos > 0) {
+            deadline += nextRandom() % jitterNanos;
+        }
+        long wait;
+        while ((wait = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        for (int i = 0; i < n; i++) {
+            putFrame(buffer, i * FRAME_SIZE, frames + i);
+        }
+        frames += n;
+        return n * FRAME_SIZE;
+    }
+
+    /**
+     * 按小端pcm写入帧计数，与缓冲区的字节序无关
+     */
+    static void putFrame(ByteBuffer buffer, int index, long frame) {
+        buffer.put(index, (byte) frame);
+        buffer.put(index + 1, (byte) (frame >>> 8));
+        buffer.put(index + 2, (byte) (frame >>> 16));
+        buffer.put(index + 3, (byte) (frame >>> 24));
+    }
+
+    static long getFrame(ByteBuffer buffer, int index) {
+        return (buffer.get(index) & 0xFFL) | (buffer.get(index + 1) & 0xFFL) << 8
+                | (buffer.get(index + 2) & 0xFFL) << 16 | (buffer.get(index + 3) & 0xFFL) << 24;
+    }
+
+    private long nextRandom() {
+        // xorshift，不分配内存
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return seed & Long.MAX_VALUE;
+    }
+
+    @Override
+    public void stop() {
+        if (recording) {
+            recording = false;
+            allocation.end();
+        }
+    }
+
+    @Override
+    public void release() {
+        released = true;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return CHANNELS;
+    }
+
+    @Override
+    public boolean isReady() {
+        return !released;
+    }
+
+    long getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * 预热之后到停止期间采集线程分配的字节数
+     */
+    long getAllocatedBytes() {
+        return allocation.getAllocatedBytes();
+    }
+}
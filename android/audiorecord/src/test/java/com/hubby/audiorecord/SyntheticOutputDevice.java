@@ -0,0 +1,204 @@
+package com.hubby.audiorecord;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 合成的16bit双声道播放设备：按采样率乘以speed的速度消耗缓冲区中的数据，缓冲区满时阻塞写入；
+ * 设备需要数据时缓冲区已空记为一次欠载。写入的数据按{@link SyntheticInputDevice}的帧计数格式检查连续性
+ */
+final class SyntheticOutputDevice implements AudioOutputDevice {
+    private static final int FRAME_SIZE = SyntheticInputDevice.FRAME_SIZE;
+
+    // 每纳秒消耗的帧数
+    private final double framesPerNano;
+    private final int capacityFrames;
+    private final boolean tunable;
+    private final int warmupWrites;
+    private final AllocationMeter allocation = new AllocationMeter();
+    private int bufferFrames;
+    private boolean playing;
+    private boolean stopped;
+    private volatile boolean released;
+    // 上次flush以来写入的帧数
+    private long written;
+    // 本轮连续输出开始时已输出的帧数及时刻，startNanos为0表示等待数据
+    private long consumedBase;
+    private long startNanos;
+    private int underruns;
+    private int writes;
+    // 连续性检查，expectedFrame为-1时接受任意值
+    private long expectedFrame = -1;
+    private long gapFrames;
+    private long totalFrames;
+
+    /**
+     * @param speed   消耗数据的速度相对实时的倍数
+     * @param tunable 是否支持在播放中调整缓冲区大小，支持时容量为bufferFrames的4倍
+     */
+    SyntheticOutputDevice(int sampleRate, double speed, int bufferFrames, boolean tunable, int warmupWrites) {
+        this.framesPerNano = sampleRate * speed / 1e9;
+        this.bufferFrames = bufferFrames;
+        this.capacityFrames = tunable ? bufferFrames * 4 : 0;
+        this.tunable = tunable;
+        this.warmupWrites = warmupWrites;
+    }
+
+    private long played(long nowNanos) {
+        if (!playing || startNanos == 0) {
+            return consumedBase;
+        }
+        return Math.min(written, consumedBase + elapsedFrames(nowNanos));
+    }
+
+    @Override
+    public synchronized void play() {
+        playing = true;
+        stopped = false;
+        startNanos = 0;
+    }
+
+    @Override
+    public synchronized void pause() {
+        consumedBase = played(System.nanoTime());
+        playing = false;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void flush() {
+        written = 0;
+        consumedBase = 0;
+        startNanos = 0;
+        expectedFrame = -1;
+    }
+
+    @Override
+    public synchronized void stop() {
+        consumedBase = played(System.nanoTime());
+        playing = false;
+        stopped = true;
+        notifyAll();
+        allocation.end();
+    }
+
+    @Override
+    public void release() {
+        released = true;
+    }
+
+    synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    boolean isReleased() {
+        return released;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer data, int sizeInBytes) {
+        if (++writes == warmupWrites) {
+            allocation.begin();
+        }
+        int remaining = sizeInBytes / FRAME_SIZE;
+        int done = 0;
+        while (remaining > 0 && playing && !stopped) {
+            long now = System.nanoTime();
+            if (startNanos == 0) {
+                startNanos = now;
+            } else if (consumedBase + elapsedFrames(now) > written) {
+                // 设备在数据写入之前就已经需要这些数据
+                underruns++;
+                consumedBase = written;
+                startNanos = now;
+            }
+            long free = bufferFrames - (written - played(now));
+            if (free <= 0) {
+                // 等到能写入至少四分之一缓冲区
+                long waitNanos = Math.max(100000, (long) (bufferFrames / 4 / framesPerNano));
+                try {
+                    wait(waitNanos / 1000000, (int) (waitNanos % 1000000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                continue;
+            }
+            int n = (int) Math.min(free, remaining);
+            verify(data, n);
+            written += n;
+            done += n;
+            remaining -= n;
+        }
+        return done * FRAME_SIZE;
+    }
+
+    private long elapsedFrames(long nowNanos) {
+        return (long) ((nowNanos - startNanos) * framesPerNano);
+    }
+
+    private void verify(ByteBuffer data, int frames) {
+        for (int i = 0; i < frames; i++) {
+            long frame = SyntheticInputDevice.getFrame(data, data.position());
+            data.position(data.position() + FRAME_SIZE);
+            if (expectedFrame >= 0 && frame != expectedFrame) {
+                gapFrames += Math.abs(frame - expectedFrame);
+            }
+            expectedFrame = frame + 1;
+        }
+        totalFrames += frames;
+    }
+
+    @Override
+    public synchronized long getPlaybackHeadPosition() {
+        return played(System.nanoTime());
+    }
+
+    @Override
+    public synchronized boolean getTimestamp(long[] timestamp) {
+        if (!playing || startNanos == 0) {
+            return false;
+        }
+        long now = System.nanoTime();
+        timestamp[0] = played(now);
+        timestamp[1] = now;
+        return true;
+    }
+
+    @Override
+    public synchronized int getUnderrunCount() {
+        return underruns;
+    }
+
+    @Override
+    public synchronized int getBufferSizeInFrames() {
+        return bufferFrames;
+    }
+
+    @Override
+    public int getBufferCapacityInFrames() {
+        return capacityFrames;
+    }
+
+    @Override
+    public synchronized int setBufferSizeInFrames(int frames) {
+        if (tunable) {
+            bufferFrames = Math.max(1, Math.min(frames, capacityFrames));
+        }
+        return bufferFrames;
+    }
+
+    synchronized long getGapFrames() {
+        return gapFrames;
+    }
+
+    synchronized long getTotalFrames() {
+        return totalFrames;
+    }
+
+    /**
+     * 预热之后到停止期间播放线程分配的字节数
+     */
+    long getAllocatedBytes() {
+        return allocation.getAllocatedBytes();
+    }
+}
@@ -0,0 +1,201 @@
+package com.hubby.audiorecord;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用录音过程中拷贝出的文件模拟异常退出时磁盘上的状态，修复后数据完整且可以正常解析
+ */
+public class WavRecoveryTest {
+    private static final int RATE = 16000;
+    private static final int CHANNELS = 2;
+    private static final int FRAME_SIZE = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 不含0字节的数据，截断位置只由预分配空间决定
+     */
+    private static byte[] data(int frames) {
+        byte[] data = new byte[frames * FRAME_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251 + 1);
+        }
+        return data;
+    }
+
+    private static void write(PcmSink sink, byte[] data, int from, int to) throws IOException {
+        sink.write(new ByteBuffer[]{ByteBuffer.wrap(data, from, to - from)}, 0, 1);
+    }
+
+    private File crashCopy(File file, String name) throws IOException {
+        File copy = new File(folder.getRoot(), name);
+        Files.copy(file.toPath(), copy.toPath());
+        return copy;
+    }
+
+    private static WavHeader readHeader(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return WavUtil.readHeader(raf.getChannel());
+        }
+    }
+
+    private static byte[] readData(File file) throws IOException {
+        WavHeader header = readHeader(file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        return Arrays.copyOfRange(bytes, (int) header.getDataOffset(), bytes.length);
+    }
+
+    @Test
+    public void recoversDataWrittenAfterCheckpoint() throws Exception {
+        byte[] data = data(RATE);
+        File file = new File(folder.getRoot(), "rec.wav");
+        File crashed;
+        try (WavFileWriter writer = new WavFileWriter(file, RATE, CHANNELS)) {
+            write(writer, data, 0, data.length / 2);
+            writer.checkpoint();
+            assertEquals(data.length / 2, readHeader(file).getDataSize());
+            // checkpoint之后又写入了数据，文件头中的长度还未更新
+            write(writer, data, data.length / 2, data.length);
+            crashed = crashCopy(file, "crashed.wav");
+        }
+        assertEquals(data.length, WavRecovery.recover(crashed));
+        assertArrayEquals(Files.readAllBytes(file.toPath()), Files.readAllBytes(crashed.toPath()));
+        assertEquals(-1, WavRecovery.recover(crashed));
+    }
+
+    @Test
+    public void truncatesPreallocatedSpace() throws Exception {
+        byte[] data = data(RATE);
+        File file = new File(folder.getRoot(), "segment.wav");
+        File crashed;
+        try (WavFileWriter writer = new WavFileWriter(file, RATE, CHANNELS)) {
+            writer.preallocate(64L * 1024 * 1024);
+            write(writer, data, 0, 10000);
+            writer.checkpoint();
+            write(writer, data, 10000, data.length);
+            crashed = crashCopy(file, "crashed.wav");
+        }
+        long start = System.nanoTime();
+        assertEquals(data.length, WavRecovery.recover(crashed));
+        System.out.printf("recover: 64MB preallocated file in %.2fms%n", (System.nanoTime() - start) / 1e6);
+        assertEquals(WavUtil.RF64_HEADER_SIZE + data.length, crashed.length());
+        assertArrayEquals(data, readData(crashed));
+        assertEquals(data.length / FRAME_SIZE, readHeader(crashed).getFrameCount());
+    }
+
+    @Test
+    public void silenceInsideDataIsKept() throws Exception {
+        byte[] data = data(RATE * 4);
+        // checkpoint之后有超过两个扫描块(64KB)的数字静音，之后还有数据
+        Arrays.fill(data, 10000, 10000 + 150000, (byte) 0);
+        File file = new File(folder.getRoot(), "silence.wav");
+        File crashed;
+        try (WavFileWriter writer = new WavFileWriter(file, RATE, CHANNELS)) {
+            writer.preallocate(4L * 1024 * 1024);
+            write(writer, data, 0, 8000);
+            writer.checkpoint();
+            write(writer, data, 8000, data.length);
+            crashed = crashCopy(file, "crashed.wav");
+        }
+        assertEquals(data.length, WavRecovery.recover(crashed));
+        assertEquals(WavUtil.RF64_HEADER_SIZE + data.length, crashed.length());
+        assertArrayEquals(data, readData(crashed));
+    }
+
+    @Test
+    public void trailingZeroSampleIsKept() throws Exception {
+        byte[] data = data(1000);
+        // 最后一个采样为1，小端序下高位字节为0
+        data[data.length - 2] = 1;
+        data[data.length - 1] = 0;
+        File file = new File(folder.getRoot(), "rec.wav");
+        File crashed;
+        try (WavFileWriter writer = new WavFileWriter(file, RATE, CHANNELS)) {
+            writer.preallocate(1024 * 1024);
+            write(writer, data, 0, data.length);
+            crashed = crashCopy(file, "crashed.wav");
+        }
+        assertEquals(data.length, WavRecovery.recover(crashed));
+        assertArrayEquals(data, readData(crashed));
+    }
+
+    @Test
+    public void foreignHeaderIsUntouched() throws Exception {
+        byte[] data = data(1000);
+        File file = folder.newFile("other.wav");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            // 其他程序写入的44字节文件头，长度为0
+            out.write(WavUtil.generateWavFileHeader(0, RATE, CHANNELS));
+            out.write(data);
+            out.write(data, 0, 3);
+        }
+        byte[] before = Files.readAllBytes(file.toPath());
+        assertEquals(-1, WavRecovery.recover(file));
+        assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void trailingChunksAreUntouched() throws Exception {
+        File dir = folder.newFolder("records");
+        byte[] data = data(1000);
+        File file = new File(dir, "tagged.WAV");
+        try (WavFileWriter writer = new WavFileWriter(file, RATE, CHANNELS)) {
+            write(writer, data, 0, data.length);
+        }
+        // 编辑软件追加的LIST/INFO chunk，长度为奇数，后面有一个对齐字节
+        ByteBuffer list = ByteBuffer.allocate(26).order(ByteOrder.LITTLE_ENDIAN);
+        list.put("LIST".getBytes("US-ASCII")).putInt(17).put("INFO".getBytes("US-ASCII"));
+        list.put("ISFT".getBytes("US-ASCII")).putInt(5).put("test".getBytes("US-ASCII")).put((byte) 0);
+        list.put((byte) 0);
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(list.array());
+        }
+        byte[] before = Files.readAllBytes(file.toPath());
+        assertEquals(-1, WavRecovery.recover(file));
+        assertTrue(WavRecovery.recoverDirectory(dir).isEmpty());
+        assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+        assertEquals(data.length, readHeader(file).getDataSize());
+    }
+
+    @Test
+    public void completeFilesAreUntouched() throws Exception {
+        File dir = folder.newFolder("records");
+        byte[] data = data(1000);
+        File complete = new File(dir, "complete.wav");
+        try (WavFileWriter writer = new WavFileWriter(complete, RATE, CHANNELS)) {
+            write(writer, data, 0, data.length);
+        }
+        File crashed;
+        File source = new File(folder.getRoot(), "source.wav");
+        try (WavFileWriter writer = new WavFileWriter(source, RATE, CHANNELS)) {
+            write(writer, data, 0, data.length);
+            crashed = new File(dir, "crashed.wav");
+            Files.copy(source.toPath(), crashed.toPath());
+        }
+        Files.write(new File(dir, "notes.txt").toPath(), data);
+        byte[] before = Files.readAllBytes(complete.toPath());
+        List<File> recovered = WavRecovery.recoverDirectory(dir);
+        assertEquals(1, recovered.size());
+        assertEquals(crashed, recovered.get(0));
+        assertArrayEquals(before, Files.readAllBytes(complete.toPath()));
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(crashed.toPath()));
+        assertTrue(WavRecovery.recoverDirectory(dir).isEmpty());
+    }
+}
@@ -0,0 +1,205 @@
+package com.hubby.audiorecord;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用字节数组拼出的文件头检查RF64/ds64、4GB边界、额外的chunk、WAVE_FORMAT_EXTENSIBLE以及未修正的长度
+ */
+public class WavUtilTest {
+    private static final long FOUR_GB = 0xffffffffL;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 按顺序拼接chunk，奇数长度的chunk自动补对齐字节
+     */
+    private static final class Riff {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Riff(String id, long size) {
+            out.write(id.getBytes(StandardCharsets.US_ASCII), 0, 4);
+            putInt(size);
+            out.write("WAVE".getBytes(StandardCharsets.US_ASCII), 0, 4);
+        }
+
+        Riff chunk(String id, long size, byte[] body) {
+            out.write(id.getBytes(StandardCharsets.US_ASCII), 0, 4);
+            putInt(size);
+            out.write(body, 0, body.length);
+            if ((body.length & 1) != 0) {
+                out.write(0);
+            }
+            return this;
+        }
+
+        Riff data(long size) {
+            out.write("data".getBytes(StandardCharsets.US_ASCII), 0, 4);
+            putInt(size);
+            return this;
+        }
+
+        private void putInt(long value) {
+            byte[] bytes = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt((int) value).array();
+            out.write(bytes, 0, 4);
+        }
+
+        byte[] toBytes() {
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] fmt(int formatTag, int channels, int sampleRate, int bitsPerSample, int size) {
+        int blockAlign = channels * bitsPerSample / 8;
+        ByteBuffer body = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        body.putShort((short) formatTag).putShort((short) channels).putInt(sampleRate)
+                .putInt(sampleRate * blockAlign).putShort((short) blockAlign).putShort((short) bitsPerSample);
+        return body.array();
+    }
+
+    private static WavHeader read(byte[] bytes) throws IOException {
+        return WavUtil.readHeader(Channels.newChannel(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void ds64CarriesSizeOver4GB() throws Exception {
+        long dataSize = 6L * 1024 * 1024 * 1024;
+        ByteBuffer ds64 = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+        ds64.putLong(dataSize + 72).putLong(dataSize).putLong(dataSize / 4).putInt(0);
+        byte[] bytes = new Riff("RF64", FOUR_GB)
+                .chunk("ds64", 28, ds64.array())
+                .chunk("fmt ", 16, fmt(WavHeader.FORMAT_PCM, 2, 48000, 16, 16))
+                .data(FOUR_GB)
+                .toBytes();
+        WavHeader header = read(bytes);
+        assertTrue(header.isRf64());
+        assertEquals(WavUtil.RF64_HEADER_SIZE, header.getDataOffset());
+        assertEquals(dataSize, header.getDataSize());
+        assertEquals(dataSize / 4, header.getFrameCount());
+        assertSame(SampleFormat.PCM_16BIT, SampleFormat.fromWav(header));
+
+        // 生成的文件头与手工拼出的一致
+        assertEquals(ByteBuffer.wrap(bytes), ByteBuffer.wrap(WavUtil.generateRf64FileHeader(dataSize, 48000, 2)));
+    }
+
+    @Test
+    public void junkBecomesDs64At4GB() throws Exception {
+        // RIFF长度字段为文件长度减8，数据最多为0xFFFFFFFF - 72字节
+        long maxRiffData = FOUR_GB - (WavUtil.RF64_HEADER_SIZE - 8);
+        for (long size : new long[]{maxRiffData - 4, maxRiffData, maxRiffData + 1, maxRiffData + 4}) {
+            byte[] bytes = WavUtil.generateRf64FileHeader(size, 48000, 1);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            boolean rf64 = size > maxRiffData;
+            String riff = new String(bytes, 0, 4, StandardCharsets.US_ASCII);
+            String reserved = new String(bytes, 12, 4, StandardCharsets.US_ASCII);
+            assertEquals(rf64 ? "RF64" : "RIFF", riff);
+            assertEquals(rf64 ? "ds64" : "JUNK", reserved);
+            assertEquals(rf64 ? FOUR_GB : size + 72, buffer.getInt(4) & FOUR_GB);
+            assertEquals(rf64 ? FOUR_GB : size, buffer.getInt(76) & FOUR_GB);
+            WavHeader header = read(bytes);
+            assertEquals(rf64, header.isRf64());
+            assertEquals(size, header.getDataSize());
+            assertEquals(WavUtil.RF64_HEADER_SIZE, header.getDataOffset());
+        }
+    }
+
+    @Test
+    public void skipsChunksBeforeData() throws Exception {
+        byte[] audio = {1, 2, 3, 4, 5, 6, 7, 8};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] head = new Riff("RIFF", 0)
+                .chunk("JUNK", 3, new byte[3])
+                .chunk("fmt ", 16, fmt(WavHeader.FORMAT_PCM, 2, 44100, 16, 16))
+                .chunk("LIST", 10, "INFOISFT\0\0".getBytes(StandardCharsets.US_ASCII))
+                .data(audio.length)
+                .toBytes();
+        out.write(head);
+        out.write(audio);
+        // data之后的chunk不属于音频数据
+        out.write("id3 ".getBytes(StandardCharsets.US_ASCII));
+        out.write(new byte[]{4, 0, 0, 0, 9, 9, 9, 9});
+        byte[] bytes = out.toByteArray();
+
+        WavHeader header = read(bytes);
+        assertEquals(head.length, header.getDataOffset());
+        assertEquals(12 + 12 + 24 + 18 + 8, header.getDataOffset());
+        assertEquals(audio.length, header.getDataSize());
+        assertEquals(44100, header.getSampleRate());
+        try (WavReader reader = new WavReader(new ByteArrayInputStream(bytes))) {
+            ByteBuffer dst = ByteBuffer.allocate(64);
+            while (reader.read(dst) >= 0) {
+                // 读到data chunk结尾
+            }
+            dst.flip();
+            assertEquals(ByteBuffer.wrap(audio), dst);
+        }
+    }
+
+    @Test
+    public void extensibleUsesSubFormat() throws Exception {
+        ByteBuffer fmt = ByteBuffer.wrap(fmt(WavHeader.FORMAT_EXTENSIBLE, 2, 48000, 32, 40))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        fmt.position(16);
+        // cbSize, wValidBitsPerSample, dwChannelMask, SubFormat GUID(前两个字节为格式)
+        fmt.putShort((short) 22).putShort((short) 32).putInt(3).putShort((short) WavHeader.FORMAT_IEEE_FLOAT);
+        byte[] bytes = new Riff("RIFF", 0)
+                .chunk("fmt ", 40, fmt.array())
+                .data(800)
+                .toBytes();
+        WavHeader header = read(bytes);
+        assertEquals(WavHeader.FORMAT_IEEE_FLOAT, header.getFormatTag());
+        assertSame(SampleFormat.PCM_FLOAT, SampleFormat.fromWav(header));
+        assertEquals(8, header.getBlockAlign());
+        assertEquals(12 + 48 + 8, header.getDataOffset());
+        assertEquals(100, header.getFrameCount());
+    }
+
+    @Test
+    public void unfinishedSizeResolvesToFileSize() throws Exception {
+        for (long placeholder : new long[]{0, FOUR_GB}) {
+            byte[] head = new Riff("RIFF", placeholder)
+                    .chunk("fmt ", 16, fmt(WavHeader.FORMAT_PCM, 1, 16000, 16, 16))
+                    .data(placeholder)
+                    .toBytes();
+            File file = folder.newFile("unfinished" + placeholder + ".wav");
+            byte[] bytes = new byte[head.length + 1001];
+            System.arraycopy(head, 0, bytes, 0, head.length);
+            Files.write(file.toPath(), bytes);
+
+            // 流式读取时长度未知，数据持续到结尾
+            WavHeader streamed = read(bytes);
+            assertFalse(streamed.isRf64());
+            assertEquals(WavHeader.UNKNOWN_SIZE, streamed.getDataSize());
+            assertEquals(WavHeader.UNKNOWN_SIZE, streamed.getFrameCount());
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                WavHeader header = WavUtil.readHeader(raf.getChannel());
+                assertEquals(1001, header.getDataSize());
+                assertEquals(500, header.getFrameCount());
+            }
+            try (WavReader reader = new WavReader(file)) {
+                assertEquals(1001, reader.getHeader().getDataSize());
+                ByteBuffer dst = ByteBuffer.allocate(4096);
+                assertEquals(1001, reader.read(dst));
+                assertEquals(-1, reader.read(dst));
+            }
+        }
+    }
+}
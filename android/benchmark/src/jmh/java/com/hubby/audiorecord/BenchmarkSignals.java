@@ -0,0 +1,45 @@
+package com.hubby.audiorecord;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * 基准测试用的输入数据
+ */
+final class BenchmarkSignals {
+    static final int SAMPLE_RATE = 44100;
+    static final int CHANNELS = 2;
+    static final int FRAME_SIZE = 2 * CHANNELS;
+    // 与44100Hz双声道时AudioRecord.getMinBufferSize的典型值一致
+    static final int BLOCK_BYTES = 3584;
+    static final int BLOCK_FRAMES = BLOCK_BYTES / FRAME_SIZE;
+
+    private BenchmarkSignals() {
+    }
+
+    /**
+     * 正弦波叠加噪声的交错16bit采样
+     */
+    static short[] samples(int frames, int channels) {
+        Random random = new Random(42);
+        short[] samples = new short[frames * channels];
+        for (int i = 0; i < frames; i++) {
+            double s = 8000 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE) + random.nextGaussian() * 300;
+            for (int c = 0; c < channels; c++) {
+                samples[i * channels + c] = (short) s;
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * 与采集缓冲区相同的本机字节序direct buffer
+     */
+    static ByteBuffer block(int frames, int channels) {
+        short[] samples = samples(frames, channels);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder());
+        buffer.asShortBuffer().put(samples);
+        return buffer;
+    }
+}
@@ -0,0 +1,148 @@
+package com.hubby.audiorecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 采集线程和写文件线程处理一块数据的开销，对应AudioRecordRunnable/AudioWriteRunnable的循环体
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CaptureBlockBenchmark {
+    private static final int GATHER_BLOCKS = 16;
+
+    private ByteBuffer captureBuffer;
+    private PcmRingBuffer ringBuffer;
+    private final ByteBuffer[] blocks = new ByteBuffer[GATHER_BLOCKS];
+    private final ByteBuffer[] gathered = new ByteBuffer[GATHER_BLOCKS + 2];
+    private LevelMeter levelMeter;
+    private VoiceActivityDetector vad;
+    private SilenceGate silenceGate;
+    private AudioFramePool framePool;
+    private AudioMetricsCollector metrics;
+    private AudioProcessorChain processorChain;
+    private File file;
+    private PcmFileWriter writer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        captureBuffer = BenchmarkSignals.block(BenchmarkSignals.BLOCK_FRAMES, BenchmarkSignals.CHANNELS);
+        ringBuffer = new PcmRingBuffer(64, BenchmarkSignals.BLOCK_BYTES);
+        levelMeter = new LevelMeter();
+        vad = new VoiceActivityDetector(BenchmarkSignals.SAMPLE_RATE, SilencePolicy.DEFAULT_HANGOVER_MILLIS);
+        silenceGate = new SilenceGate(SilencePolicy.skip(SilencePolicy.DEFAULT_PRE_ROLL_MILLIS,
+                SilencePolicy.DEFAULT_HANGOVER_MILLIS), BenchmarkSignals.SAMPLE_RATE, BenchmarkSignals.FRAME_SIZE);
+        framePool = new AudioFramePool(8, BenchmarkSignals.BLOCK_BYTES);
+        metrics = new AudioMetricsCollector();
+        metrics.start(0, System.nanoTime());
+        processorChain = new AudioProcessorChain(BenchmarkSignals.SAMPLE_RATE, BenchmarkSignals.CHANNELS,
+                SampleFormat.PCM_16BIT);
+        processorChain.setProcessors(new GainProcessor(6), new HighPassFilter(HighPassFilter.DC_CUTOFF_HZ),
+                new NoiseGate(-50), new AutomaticGainControl(), new PeakLimiter());
+        file = File.createTempFile("capture", ".pcm");
+        writer = new PcmFileWriter(file);
+        for (int i = 0; i < GATHER_BLOCKS; i++) {
+            blocks[i] = captureBuffer.duplicate();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writer.close();
+        file.delete();
+    }
+
+    /**
+     * 采集线程把一块数据放入环形缓冲区，写线程取出并归还
+     */
+    @Benchmark
+    public int ringBufferHandOff() {
+        captureBuffer.clear();
+        ringBuffer.offer(captureBuffer, 0);
+        ByteBuffer slot = ringBuffer.peek();
+        int length = slot.limit();
+        ringBuffer.release();
+        return length;
+    }
+
+    /**
+     * 从帧池取帧、填充并归还
+     */
+    @Benchmark
+    public long framePoolCycle() {
+        AudioFrame frame = framePool.acquire();
+        frame.set(BenchmarkSignals.BLOCK_BYTES, 2, BenchmarkSignals.SAMPLE_RATE, BenchmarkSignals.CHANNELS, 0, 0);
+        long sequence = frame.getSequence();
+        frame.release();
+        return sequence;
+    }
+
+    /**
+     * 采集循环中每块数据的运行数据记录：读取耗时和字节数
+     */
+    @Benchmark
+    public boolean recordMetrics() {
+        long start = System.nanoTime();
+        long end = System.nanoTime();
+        metrics.deviceLatency.record(end - start);
+        metrics.addBytes(BenchmarkSignals.BLOCK_BYTES);
+        return metrics.shouldReport(end);
+    }
+
+    /**
+     * 电平和VAD，每块数据遍历一次
+     */
+    @Benchmark
+    public boolean levelAndVad() {
+        levelMeter.measure(captureBuffer, BenchmarkSignals.BLOCK_BYTES);
+        return vad.update(levelMeter.getRmsDb(), BenchmarkSignals.BLOCK_FRAMES);
+    }
+
+    /**
+     * 完整的处理链(增益、去直流、噪声门、自动增益、限幅)原地处理一块数据
+     */
+    @Benchmark
+    public ByteBuffer processorChain() {
+        processorChain.process(captureBuffer, BenchmarkSignals.BLOCK_BYTES);
+        return captureBuffer;
+    }
+
+    /**
+     * 静音过滤，交替输入有声块和静音块
+     */
+    @Benchmark
+    public int silenceGate() {
+        int count = 0;
+        for (int i = 0; i < GATHER_BLOCKS; i++) {
+            captureBuffer.clear();
+            count += silenceGate.filter(captureBuffer, (i & 4) == 0 ? SilenceGate.FLAG_VOICED : 0, gathered, 0);
+        }
+        return count;
+    }
+
+    /**
+     * 写线程合并写入16块数据，文件位置每次复位，避免测试文件无限增长
+     */
+    @Benchmark
+    public long gatheringWrite() throws IOException {
+        for (int i = 0; i < GATHER_BLOCKS; i++) {
+            blocks[i].clear();
+        }
+        writer.write(blocks, 0, GATHER_BLOCKS);
+        writer.channel.position(0);
+        return writer.getDataByteCount();
+    }
+}
@@ -0,0 +1,53 @@
+package com.hubby.audiorecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编解码一个数据包的开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+    private static final int FRAMES = EncodedAudioWriter.DEFAULT_FRAMES_PER_PACKET;
+
+    @Param({"IMA_ADPCM", "LOSSLESS"})
+    public AudioCodec codec;
+
+    private AudioEncoder encoder;
+    private AudioDecoder decoder;
+    private short[] samples;
+    private short[] decoded;
+    private byte[] packet;
+    private int packetLength;
+
+    @Setup
+    public void setup() {
+        encoder = codec.newEncoder(BenchmarkSignals.CHANNELS, FRAMES);
+        decoder = codec.newDecoder(BenchmarkSignals.CHANNELS, FRAMES);
+        samples = BenchmarkSignals.samples(FRAMES, BenchmarkSignals.CHANNELS);
+        decoded = new short[samples.length];
+        packet = new byte[encoder.maxEncodedSize(FRAMES)];
+        packetLength = encoder.encode(samples, FRAMES, packet);
+    }
+
+    @Benchmark
+    public int encode() {
+        return encoder.encode(samples, FRAMES, packet);
+    }
+
+    @Benchmark
+    public short decode() {
+        decoder.decode(packet, packetLength, FRAMES, decoded);
+        return decoded[FRAMES - 1];
+    }
+}
@@ -0,0 +1,74 @@
+package com.hubby.audiorecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 采样率、声道转换处理一块采集数据的开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConversionBenchmark {
+    @Param({"FAST", "MEDIUM", "HIGH"})
+    public Resampler.Quality quality;
+
+    @Param({"16000", "48000"})
+    public int outputRate;
+
+    private short[] samples;
+    private short[] mono;
+    private short[] output;
+    private Resampler resampler;
+    private ChannelMixer mixer;
+    private PcmConverter converter;
+    private ByteBuffer block;
+    private ByteBuffer converted;
+
+    @Setup
+    public void setup() {
+        int frames = BenchmarkSignals.BLOCK_FRAMES;
+        samples = BenchmarkSignals.samples(frames, BenchmarkSignals.CHANNELS);
+        mono = new short[frames];
+        resampler = new Resampler(BenchmarkSignals.SAMPLE_RATE, outputRate, BenchmarkSignals.CHANNELS, quality, frames);
+        output = new short[resampler.getMaxOutputFrames(frames) * BenchmarkSignals.CHANNELS];
+        mixer = new ChannelMixer(BenchmarkSignals.CHANNELS, 1);
+        converter = new PcmConverter(BenchmarkSignals.SAMPLE_RATE, BenchmarkSignals.CHANNELS, outputRate, 1,
+                quality, frames);
+        block = BenchmarkSignals.block(frames, BenchmarkSignals.CHANNELS);
+        converted = ByteBuffer.allocateDirect(converter.getMaxOutputBytes(BenchmarkSignals.BLOCK_BYTES))
+                .order(ByteOrder.nativeOrder());
+    }
+
+    @Benchmark
+    public int resample() {
+        return resampler.process(samples, 0, BenchmarkSignals.BLOCK_FRAMES, output, 0);
+    }
+
+    @Benchmark
+    public short downmix() {
+        mixer.mix(samples, 0, BenchmarkSignals.BLOCK_FRAMES, mono, 0);
+        return mono[0];
+    }
+
+    /**
+     * 写文件线程中ResamplingSink对一个槽位的处理：读取字节、缩混、重采样、写回字节
+     */
+    @Benchmark
+    public int convertBlock() {
+        block.clear();
+        converted.clear();
+        converter.convert(block, converted);
+        return converted.position();
+    }
+}
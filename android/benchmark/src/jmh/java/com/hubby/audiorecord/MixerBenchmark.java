@@ -0,0 +1,72 @@
+package com.hubby.audiorecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多音轨混音一块数据的开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MixerBenchmark {
+    private static final int SECONDS = 10;
+
+    @Param({"1", "4", "8"})
+    public int trackCount;
+
+    private File file;
+    private AudioMixer mixer;
+    private MixerTrack[] tracks;
+    private ByteBuffer out;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = File.createTempFile("mixer", ".wav");
+        try (WavFileWriter writer = new WavFileWriter(file, BenchmarkSignals.SAMPLE_RATE, BenchmarkSignals.CHANNELS)) {
+            writer.write(new ByteBuffer[]{BenchmarkSignals.block(BenchmarkSignals.SAMPLE_RATE * SECONDS,
+                    BenchmarkSignals.CHANNELS)}, 0, 1);
+        }
+        mixer = new AudioMixer(BenchmarkSignals.CHANNELS, BenchmarkSignals.BLOCK_FRAMES);
+        tracks = new MixerTrack[trackCount];
+        for (int i = 0; i < trackCount; i++) {
+            tracks[i] = new MixerTrack(new MappedPcmSource(file, WavUtil.RF64_HEADER_SIZE,
+                    BenchmarkSignals.FRAME_SIZE), BenchmarkSignals.CHANNELS);
+            tracks[i].setGain(0.5f);
+            tracks[i].setPan(i % 2 == 0 ? -0.5f : 0.5f);
+            mixer.addTrack(tracks[i]);
+        }
+        out = ByteBuffer.allocateDirect(BenchmarkSignals.BLOCK_BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mixer.clear();
+        file.delete();
+    }
+
+    @Benchmark
+    public int mixBlock() throws IOException {
+        if (tracks[0].isFinished()) {
+            // 文件读完后从头开始，保持音轨数不变
+            for (MixerTrack track : tracks) {
+                track.rewind();
+            }
+        }
+        return mixer.mix(out, BenchmarkSignals.BLOCK_FRAMES);
+    }
+}
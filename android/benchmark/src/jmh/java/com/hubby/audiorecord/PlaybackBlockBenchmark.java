@@ -0,0 +1,95 @@
+package com.hubby.audiorecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 播放线程取一块数据的开销，对应AudioTrackRunnable的循环体；AudioTrack.write用拷贝到direct buffer代替
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlaybackBlockBenchmark {
+    // 测试文件时长
+    private static final int SECONDS = 10;
+
+    @Param({"PCM", "IMA_ADPCM", "LOSSLESS"})
+    public AudioCodec codec;
+
+    private File file;
+    private PcmSource source;
+    private PcmSource resampled;
+    private ByteBuffer track;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int frames = BenchmarkSignals.SAMPLE_RATE * SECONDS;
+        ByteBuffer data = BenchmarkSignals.block(frames, BenchmarkSignals.CHANNELS);
+        if (codec == AudioCodec.PCM) {
+            file = File.createTempFile("playback", ".wav");
+            try (WavFileWriter writer = new WavFileWriter(file, BenchmarkSignals.SAMPLE_RATE, BenchmarkSignals.CHANNELS)) {
+                writer.write(new ByteBuffer[]{data}, 0, 1);
+            }
+            source = new MappedPcmSource(file, WavUtil.RF64_HEADER_SIZE, BenchmarkSignals.FRAME_SIZE);
+            resampled = new ResamplingPcmSource(new MappedPcmSource(file, WavUtil.RF64_HEADER_SIZE,
+                    BenchmarkSignals.FRAME_SIZE), BenchmarkSignals.SAMPLE_RATE, BenchmarkSignals.CHANNELS,
+                    48000, BenchmarkSignals.CHANNELS, Resampler.Quality.MEDIUM);
+        } else {
+            file = File.createTempFile("playback", ".hac");
+            try (EncodedAudioWriter writer = new EncodedAudioWriter(file, codec, BenchmarkSignals.SAMPLE_RATE,
+                    BenchmarkSignals.CHANNELS)) {
+                writer.write(new ByteBuffer[]{data}, 0, 1);
+            }
+            source = new EncodedPcmSource(file);
+            resampled = new ResamplingPcmSource(new EncodedPcmSource(file), BenchmarkSignals.SAMPLE_RATE,
+                    BenchmarkSignals.CHANNELS, 48000, BenchmarkSignals.CHANNELS, Resampler.Quality.MEDIUM);
+        }
+        track = ByteBuffer.allocateDirect(BenchmarkSignals.BLOCK_BYTES * 2).order(ByteOrder.nativeOrder());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        source.close();
+        resampled.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public int readBlock() throws IOException {
+        return copyBlock(source);
+    }
+
+    /**
+     * 文件为44100Hz、播放设备为48000Hz时边读边重采样
+     */
+    @Benchmark
+    public int readResampledBlock() throws IOException {
+        return copyBlock(resampled);
+    }
+
+    private int copyBlock(PcmSource pcmSource) throws IOException {
+        ByteBuffer chunk = pcmSource.read(BenchmarkSignals.BLOCK_BYTES);
+        if (chunk == null) {
+            pcmSource.seek(0);
+            chunk = pcmSource.read(BenchmarkSignals.BLOCK_BYTES);
+        }
+        int length = chunk.remaining();
+        track.clear();
+        track.put(chunk);
+        return length;
+    }
+}
@@ -0,0 +1,53 @@
+package com.hubby.audiorecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各采样格式与float互相转换一块数据的开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SampleFormatBenchmark {
+    @Param({"PCM_8BIT", "PCM_16BIT", "PCM_24BIT_PACKED", "PCM_32BIT", "PCM_FLOAT"})
+    public SampleFormat format;
+
+    private int count;
+    private float[] samples;
+    private ByteBuffer block;
+
+    @Setup
+    public void setup() {
+        count = BenchmarkSignals.BLOCK_FRAMES * BenchmarkSignals.CHANNELS;
+        samples = new float[count];
+        short[] source = BenchmarkSignals.samples(BenchmarkSignals.BLOCK_FRAMES, BenchmarkSignals.CHANNELS);
+        for (int i = 0; i < count; i++) {
+            samples[i] = source[i] / 32768f;
+        }
+        block = ByteBuffer.allocateDirect(count * format.getBytesPerSample()).order(ByteOrder.nativeOrder());
+        format.fromFloat(samples, 0, block, 0, count);
+    }
+
+    @Benchmark
+    public float toFloat() {
+        format.toFloat(block, 0, samples, 0, count);
+        return samples[count - 1];
+    }
+
+    @Benchmark
+    public ByteBuffer fromFloat() {
+        format.fromFloat(samples, 0, block, 0, count);
+        return block;
+    }
+}
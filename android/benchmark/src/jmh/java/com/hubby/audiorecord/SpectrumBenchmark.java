@@ -0,0 +1,59 @@
+package com.hubby.audiorecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实数FFT单次变换，以及频谱分析处理一块采集数据的开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpectrumBenchmark {
+    @Param({"512", "2048", "8192"})
+    public int fftSize;
+
+    private RealFft fft;
+    private float[] input;
+    private float[] re;
+    private float[] im;
+    private SpectrumAnalyzer analyzer;
+    private ByteBuffer block;
+
+    @Setup
+    public void setup() {
+        fft = new RealFft(fftSize);
+        input = new float[fftSize];
+        short[] samples = BenchmarkSignals.samples(fftSize, 1);
+        for (int i = 0; i < fftSize; i++) {
+            input[i] = samples[i] / 32768f;
+        }
+        re = new float[fft.getBinCount()];
+        im = new float[fft.getBinCount()];
+        // 每秒约60帧，供可视化使用
+        analyzer = new SpectrumAnalyzer(BenchmarkSignals.SAMPLE_RATE, BenchmarkSignals.CHANNELS, fftSize,
+                BenchmarkSignals.SAMPLE_RATE / 60);
+        block = BenchmarkSignals.block(BenchmarkSignals.BLOCK_FRAMES, BenchmarkSignals.CHANNELS);
+    }
+
+    @Benchmark
+    public float[] realFft() {
+        fft.forward(input, re, im);
+        return re;
+    }
+
+    @Benchmark
+    public long analyzeBlock() {
+        analyzer.write(block, SampleFormat.PCM_16BIT);
+        return analyzer.getFrameCount();
+    }
+}
@@ -0,0 +1,52 @@
+package com.hubby.audiorecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * wav文件头的生成与解析
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WavUtilBenchmark {
+    private byte[] header;
+    private byte[] rf64Header;
+
+    @Setup
+    public void setup() {
+        header = WavUtil.generateRf64FileHeader(10_000_000L, BenchmarkSignals.SAMPLE_RATE, BenchmarkSignals.CHANNELS);
+        rf64Header = WavUtil.generateRf64FileHeader(5_000_000_000L, BenchmarkSignals.SAMPLE_RATE,
+                BenchmarkSignals.CHANNELS);
+    }
+
+    @Benchmark
+    public byte[] generateWavHeader() {
+        return WavUtil.generateWavFileHeader(10_000_000L, BenchmarkSignals.SAMPLE_RATE, BenchmarkSignals.CHANNELS);
+    }
+
+    @Benchmark
+    public byte[] generateRf64Header() {
+        return WavUtil.generateRf64FileHeader(5_000_000_000L, BenchmarkSignals.SAMPLE_RATE, BenchmarkSignals.CHANNELS);
+    }
+
+    @Benchmark
+    public WavHeader readHeader() throws IOException {
+        return WavUtil.readHeader(Channels.newChannel(new ByteArrayInputStream(header)));
+    }
+
+    @Benchmark
+    public WavHeader readRf64Header() throws IOException {
+        return WavUtil.readHeader(Channels.newChannel(new ByteArrayInputStream(rf64Header)));
+    }
+}